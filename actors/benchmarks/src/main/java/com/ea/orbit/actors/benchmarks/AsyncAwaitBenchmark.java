@@ -0,0 +1,135 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.benchmarks;
+
+import com.ea.orbit.async.Await;
+import com.ea.orbit.concurrent.Task;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.ea.orbit.async.Await.await;
+
+/**
+ * Await in a loop with primitive locals, over completed futures (the synchronous fast path)
+ * and over futures completed after the method has suspended (the state machine).
+ * <p>
+ * The class is instrumented at build time by the orbit-async-maven-plugin.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AsyncAwaitBenchmark
+{
+    static
+    {
+        Await.init();
+    }
+
+    @Param({ "1", "10" })
+    public int awaits;
+
+    private List<Task<Integer>> completed;
+
+    @Setup
+    public void setup()
+    {
+        completed = new ArrayList<>();
+        for (int i = 0; i < awaits; i++)
+        {
+            completed.add(Task.fromValue(i));
+        }
+    }
+
+    private Task<Long> sum(List<Task<Integer>> values, long start)
+    {
+        long total = start;
+        for (int i = 0; i < values.size(); i++)
+        {
+            total += await(values.get(i));
+        }
+        return Task.fromValue(total);
+    }
+
+    private Task<Long> sumWithJoin(List<Task<Integer>> values, long start)
+    {
+        long total = start;
+        for (int i = 0; i < values.size(); i++)
+        {
+            total += values.get(i).join();
+        }
+        return Task.fromValue(total);
+    }
+
+    @Benchmark
+    public Long baseline()
+    {
+        return sumWithJoin(completed, 1).join();
+    }
+
+    @Benchmark
+    public Long completedFutures()
+    {
+        return sum(completed, 1).join();
+    }
+
+    @Benchmark
+    public void suspended(Blackhole blackhole)
+    {
+        final List<Task<Integer>> pending = new ArrayList<>(awaits);
+        for (int i = 0; i < awaits; i++)
+        {
+            pending.add(new Task<>());
+        }
+        final Task<Long> res = sum(pending, 1);
+        for (int i = 0; i < awaits; i++)
+        {
+            pending.get(i).complete(i);
+        }
+        blackhole.consume(res.join());
+    }
+}
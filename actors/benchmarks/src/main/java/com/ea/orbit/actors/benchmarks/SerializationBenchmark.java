@@ -0,0 +1,140 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.benchmarks;
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.benchmarks.actors.IBenchActor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remote echo of typical payloads, the payload is serialized with the request and again with the response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SerializationBenchmark
+{
+    public static class PlayerInfo implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        String name;
+        int level;
+        long lastSeen;
+        List<String> achievements = new ArrayList<>();
+        Map<String, Integer> inventory = new HashMap<>();
+    }
+
+    @Param({ "string", "list", "object", "reference" })
+    public String payloadType;
+
+    private OrbitStage stage;
+    private OrbitStage client;
+    private IBenchActor actor;
+    private Object payload;
+
+    @Setup
+    public void setup()
+    {
+        final Stages stages = new Stages();
+        stage = stages.createStage();
+        client = stages.createClient();
+        actor = IActor.getReference(IBenchActor.class, "serialization");
+        payload = createPayload(payloadType);
+        actor.echo(payload).join();
+    }
+
+    private static Object createPayload(String type)
+    {
+        switch (type)
+        {
+            case "string":
+                return "some chat message with a few words";
+            case "list":
+                final List<Integer> list = new ArrayList<>();
+                for (int i = 0; i < 100; i++)
+                {
+                    list.add(i);
+                }
+                return list;
+            case "object":
+                final PlayerInfo info = new PlayerInfo();
+                info.name = "player";
+                info.level = 42;
+                info.lastSeen = System.currentTimeMillis();
+                for (int i = 0; i < 10; i++)
+                {
+                    info.achievements.add("achievement." + i);
+                    info.inventory.put("item." + i, i);
+                }
+                return info;
+            case "reference":
+                return IActor.getReference(IBenchActor.class, "referenced");
+            default:
+                throw new IllegalArgumentException(type);
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        client.stop().join();
+        stage.stop().join();
+    }
+
+    @Benchmark
+    public Object echo()
+    {
+        client.bind();
+        return actor.echo(payload).join();
+    }
+}
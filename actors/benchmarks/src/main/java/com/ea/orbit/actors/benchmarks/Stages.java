@@ -0,0 +1,84 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.benchmarks;
+
+import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.test.FakeClock;
+import com.ea.orbit.actors.test.FakeClusterPeer;
+import com.ea.orbit.actors.test.FakeStorageProvider;
+import com.ea.orbit.concurrent.ExecutorUtils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A cluster of stages connected through the in-memory {@link FakeClusterPeer},
+ * the equivalent of the ActorBaseTest setup for the benchmarks.
+ */
+public class Stages
+{
+    private static final ExecutorService commonPool = ExecutorUtils.newScalingThreadPool(200);
+
+    private final String clusterName = "cluster." + Math.random() + ".benchmark";
+    private final FakeClock clock = new FakeClock();
+    private final ConcurrentHashMap<Object, Object> fakeDatabase = new ConcurrentHashMap<>();
+
+    public OrbitStage createStage()
+    {
+        return start(OrbitStage.StageMode.HOST);
+    }
+
+    public OrbitStage createClient()
+    {
+        return start(OrbitStage.StageMode.FRONT_END);
+    }
+
+    private OrbitStage start(OrbitStage.StageMode mode)
+    {
+        OrbitStage stage = new OrbitStage();
+        stage.setMode(mode);
+        stage.setExecutionPool(commonPool);
+        stage.setMessagingPool(commonPool);
+        if (mode == OrbitStage.StageMode.HOST)
+        {
+            stage.addProvider(new FakeStorageProvider(fakeDatabase));
+        }
+        stage.setClock(clock);
+        stage.setClusterName(clusterName);
+        stage.setClusterPeer(new FakeClusterPeer());
+        stage.start().join();
+        stage.bind();
+        return stage;
+    }
+
+    public FakeClock getClock()
+    {
+        return clock;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.benchmarks;
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.benchmarks.actors.IBenchActor;
+import com.ea.orbit.actors.cluster.ClusterPeer;
+import com.ea.orbit.actors.cluster.IClusterPeer;
+import com.ea.orbit.actors.cluster.TcpClusterPeer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remote call latency over loopback with the real cluster transports:
+ * jgroups messages versus direct tcp connections (with jgroups membership).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TransportBenchmark
+{
+    @Param({ "jgroups", "tcp" })
+    public String transport;
+
+    private OrbitStage stage;
+    private OrbitStage client;
+    private IBenchActor actor;
+
+    @Setup
+    public void setup()
+    {
+        final String clusterName = "cluster." + Math.random() + ".transport";
+        stage = start(clusterName, OrbitStage.StageMode.HOST);
+        client = start(clusterName, OrbitStage.StageMode.FRONT_END);
+        actor = IActor.getReference(IBenchActor.class, "transport");
+        actor.increment(0).join();
+    }
+
+    private OrbitStage start(String clusterName, OrbitStage.StageMode mode)
+    {
+        final OrbitStage stage = new OrbitStage();
+        stage.setMode(mode);
+        stage.setClusterName(clusterName);
+        stage.setClusterPeer(createPeer());
+        stage.start().join();
+        stage.bind();
+        return stage;
+    }
+
+    private IClusterPeer createPeer()
+    {
+        if ("tcp".equals(transport))
+        {
+            final TcpClusterPeer peer = new TcpClusterPeer();
+            peer.setHost("127.0.0.1");
+            return peer;
+        }
+        return new ClusterPeer();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        client.stop().join();
+        stage.stop().join();
+    }
+
+    @Benchmark
+    public Integer call()
+    {
+        client.bind();
+        return actor.increment(1).join();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.benchmarks.actors;
+
+import com.ea.orbit.actors.runtime.OrbitActor;
+import com.ea.orbit.actors.runtime.Registration;
+import com.ea.orbit.concurrent.Task;
+
+import java.util.concurrent.TimeUnit;
+
+@SuppressWarnings("rawtypes")
+public class BenchTimer extends OrbitActor implements IBenchTimer
+{
+    @SuppressWarnings("unchecked")
+    @Override
+    public Task<Integer> scheduleAndCancel(final int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            final Registration registration = registerTimer(Task::done, 1, 1, TimeUnit.MINUTES);
+            registration.dispose();
+        }
+        return Task.fromValue(count);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Task<Void> fire()
+    {
+        final Task<Void> fired = new Task<>();
+        registerTimer(() -> {
+            fired.complete(null);
+            return Task.done();
+        }, 0, 0, TimeUnit.MILLISECONDS);
+        return fired;
+    }
+}
@@ -0,0 +1,464 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.processor;
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.actors.IActorObserver;
+import com.ea.orbit.actors.annotation.AlwaysInterleave;
+import com.ea.orbit.actors.annotation.Cacheable;
+import com.ea.orbit.actors.annotation.HighPriority;
+import com.ea.orbit.actors.annotation.Idempotent;
+import com.ea.orbit.actors.annotation.Mailbox;
+import com.ea.orbit.actors.annotation.OneWay;
+import com.ea.orbit.actors.annotation.ReadOnly;
+import com.ea.orbit.actors.annotation.Reentrant;
+import com.ea.orbit.actors.runtime.ActorIndex;
+import com.ea.orbit.actors.runtime.ActorReference;
+import com.ea.orbit.concurrent.Task;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Annotation processor that generates the factory, reference and invoker classes
+ * of actor and actor observer interfaces at compile time.
+ * <p>
+ * For a top level interface {@code com.example.IHello} it generates {@code com.example.HelloFactory},
+ * the same class the runtime would otherwise generate with javassist on first use.
+ * Nested interfaces are left to the runtime generation.
+ * </p>
+ * <p>
+ * It also writes the {@value com.ea.orbit.actors.runtime.ActorIndex#INDEX_RESOURCE} resource
+ * mapping actor interfaces to their implementations, so the stage doesn't have to scan the class path.
+ * </p>
+ * <p>
+ * The factory generation can be disabled with the compiler option {@code -Aorbit.actors.generateFactories=false}.
+ * </p>
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions(ActorFactoryProcessor.GENERATE_OPTION)
+public class ActorFactoryProcessor extends AbstractProcessor
+{
+    static final String GENERATE_OPTION = "orbit.actors.generateFactories";
+
+    // interfaceName=implementationName lines, written when the processing is over.
+    private final Set<String> indexEntries = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv)
+    {
+        if (roundEnv.processingOver())
+        {
+            writeIndex();
+            return false;
+        }
+        final Elements elements = processingEnv.getElementUtils();
+        final Types types = processingEnv.getTypeUtils();
+        final TypeElement actorElement = elements.getTypeElement(IActor.class.getName());
+        final TypeElement observerElement = elements.getTypeElement(IActorObserver.class.getName());
+        if (actorElement == null || observerElement == null)
+        {
+            return false;
+        }
+        for (Element e : roundEnv.getRootElements())
+        {
+            indexImplementations(e, actorElement);
+        }
+        if ("false".equals(processingEnv.getOptions().get(GENERATE_OPTION)))
+        {
+            return false;
+        }
+        for (Element e : roundEnv.getRootElements())
+        {
+            if (e.getKind() != ElementKind.INTERFACE
+                    || ((TypeElement) e).getNestingKind() != NestingKind.TOP_LEVEL
+                    || e.equals(actorElement) || e.equals(observerElement))
+            {
+                continue;
+            }
+            final TypeMirror type = types.erasure(e.asType());
+            if (types.isAssignable(type, types.erasure(actorElement.asType()))
+                    || types.isAssignable(type, types.erasure(observerElement.asType())))
+            {
+                try
+                {
+                    generate((TypeElement) e);
+                }
+                catch (IOException ex)
+                {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                            "Error generating actor factory: " + ex.getMessage(), e);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void indexImplementations(final Element element, final TypeElement actorElement)
+    {
+        if (!element.getKind().isClass() && !element.getKind().isInterface())
+        {
+            return;
+        }
+        final Types types = processingEnv.getTypeUtils();
+        final TypeElement type = (TypeElement) element;
+        if (element.getKind() == ElementKind.CLASS
+                && !element.getModifiers().contains(Modifier.ABSTRACT)
+                && (type.getNestingKind() == NestingKind.TOP_LEVEL || element.getModifiers().contains(Modifier.STATIC))
+                && types.isAssignable(types.erasure(type.asType()), types.erasure(actorElement.asType()))
+                && !types.isAssignable(types.erasure(type.asType()),
+                types.erasure(processingEnv.getElementUtils().getTypeElement(ActorReference.class.getName()).asType())))
+        {
+            final String implementationName = processingEnv.getElementUtils().getBinaryName(type).toString();
+            // only the interfaces declared by the class and its super classes, like ClassPathSearch
+            for (TypeElement c = type; c != null; c = superClass(c))
+            {
+                for (TypeMirror i : c.getInterfaces())
+                {
+                    final TypeMirror erased = types.erasure(i);
+                    if (types.isAssignable(erased, types.erasure(actorElement.asType())))
+                    {
+                        indexEntries.add(binaryName(erased) + "=" + implementationName);
+                    }
+                }
+            }
+        }
+        for (Element enclosed : element.getEnclosedElements())
+        {
+            indexImplementations(enclosed, actorElement);
+        }
+    }
+
+    private TypeElement superClass(final TypeElement type)
+    {
+        final TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+    }
+
+    private void writeIndex()
+    {
+        if (indexEntries.isEmpty())
+        {
+            return;
+        }
+        final Filer filer = processingEnv.getFiler();
+        // incremental builds only process the changed classes, keeping the previous entries.
+        // stale entries are ignored by the ActorIndex.
+        try
+        {
+            final FileObject previous = filer.getResource(StandardLocation.CLASS_OUTPUT, "", ActorIndex.INDEX_RESOURCE);
+            try (BufferedReader reader = new BufferedReader(previous.openReader(true)))
+            {
+                reader.lines().filter(l -> l.indexOf('=') > 0).forEach(indexEntries::add);
+            }
+        }
+        catch (IOException | IllegalArgumentException ex)
+        {
+            // no previous index
+        }
+        try
+        {
+            final FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", ActorIndex.INDEX_RESOURCE);
+            try (Writer writer = file.openWriter())
+            {
+                for (String entry : indexEntries)
+                {
+                    writer.write(entry);
+                    writer.write('\n');
+                }
+            }
+        }
+        catch (IOException ex)
+        {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Error writing " + ActorIndex.INDEX_RESOURCE + ": " + ex.getMessage());
+        }
+    }
+
+    private void generate(final TypeElement anInterface) throws IOException
+    {
+        final Elements elements = processingEnv.getElementUtils();
+        final Types types = processingEnv.getTypeUtils();
+        final String packageName = ((PackageElement) anInterface.getEnclosingElement()).getQualifiedName().toString();
+        final String interfaceName = anInterface.getQualifiedName().toString();
+        String baseName = anInterface.getSimpleName().toString();
+        if (baseName.charAt(0) == 'I')
+        {
+            baseName = baseName.substring(1); // remove leading 'I'
+        }
+        final String factoryName = baseName + "Factory";
+        final String referenceName = baseName + "Reference";
+        final String invokerName = baseName + "Invoker";
+        // must match the ids used by ActorFactoryGenerator
+        final int interfaceId = interfaceName.hashCode();
+
+        // the methods returning Task, including the inherited ones
+        final Map<String, ExecutableElement> methods = new LinkedHashMap<>();
+        final TypeMirror taskType = types.erasure(elements.getTypeElement(Task.class.getName()).asType());
+        for (Element member : elements.getAllMembers(anInterface))
+        {
+            if (member.getKind() == ElementKind.METHOD
+                    && member.getEnclosingElement().getKind() == ElementKind.INTERFACE
+                    && !member.getModifiers().contains(Modifier.STATIC)
+                    && types.isSameType(types.erasure(((ExecutableElement) member).getReturnType()), taskType))
+            {
+                final ExecutableElement method = (ExecutableElement) member;
+                methods.putIfAbsent(methodSignature(method), method);
+            }
+        }
+
+        final List<Integer> readOnly = new ArrayList<>();
+        final List<Integer> alwaysInterleave = new ArrayList<>();
+        final List<Integer> highPriority = new ArrayList<>();
+        final List<Integer> idempotent = new ArrayList<>();
+        final Map<Integer, Long> cacheTtls = new LinkedHashMap<>();
+
+        final StringBuilder sb = new StringBuilder(4000);
+        sb.append("package ").append(packageName).append(";\n\n");
+        sb.append("@javax.annotation.Generated(\"").append(getClass().getName()).append("\")\n");
+        sb.append("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+        sb.append("public class ").append(factoryName).append(" extends com.ea.orbit.actors.runtime.ActorFactory<").append(interfaceName).append(">\n{\n");
+        sb.append("    private static final ").append(invokerName).append(" invoker = new ").append(invokerName).append("();\n\n");
+        sb.append("    @Override\n    public Class<").append(interfaceName).append("> getInterface()\n    {\n        return ").append(interfaceName).append(".class;\n    }\n\n");
+        sb.append("    @Override\n    public int getInterfaceId()\n    {\n        return ").append(interfaceId).append(";\n    }\n\n");
+        sb.append("    @Override\n    public com.ea.orbit.actors.runtime.ActorInvoker<").append(interfaceName).append("> getInvoker()\n    {\n        return invoker;\n    }\n\n");
+        sb.append("    @Override\n    public ").append(interfaceName).append(" createReference(final String id)\n    {\n        return new ").append(referenceName).append("(id);\n    }\n\n");
+
+        // reference
+        final StringBuilder reference = new StringBuilder(2000);
+        final StringBuilder invoker = new StringBuilder(2000);
+        int count = 0;
+        for (Map.Entry<String, ExecutableElement> entry : methods.entrySet())
+        {
+            final ExecutableElement method = entry.getValue();
+            final int methodId = entry.getKey().hashCode();
+            final String name = method.getSimpleName().toString();
+            final List<? extends VariableElement> parameters = method.getParameters();
+            if (method.getAnnotation(ReadOnly.class) != null)
+            {
+                readOnly.add(methodId);
+            }
+            if (method.getAnnotation(AlwaysInterleave.class) != null)
+            {
+                alwaysInterleave.add(methodId);
+            }
+            if (method.getAnnotation(HighPriority.class) != null)
+            {
+                highPriority.add(methodId);
+            }
+            if (method.getAnnotation(Idempotent.class) != null)
+            {
+                idempotent.add(methodId);
+            }
+            final Cacheable cacheable = method.getAnnotation(Cacheable.class);
+            if (cacheable != null)
+            {
+                cacheTtls.put(methodId, cacheable.ttlUnit().toMillis(cacheable.ttl()));
+            }
+            count++;
+            final String methodField = name + "_" + count;
+            reference.append("        private static final java.lang.reflect.Method ").append(methodField)
+                    .append(" = _method(\"").append(name).append("\"");
+            for (VariableElement p : parameters)
+            {
+                reference.append(", ").append(sourceName(p.asType())).append(".class");
+            }
+            reference.append(");\n\n");
+            reference.append("        @Override\n        public com.ea.orbit.concurrent.Task ").append(name).append("(");
+            for (int i = 0; i < parameters.size(); i++)
+            {
+                reference.append(i > 0 ? ", " : "").append("final ").append(sourceName(parameters.get(i).asType())).append(" p").append(i);
+            }
+            reference.append(")\n        {\n            return super.invoke(").append(methodField).append(", ")
+                    .append(method.getAnnotation(OneWay.class) != null).append(", ").append(methodId).append(", new Object[]{ ");
+            for (int i = 0; i < parameters.size(); i++)
+            {
+                reference.append(i > 0 ? ", " : "").append('p').append(i);
+            }
+            reference.append(" });\n        }\n\n");
+
+            invoker.append("                case ").append(methodId).append(":\n                    return target.").append(name).append("(");
+            for (int i = 0; i < parameters.size(); i++)
+            {
+                final TypeMirror pt = types.erasure(parameters.get(i).asType());
+                invoker.append(i > 0 ? ", " : "");
+                if (pt.getKind().isPrimitive())
+                {
+                    final TypeElement boxed = types.boxedClass((javax.lang.model.type.PrimitiveType) pt);
+                    invoker.append("((").append(boxed.getQualifiedName()).append(") params[").append(i).append("]).")
+                            .append(pt.toString()).append("Value()");
+                }
+                else
+                {
+                    invoker.append('(').append(sourceName(pt)).append(") params[").append(i).append(']');
+                }
+            }
+            invoker.append(");\n");
+        }
+
+        if (anInterface.getAnnotation(Reentrant.class) != null)
+        {
+            sb.append("    @Override\n    public boolean isReentrant()\n    {\n        return true;\n    }\n\n");
+        }
+        appendMethodSet(sb, "isReadOnly", readOnly);
+        appendMethodSet(sb, "isAlwaysInterleave", alwaysInterleave);
+        appendMethodSet(sb, "isHighPriority", highPriority);
+        appendMethodSet(sb, "isIdempotent", idempotent);
+        if (!cacheTtls.isEmpty())
+        {
+            sb.append("    @Override\n    public long getCacheTtlMillis(final int methodId)\n    {\n");
+            sb.append("        switch (methodId)\n        {\n");
+            cacheTtls.forEach((methodId, ttl) -> sb.append("            case ").append(methodId).append(":\n                return ").append(ttl).append("L;\n"));
+            sb.append("            default:\n                return 0;\n        }\n    }\n\n");
+        }
+        final Mailbox mailbox = anInterface.getAnnotation(Mailbox.class);
+        if (mailbox != null)
+        {
+            sb.append("    @Override\n    public int getMailboxCapacity()\n    {\n        return ").append(mailbox.capacity()).append(";\n    }\n\n");
+            sb.append("    @Override\n    public boolean isDropOldestOneWay()\n    {\n        return ").append(mailbox.dropOldestOneWay()).append(";\n    }\n\n");
+        }
+
+        sb.append("    public static class ").append(referenceName)
+                .append(" extends com.ea.orbit.actors.runtime.ActorReference<").append(interfaceName).append("> implements ").append(interfaceName).append("\n    {\n");
+        sb.append("        public ").append(referenceName).append("(final String id)\n        {\n            super(id);\n        }\n\n");
+        sb.append("        private static java.lang.reflect.Method _method(final String name, final Class<?>... parameterTypes)\n        {\n");
+        sb.append("            try\n            {\n                return ").append(interfaceName).append(".class.getMethod(name, parameterTypes);\n            }\n");
+        sb.append("            catch (NoSuchMethodException e)\n            {\n                throw new com.ea.orbit.exception.UncheckedException(e);\n            }\n        }\n\n");
+        sb.append("        @Override\n        protected int _interfaceId()\n        {\n            return ").append(interfaceId).append(";\n        }\n\n");
+        sb.append("        @Override\n        protected Class<").append(interfaceName).append("> _interfaceClass()\n        {\n            return ").append(interfaceName).append(".class;\n        }\n\n");
+        sb.append(reference);
+        sb.append("    }\n\n");
+
+        sb.append("    public static class ").append(invokerName)
+                .append(" extends com.ea.orbit.actors.runtime.ActorInvoker<").append(interfaceName).append(">\n    {\n");
+        sb.append("        @Override\n        protected int _interfaceId()\n        {\n            return ").append(interfaceId).append(";\n        }\n\n");
+        sb.append("        @Override\n        public com.ea.orbit.concurrent.Task<?> invoke(final ").append(interfaceName).append(" target, final int methodId, final Object[] params)\n        {\n");
+        sb.append("            switch (methodId)\n            {\n");
+        sb.append(invoker);
+        sb.append("                default:\n                    return super.invoke(target, methodId, params);\n            }\n        }\n    }\n");
+        sb.append("}\n");
+
+        final JavaFileObject file = processingEnv.getFiler().createSourceFile(packageName + "." + factoryName, anInterface);
+        try (Writer writer = file.openWriter())
+        {
+            writer.write(sb.toString());
+        }
+    }
+
+    private void appendMethodSet(final StringBuilder sb, final String name, final List<Integer> methodIds)
+    {
+        if (methodIds.isEmpty())
+        {
+            return;
+        }
+        sb.append("    @Override\n    public boolean ").append(name).append("(final int methodId)\n    {\n");
+        sb.append("        switch (methodId)\n        {\n");
+        for (Integer methodId : methodIds)
+        {
+            sb.append("            case ").append(methodId).append(":\n");
+        }
+        sb.append("                return true;\n            default:\n                return false;\n        }\n    }\n\n");
+    }
+
+    /**
+     * Same format used by the runtime generator: {@code name(type1,type2)} with binary type names.
+     */
+    private String methodSignature(final ExecutableElement method)
+    {
+        return method.getSimpleName() + "(" + method.getParameters().stream()
+                .map(p -> binaryName(processingEnv.getTypeUtils().erasure(p.asType())))
+                .collect(Collectors.joining(",")) + ")";
+    }
+
+    private String binaryName(final TypeMirror type)
+    {
+        if (type.getKind() == TypeKind.ARRAY)
+        {
+            return binaryName(((ArrayType) type).getComponentType()) + "[]";
+        }
+        if (type.getKind() == TypeKind.DECLARED)
+        {
+            return processingEnv.getElementUtils().getBinaryName((TypeElement) ((DeclaredType) type).asElement()).toString();
+        }
+        return type.toString();
+    }
+
+    private String sourceName(final TypeMirror type)
+    {
+        final TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        if (erased.getKind() == TypeKind.ARRAY)
+        {
+            return sourceName(((ArrayType) erased).getComponentType()) + "[]";
+        }
+        if (erased.getKind() == TypeKind.DECLARED)
+        {
+            return ((TypeElement) ((DeclaredType) erased).asElement()).getQualifiedName().toString();
+        }
+        return erased.toString();
+    }
+}
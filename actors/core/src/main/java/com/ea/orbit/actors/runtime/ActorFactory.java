@@ -37,4 +37,73 @@ public abstract class ActorFactory<T>
     public abstract ActorInvoker<T> getInvoker();
 
     public abstract T createReference(final String id);
+
+    /**
+     * @return true if the actor interface is annotated with {@literal@}Reentrant
+     */
+    public boolean isReentrant()
+    {
+        return false;
+    }
+
+    /**
+     * @param methodId the generated method id
+     * @return true if the method is annotated with {@literal@}ReadOnly
+     */
+    public boolean isReadOnly(int methodId)
+    {
+        return false;
+    }
+
+    /**
+     * @param methodId the generated method id
+     * @return true if the method is annotated with {@literal@}AlwaysInterleave
+     */
+    public boolean isAlwaysInterleave(int methodId)
+    {
+        return false;
+    }
+
+    /**
+     * @param methodId the generated method id
+     * @return true if the method is annotated with {@literal@}HighPriority
+     */
+    public boolean isHighPriority(int methodId)
+    {
+        return false;
+    }
+
+    /**
+     * @param methodId the generated method id
+     * @return true if the method is annotated with {@literal@}Idempotent
+     */
+    public boolean isIdempotent(int methodId)
+    {
+        return false;
+    }
+
+    /**
+     * @param methodId the generated method id
+     * @return the time to live of the responses from the {@literal@}Cacheable annotation, or zero if the method isn't cacheable
+     */
+    public long getCacheTtlMillis(int methodId)
+    {
+        return 0;
+    }
+
+    /**
+     * @return the mailbox capacity from the {@literal@}Mailbox annotation, or zero for the default.
+     */
+    public int getMailboxCapacity()
+    {
+        return 0;
+    }
+
+    /**
+     * @return true if the {@literal@}Mailbox annotation allows dropping the oldest one-way messages.
+     */
+    public boolean isDropOldestOneWay()
+    {
+        return false;
+    }
 }
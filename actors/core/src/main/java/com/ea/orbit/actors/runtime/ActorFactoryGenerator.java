@@ -1,6 +1,13 @@
 package com.ea.orbit.actors.runtime;
 
+import com.ea.orbit.actors.annotation.AlwaysInterleave;
+import com.ea.orbit.actors.annotation.Cacheable;
+import com.ea.orbit.actors.annotation.HighPriority;
+import com.ea.orbit.actors.annotation.Idempotent;
+import com.ea.orbit.actors.annotation.Mailbox;
 import com.ea.orbit.actors.annotation.OneWay;
+import com.ea.orbit.actors.annotation.ReadOnly;
+import com.ea.orbit.actors.annotation.Reentrant;
 import com.ea.orbit.concurrent.Task;
 import com.ea.orbit.exception.UncheckedException;
 
@@ -8,6 +15,10 @@ import javassist.*;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -34,6 +45,14 @@ public class ActorFactoryGenerator
         private Class<T> interfaceClass;
         private ActorInvoker<T> invoker;
         private Constructor<T> referenceConstructor;
+        private boolean reentrant;
+        private Set<Integer> readOnlyMethods;
+        private Set<Integer> alwaysInterleaveMethods;
+        private Set<Integer> highPriorityMethods;
+        private Set<Integer> idempotentMethods;
+        private Map<Integer, Long> cacheTtls;
+        private int mailboxCapacity;
+        private boolean dropOldestOneWay;
 
         @Override
         public Class<T> getInterface()
@@ -65,6 +84,54 @@ public class ActorFactoryGenerator
                 throw new UncheckedException(e);
             }
         }
+
+        @Override
+        public boolean isReentrant()
+        {
+            return reentrant;
+        }
+
+        @Override
+        public boolean isReadOnly(final int methodId)
+        {
+            return readOnlyMethods.contains(methodId);
+        }
+
+        @Override
+        public boolean isAlwaysInterleave(final int methodId)
+        {
+            return alwaysInterleaveMethods.contains(methodId);
+        }
+
+        @Override
+        public boolean isHighPriority(final int methodId)
+        {
+            return highPriorityMethods.contains(methodId);
+        }
+
+        @Override
+        public boolean isIdempotent(final int methodId)
+        {
+            return idempotentMethods.contains(methodId);
+        }
+
+        @Override
+        public long getCacheTtlMillis(final int methodId)
+        {
+            return cacheTtls.getOrDefault(methodId, 0L);
+        }
+
+        @Override
+        public int getMailboxCapacity()
+        {
+            return mailboxCapacity;
+        }
+
+        @Override
+        public boolean isDropOldestOneWay()
+        {
+            return dropOldestOneWay;
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -85,6 +152,13 @@ public class ActorFactoryGenerator
         final String factoryFullName = packageName + "." + factoryName;
         final String referenceFullName = factoryFullName + "$" + referenceName;
 
+        // factories generated at compile time by the ActorFactoryProcessor
+        final ActorFactory<T> generated = lookupFactory(aInterface, factoryFullName);
+        if (generated != null)
+        {
+            return generated;
+        }
+
         try
         {
             final Class<T> referenceClass = makeReferenceClass(aInterface, interfaceFullName, interfaceId, referenceFullName);
@@ -95,6 +169,46 @@ public class ActorFactoryGenerator
             dyn.interfaceClass = aInterface;
             dyn.referenceConstructor = referenceClass.getConstructor(String.class);
             dyn.invoker = invokerClass.newInstance();
+            dyn.reentrant = aInterface.isAnnotationPresent(Reentrant.class);
+            dyn.readOnlyMethods = new HashSet<>();
+            dyn.alwaysInterleaveMethods = new HashSet<>();
+            dyn.highPriorityMethods = new HashSet<>();
+            dyn.idempotentMethods = new HashSet<>();
+            dyn.cacheTtls = new HashMap<>();
+            final Mailbox mailbox = aInterface.getAnnotation(Mailbox.class);
+            if (mailbox != null)
+            {
+                dyn.mailboxCapacity = mailbox.capacity();
+                dyn.dropOldestOneWay = mailbox.dropOldestOneWay();
+            }
+            for (final CtMethod m : classPool.get(aInterface.getName()).getMethods())
+            {
+                if (!m.getDeclaringClass().isInterface() || !m.getReturnType().getName().equals(Task.class.getName()))
+                {
+                    continue;
+                }
+                if (m.hasAnnotation(ReadOnly.class))
+                {
+                    dyn.readOnlyMethods.add(methodId(m));
+                }
+                if (m.hasAnnotation(AlwaysInterleave.class))
+                {
+                    dyn.alwaysInterleaveMethods.add(methodId(m));
+                }
+                if (m.hasAnnotation(HighPriority.class))
+                {
+                    dyn.highPriorityMethods.add(methodId(m));
+                }
+                if (m.hasAnnotation(Idempotent.class))
+                {
+                    dyn.idempotentMethods.add(methodId(m));
+                }
+                if (m.hasAnnotation(Cacheable.class))
+                {
+                    final Cacheable cacheable = (Cacheable) m.getAnnotation(Cacheable.class);
+                    dyn.cacheTtls.put(methodId(m), cacheable.ttlUnit().toMillis(cacheable.ttl()));
+                }
+            }
             return dyn;
         }
         catch (final Exception e)
@@ -229,6 +343,35 @@ public class ActorFactoryGenerator
         }
     }
 
+    private static int methodId(final CtMethod m) throws NotFoundException
+    {
+        final String methodSignature = m.getName() + "(" + Stream.of(m.getParameterTypes()).map(p -> p.getName()).collect(Collectors.joining(",")) + ")";
+        return methodSignature.hashCode();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> ActorFactory<T> lookupFactory(final Class<T> aInterface, final String factoryFullName)
+    {
+        try
+        {
+            final Class<?> clazz = Class.forName(factoryFullName, true, aInterface.getClassLoader());
+            if (ActorFactory.class.isAssignableFrom(clazz))
+            {
+                final ActorFactory<T> factory = (ActorFactory<T>) clazz.newInstance();
+                // the name could belong to another interface with the same base name, ex: IHello and Hello
+                if (factory.getInterface() == aInterface)
+                {
+                    return factory;
+                }
+            }
+        }
+        catch (final Exception ex)
+        {
+            // ignore;
+        }
+        return null;
+    }
+
     private Class lookup(String className)
     {
         try
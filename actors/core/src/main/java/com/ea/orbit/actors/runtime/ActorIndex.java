@@ -0,0 +1,452 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.exception.UncheckedException;
+import com.ea.orbit.util.ClassPath;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Maps actor interfaces to their implementation classes.
+ * <p>
+ * The index is either read from the {@value #INDEX_RESOURCE} resources written at compile time
+ * by the {@link com.ea.orbit.actors.processor.ActorFactoryProcessor},
+ * or built by scanning the headers of the classes of the class path.
+ * </p>
+ * <p>
+ * Only the interfaces an implementation declares (itself or through its super classes) are indexed.
+ * So a class implementing {@code IHello2 extends IHello1} is not considered an implementation of {@code IHello1},
+ * the same rule applied by {@link ClassPathSearch}.
+ * </p>
+ */
+public class ActorIndex
+{
+    /**
+     * Resource with one {@code interfaceName=implementationName} line per actor implementation, using binary names.
+     */
+    public static final String INDEX_RESOURCE = "META-INF/orbit/actors/index";
+
+    private static final Logger logger = LoggerFactory.getLogger(ActorIndex.class);
+    private static final String CACHE_VERSION = "1";
+
+    // interface name -> implementation names
+    private final Map<String, Set<String>> implementations = new HashMap<>();
+    private final ConcurrentHashMap<Class<?>, Class<?>> resolved = new ConcurrentHashMap<>();
+
+    private ActorIndex()
+    {
+    }
+
+    /**
+     * Reads all the compile time indexes visible to the class loader.
+     */
+    public static ActorIndex load(ClassLoader classLoader)
+    {
+        final ActorIndex index = new ActorIndex();
+        try
+        {
+            final Enumeration<URL> resources = classLoader.getResources(INDEX_RESOURCE);
+            while (resources.hasMoreElements())
+            {
+                final URL url = resources.nextElement();
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8)))
+                {
+                    reader.lines().forEach(index::addLine);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedException("Error reading " + INDEX_RESOURCE, e);
+        }
+        return index;
+    }
+
+    /**
+     * Builds the index by reading the class headers of every directory and jar of the class path, in parallel.
+     * <p>
+     * The implementations in jars that contain a compile time index are skipped, they are found by {@link #load(ClassLoader)},
+     * but the headers of those jars are still read to resolve the interfaces and super classes the other jars extend.
+     * When a cache directory is given, the class headers of each jar are stored there
+     * under the jar's SHA-1, so unchanged jars aren't read again on the next start.
+     * </p>
+     *
+     * @param classPath the class path to scan
+     * @param cacheDir  the cache directory or null to disable the cache
+     */
+    public static ActorIndex scan(ClassPath classPath, Path cacheDir)
+    {
+        final long start = System.nanoTime();
+        final Map<String, ClassHeader> headers = classPath.getEntries().parallelStream()
+                .flatMap(entry -> readHeaders(entry, cacheDir).stream())
+                .collect(Collectors.toMap(h -> h.name, h -> h, (a, b) -> a));
+
+        final ActorIndex index = new ActorIndex();
+        final Map<String, Boolean> actorInterfaces = new HashMap<>();
+        actorInterfaces.put(IActor.class.getName().replace('.', '/'), true);
+        final String referenceName = ActorReference.class.getName().replace('.', '/');
+        for (ClassHeader header : headers.values())
+        {
+            if (header.indexed || (header.access & (Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT)) != 0
+                    || isSubclass(header, referenceName, headers))
+            {
+                continue;
+            }
+            for (ClassHeader c = header; c != null; c = c.superName != null ? headers.get(c.superName) : null)
+            {
+                for (String i : c.interfaces)
+                {
+                    if (isActorInterface(i, headers, actorInterfaces))
+                    {
+                        index.add(i.replace('/', '.'), header.name.replace('/', '.'));
+                    }
+                }
+            }
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Scanned " + headers.size() + " classes in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        }
+        return index;
+    }
+
+    /**
+     * Finds the implementation of an actor interface.
+     * When there is more than one the one with the closest name to the interface is chosen.
+     *
+     * @return the implementation class or null if it isn't in the index
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Class<? extends T> findImplementation(Class<T> theInterface)
+    {
+        Class<?> implementation = resolved.get(theInterface);
+        if (implementation != null)
+        {
+            return (Class<? extends T>) implementation;
+        }
+        final Set<String> names = implementations.get(theInterface.getName());
+        if (names == null)
+        {
+            return null;
+        }
+        final String expectedName = theInterface.getName();
+        implementation = names.stream()
+                .sorted(Comparator.comparingInt((String n) ->
+                        -(ClassPathSearch.commonStart(expectedName, n) + ClassPathSearch.commonEnd(expectedName, n)))
+                        .thenComparingInt(String::length))
+                .map(n -> loadImplementation(theInterface, n))
+                .filter(c -> c != null)
+                .findFirst()
+                .orElse(null);
+        if (implementation != null)
+        {
+            resolved.put(theInterface, implementation);
+        }
+        return (Class<? extends T>) implementation;
+    }
+
+    /**
+     * @return the names of the indexed actor interfaces
+     */
+    public Set<String> getInterfaceNames()
+    {
+        return Collections.unmodifiableSet(implementations.keySet());
+    }
+
+    private static Class<?> loadImplementation(Class<?> theInterface, String name)
+    {
+        try
+        {
+            final Class<?> clazz = Class.forName(name, false, theInterface.getClassLoader());
+            // the index might be stale, ex: after incremental builds
+            if (theInterface.isAssignableFrom(clazz) && !clazz.isInterface() && !Modifier.isAbstract(clazz.getModifiers())
+                    && !ActorReference.class.isAssignableFrom(clazz))
+            {
+                return clazz;
+            }
+        }
+        catch (ClassNotFoundException | LinkageError e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Ignoring indexed actor class: " + name, e);
+            }
+        }
+        return null;
+    }
+
+    private void addLine(String line)
+    {
+        final int idx = line.indexOf('=');
+        if (idx > 0)
+        {
+            add(line.substring(0, idx).trim(), line.substring(idx + 1).trim());
+        }
+    }
+
+    private void add(String interfaceName, String implementationName)
+    {
+        implementations.computeIfAbsent(interfaceName, k -> new LinkedHashSet<>()).add(implementationName);
+    }
+
+    private static boolean isSubclass(ClassHeader header, String superName, Map<String, ClassHeader> headers)
+    {
+        for (ClassHeader c = header; c != null && c.superName != null; c = headers.get(c.superName))
+        {
+            if (c.superName.equals(superName))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isActorInterface(String name, Map<String, ClassHeader> headers, Map<String, Boolean> known)
+    {
+        final Boolean isActor = known.get(name);
+        if (isActor != null)
+        {
+            return isActor;
+        }
+        // breaks cycles in malformed class paths
+        known.put(name, false);
+        final ClassHeader header = headers.get(name);
+        boolean result = false;
+        if (header != null && (header.access & Opcodes.ACC_INTERFACE) != 0)
+        {
+            for (String i : header.interfaces)
+            {
+                if (isActorInterface(i, headers, known))
+                {
+                    result = true;
+                    break;
+                }
+            }
+        }
+        known.put(name, result);
+        return result;
+    }
+
+    private static class ClassHeader
+    {
+        final String name;
+        final int access;
+        final String superName;
+        final String[] interfaces;
+        // from a jar with a compile time index
+        boolean indexed;
+
+        ClassHeader(final String name, final int access, final String superName, final String[] interfaces)
+        {
+            this.name = name;
+            this.access = access;
+            this.superName = superName;
+            this.interfaces = interfaces != null ? interfaces : new String[0];
+        }
+
+        static ClassHeader read(InputStream in) throws IOException
+        {
+            final ClassHeader[] header = new ClassHeader[1];
+            new ClassReader(in).accept(new ClassVisitor(Opcodes.ASM5)
+            {
+                @Override
+                public void visit(int version, int access, String name, String signature, String superName, String[] interfaces)
+                {
+                    header[0] = new ClassHeader(name, access, superName, interfaces);
+                }
+            }, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+            return header[0];
+        }
+
+        static ClassHeader parse(String line)
+        {
+            final String[] parts = line.split(" ", -1);
+            return new ClassHeader(parts[1], Integer.parseInt(parts[0]), parts[2].isEmpty() ? null : parts[2],
+                    parts[3].isEmpty() ? null : parts[3].split(","));
+        }
+
+        String format()
+        {
+            return access + " " + name + " " + (superName != null ? superName : "") + " " + String.join(",", interfaces);
+        }
+    }
+
+    private static List<ClassHeader> readHeaders(Path entry, Path cacheDir)
+    {
+        try
+        {
+            if (Files.isDirectory(entry))
+            {
+                try (Stream<Path> files = Files.walk(entry))
+                {
+                    return files.filter(f -> f.toString().endsWith(".class"))
+                            .map(ActorIndex::readHeader)
+                            .filter(h -> h != null)
+                            .collect(Collectors.toList());
+                }
+            }
+            try (JarFile jar = new JarFile(entry.toFile()))
+            {
+                final List<ClassHeader> headers = readHeaders(jar, entry, cacheDir);
+                if (jar.getEntry(INDEX_RESOURCE) != null)
+                {
+                    headers.forEach(h -> h.indexed = true);
+                }
+                return headers;
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Ignoring class path entry: " + entry, e);
+            }
+            return Collections.emptyList();
+        }
+    }
+
+    private static List<ClassHeader> readHeaders(JarFile jar, Path entry, Path cacheDir) throws IOException
+    {
+        final Path cacheFile = cacheDir != null ? cacheDir.resolve(sha1(entry) + ".v" + CACHE_VERSION) : null;
+        if (cacheFile != null && Files.exists(cacheFile))
+        {
+            return Files.readAllLines(cacheFile, StandardCharsets.UTF_8).stream()
+                    .map(ClassHeader::parse)
+                    .collect(Collectors.toList());
+        }
+        final List<ClassHeader> headers = new ArrayList<>();
+        for (JarEntry jarEntry : Collections.list(jar.entries()))
+        {
+            if (jarEntry.getName().endsWith(".class"))
+            {
+                try (InputStream in = jar.getInputStream(jarEntry))
+                {
+                    headers.add(ClassHeader.read(in));
+                }
+                catch (RuntimeException ex)
+                {
+                    // unsupported class file
+                }
+            }
+        }
+        if (cacheFile != null)
+        {
+            writeCache(cacheFile, headers);
+        }
+        return headers;
+    }
+
+    private static ClassHeader readHeader(Path classFile)
+    {
+        try (InputStream in = Files.newInputStream(classFile))
+        {
+            return ClassHeader.read(in);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            return null;
+        }
+    }
+
+    private static void writeCache(Path cacheFile, List<ClassHeader> headers) throws IOException
+    {
+        Files.createDirectories(cacheFile.getParent());
+        // written to a temporary file first, other processes might be reading the cache.
+        final Path temp = Files.createTempFile(cacheFile.getParent(), "index", ".tmp");
+        try
+        {
+            Files.write(temp, headers.stream().map(ClassHeader::format).collect(Collectors.toList()), StandardCharsets.UTF_8);
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static String sha1(Path file) throws IOException
+    {
+        try
+        {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest))
+            {
+                final byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1)
+                {
+                    // just digesting
+                }
+            }
+            final StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest())
+            {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new UncheckedException(e);
+        }
+    }
+}
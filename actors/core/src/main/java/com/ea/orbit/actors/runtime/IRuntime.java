@@ -121,4 +121,27 @@ public interface IRuntime
 
     long getCurrentTraceId();
 
+    /**
+     * Checks if the mailbox of the referenced actor is close to full.
+     * <p>Callers may use this to slow down or drop non essential messages.</p>
+     *
+     * @param reference an actor reference
+     * @return true if the actor recently signaled backpressure
+     */
+    default boolean isBackpressured(IAddressable reference)
+    {
+        return false;
+    }
+
+    /**
+     * Drops the responses of the {@literal@}Cacheable methods of an actor cached by all the nodes.
+     *
+     * @param reference the actor whose responses changed
+     * @return completion promise for this operation
+     */
+    default Task<?> invalidateCachedResponses(IAddressable reference)
+    {
+        return Task.done();
+    }
+
 }
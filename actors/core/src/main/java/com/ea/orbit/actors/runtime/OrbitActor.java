@@ -135,6 +135,17 @@ public class OrbitActor<T>
         return stateProvider.clearState(reference, state);
     }
 
+    /**
+     * Drops the responses of this actor's {@literal@}Cacheable methods from the caches of all the nodes.
+     * Should be called when a change makes the cached responses stale.
+     *
+     * @return a completion promise
+     */
+    protected Task<?> invalidateCachedResponses()
+    {
+        return reference.runtime.invalidateCachedResponses(reference);
+    }
+
     /**
      * Registers a timer for the current actor. The timer disappears on deactivation.
      * The timer calls do not keep the actor active.
@@ -68,24 +68,11 @@ public class ReferenceFactory implements IReferenceFactory
         ActorFactory<T> factory = (ActorFactory<T>) factories.get(iClass);
         if (factory == null)
         {
-            try
+            if (dynamicReferenceFactory == null)
             {
-                String factoryClazz = iClass.getSimpleName() + "Factory";
-                if (factoryClazz.charAt(0) == 'I')
-                {
-                    factoryClazz = factoryClazz.substring(1); // remove leading 'I'
-                }
-                factory = (ActorFactory<T>) Class.forName(iClass.getPackage().getName() + "." + factoryClazz).newInstance();
+                dynamicReferenceFactory = new ActorFactoryGenerator();
             }
-            catch (Exception e)
-            {
-                if (dynamicReferenceFactory == null)
-                {
-                    dynamicReferenceFactory = new ActorFactoryGenerator();
-                }
-                factory = dynamicReferenceFactory.getFactoryFor(iClass);
-            }
-
+            factory = dynamicReferenceFactory.getFactoryFor(iClass);
             factories.put(iClass, factory);
         }
         return factory;
@@ -0,0 +1,163 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.util.ClassPath;
+import com.ea.orbit.util.IOUtils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ActorIndexTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public interface IIndexed1 extends IActor
+    {
+    }
+
+    public interface IIndexed2 extends IIndexed1
+    {
+    }
+
+    public interface INotIndexed extends IActor
+    {
+    }
+
+    public static class Indexed1 implements IIndexed1
+    {
+    }
+
+    public static class Indexed2 implements IIndexed2
+    {
+    }
+
+    public static abstract class AbstractIndexed implements INotIndexed
+    {
+    }
+
+    @Test
+    public void testScan() throws Exception
+    {
+        final File cacheDir = folder.newFolder();
+        final ActorIndex index = ActorIndex.scan(ClassPath.get(), cacheDir.toPath());
+        assertSame(Indexed1.class, index.findImplementation(IIndexed1.class));
+        assertSame(Indexed2.class, index.findImplementation(IIndexed2.class));
+        assertNull(index.findImplementation(INotIndexed.class));
+        // the jars of the class path were cached
+        assertNotEquals(0, cacheDir.list().length);
+
+        final ActorIndex cached = ActorIndex.scan(ClassPath.get(), cacheDir.toPath());
+        assertSame(Indexed1.class, cached.findImplementation(IIndexed1.class));
+    }
+
+    @Test
+    public void testScanWithIndexedJar() throws Exception
+    {
+        // the interfaces are in a jar with a compile time index, the implementation in a jar without one
+        final File indexedJar = writeJar(Arrays.asList(IIndexed1.class, IIndexed2.class, Indexed1.class),
+                IIndexed1.class.getName() + "=" + Indexed1.class.getName());
+        final File plainJar = writeJar(Arrays.asList(Indexed2.class), null);
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{ indexedJar.toURI().toURL(), plainJar.toURI().toURL() }, null))
+        {
+            final ActorIndex index = ActorIndex.scan(ClassPath.from(loader), null);
+            assertSame(Indexed2.class, index.findImplementation(IIndexed2.class));
+            // left to the compile time index
+            assertNull(index.findImplementation(IIndexed1.class));
+        }
+    }
+
+    private File writeJar(List<Class<?>> classes, String indexLine) throws IOException
+    {
+        final File file = folder.newFile();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file)))
+        {
+            for (Class<?> clazz : classes)
+            {
+                final String name = clazz.getName().replace('.', '/') + ".class";
+                out.putNextEntry(new JarEntry(name));
+                try (InputStream in = clazz.getClassLoader().getResourceAsStream(name))
+                {
+                    out.write(IOUtils.toByteArray(in));
+                }
+                out.closeEntry();
+            }
+            if (indexLine != null)
+            {
+                out.putNextEntry(new JarEntry(ActorIndex.INDEX_RESOURCE));
+                out.write((indexLine + "\n").getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void testLoad() throws Exception
+    {
+        final File root = folder.newFolder();
+        final File indexFile = new File(root, ActorIndex.INDEX_RESOURCE);
+        indexFile.getParentFile().mkdirs();
+        Files.write(indexFile.toPath(), Arrays.asList(
+                // stale entries are ignored
+                IIndexed1.class.getName() + "=com.example.Missing",
+                IIndexed1.class.getName() + "=" + Indexed2.class.getName(),
+                INotIndexed.class.getName() + "=" + Indexed1.class.getName(),
+                INotIndexed.class.getName() + "=" + AbstractIndexed.class.getName()), StandardCharsets.UTF_8);
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{ root.toURI().toURL() }, getClass().getClassLoader()))
+        {
+            final ActorIndex index = ActorIndex.load(loader);
+            assertSame(Indexed2.class, index.findImplementation(IIndexed1.class));
+            assertNull(index.findImplementation(INotIndexed.class));
+            assertNull(index.findImplementation(IIndexed2.class));
+        }
+    }
+}
@@ -30,17 +30,26 @@ package com.ea.orbit.actors;
 
 
 import com.ea.orbit.actors.cluster.ClusterPeer;
+import com.ea.orbit.actors.cluster.GatewayClientPeer;
+import com.ea.orbit.actors.cluster.GatewayClusterPeer;
 import com.ea.orbit.actors.cluster.IClusterPeer;
+import com.ea.orbit.actors.cluster.INodeAddress;
+import com.ea.orbit.actors.cluster.TcpClusterPeer;
 import com.ea.orbit.actors.providers.ILifetimeProvider;
 import com.ea.orbit.actors.providers.IOrbitProvider;
+import com.ea.orbit.actors.runtime.CachingStorageProvider;
 import com.ea.orbit.actors.runtime.Execution;
 import com.ea.orbit.actors.runtime.Hosting;
 import com.ea.orbit.actors.runtime.IHosting;
 import com.ea.orbit.actors.runtime.IReminderController;
+import com.ea.orbit.actors.runtime.MessageCompression;
 import com.ea.orbit.actors.runtime.Messaging;
 import com.ea.orbit.actors.runtime.OrbitActor;
+import com.ea.orbit.actors.runtime.Rebalancer;
+import com.ea.orbit.actors.runtime.ResponseCache;
 import com.ea.orbit.annotation.Config;
 import com.ea.orbit.annotation.Wired;
+import com.ea.orbit.concurrent.ExecutorUtils;
 import com.ea.orbit.concurrent.Task;
 import com.ea.orbit.container.OrbitContainer;
 import com.ea.orbit.container.Startable;
@@ -50,10 +59,14 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Singleton;
 
+import java.nio.file.Paths;
 import java.time.Clock;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 @Singleton
 public class OrbitStage implements Startable
@@ -72,6 +85,111 @@ public class OrbitStage implements Startable
     @Config("orbit.actors.providers")
     private List<IOrbitProvider> providers = new ArrayList<>();
 
+    @Config("orbit.actors.localShortCircuit")
+    private boolean localShortCircuit = true;
+
+    @Config("orbit.actors.localCallCopyMode")
+    private Messaging.LocalCallCopyMode localCallCopyMode = Messaging.LocalCallCopyMode.IMMUTABLE_AWARE;
+
+    // messages and responses above the threshold are compressed if the receiving node supports the codec
+    @Config("orbit.actors.messageCompression")
+    private MessageCompression.Codec messageCompression = MessageCompression.Codec.DEFLATE;
+
+    @Config("orbit.actors.messageCompressionThreshold")
+    private int messageCompressionThreshold = 16 * 1024;
+
+    // thread pool sizes, zero means the default scaling pool
+    @Config("orbit.actors.executionPoolSize")
+    private int executionPoolSize;
+
+    @Config("orbit.actors.messagingPoolSize")
+    private int messagingPoolSize;
+
+    // zero means storage calls run in the execution pool
+    @Config("orbit.actors.storagePoolSize")
+    private int storagePoolSize;
+
+    // runs the storage calls in virtual threads, when available
+    @Config("orbit.actors.storageVirtualThreads")
+    private boolean storageVirtualThreads;
+
+    @Config("orbit.actors.timerPoolSize")
+    private int timerPoolSize = 1;
+
+    // maximum number of tasks queued in each fixed size pool
+    @Config("orbit.actors.poolQueueCapacity")
+    private int poolQueueCapacity = 100_000;
+
+    // default mailbox capacity of each actor activation, overridden by @Mailbox
+    @Config("orbit.actors.maxQueueSize")
+    private int maxQueueSize = 10000;
+
+    // periodically migrates activations from the busiest server nodes to the idle ones
+    @Config("orbit.actors.rebalance")
+    private boolean rebalance = false;
+
+    @Config("orbit.actors.rebalanceIntervalMillis")
+    private long rebalanceIntervalMillis = 30_000;
+
+    // delay of the extra rebalancing round after nodes join the cluster
+    @Config("orbit.actors.rebalanceOnJoinDelayMillis")
+    private long rebalanceOnJoinDelayMillis = 5_000;
+
+    // limits the migrations started by each node in each rebalancing round
+    @Config("orbit.actors.maxMigrationsPerRound")
+    private int maxMigrationsPerRound = 50;
+
+    // keeps the states of recently deactivated actors in memory, 0 disables it
+    @Config("orbit.actors.stateCacheMaxBytes")
+    private long stateCacheMaxBytes = 0;
+
+    @Config("orbit.actors.stateCacheTtlMillis")
+    private long stateCacheTtlMillis = 600_000;
+
+    // responses of the @Cacheable methods kept by this node, 0 disables the cache
+    @Config("orbit.actors.responseCacheMaxEntries")
+    private long responseCacheMaxEntries = 10_000;
+
+    // deactivates and hands off the local actors before leaving the cluster
+    @Config("orbit.actors.drainOnStop")
+    private boolean drainOnStop = false;
+
+    // parallel deactivations, and storage writes, while draining
+    @Config("orbit.actors.drainConcurrency")
+    private int drainConcurrency = 16;
+
+    // activates the drained actors in the remaining nodes instead of waiting for their next message
+    @Config("orbit.actors.drainPrewarm")
+    private boolean drainPrewarm = false;
+
+    // times a call to an @Idempotent method is sent again when the target node leaves the cluster
+    @Config("orbit.actors.idempotentRetries")
+    private int idempotentRetries = 2;
+
+    // directory where the class path scan caches the actor classes found in each jar
+    @Config("orbit.actors.classIndexCache")
+    private String classIndexCache;
+
+    // creates the factories of all the indexed actors before the stage is ready
+    @Config("orbit.actors.prewarmFactories")
+    private boolean prewarmFactories = false;
+
+    // sends the actor messages over direct tcp connections, jgroups is only used for the membership
+    @Config("orbit.actors.tcpTransport")
+    private boolean tcpTransport = false;
+
+    // relays the messages of the gateway clients, must be the same in all the members of the cluster
+    @Config("orbit.actors.gatewayEnabled")
+    private boolean gatewayEnabled = false;
+
+    // port where this member accepts gateway clients, 0 for an ephemeral port, -1 to not accept them
+    @Config("orbit.actors.gatewayPort")
+    private int gatewayPort = -1;
+
+    // front-end stages with gateways, as host:port, connect to one of them instead of joining the cluster
+    @Config("orbit.actors.gateways")
+    private List<String> gateways = new ArrayList<>();
+
     @Wired
     OrbitContainer orbitContainer;
 
@@ -81,15 +199,29 @@ public class OrbitStage implements Startable
         HOST // allows activations
     }
 
+    public enum StartupPhase
+    {
+        CREATED,
+        STARTING, // providers starting and joining the cluster in parallel
+        JOINED, // member of the cluster, messages wait for the providers
+        READY // providers started, factories warmed up
+    }
+
     private IClusterPeer clusterPeer;
     private Task<?> startFuture;
     private Messaging messaging;
+
+    private Rebalancer rebalancer;
     private Execution execution;
     private Hosting hosting;
     private boolean startCalled;
+    private volatile StartupPhase startupPhase = StartupPhase.CREATED;
     private Clock clock;
     private ExecutorService executionPool;
     private ExecutorService messagingPool;
+    private ExecutorService storagePool;
+    // pools created by this stage, shut down when it stops
+    private final List<ExecutorService> ownedPools = new ArrayList<>();
 
     static
     {
@@ -139,6 +271,331 @@ public class OrbitStage implements Startable
         return messagingPool;
     }
 
+    public void setStoragePool(final ExecutorService storagePool)
+    {
+        this.storagePool = storagePool;
+    }
+
+    /**
+     * @return the pool running the storage provider calls, or null if they run in the execution pool.
+     */
+    public ExecutorService getStoragePool()
+    {
+        return storagePool;
+    }
+
+    public void setExecutionPoolSize(final int executionPoolSize)
+    {
+        this.executionPoolSize = executionPoolSize;
+    }
+
+    public void setMessagingPoolSize(final int messagingPoolSize)
+    {
+        this.messagingPoolSize = messagingPoolSize;
+    }
+
+    public void setStoragePoolSize(final int storagePoolSize)
+    {
+        this.storagePoolSize = storagePoolSize;
+    }
+
+    public void setStorageVirtualThreads(final boolean storageVirtualThreads)
+    {
+        this.storageVirtualThreads = storageVirtualThreads;
+    }
+
+    public void setTimerPoolSize(final int timerPoolSize)
+    {
+        this.timerPoolSize = timerPoolSize;
+    }
+
+    public void setPoolQueueCapacity(final int poolQueueCapacity)
+    {
+        this.poolQueueCapacity = poolQueueCapacity;
+    }
+
+    public int getMaxQueueSize()
+    {
+        return maxQueueSize;
+    }
+
+    public void setMaxQueueSize(final int maxQueueSize)
+    {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public boolean isRebalance()
+    {
+        return rebalance;
+    }
+
+    /**
+     * Enables the periodic migration of activations from the busiest server nodes to the idle ones.
+     */
+    public void setRebalance(final boolean rebalance)
+    {
+        this.rebalance = rebalance;
+    }
+
+    public long getRebalanceIntervalMillis()
+    {
+        return rebalanceIntervalMillis;
+    }
+
+    public void setRebalanceIntervalMillis(final long rebalanceIntervalMillis)
+    {
+        this.rebalanceIntervalMillis = rebalanceIntervalMillis;
+    }
+
+    public long getRebalanceOnJoinDelayMillis()
+    {
+        return rebalanceOnJoinDelayMillis;
+    }
+
+    public void setRebalanceOnJoinDelayMillis(final long rebalanceOnJoinDelayMillis)
+    {
+        this.rebalanceOnJoinDelayMillis = rebalanceOnJoinDelayMillis;
+    }
+
+    public int getMaxMigrationsPerRound()
+    {
+        return maxMigrationsPerRound;
+    }
+
+    public void setMaxMigrationsPerRound(final int maxMigrationsPerRound)
+    {
+        this.maxMigrationsPerRound = maxMigrationsPerRound;
+    }
+
+    public long getStateCacheMaxBytes()
+    {
+        return stateCacheMaxBytes;
+    }
+
+    public void setStateCacheMaxBytes(final long stateCacheMaxBytes)
+    {
+        this.stateCacheMaxBytes = stateCacheMaxBytes;
+    }
+
+    public long getStateCacheTtlMillis()
+    {
+        return stateCacheTtlMillis;
+    }
+
+    public void setStateCacheTtlMillis(final long stateCacheTtlMillis)
+    {
+        this.stateCacheTtlMillis = stateCacheTtlMillis;
+    }
+
+    public long getResponseCacheMaxEntries()
+    {
+        return responseCacheMaxEntries;
+    }
+
+    public void setResponseCacheMaxEntries(final long responseCacheMaxEntries)
+    {
+        this.responseCacheMaxEntries = responseCacheMaxEntries;
+    }
+
+    public boolean isDrainOnStop()
+    {
+        return drainOnStop;
+    }
+
+    public void setDrainOnStop(final boolean drainOnStop)
+    {
+        this.drainOnStop = drainOnStop;
+    }
+
+    public int getDrainConcurrency()
+    {
+        return drainConcurrency;
+    }
+
+    public void setDrainConcurrency(final int drainConcurrency)
+    {
+        this.drainConcurrency = drainConcurrency;
+    }
+
+    public boolean isDrainPrewarm()
+    {
+        return drainPrewarm;
+    }
+
+    public void setDrainPrewarm(final boolean drainPrewarm)
+    {
+        this.drainPrewarm = drainPrewarm;
+    }
+
+    public int getIdempotentRetries()
+    {
+        return idempotentRetries;
+    }
+
+    /**
+     * @param idempotentRetries how many times calls to {@literal@}Idempotent methods are retried
+     *                          when the node hosting the actor leaves the cluster, zero disables the retries.
+     */
+    public void setIdempotentRetries(final int idempotentRetries)
+    {
+        this.idempotentRetries = idempotentRetries;
+    }
+
+    public boolean isPrewarmFactories()
+    {
+        return prewarmFactories;
+    }
+
+    public void setPrewarmFactories(final boolean prewarmFactories)
+    {
+        this.prewarmFactories = prewarmFactories;
+    }
+
+    public boolean isTcpTransport()
+    {
+        return tcpTransport;
+    }
+
+    public void setTcpTransport(final boolean tcpTransport)
+    {
+        this.tcpTransport = tcpTransport;
+    }
+
+    public boolean isGatewayEnabled()
+    {
+        return gatewayEnabled;
+    }
+
+    /**
+     * Enables relaying the messages of the gateway clients, must be set in all the members of the cluster.
+     */
+    public void setGatewayEnabled(final boolean gatewayEnabled)
+    {
+        this.gatewayEnabled = gatewayEnabled;
+    }
+
+    public int getGatewayPort()
+    {
+        return gatewayPort;
+    }
+
+    /**
+     * Sets the port where this member accepts gateway clients, 0 for an ephemeral port or -1 to not accept them.
+     */
+    public void setGatewayPort(final int gatewayPort)
+    {
+        this.gatewayPort = gatewayPort;
+    }
+
+    public List<String> getGateways()
+    {
+        return gateways;
+    }
+
+    /**
+     * Sets the gateway hosts, as host:port, a front-end stage with gateways connects to one of them
+     * instead of joining the cluster membership.
+     */
+    public void setGateways(final List<String> gateways)
+    {
+        this.gateways = gateways;
+    }
+
+    public StartupPhase getStartupPhase()
+    {
+        return startupPhase;
+    }
+
+    public String getClassIndexCache()
+    {
+        return classIndexCache;
+    }
+
+    public void setClassIndexCache(final String classIndexCache)
+    {
+        this.classIndexCache = classIndexCache;
+    }
+
+    public boolean isLocalShortCircuit()
+    {
+        return localShortCircuit;
+    }
+
+    /**
+     * Enables calls to actors activated in this node to skip the serialization and the cluster peer.
+     *
+     * @param localShortCircuit true (default) to deliver local messages directly to the execution
+     */
+    public void setLocalShortCircuit(final boolean localShortCircuit)
+    {
+        this.localShortCircuit = localShortCircuit;
+    }
+
+    public MessageCompression.Codec getMessageCompression()
+    {
+        return messageCompression;
+    }
+
+    /**
+     * Sets the codec used to compress large messages, {@code NONE} disables the compression.
+     */
+    public void setMessageCompression(final MessageCompression.Codec messageCompression)
+    {
+        this.messageCompression = messageCompression;
+    }
+
+    public int getMessageCompressionThreshold()
+    {
+        return messageCompressionThreshold;
+    }
+
+    /**
+     * @param messageCompressionThreshold the serialized size in bytes above which messages are compressed
+     */
+    public void setMessageCompressionThreshold(final int messageCompressionThreshold)
+    {
+        this.messageCompressionThreshold = messageCompressionThreshold;
+    }
+
+    /**
+     * @return the compression counters of the messages and responses sent by this stage, by actor interface id.
+     */
+    public Map<Integer, MessageCompression.CompressionStats> getMessageCompressionStats()
+    {
+        return messaging.getCompressionStats();
+    }
+
+    /**
+     * @return the counters of the actor state cache, or null if it is disabled.
+     */
+    public CachingStorageProvider.StateCacheStats getStateCacheStats()
+    {
+        return execution.getStateCacheStats();
+    }
+
+    /**
+     * @return the counters of the response cache, or null if it is disabled.
+     */
+    public ResponseCache.ResponseCacheStats getResponseCacheStats()
+    {
+        return execution.getResponseCacheStats();
+    }
+
+    public Messaging.LocalCallCopyMode getLocalCallCopyMode()
+    {
+        return localCallCopyMode;
+    }
+
+    /**
+     * Defines how the parameters and results of local calls are copied to preserve the actor isolation.
+     *
+     * @param localCallCopyMode the copy mode, the default is {@code IMMUTABLE_AWARE}
+     */
+    public void setLocalCallCopyMode(final Messaging.LocalCallCopyMode localCallCopyMode)
+    {
+        this.localCallCopyMode = localCallCopyMode;
+    }
+
     public String runtimeIdentity()
     {
         if (execution == null)
@@ -210,7 +667,13 @@ public class OrbitStage implements Startable
         }
         if (clusterPeer == null)
         {
-            clusterPeer = new ClusterPeer();
+            clusterPeer = createClusterPeer();
+        }
+        if (gatewayEnabled && !(clusterPeer instanceof GatewayClientPeer) && !(clusterPeer instanceof GatewayClusterPeer))
+        {
+            final GatewayClusterPeer gatewayClusterPeer = new GatewayClusterPeer(clusterPeer);
+            gatewayClusterPeer.setPort(gatewayPort);
+            clusterPeer = gatewayClusterPeer;
         }
         if (clock == null)
         {
@@ -218,34 +681,68 @@ public class OrbitStage implements Startable
         }
 
         this.configureOrbitContainer();
+        this.configureThreadPools();
 
         hosting.setNodeType(mode == StageMode.HOST ? IHosting.NodeTypeEnum.SERVER : IHosting.NodeTypeEnum.CLIENT);
         execution.setClock(clock);
         execution.setHosting(hosting);
         execution.setMessaging(messaging);
         execution.setExecutor(executionPool);
+        execution.setStorageExecutor(storagePool);
+        execution.setStateCache(stateCacheMaxBytes, stateCacheTtlMillis);
+        execution.setResponseCacheMaxEntries(responseCacheMaxEntries);
+        execution.setMaxQueueSize(maxQueueSize);
+        execution.setIdempotentRetries(idempotentRetries);
+        execution.setClassIndexCache(classIndexCache != null ? Paths.get(classIndexCache) : null);
+        execution.setPrewarmFactories(prewarmFactories);
+        final ScheduledExecutorService timerPool = Executors.newScheduledThreadPool(Math.max(1, timerPoolSize), r -> new Thread(r, "Orbit stage timer"));
+        ownedPools.add(timerPool);
+        execution.setTimerExecutor(timerPool);
 
         messaging.setExecution(execution);
         messaging.setClock(clock);
         messaging.setExecutor(messagingPool);
+        messaging.setLocalShortCircuit(localShortCircuit);
+        messaging.setLocalCallCopyMode(localCallCopyMode);
+        messaging.setCompressionCodec(messageCompression);
+        messaging.setCompressionThreshold(messageCompressionThreshold);
 
         hosting.setExecution(execution);
+        hosting.setMessaging(messaging);
+        if (mode == StageMode.HOST)
+        {
+            rebalancer = new Rebalancer();
+            rebalancer.setExecution(execution);
+            rebalancer.setHosting(hosting);
+            rebalancer.setClusterPeer(clusterPeer);
+            rebalancer.setMaxMigrationsPerRound(maxMigrationsPerRound);
+            if (rebalance)
+            {
+                execution.setRebalancer(rebalancer, rebalanceIntervalMillis, rebalanceOnJoinDelayMillis);
+            }
+        }
         hosting.setClusterPeer(clusterPeer);
         messaging.setClusterPeer(clusterPeer);
 
         execution.setOrbitProviders(providers);
 
+        startupPhase = StartupPhase.STARTING;
         messaging.start();
         hosting.start();
-        execution.start();
-
-
-        Task<?> future = clusterPeer.join(clusterName, nodeName);
+        final Task<?> executionStarted = execution.start();
+
+        // joins the cluster while the providers are starting
+        final Task<?> joined = clusterPeer.join(clusterName, nodeName)
+                .thenRun(() -> {
+                    messaging.advertiseCodecs();
+                    startupPhase = StartupPhase.JOINED;
+                });
+        Task<?> future = Task.allOf(joined, executionStarted);
         if (mode == StageMode.HOST)
         {
             future = future.thenRun(() -> IActor.getReference(IReminderController.class, "0").ensureStart());
         }
-        startFuture = future;
+        startFuture = future.thenRun(() -> startupPhase = StartupPhase.READY);
 
         startFuture.join();
         bind();
@@ -253,6 +750,34 @@ public class OrbitStage implements Startable
         return startFuture;
     }
 
+    private void configureThreadPools()
+    {
+        // the pools set explicitly have precedence over the configured sizes
+        if (executionPool == null && executionPoolSize > 0)
+        {
+            executionPool = ExecutorUtils.newFixedThreadPool("orbit-execution", executionPoolSize, poolQueueCapacity);
+            ownedPools.add(executionPool);
+        }
+        if (messagingPool == null && messagingPoolSize > 0)
+        {
+            messagingPool = ExecutorUtils.newFixedThreadPool("orbit-messaging", messagingPoolSize, poolQueueCapacity);
+            ownedPools.add(messagingPool);
+        }
+        if (storagePool == null)
+        {
+            if (storageVirtualThreads)
+            {
+                storagePool = ExecutorUtils.newVirtualThreadExecutor("orbit-storage");
+                ownedPools.add(storagePool);
+            }
+            else if (storagePoolSize > 0)
+            {
+                storagePool = ExecutorUtils.newFixedThreadPool("orbit-storage", storagePoolSize, poolQueueCapacity);
+                ownedPools.add(storagePool);
+            }
+        }
+    }
+
     private void configureOrbitContainer()
     {
         // orbitContainer will be null if the application is not using it
@@ -295,8 +820,23 @@ public class OrbitStage implements Startable
 
     public Task<?> stop()
     {
-        return execution.stop()
-                .thenRun(clusterPeer::leave);
+        return (drainOnStop ? drain() : Task.done())
+                .thenCompose(() -> execution.stop())
+                .thenRun(clusterPeer::leave)
+                .thenCompose(() -> messaging.stop())
+                .thenRun(() -> ownedPools.forEach(ExecutorService::shutdown));
+    }
+
+    /**
+     * Prepares this node to leave the cluster: the node stops taking new activations,
+     * the local actors are deactivated after the messages already in their mailboxes and their states are written.
+     * The node keeps forwarding the messages that still arrive for them until it stops.
+     *
+     * @return the number of actors deactivated
+     */
+    public Task<Integer> drain()
+    {
+        return execution.drain(drainConcurrency, drainPrewarm);
     }
 
     public <T extends IActorObserver> T getObserverReference(Class<T> iClass, final T observer)
@@ -317,7 +857,16 @@ public class OrbitStage implements Startable
 
     public IClusterPeer getClusterPeer()
     {
-        return clusterPeer != null ? clusterPeer : (clusterPeer = new ClusterPeer());
+        return clusterPeer != null ? clusterPeer : (clusterPeer = createClusterPeer());
+    }
+
+    private IClusterPeer createClusterPeer()
+    {
+        if (mode == StageMode.FRONT_END && gateways != null && !gateways.isEmpty())
+        {
+            return new GatewayClientPeer(gateways);
+        }
+        return tcpTransport ? new TcpClusterPeer() : new ClusterPeer();
     }
 
     public void cleanup(boolean block)
@@ -326,6 +875,27 @@ public class OrbitStage implements Startable
         messaging.timeoutCleanup();
     }
 
+    /**
+     * Migrates the excess activations of this node to the less loaded nodes,
+     * independently of the periodic rebalancing being enabled.
+     *
+     * @return the number of actors migrated
+     */
+    public Task<Integer> rebalance()
+    {
+        return rebalancer != null ? rebalancer.rebalance() : Task.fromValue(0);
+    }
+
+    /**
+     * Moves an actor activated in this node to another node.
+     *
+     * @return true if the actor was moved
+     */
+    public Task<Boolean> migrateActor(final IActor actor, final INodeAddress target)
+    {
+        return execution.migrateActor((IAddressable) actor, target);
+    }
+
     /**
      * Binds this stage to the current thread.
      * This tells ungrounded references to use this stage to call remote methods.
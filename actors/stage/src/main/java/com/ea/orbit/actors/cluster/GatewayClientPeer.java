@@ -0,0 +1,355 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.cluster;
+
+import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.exception.UncheckedException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lightweight cluster peer for front-end nodes, it connects to one of the gateway hosts
+ * instead of joining the cluster membership.
+ * <p>
+ * All the messages of this node go through a single connection to the gateway, which relays them
+ * to their target nodes. The gateway sends the cluster view, so the calls are addressed to the nodes
+ * where the actors are, and the observers of this node can be called back by any node.
+ * If the gateway leaves this peer reconnects to another one.
+ * </p>
+ * <p>
+ * The distributed caches are not available to gateway clients, {@link #getCache(String)} returns local maps.
+ * The members of the cluster must use a {@link GatewayClusterPeer}.
+ * </p>
+ */
+public class GatewayClientPeer implements IClusterPeer
+{
+    private static final Logger logger = LoggerFactory.getLogger(GatewayClientPeer.class);
+
+    private final List<String> gateways;
+    private final INodeAddress localAddress = new NodeAddress(UUID.randomUUID());
+    private final Random random = new Random();
+    private int maxMessageSize = 64 * 1024 * 1024;
+    private int maxQueuedMessages = 10_000;
+    private int connectTimeoutMillis = 5000;
+    private long reconnectDelayMillis = 1000;
+
+    private ViewListener viewListener;
+    private MessageListener messageListener;
+    private String clusterName;
+    private final ConcurrentMap<String, ConcurrentMap<?, ?>> caches = new ConcurrentHashMap<>();
+
+    private volatile GatewayConnection connection;
+    private volatile INodeAddress gatewayAddress;
+    private volatile boolean leaving;
+
+    private final AtomicLong connections = new AtomicLong();
+
+    /**
+     * @param gateways the endpoints of the gateway hosts, as host:port
+     */
+    public GatewayClientPeer(final List<String> gateways)
+    {
+        if (gateways == null || gateways.isEmpty())
+        {
+            throw new IllegalArgumentException("No gateway endpoints");
+        }
+        this.gateways = new ArrayList<>(gateways);
+    }
+
+    @Override
+    public INodeAddress localAddress()
+    {
+        return localAddress;
+    }
+
+    @Override
+    public void registerViewListener(final ViewListener viewListener)
+    {
+        this.viewListener = viewListener;
+    }
+
+    @Override
+    public void registerMessageReceiver(final MessageListener messageListener)
+    {
+        this.messageListener = messageListener;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <K, V> ConcurrentMap<K, V> getCache(final String name)
+    {
+        return (ConcurrentMap<K, V>) caches.computeIfAbsent(name, n -> new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public Task<?> join(final String clusterName, final String nodeName)
+    {
+        this.clusterName = clusterName;
+        return Task.fromFuture(CompletableFuture.runAsync(() -> {
+            if (!connect())
+            {
+                throw new UncheckedException("Unable to connect to the gateways " + gateways);
+            }
+        }));
+    }
+
+    /**
+     * Tries each gateway once, starting at a random one to spread the clients.
+     *
+     * @return true if connected
+     */
+    private boolean connect()
+    {
+        final int start = random.nextInt(gateways.size());
+        for (int i = 0; i < gateways.size() && !leaving; i++)
+        {
+            final String endpoint = gateways.get((start + i) % gateways.size());
+            try
+            {
+                connect(endpoint);
+                return true;
+            }
+            catch (Exception e)
+            {
+                logger.warn("Error connecting to the gateway {}: {}", endpoint, e.toString());
+            }
+        }
+        return false;
+    }
+
+    private void connect(final String endpoint) throws Exception
+    {
+        final int separator = endpoint.lastIndexOf(':');
+        final Socket socket = new Socket();
+        try
+        {
+            socket.connect(new InetSocketAddress(endpoint.substring(0, separator),
+                    Integer.parseInt(endpoint.substring(separator + 1))), connectTimeoutMillis);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            socket.close();
+            throw e;
+        }
+        final GatewayConnection newConnection = new GatewayConnection(socket, maxMessageSize, maxQueuedMessages);
+        final CompletableFuture<Void> viewReceived = new CompletableFuture<>();
+        newConnection.start("Orbit gateway connection " + endpoint,
+                frame -> onFrame(frame, viewReceived), this::onClosed);
+
+        final ByteArrayOutputStream handshake = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(handshake);
+        out.write(GatewayConnection.toBytes(localAddress));
+        out.writeUTF(clusterName);
+        out.flush();
+        newConnection.send(handshake.toByteArray());
+        try
+        {
+            // the gateway answers with the cluster view
+            viewReceived.get(connectTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (Exception e)
+        {
+            newConnection.close(null);
+            throw e;
+        }
+        connection = newConnection;
+        if (newConnection.isClosed())
+        {
+            // closed before becoming the current connection
+            onClosed(newConnection);
+        }
+        connections.incrementAndGet();
+        logger.info("Connected to the gateway {} at {}", gatewayAddress, endpoint);
+    }
+
+    private void onFrame(final byte[] frame, final CompletableFuture<Void> viewReceived)
+    {
+        final ByteBuffer buffer = ByteBuffer.wrap(frame);
+        final byte kind = buffer.get();
+        if (kind == GatewayClusterPeer.CLIENT_MESSAGE)
+        {
+            final INodeAddress from = GatewayConnection.readAddress(buffer);
+            final byte[] message = new byte[buffer.remaining()];
+            buffer.get(message);
+            messageListener.receive(from, message);
+        }
+        else if (kind == GatewayClusterPeer.CLIENT_VIEW)
+        {
+            final INodeAddress gateway = GatewayConnection.readAddress(buffer);
+            final int count = buffer.getInt();
+            final List<INodeAddress> view = new ArrayList<>(count + 1);
+            for (int i = 0; i < count; i++)
+            {
+                view.add(GatewayConnection.readAddress(buffer));
+            }
+            view.add(localAddress);
+            gatewayAddress = gateway;
+            viewListener.onViewChange(view);
+            viewReceived.complete(null);
+        }
+    }
+
+    private void onClosed(final GatewayConnection closed)
+    {
+        if (leaving || closed != connection)
+        {
+            return;
+        }
+        logger.warn("Lost the connection to the gateway {}", gatewayAddress);
+        gatewayAddress = null;
+        // the view is kept, the responses of the pending calls can still arrive through the next gateway
+        final Thread reconnect = new Thread(this::reconnect, "Orbit gateway reconnection");
+        reconnect.setDaemon(true);
+        reconnect.start();
+    }
+
+    private void reconnect()
+    {
+        while (!leaving && !connect())
+        {
+            try
+            {
+                Thread.sleep(reconnectDelayMillis);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void sendMessage(final INodeAddress toAddress, final byte[] message)
+    {
+        if (toAddress.equals(localAddress))
+        {
+            messageListener.receive(localAddress, message);
+            return;
+        }
+        final GatewayConnection current = connection;
+        if (current == null || !current.send(GatewayConnection.toBytes(toAddress), message))
+        {
+            throw new UncheckedException("Not connected to a gateway or too many messages waiting");
+        }
+    }
+
+    @Override
+    public void leave()
+    {
+        leaving = true;
+        final GatewayConnection current = connection;
+        if (current != null)
+        {
+            current.close(null);
+        }
+    }
+
+    /**
+     * @return the address of the gateway host this node is connected to, or null while disconnected.
+     */
+    public INodeAddress getGatewayAddress()
+    {
+        return gatewayAddress;
+    }
+
+    public List<String> getGateways()
+    {
+        return Collections.unmodifiableList(gateways);
+    }
+
+    public int getMaxMessageSize()
+    {
+        return maxMessageSize;
+    }
+
+    public void setMaxMessageSize(final int maxMessageSize)
+    {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    public int getMaxQueuedMessages()
+    {
+        return maxQueuedMessages;
+    }
+
+    /**
+     * Sets how many messages to the gateway can wait to be written, sending more fails.
+     */
+    public void setMaxQueuedMessages(final int maxQueuedMessages)
+    {
+        this.maxQueuedMessages = maxQueuedMessages;
+    }
+
+    public int getConnectTimeoutMillis()
+    {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis(final int connectTimeoutMillis)
+    {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public long getReconnectDelayMillis()
+    {
+        return reconnectDelayMillis;
+    }
+
+    public void setReconnectDelayMillis(final long reconnectDelayMillis)
+    {
+        this.reconnectDelayMillis = reconnectDelayMillis;
+    }
+
+    /**
+     * @return the number of successful connections to gateways, including the reconnections.
+     */
+    public long getConnections()
+    {
+        return connections.get();
+    }
+}
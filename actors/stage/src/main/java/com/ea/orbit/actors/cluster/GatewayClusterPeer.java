@@ -0,0 +1,509 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.cluster;
+
+import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.exception.UncheckedException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cluster peer of the members of a cluster that has gateway clients.
+ * <p>
+ * Gateway clients, see {@link GatewayClientPeer}, don't join the cluster membership nor the distributed caches.
+ * Each one keeps a single connection to one of the gateway hosts, the members that accept client connections.
+ * The gateway host relays the client messages to their target nodes and the messages to the client back
+ * through its connection. The gateway of each client is published in a distributed cache.
+ * </p>
+ * <p>
+ * Relayed messages carry the original sender and the final target, so all the members of the cluster,
+ * gateway hosts or not, must use this peer.
+ * </p>
+ */
+public class GatewayClusterPeer implements IClusterPeer
+{
+    private static final Logger logger = LoggerFactory.getLogger(GatewayClusterPeer.class);
+
+    public static final String CLIENTS_CACHE = "orbit.actors.gatewayClients";
+
+    // messages between the members
+    private static final byte DIRECT = 0;
+    private static final byte RELAYED = 1;
+    // frames sent to the clients
+    static final byte CLIENT_MESSAGE = 0;
+    static final byte CLIENT_VIEW = 1;
+
+    private static final byte[] DIRECT_HEADER = { DIRECT };
+    private static final byte[] CLIENT_MESSAGE_HEADER = { CLIENT_MESSAGE };
+
+    private final IClusterPeer membership;
+    private String host;
+    private int port = -1;
+    private int maxMessageSize = 64 * 1024 * 1024;
+    private int maxQueuedMessages = 10_000;
+
+    private ViewListener viewListener;
+    private MessageListener messageListener;
+    private String clusterName;
+
+    private ServerSocket serverSocket;
+    private String localEndpoint;
+    private final ConcurrentMap<INodeAddress, GatewayConnection> clients = new ConcurrentHashMap<>();
+    private volatile ConcurrentMap<INodeAddress, INodeAddress> clientGateways;
+    private volatile Set<INodeAddress> view = Collections.emptySet();
+
+    private final AtomicLong messagesRelayed = new AtomicLong();
+    private final AtomicLong messagesDropped = new AtomicLong();
+
+    public GatewayClusterPeer()
+    {
+        this(new ClusterPeer());
+    }
+
+    /**
+     * @param membership the peer providing the cluster membership and the distributed caches.
+     */
+    public GatewayClusterPeer(final IClusterPeer membership)
+    {
+        this.membership = membership;
+    }
+
+    @Override
+    public INodeAddress localAddress()
+    {
+        return membership.localAddress();
+    }
+
+    @Override
+    public void registerViewListener(final ViewListener viewListener)
+    {
+        this.viewListener = viewListener;
+    }
+
+    @Override
+    public void registerMessageReceiver(final MessageListener messageListener)
+    {
+        this.messageListener = messageListener;
+    }
+
+    @Override
+    public <K, V> ConcurrentMap<K, V> getCache(final String name)
+    {
+        return membership.getCache(name);
+    }
+
+    @Override
+    public Task<?> join(final String clusterName, final String nodeName)
+    {
+        this.clusterName = clusterName;
+        membership.registerViewListener(this::onViewChange);
+        membership.registerMessageReceiver(this::onMemberMessage);
+        return membership.join(clusterName, nodeName).thenRun(() -> {
+            clientGateways = membership.getCache(CLIENTS_CACHE);
+            if (port >= 0)
+            {
+                try
+                {
+                    startServer();
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedException(e);
+                }
+                logger.info("Accepting gateway clients at {}", localEndpoint);
+            }
+        });
+    }
+
+    private void startServer() throws IOException
+    {
+        final InetAddress bindAddress = host != null ? InetAddress.getByName(host) : null;
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(bindAddress, port));
+        final String advertisedHost = bindAddress == null || bindAddress.isAnyLocalAddress()
+                ? InetAddress.getLocalHost().getHostAddress()
+                : bindAddress.getHostAddress();
+        localEndpoint = advertisedHost + ":" + serverSocket.getLocalPort();
+        final Thread acceptor = new Thread(this::accept, "Orbit gateway acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void accept()
+    {
+        while (!serverSocket.isClosed())
+        {
+            try
+            {
+                final Socket socket = serverSocket.accept();
+                final GatewayConnection connection = new GatewayConnection(socket, maxMessageSize, maxQueuedMessages);
+                connection.start("Orbit gateway client " + socket.getRemoteSocketAddress(),
+                        frame -> onClientFrame(connection, frame), this::onClientClosed);
+            }
+            catch (IOException e)
+            {
+                if (!serverSocket.isClosed())
+                {
+                    logger.error("Error accepting gateway client", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void leave()
+    {
+        try
+        {
+            if (serverSocket != null)
+            {
+                serverSocket.close();
+            }
+        }
+        catch (IOException e)
+        {
+            logger.debug("Error closing the gateway server socket", e);
+        }
+        clients.values().forEach(c -> c.close(null));
+        membership.leave();
+    }
+
+    private void onViewChange(final Collection<INodeAddress> newView)
+    {
+        final Set<INodeAddress> newViewSet = new HashSet<>(newView);
+        final ConcurrentMap<INodeAddress, INodeAddress> gateways = clientGateways;
+        if (gateways != null && !newViewSet.containsAll(view))
+        {
+            // the clients of the gateways that left will reconnect through other gateways
+            gateways.values().removeIf(g -> !newViewSet.contains(g));
+        }
+        view = newViewSet;
+        viewListener.onViewChange(newView);
+        if (!clients.isEmpty())
+        {
+            final byte[] viewFrame = viewFrame(newView);
+            for (GatewayConnection client : clients.values())
+            {
+                if (!client.send(viewFrame))
+                {
+                    // the client gets the current view when it reconnects
+                    client.close(new IOException("Too many messages waiting, unable to send the cluster view"));
+                }
+            }
+        }
+    }
+
+    private byte[] viewFrame(final Collection<INodeAddress> nodes)
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate(1 + GatewayConnection.UUID_SIZE + 4 + nodes.size() * GatewayConnection.UUID_SIZE);
+        buffer.put(CLIENT_VIEW);
+        buffer.put(GatewayConnection.toBytes(localAddress()));
+        buffer.putInt(nodes.size());
+        nodes.forEach(n -> buffer.put(GatewayConnection.toBytes(n)));
+        return buffer.array();
+    }
+
+    @Override
+    public void sendMessage(final INodeAddress toAddress, final byte[] message)
+    {
+        sendMessage(toAddress, message, 0);
+    }
+
+    @Override
+    public void sendMessage(final INodeAddress toAddress, final byte[] message, final int laneHint)
+    {
+        if (view.contains(toAddress))
+        {
+            final byte[] direct = new byte[message.length + 1];
+            System.arraycopy(message, 0, direct, 1, message.length);
+            direct[0] = DIRECT;
+            membership.sendMessage(toAddress, direct, laneHint);
+            return;
+        }
+        route(localAddress(), toAddress, message, laneHint);
+    }
+
+    /**
+     * Sends a message to a node that isn't a member, through the gateway of the client.
+     */
+    private void route(final INodeAddress from, final INodeAddress to, final byte[] message, final int laneHint)
+    {
+        final GatewayConnection client = clients.get(to);
+        if (client != null)
+        {
+            if (!client.send(CLIENT_MESSAGE_HEADER, GatewayConnection.toBytes(from), message))
+            {
+                throw new UncheckedException("Gateway client disconnected or too many messages waiting: " + to);
+            }
+            return;
+        }
+        final ConcurrentMap<INodeAddress, INodeAddress> gateways = clientGateways;
+        final INodeAddress gateway = gateways != null ? gateways.get(to) : null;
+        if (gateway == null || gateway.equals(localAddress()))
+        {
+            throw new UncheckedException("Unknown node: " + to);
+        }
+        relay(from, to, gateway, message, laneHint);
+    }
+
+    private void relay(final INodeAddress from, final INodeAddress to, final INodeAddress via, final byte[] message, final int laneHint)
+    {
+        final byte[] relayed = ByteBuffer.allocate(1 + 2 * GatewayConnection.UUID_SIZE + message.length)
+                .put(RELAYED)
+                .put(GatewayConnection.toBytes(from))
+                .put(GatewayConnection.toBytes(to))
+                .put(message)
+                .array();
+        messagesRelayed.incrementAndGet();
+        membership.sendMessage(via, relayed, laneHint);
+    }
+
+    private void onMemberMessage(final INodeAddress from, final byte[] message)
+    {
+        if (message[0] == DIRECT)
+        {
+            messageListener.receive(from, copyOfRange(message, 1));
+            return;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(message, 1, 2 * GatewayConnection.UUID_SIZE);
+        final INodeAddress origin = GatewayConnection.readAddress(buffer);
+        final INodeAddress target = GatewayConnection.readAddress(buffer);
+        final byte[] payload = copyOfRange(message, 1 + 2 * GatewayConnection.UUID_SIZE);
+        if (target.equals(localAddress()))
+        {
+            messageListener.receive(origin, payload);
+            return;
+        }
+        final GatewayConnection client = clients.get(target);
+        if (client == null || !client.send(CLIENT_MESSAGE_HEADER, GatewayConnection.toBytes(origin), payload))
+        {
+            // the caller times out, as with any message to a node that left
+            messagesDropped.incrementAndGet();
+            logger.debug("Dropping message from {} to gateway client {}, disconnected or too many messages waiting", origin, target);
+        }
+    }
+
+    private void onClientFrame(final GatewayConnection connection, final byte[] frame)
+    {
+        if (connection.remote == null)
+        {
+            handshake(connection, frame);
+            return;
+        }
+        final INodeAddress target = GatewayConnection.readAddress(ByteBuffer.wrap(frame));
+        final byte[] payload = copyOfRange(frame, GatewayConnection.UUID_SIZE);
+        try
+        {
+            if (target.equals(localAddress()))
+            {
+                messageListener.receive(connection.remote, payload);
+            }
+            else if (view.contains(target))
+            {
+                relay(connection.remote, target, target, payload, 0);
+            }
+            else
+            {
+                route(connection.remote, target, payload, 0);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            messagesDropped.incrementAndGet();
+            logger.debug("Error relaying message from {} to {}", connection.remote, target, e);
+        }
+    }
+
+    /**
+     * The first frame of the client has its address and the cluster name.
+     */
+    private void handshake(final GatewayConnection connection, final byte[] frame)
+    {
+        final INodeAddress client;
+        final String clientClusterName;
+        try
+        {
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+            client = new NodeAddress(new UUID(in.readLong(), in.readLong()));
+            clientClusterName = in.readUTF();
+        }
+        catch (IOException e)
+        {
+            connection.close(e);
+            return;
+        }
+        if (!clientClusterName.equals(clusterName))
+        {
+            logger.warn("Refusing gateway client {} of cluster {}", client, clientClusterName);
+            connection.close(null);
+            return;
+        }
+        connection.remote = client;
+        final GatewayConnection previous = clients.put(client, connection);
+        if (previous != null)
+        {
+            previous.close(null);
+        }
+        clientGateways.put(client, localAddress());
+        if (!connection.send(viewFrame(new ArrayList<>(view))))
+        {
+            connection.close(null);
+            return;
+        }
+        logger.debug("Gateway client {} connected", client);
+    }
+
+    private void onClientClosed(final GatewayConnection connection)
+    {
+        final INodeAddress client = connection.remote;
+        if (client != null && clients.remove(client, connection))
+        {
+            final ConcurrentMap<INodeAddress, INodeAddress> gateways = clientGateways;
+            if (gateways != null)
+            {
+                gateways.remove(client, localAddress());
+            }
+            logger.debug("Gateway client {} disconnected", client);
+        }
+    }
+
+    private static byte[] copyOfRange(final byte[] message, final int from)
+    {
+        final byte[] copy = new byte[message.length - from];
+        System.arraycopy(message, from, copy, 0, copy.length);
+        return copy;
+    }
+
+    public String getHost()
+    {
+        return host;
+    }
+
+    /**
+     * Sets the address where the gateway clients connect, by default all the local addresses.
+     */
+    public void setHost(final String host)
+    {
+        this.host = host;
+    }
+
+    public int getPort()
+    {
+        return port;
+    }
+
+    /**
+     * Sets the port where the gateway clients connect, 0 for an ephemeral port,
+     * or -1, the default, if this member doesn't accept clients.
+     */
+    public void setPort(final int port)
+    {
+        this.port = port;
+    }
+
+    public int getMaxMessageSize()
+    {
+        return maxMessageSize;
+    }
+
+    public void setMaxMessageSize(final int maxMessageSize)
+    {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    public int getMaxQueuedMessages()
+    {
+        return maxQueuedMessages;
+    }
+
+    /**
+     * Sets how many messages to each client can wait to be written, the next ones are dropped.
+     */
+    public void setMaxQueuedMessages(final int maxQueuedMessages)
+    {
+        this.maxQueuedMessages = maxQueuedMessages;
+    }
+
+    /**
+     * @return the endpoint where the clients connect, available after join if this member accepts clients.
+     */
+    public String getLocalEndpoint()
+    {
+        return localEndpoint;
+    }
+
+    public IClusterPeer getMembership()
+    {
+        return membership;
+    }
+
+    /**
+     * @return the addresses of the clients connected to this gateway.
+     */
+    public List<INodeAddress> getClients()
+    {
+        return new ArrayList<>(clients.keySet());
+    }
+
+    /**
+     * @return the messages sent through another node, to or from a gateway client.
+     */
+    public long getMessagesRelayed()
+    {
+        return messagesRelayed.get();
+    }
+
+    /**
+     * @return the messages to clients that were no longer connected, or that had too many messages waiting.
+     */
+    public long getMessagesDropped()
+    {
+        return messagesDropped.get();
+    }
+}
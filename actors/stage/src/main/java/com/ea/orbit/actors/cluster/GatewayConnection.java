@@ -0,0 +1,221 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Length framed connection between a gateway client and a gateway host.
+ * <p>
+ * All the messages of the client share this connection. The senders only queue the frames,
+ * a writer thread per connection writes them, with a single flush for the frames queued meanwhile.
+ * So a slow peer never blocks the threads that send, like the membership receive thread of the gateway.
+ * When too many frames are waiting the new ones are refused.
+ * </p>
+ */
+class GatewayConnection
+{
+    private static final Logger logger = LoggerFactory.getLogger(GatewayConnection.class);
+
+    static final int UUID_SIZE = 16;
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final int maxFrameSize;
+    private final BlockingQueue<byte[][]> writeQueue;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private Consumer<GatewayConnection> onClose;
+    private volatile Thread writer;
+    // the node at the other side, known after the handshake
+    volatile INodeAddress remote;
+
+    /**
+     * @param maxFrameSize    the largest frame accepted from the other side
+     * @param maxQueuedFrames the frames that can wait to be written before the new ones are refused
+     */
+    GatewayConnection(final Socket socket, final int maxFrameSize, final int maxQueuedFrames) throws IOException
+    {
+        this.socket = socket;
+        this.maxFrameSize = maxFrameSize;
+        this.writeQueue = new LinkedBlockingQueue<>(maxQueuedFrames);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+    }
+
+    /**
+     * Starts reading and writing the frames, each in a new thread.
+     *
+     * @param name    the reader thread name, the writer thread adds " writer" to it
+     * @param onFrame called for each frame, in the reader thread
+     * @param onClose called once when the connection closes
+     */
+    void start(final String name, final Consumer<byte[]> onFrame, final Consumer<GatewayConnection> onClose)
+    {
+        this.onClose = onClose;
+        writer = new Thread(this::write, name + " writer");
+        writer.setDaemon(true);
+        writer.start();
+        final Thread reader = new Thread(() -> read(onFrame), name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void read(final Consumer<byte[]> onFrame)
+    {
+        try
+        {
+            while (!closed.get())
+            {
+                final int length = in.readInt();
+                if (length < 0 || length > maxFrameSize)
+                {
+                    throw new IOException("Invalid frame size: " + length);
+                }
+                final byte[] frame = new byte[length];
+                in.readFully(frame);
+                onFrame.accept(frame);
+            }
+        }
+        catch (EOFException | SocketException e)
+        {
+            close(null);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            close(e);
+        }
+    }
+
+    private void write()
+    {
+        try
+        {
+            while (!closed.get())
+            {
+                byte[][] frame = writeQueue.take();
+                do
+                {
+                    int length = 0;
+                    for (byte[] part : frame)
+                    {
+                        length += part.length;
+                    }
+                    out.writeInt(length);
+                    for (byte[] part : frame)
+                    {
+                        out.write(part);
+                    }
+                }
+                while ((frame = writeQueue.poll()) != null);
+                out.flush();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // closed
+        }
+        catch (IOException | RuntimeException e)
+        {
+            close(e);
+        }
+    }
+
+    /**
+     * Queues a frame made of the concatenation of the parts, it doesn't wait for the frame to be written.
+     *
+     * @return false if the connection is closed or too many frames are waiting
+     */
+    boolean send(final byte[]... parts)
+    {
+        return !closed.get() && writeQueue.offer(parts);
+    }
+
+    boolean isClosed()
+    {
+        return closed.get();
+    }
+
+    void close(final Exception reason)
+    {
+        if (closed.compareAndSet(false, true))
+        {
+            if (reason != null)
+            {
+                logger.warn("Closing the gateway connection to {}: {}", remote, reason.toString());
+            }
+            try
+            {
+                socket.close();
+            }
+            catch (IOException e)
+            {
+                logger.debug("Error closing the gateway connection", e);
+            }
+            final Thread currentWriter = writer;
+            if (currentWriter != null)
+            {
+                currentWriter.interrupt();
+            }
+            writeQueue.clear();
+            if (onClose != null)
+            {
+                onClose.accept(this);
+            }
+        }
+    }
+
+    static byte[] toBytes(final INodeAddress address)
+    {
+        final UUID uuid = address.asUUID();
+        return ByteBuffer.allocate(UUID_SIZE).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
+    }
+
+    static INodeAddress readAddress(final ByteBuffer buffer)
+    {
+        return new NodeAddress(new UUID(buffer.getLong(), buffer.getLong()));
+    }
+}
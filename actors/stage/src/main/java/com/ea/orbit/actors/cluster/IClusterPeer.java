@@ -66,6 +66,20 @@ public interface IClusterPeer
      */
     void sendMessage(INodeAddress toAddress, byte[] message);
 
+    /**
+     * Sends a message to other cluster node through one of the independent lanes of the transport.
+     * Messages with the same lane hint are delivered in order.
+     * Transports with a single lane ignore the hint.
+     *
+     * @param toAddress the target node address
+     * @param message   the byte array representing the message
+     * @param laneHint  chooses the lane, ex: the hash of the target actor
+     */
+    default void sendMessage(INodeAddress toAddress, byte[] message, int laneHint)
+    {
+        sendMessage(toAddress, message);
+    }
+
     /**
      * Gets a reference to a distributed cache
      *
@@ -0,0 +1,842 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.cluster;
+
+import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.exception.UncheckedException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cluster peer that sends the actor messages over direct tcp connections between the nodes.
+ * <p>
+ * Membership, the view notifications and the distributed caches are still provided by another peer,
+ * by default a jgroups {@link ClusterPeer}. Each node publishes its tcp endpoint in a distributed cache,
+ * messages to nodes without a known endpoint are sent through the membership peer.
+ * </p>
+ * <p>
+ * Each node keeps a few outgoing connections, the lanes, to every node it sends messages to.
+ * Messages are striped over the lanes by their lane hint, usually the target actor,
+ * so the messages to the same actor keep their order. Large messages use an extra lane,
+ * so they don't delay the small ones.
+ * </p>
+ * <p>
+ * Messages are framed with their length, the messages queued while the connection
+ * is busy are written together with a single gathering write.
+ * A small number of selector threads serve all the connections.
+ * </p>
+ */
+public class TcpClusterPeer implements IClusterPeer
+{
+    private static final Logger logger = LoggerFactory.getLogger(TcpClusterPeer.class);
+
+    public static final String ENDPOINTS_CACHE = "orbit.actors.tcpEndpoints";
+
+    private static final int HEADER_SIZE = 4;
+    private static final int MAX_GATHER = 64;
+
+    private final IClusterPeer membership;
+    private String host;
+    private int port;
+    private int selectorThreads = 2;
+    private int readBufferSize = 64 * 1024;
+    private int maxMessageSize = 64 * 1024 * 1024;
+    private int lanes = 4;
+    private int largeMessageSize = 64 * 1024;
+
+    private ViewListener viewListener;
+    private MessageListener messageListener;
+
+    private ServerSocketChannel serverChannel;
+    private IoThread[] ioThreads;
+    private final AtomicInteger nextIoThread = new AtomicInteger();
+    // the outgoing connections to each node, one per lane plus the lane for the large messages
+    private final ConcurrentMap<INodeAddress, AtomicReferenceArray<Connection>> connections = new ConcurrentHashMap<>();
+    private final Set<Connection> inbound = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile ConcurrentMap<INodeAddress, String> endpoints;
+    private volatile Set<INodeAddress> view = Collections.emptySet();
+    private String localEndpoint;
+
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong messagesSentThroughMembership = new AtomicLong();
+    private final AtomicLong messagesReceived = new AtomicLong();
+
+    public TcpClusterPeer()
+    {
+        this(new ClusterPeer());
+    }
+
+    /**
+     * @param membership the peer providing the cluster membership and the distributed caches.
+     */
+    public TcpClusterPeer(final IClusterPeer membership)
+    {
+        this.membership = membership;
+    }
+
+    @Override
+    public INodeAddress localAddress()
+    {
+        return membership.localAddress();
+    }
+
+    @Override
+    public void registerViewListener(final ViewListener viewListener)
+    {
+        this.viewListener = viewListener;
+    }
+
+    @Override
+    public void registerMessageReceiver(final MessageListener messageListener)
+    {
+        this.messageListener = messageListener;
+    }
+
+    @Override
+    public <K, V> ConcurrentMap<K, V> getCache(final String name)
+    {
+        return membership.getCache(name);
+    }
+
+    @Override
+    public Task<?> join(final String clusterName, final String nodeName)
+    {
+        membership.registerViewListener(this::onViewChange);
+        membership.registerMessageReceiver((from, message) -> messageListener.receive(from, message));
+        try
+        {
+            startServer();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedException(e);
+        }
+        return membership.join(clusterName, nodeName).thenRun(() -> {
+            final ConcurrentMap<INodeAddress, String> endpointsCache = membership.getCache(ENDPOINTS_CACHE);
+            endpointsCache.put(localAddress(), localEndpoint);
+            endpoints = endpointsCache;
+            logger.info("Accepting cluster messages at {}", localEndpoint);
+        });
+    }
+
+    private void startServer() throws IOException
+    {
+        ioThreads = new IoThread[Math.max(1, selectorThreads)];
+        for (int i = 0; i < ioThreads.length; i++)
+        {
+            ioThreads[i] = new IoThread("Orbit tcp peer " + i);
+            ioThreads[i].start();
+        }
+        final InetAddress bindAddress = host != null ? InetAddress.getByName(host) : null;
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.bind(new InetSocketAddress(bindAddress, port));
+        final InetSocketAddress boundAddress = (InetSocketAddress) serverChannel.getLocalAddress();
+        final String advertisedHost = bindAddress == null || bindAddress.isAnyLocalAddress()
+                ? InetAddress.getLocalHost().getHostAddress()
+                : bindAddress.getHostAddress();
+        localEndpoint = advertisedHost + ":" + boundAddress.getPort();
+        ioThreads[0].execute(() -> ioThreads[0].register(serverChannel, SelectionKey.OP_ACCEPT, null));
+    }
+
+    @Override
+    public void leave()
+    {
+        final ConcurrentMap<INodeAddress, String> endpointsCache = endpoints;
+        if (endpointsCache != null)
+        {
+            endpointsCache.remove(localAddress());
+        }
+        membership.leave();
+        try
+        {
+            if (serverChannel != null)
+            {
+                serverChannel.close();
+            }
+        }
+        catch (IOException e)
+        {
+            logger.debug("Error closing the server socket", e);
+        }
+        connections.values().forEach(TcpClusterPeer::closeAll);
+        inbound.forEach(c -> c.close(null));
+        if (ioThreads != null)
+        {
+            for (IoThread ioThread : ioThreads)
+            {
+                ioThread.shutdown();
+            }
+        }
+    }
+
+    private void onViewChange(final Collection<INodeAddress> newView)
+    {
+        final Set<INodeAddress> newViewSet = new HashSet<>(newView);
+        final ConcurrentMap<INodeAddress, String> endpointsCache = endpoints;
+        for (INodeAddress node : view)
+        {
+            if (!newViewSet.contains(node))
+            {
+                final AtomicReferenceArray<Connection> nodeLanes = connections.remove(node);
+                if (nodeLanes != null)
+                {
+                    closeAll(nodeLanes);
+                }
+                if (endpointsCache != null)
+                {
+                    endpointsCache.remove(node);
+                }
+            }
+        }
+        view = newViewSet;
+        viewListener.onViewChange(newView);
+    }
+
+    private static void closeAll(final AtomicReferenceArray<Connection> nodeLanes)
+    {
+        for (int i = 0; i < nodeLanes.length(); i++)
+        {
+            final Connection connection = nodeLanes.get(i);
+            if (connection != null)
+            {
+                connection.close(null);
+            }
+        }
+    }
+
+    @Override
+    public void sendMessage(final INodeAddress toAddress, final byte[] message)
+    {
+        sendMessage(toAddress, message, 0);
+    }
+
+    @Override
+    @SuppressWarnings("PMD.AvoidThrowingNullPointerException")
+    public void sendMessage(final INodeAddress toAddress, final byte[] message, final int laneHint)
+    {
+        if (toAddress == null)
+        {
+            throw new NullPointerException("node address");
+        }
+        if (toAddress.equals(localAddress()))
+        {
+            messagesSent.incrementAndGet();
+            messageListener.receive(toAddress, message);
+            return;
+        }
+        final int lane = message.length >= largeMessageSize ? lanes : (laneHint & Integer.MAX_VALUE) % lanes;
+        AtomicReferenceArray<Connection> nodeLanes = connections.get(toAddress);
+        Connection connection = nodeLanes != null ? nodeLanes.get(lane) : null;
+        if (connection == null)
+        {
+            final ConcurrentMap<INodeAddress, String> endpointsCache = endpoints;
+            final String endpoint = endpointsCache != null ? endpointsCache.get(toAddress) : null;
+            if (endpoint == null)
+            {
+                // the node doesn't accept tcp connections or didn't publish its endpoint yet
+                messagesSentThroughMembership.incrementAndGet();
+                membership.sendMessage(toAddress, message, laneHint);
+                return;
+            }
+            nodeLanes = connections.computeIfAbsent(toAddress, a -> new AtomicReferenceArray<>(lanes + 1));
+            synchronized (nodeLanes)
+            {
+                connection = nodeLanes.get(lane);
+                if (connection == null)
+                {
+                    connection = connect(toAddress, endpoint, lane);
+                    nodeLanes.set(lane, connection);
+                }
+            }
+        }
+        messagesSent.incrementAndGet();
+        connection.send(message);
+    }
+
+    private Connection connect(final INodeAddress toAddress, final String endpoint, final int lane)
+    {
+        try
+        {
+            final int separator = endpoint.lastIndexOf(':');
+            final InetSocketAddress address = new InetSocketAddress(endpoint.substring(0, separator),
+                    Integer.parseInt(endpoint.substring(separator + 1)));
+            final SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            final boolean connected = channel.connect(address);
+            final Connection connection = new Connection(channel, nextIoThread(), toAddress, lane);
+            // the first frame identifies this node to the receiver
+            final UUID uuid = localAddress().asUUID();
+            connection.handshake = ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
+            connection.send(connection.handshake);
+            connection.io.execute(() -> connection.io.register(channel, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, connection));
+            return connection;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedException("Error connecting to " + toAddress + " at " + endpoint, e);
+        }
+    }
+
+    private IoThread nextIoThread()
+    {
+        return ioThreads[(nextIoThread.getAndIncrement() & Integer.MAX_VALUE) % ioThreads.length];
+    }
+
+    private void accept() throws IOException
+    {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null)
+        {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            final Connection connection = new Connection(channel, nextIoThread(), null, -1);
+            inbound.add(connection);
+            final SocketChannel acceptedChannel = channel;
+            connection.io.execute(() -> connection.io.register(acceptedChannel, SelectionKey.OP_READ, connection));
+        }
+    }
+
+    /**
+     * A selector thread, all the operations on its channels run in this thread.
+     */
+    private class IoThread extends Thread
+    {
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private volatile boolean running = true;
+
+        IoThread(String name) throws IOException
+        {
+            super(name);
+            setDaemon(true);
+            selector = Selector.open();
+        }
+
+        void execute(Runnable task)
+        {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void register(java.nio.channels.SelectableChannel channel, int ops, Connection connection)
+        {
+            try
+            {
+                final SelectionKey key = channel.register(selector, ops, connection);
+                if (connection != null)
+                {
+                    connection.key = key;
+                    if (ops == SelectionKey.OP_READ)
+                    {
+                        connection.flush();
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                if (connection != null)
+                {
+                    connection.close(e);
+                }
+                else
+                {
+                    logger.error("Error registering the server socket", e);
+                }
+            }
+        }
+
+        void shutdown()
+        {
+            running = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run()
+        {
+            while (running)
+            {
+                try
+                {
+                    selector.select();
+                    for (Runnable task; (task = tasks.poll()) != null; )
+                    {
+                        task.run();
+                    }
+                    final Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                    while (iterator.hasNext())
+                    {
+                        final SelectionKey key = iterator.next();
+                        iterator.remove();
+                        handle(key);
+                    }
+                }
+                catch (Exception e)
+                {
+                    logger.error("Error in the tcp peer selector", e);
+                }
+            }
+            try
+            {
+                selector.close();
+            }
+            catch (IOException e)
+            {
+                logger.debug("Error closing the selector", e);
+            }
+        }
+
+        private void handle(final SelectionKey key)
+        {
+            final Connection connection = (Connection) key.attachment();
+            try
+            {
+                if (!key.isValid())
+                {
+                    return;
+                }
+                if (key.isAcceptable())
+                {
+                    accept();
+                    return;
+                }
+                if (key.isConnectable())
+                {
+                    ((SocketChannel) key.channel()).finishConnect();
+                    key.interestOps(SelectionKey.OP_READ);
+                    connection.flush();
+                }
+                if (key.isValid() && key.isReadable())
+                {
+                    connection.read();
+                }
+                if (key.isValid() && key.isWritable())
+                {
+                    connection.flush();
+                }
+            }
+            catch (IOException | RuntimeException e)
+            {
+                if (connection != null)
+                {
+                    connection.close(e);
+                }
+                else
+                {
+                    logger.error("Error accepting tcp connection", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * One direction of the communication between two nodes: outgoing connections only write
+     * and incoming connections only read.
+     */
+    private class Connection
+    {
+        private final SocketChannel channel;
+        private final IoThread io;
+        private SelectionKey key;
+        // the remote node, for incoming connections it is known after the first frame.
+        private INodeAddress remote;
+        private byte[] handshake;
+        // the lane of outgoing connections
+        private final int lane;
+
+        private final ConcurrentLinkedQueue<byte[]> writeQueue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean writeScheduled = new AtomicBoolean();
+        private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER * 2];
+        private int gatherOffset;
+        private int gatherCount;
+
+        private ByteBuffer readBuffer;
+        private byte[] largeFrame;
+        private int largeFramePosition;
+        private volatile boolean closed;
+
+        Connection(final SocketChannel channel, final IoThread io, final INodeAddress remote, final int lane)
+        {
+            this.channel = channel;
+            this.io = io;
+            this.remote = remote;
+            this.lane = lane;
+        }
+
+        void send(byte[] message)
+        {
+            writeQueue.add(message);
+            if (!closed && writeScheduled.compareAndSet(false, true))
+            {
+                io.execute(this::flushQuietly);
+            }
+            else if (closed)
+            {
+                close(null);
+            }
+        }
+
+        private void flushQuietly()
+        {
+            try
+            {
+                flush();
+            }
+            catch (IOException | RuntimeException e)
+            {
+                close(e);
+            }
+        }
+
+        /**
+         * Writes the queued messages, runs in the io thread.
+         */
+        void flush() throws IOException
+        {
+            if (closed || key == null || !channel.isConnected())
+            {
+                // flushed again when connected
+                return;
+            }
+            while (true)
+            {
+                if (gatherCount == 0)
+                {
+                    int count = 0;
+                    for (byte[] message; count < gather.length && (message = writeQueue.poll()) != null; )
+                    {
+                        gather[count++] = (ByteBuffer) ByteBuffer.allocate(HEADER_SIZE).putInt(message.length).flip();
+                        gather[count++] = ByteBuffer.wrap(message);
+                    }
+                    if (count == 0)
+                    {
+                        writeScheduled.set(false);
+                        // a message queued after the poll and before the reset would be left behind
+                        if (writeQueue.isEmpty() || !writeScheduled.compareAndSet(false, true))
+                        {
+                            key.interestOps(SelectionKey.OP_READ);
+                            return;
+                        }
+                        continue;
+                    }
+                    gatherOffset = 0;
+                    gatherCount = count;
+                }
+                channel.write(gather, gatherOffset, gatherCount - gatherOffset);
+                while (gatherOffset < gatherCount && !gather[gatherOffset].hasRemaining())
+                {
+                    gather[gatherOffset++] = null;
+                }
+                if (gatherOffset < gatherCount)
+                {
+                    // the socket buffer is full
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                gatherCount = 0;
+            }
+        }
+
+        /**
+         * Reads the available frames, runs in the io thread.
+         */
+        void read() throws IOException
+        {
+            if (readBuffer == null)
+            {
+                readBuffer = ByteBuffer.allocateDirect(readBufferSize);
+            }
+            if (channel.read(readBuffer) < 0)
+            {
+                close(null);
+                return;
+            }
+            readBuffer.flip();
+            while (true)
+            {
+                if (largeFrame != null)
+                {
+                    final int length = Math.min(readBuffer.remaining(), largeFrame.length - largeFramePosition);
+                    readBuffer.get(largeFrame, largeFramePosition, length);
+                    largeFramePosition += length;
+                    if (largeFramePosition < largeFrame.length)
+                    {
+                        break;
+                    }
+                    final byte[] frame = largeFrame;
+                    largeFrame = null;
+                    receive(frame);
+                    continue;
+                }
+                if (readBuffer.remaining() < HEADER_SIZE)
+                {
+                    break;
+                }
+                final int length = readBuffer.getInt(readBuffer.position());
+                if (length < 0 || length > maxMessageSize)
+                {
+                    throw new IOException("Invalid message size: " + length);
+                }
+                if (readBuffer.remaining() - HEADER_SIZE >= length)
+                {
+                    readBuffer.getInt();
+                    final byte[] frame = new byte[length];
+                    readBuffer.get(frame);
+                    receive(frame);
+                }
+                else if (length + HEADER_SIZE > readBuffer.capacity())
+                {
+                    readBuffer.getInt();
+                    largeFrame = new byte[length];
+                    largeFramePosition = 0;
+                }
+                else
+                {
+                    break;
+                }
+            }
+            readBuffer.compact();
+        }
+
+        private void receive(byte[] frame)
+        {
+            if (remote == null)
+            {
+                final ByteBuffer buffer = ByteBuffer.wrap(frame);
+                remote = new NodeAddress(new UUID(buffer.getLong(), buffer.getLong()));
+                return;
+            }
+            messagesReceived.incrementAndGet();
+            messageListener.receive(remote, frame);
+        }
+
+        void close(Exception reason)
+        {
+            if (!closed)
+            {
+                closed = true;
+                if (reason != null && !(reason instanceof ClosedChannelException))
+                {
+                    logger.warn("Closing the connection to {}: {}", remote, reason.toString());
+                }
+                if (key != null)
+                {
+                    key.cancel();
+                }
+                try
+                {
+                    channel.close();
+                }
+                catch (IOException e)
+                {
+                    logger.debug("Error closing the connection", e);
+                }
+                final AtomicReferenceArray<Connection> nodeLanes = lane >= 0 ? connections.get(remote) : null;
+                if (nodeLanes != null)
+                {
+                    nodeLanes.compareAndSet(lane, this, null);
+                }
+                inbound.remove(this);
+            }
+            // the unsent messages get a second chance through the membership peer
+            for (byte[] message; (message = writeQueue.poll()) != null; )
+            {
+                if (message != handshake && remote != null && view.contains(remote))
+                {
+                    try
+                    {
+                        messagesSentThroughMembership.incrementAndGet();
+                        membership.sendMessage(remote, message, lane);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        logger.debug("Error resending message to {}", remote, e);
+                    }
+                }
+            }
+        }
+    }
+
+    public String getHost()
+    {
+        return host;
+    }
+
+    /**
+     * Sets the address the tcp server binds to, by default all the local addresses.
+     */
+    public void setHost(final String host)
+    {
+        this.host = host;
+    }
+
+    public int getPort()
+    {
+        return port;
+    }
+
+    /**
+     * Sets the tcp port, by default an ephemeral port.
+     */
+    public void setPort(final int port)
+    {
+        this.port = port;
+    }
+
+    public int getSelectorThreads()
+    {
+        return selectorThreads;
+    }
+
+    public void setSelectorThreads(final int selectorThreads)
+    {
+        this.selectorThreads = selectorThreads;
+    }
+
+    public int getReadBufferSize()
+    {
+        return readBufferSize;
+    }
+
+    public void setReadBufferSize(final int readBufferSize)
+    {
+        this.readBufferSize = readBufferSize;
+    }
+
+    public int getLanes()
+    {
+        return lanes;
+    }
+
+    /**
+     * Sets the number of connections used for the regular messages to each node.
+     */
+    public void setLanes(final int lanes)
+    {
+        this.lanes = Math.max(1, lanes);
+    }
+
+    public int getLargeMessageSize()
+    {
+        return largeMessageSize;
+    }
+
+    /**
+     * Sets the size from which messages are sent through the large message lane.
+     */
+    public void setLargeMessageSize(final int largeMessageSize)
+    {
+        this.largeMessageSize = largeMessageSize;
+    }
+
+    public int getMaxMessageSize()
+    {
+        return maxMessageSize;
+    }
+
+    public void setMaxMessageSize(final int maxMessageSize)
+    {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * @return the endpoint where this node accepts connections, available after join.
+     */
+    public String getLocalEndpoint()
+    {
+        return localEndpoint;
+    }
+
+    public IClusterPeer getMembership()
+    {
+        return membership;
+    }
+
+    /**
+     * @return the number of outgoing connections currently open, to all the nodes.
+     */
+    public int getOutgoingConnections()
+    {
+        int count = 0;
+        for (AtomicReferenceArray<Connection> nodeLanes : connections.values())
+        {
+            for (int i = 0; i < nodeLanes.length(); i++)
+            {
+                if (nodeLanes.get(i) != null)
+                {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    public long getMessagesSent()
+    {
+        return messagesSent.get();
+    }
+
+    public long getMessagesSentThroughMembership()
+    {
+        return messagesSentThroughMembership.get();
+    }
+
+    public long getMessagesReceived()
+    {
+        return messagesReceived.get();
+    }
+}
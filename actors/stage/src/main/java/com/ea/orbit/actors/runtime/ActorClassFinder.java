@@ -30,14 +30,97 @@ package com.ea.orbit.actors.runtime;
 
 import com.ea.orbit.actors.IActor;
 import com.ea.orbit.actors.providers.IActorClassFinder;
+import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.util.ClassPath;
 
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Finds actor implementations using the index generated at compile time,
+ * falling back to a scan of the class path for the actors that aren't in it.
+ * <p>
+ * The indexes are shared by all the stages of the JVM.
+ * </p>
+ */
 public class ActorClassFinder implements IActorClassFinder
 {
-    private static final ClassPathSearch search = new ClassPathSearch(IActor.class);
+    private static volatile ActorIndex compiledIndex;
+    private static volatile ActorIndex scannedIndex;
+    private static final Object MUTEX = new Object();
+
+    private Path cacheDir;
+
+    public ActorClassFinder()
+    {
+    }
 
-	@Override
+    /**
+     * @param cacheDir directory where the class path scan caches the class headers of each jar, can be null.
+     */
+    public ActorClassFinder(final Path cacheDir)
+    {
+        this.cacheDir = cacheDir;
+    }
+
+    @Override
+    public Task<?> start()
+    {
+        getCompiledIndex();
+        return Task.done();
+    }
+
+    @Override
     public <T extends IActor> Class<? extends T> findActorImplementation(Class<T> iActorInterface)
     {
-        return search.findImplementation(iActorInterface);
+        final Class<? extends T> implementation = getCompiledIndex().findImplementation(iActorInterface);
+        if (implementation != null)
+        {
+            return implementation;
+        }
+        return getScannedIndex().findImplementation(iActorInterface);
+    }
+
+    /**
+     * @return the names of the actor interfaces with implementations in the compile time index
+     */
+    public Set<String> getIndexedInterfaces()
+    {
+        return getCompiledIndex().getInterfaceNames();
+    }
+
+    private ActorIndex getCompiledIndex()
+    {
+        ActorIndex index = compiledIndex;
+        if (index == null)
+        {
+            synchronized (MUTEX)
+            {
+                index = compiledIndex;
+                if (index == null)
+                {
+                    compiledIndex = index = ActorIndex.load(ActorClassFinder.class.getClassLoader());
+                }
+            }
+        }
+        return index;
+    }
+
+    private ActorIndex getScannedIndex()
+    {
+        ActorIndex index = scannedIndex;
+        if (index == null)
+        {
+            synchronized (MUTEX)
+            {
+                // the class path is only scanned once, and only if some actor is not in the compiled index.
+                index = scannedIndex;
+                if (index == null)
+                {
+                    scannedIndex = index = ActorIndex.scan(ClassPath.get(), cacheDir);
+                }
+            }
+        }
+        return index;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,313 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.providers.IStorageProvider;
+import com.ea.orbit.concurrent.Task;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the serialized states read from and written to the storage provider,
+ * so an actor activated again in the same node doesn't read its state from the storage.
+ * <p>
+ * The cache only holds what the storage has, never the unsaved changes of an activation.
+ * A cached state is only used if the directory still places the actor in this node,
+ * otherwise the actor may have been activated, and its state changed, somewhere else.
+ * </p>
+ * <p>
+ * The states are cached as json, orbit-actors-json is an optional dependency of the stage
+ * that must be in the class path to enable the cache.
+ * </p>
+ */
+public class CachingStorageProvider implements IStorageProvider
+{
+    private static final Logger logger = LoggerFactory.getLogger(CachingStorageProvider.class);
+
+    // marks the actors that have no state in the storage
+    private static final byte[] NO_STATE = new byte[0];
+    // approximate memory used by each entry besides the serialized state
+    private static final int ENTRY_OVERHEAD = 128;
+    // loaded by name, it's the only class of the stage that uses jackson
+    private static final String JSON_SERIALIZER = "com.ea.orbit.actors.runtime.JsonStateSerializer";
+
+    /**
+     * Converts the states to the bytes kept in the cache.
+     */
+    public interface StateSerializer
+    {
+        byte[] serialize(Object state) throws IOException;
+
+        /**
+         * Reads the cached bytes into an existing state object.
+         */
+        void deserialize(byte[] bytes, Object state) throws IOException;
+    }
+
+    /**
+     * Counters of the state cache.
+     */
+    public static class StateCacheStats
+    {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder invalidations = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder entries = new LongAdder();
+
+        public long getHits()
+        {
+            return hits.sum();
+        }
+
+        public long getMisses()
+        {
+            return misses.sum();
+        }
+
+        /**
+         * @return the cached states dropped because the actor was activated elsewhere, or its state was cleared.
+         */
+        public long getInvalidations()
+        {
+            return invalidations.sum();
+        }
+
+        /**
+         * @return the cached states dropped because of the size limit or their age.
+         */
+        public long getEvictions()
+        {
+            return evictions.sum();
+        }
+
+        /**
+         * @return the approximate memory used by the cached states.
+         */
+        public long getBytes()
+        {
+            return bytes.sum();
+        }
+
+        public long getEntries()
+        {
+            return entries.sum();
+        }
+
+        public double getHitRate()
+        {
+            final long hits = this.hits.sum();
+            final long total = hits + misses.sum();
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    private final IStorageProvider provider;
+    private final Predicate<ActorReference<?>> isLocal;
+    private final StateCacheStats stats = new StateCacheStats();
+    private final Cache<ActorKey, byte[]> cache;
+    private final StateSerializer serializer;
+
+    /**
+     * @param provider   the storage provider
+     * @param isLocal    tells if the directory places an actor in this node
+     * @param maxBytes   approximate memory limit of the cached states
+     * @param ttlMillis  time after which a cached state is read from the storage again
+     * @param serializer converts the states to the cached bytes
+     */
+    CachingStorageProvider(final IStorageProvider provider, final Predicate<ActorReference<?>> isLocal,
+                           final long maxBytes, final long ttlMillis, final StateSerializer serializer)
+    {
+        this.provider = provider;
+        this.isLocal = isLocal;
+        this.serializer = serializer;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .<ActorKey, byte[]>weigher((k, v) -> v.length + ENTRY_OVERHEAD)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .removalListener(n -> {
+                    stats.bytes.add(-(n.getValue().length + ENTRY_OVERHEAD));
+                    stats.entries.decrement();
+                    if (n.getCause() == RemovalCause.SIZE || n.getCause() == RemovalCause.EXPIRED)
+                    {
+                        stats.evictions.increment();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * @return the json state serializer, or null if orbit-actors-json isn't in the class path
+     */
+    static StateSerializer createJsonSerializer()
+    {
+        try
+        {
+            return (StateSerializer) Class.forName(JSON_SERIALIZER).newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Json state serializer not available", e);
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public Task<Void> clearState(final ActorReference<?> reference, final Object state)
+    {
+        invalidate(reference);
+        return provider.clearState(reference, state);
+    }
+
+    @Override
+    public Task<Boolean> readState(final ActorReference<?> reference, final Object state)
+    {
+        final ActorKey key = key(reference);
+        final byte[] cached = cache.getIfPresent(key);
+        if (cached != null)
+        {
+            if (isLocal.test(reference))
+            {
+                try
+                {
+                    if (cached != NO_STATE)
+                    {
+                        serializer.deserialize(cached, state);
+                    }
+                    stats.hits.increment();
+                    return Task.fromValue(cached != NO_STATE);
+                }
+                catch (IOException ex)
+                {
+                    logger.warn("Error reading the cached state of " + reference, ex);
+                }
+            }
+            invalidate(reference);
+        }
+        stats.misses.increment();
+        return provider.readState(reference, state).thenApply(found -> {
+            put(key, found ? serialize(reference, state) : NO_STATE);
+            return found;
+        });
+    }
+
+    @Override
+    public Task<Void> writeState(final ActorReference<?> reference, final Object state)
+    {
+        final ActorKey key = key(reference);
+        // serialized now, the actor may change the state before the write completes
+        put(key, serialize(reference, state));
+        return provider.writeState(reference, state).whenComplete((r, e) -> {
+            if (e != null)
+            {
+                cache.invalidate(key);
+            }
+        });
+    }
+
+    public void invalidate(final ActorReference<?> reference)
+    {
+        invalidate(key(reference));
+    }
+
+    /**
+     * Drops the cached state of an actor, used when it is found in another node.
+     */
+    public void invalidate(final ActorKey key)
+    {
+        if (cache.getIfPresent(key) != null)
+        {
+            cache.invalidate(key);
+            stats.invalidations.increment();
+        }
+    }
+
+    public StateCacheStats getStats()
+    {
+        return stats;
+    }
+
+    @Override
+    public Task<?> start()
+    {
+        return provider.start();
+    }
+
+    @Override
+    public Task<?> stop()
+    {
+        cache.invalidateAll();
+        return provider.stop();
+    }
+
+    private void put(final ActorKey key, final byte[] bytes)
+    {
+        if (bytes == null)
+        {
+            cache.invalidate(key);
+            return;
+        }
+        stats.bytes.add(bytes.length + ENTRY_OVERHEAD);
+        stats.entries.increment();
+        cache.put(key, bytes);
+    }
+
+    private byte[] serialize(final ActorReference<?> reference, final Object state)
+    {
+        try
+        {
+            return serializer.serialize(state);
+        }
+        catch (IOException ex)
+        {
+            // the state just isn't cached
+            logger.warn("Error caching the state of " + reference, ex);
+            return null;
+        }
+    }
+
+    private static ActorKey key(final ActorReference<?> reference)
+    {
+        return new ActorKey(reference._interfaceClass().getName(), String.valueOf(reference.id));
+    }
+}
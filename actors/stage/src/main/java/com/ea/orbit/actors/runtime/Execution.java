@@ -34,6 +34,7 @@ import com.ea.orbit.actors.IAddressable;
 import com.ea.orbit.actors.IRemindable;
 import com.ea.orbit.actors.annotation.StatelessWorker;
 import com.ea.orbit.actors.cluster.INodeAddress;
+import com.ea.orbit.actors.cluster.NodeDroppedException;
 import com.ea.orbit.actors.providers.IActorClassFinder;
 import com.ea.orbit.actors.providers.IInvokeHookProvider;
 import com.ea.orbit.actors.providers.IInvokeListenerProvider;
@@ -42,18 +43,23 @@ import com.ea.orbit.actors.providers.IOrbitProvider;
 import com.ea.orbit.actors.providers.IStorageProvider;
 import com.ea.orbit.concurrent.ExecutorUtils;
 import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.container.Startable;
 import com.ea.orbit.exception.UncheckedException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.MapMaker;
 
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.time.Clock;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.Date;
@@ -61,17 +67,23 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -83,8 +95,8 @@ public class Execution implements IRuntime
     private static final Logger logger = LoggerFactory.getLogger(Execution.class);
     private final String runtimeIdentity;
     private IActorClassFinder finder;
-    private Map<Class<?>, InterfaceDescriptor> descriptorMapByInterface = new HashMap<>();
-    private Map<Integer, InterfaceDescriptor> descriptorMapByInterfaceId = new HashMap<>();
+    private Map<Class<?>, InterfaceDescriptor> descriptorMapByInterface = new ConcurrentHashMap<>();
+    private Map<Integer, InterfaceDescriptor> descriptorMapByInterfaceId = new ConcurrentHashMap<>();
     private Map<EntryKey, ReferenceEntry> localActors = new ConcurrentHashMap<>();
     private Map<EntryKey, IActorObserver> observerInstances = new MapMaker().weakValues().makeMap();
     // from implementation to reference
@@ -94,13 +106,41 @@ public class Execution implements IRuntime
     private Messaging messaging;
     private ExecutionSerializer<Object> executionSerializer;
     private int maxQueueSize = 10000;
-    private Timer timer = new Timer("Orbit stage timer");
+    private int idempotentRetries = 2;
+    private AtomicLong retriedMessages = new AtomicLong();
+    private Path classIndexCache;
+    private boolean prewarmFactories;
+    // completed when the providers are started, messages received before that wait for it.
+    private volatile Task<?> startedProviders = Task.done();
+    // fraction of the mailbox capacity that triggers the backpressure signal
+    private double backpressureThreshold = 0.8;
+    private Cache<Object, Boolean> backpressureSignals = CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.SECONDS).build();
+    private Cache<EntryKey, Boolean> backpressuredActors = CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.SECONDS).build();
+    // actors migrated from this node, messages still arriving here are forwarded to their new node
+    private Cache<EntryKey, INodeAddress> movedActors = CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.MINUTES).build();
+    private AtomicLong migratedActors = new AtomicLong();
+    private AtomicLong forwardedMessages = new AtomicLong();
+    private Rebalancer rebalancer;
+    private long rebalanceIntervalMillis = TimeUnit.SECONDS.toMillis(30);
+    private long rebalanceOnJoinDelayMillis = TimeUnit.SECONDS.toMillis(5);
+    private final AtomicBoolean joinRebalanceScheduled = new AtomicBoolean();
+    // set when the node stops taking new activations before a shutdown
+    private volatile boolean draining;
+    private ScheduledExecutorService timer;
     private Clock clock = Clock.systemUTC();
     private long cleanupIntervalMillis = TimeUnit.MINUTES.toMillis(5);
     private AtomicLong messagesReceived = new AtomicLong();
+    private final AtomicBoolean cleanupRunning = new AtomicBoolean();
     private AtomicLong messagesHandled = new AtomicLong();
     private AtomicLong refusedExecutions = new AtomicLong();
+    private AtomicLong expiredMessages = new AtomicLong();
     private ExecutorService executor;
+    private ExecutorService storageExecutor;
+    private IStorageProvider storageProvider;
+    private long stateCacheMaxBytes;
+    private long stateCacheTtlMillis = TimeUnit.MINUTES.toMillis(10);
+    private long responseCacheMaxEntries;
+    private ResponseCache responseCache;
     private ActorFactoryGenerator dynamicReferenceFactory = new ActorFactoryGenerator();
 
     private List<IOrbitProvider> orbitProviders = new ArrayList<>();
@@ -134,6 +174,74 @@ public class Execution implements IRuntime
         return executor;
     }
 
+    /**
+     * Sets the executor used to run the storage provider calls.
+     * If null the storage calls run in the actor execution threads.
+     */
+    public void setStorageExecutor(final ExecutorService storageExecutor)
+    {
+        this.storageExecutor = storageExecutor;
+    }
+
+    public ExecutorService getStorageExecutor()
+    {
+        return storageExecutor;
+    }
+
+    /**
+     * Enables the cache of the actor states read and written by this node.
+     *
+     * @param maxBytes  approximate memory limit of the cache, 0 disables it
+     * @param ttlMillis time after which a cached state is read from the storage again
+     */
+    public void setStateCache(final long maxBytes, final long ttlMillis)
+    {
+        this.stateCacheMaxBytes = maxBytes;
+        this.stateCacheTtlMillis = ttlMillis;
+    }
+
+    void forgetCachedState(final ActorKey actorKey)
+    {
+        if (storageProvider instanceof CachingStorageProvider)
+        {
+            ((CachingStorageProvider) storageProvider).invalidate(actorKey);
+        }
+    }
+
+    /**
+     * @return the state cache counters, or null if the cache is disabled
+     */
+    public CachingStorageProvider.StateCacheStats getStateCacheStats()
+    {
+        return storageProvider instanceof CachingStorageProvider ? ((CachingStorageProvider) storageProvider).getStats() : null;
+    }
+
+    /**
+     * Enables the cache of the responses of the {@literal@}Cacheable methods called by this node.
+     *
+     * @param maxEntries maximum number of cached responses, 0 disables the cache
+     */
+    public void setResponseCacheMaxEntries(final long maxEntries)
+    {
+        this.responseCacheMaxEntries = maxEntries;
+    }
+
+    /**
+     * @return the response cache counters, or null if the cache is disabled
+     */
+    public ResponseCache.ResponseCacheStats getResponseCacheStats()
+    {
+        return responseCache != null ? responseCache.getStats() : null;
+    }
+
+    /**
+     * Sets the executor used to run the actor timers and the internal cleanup tasks.
+     */
+    public void setTimerExecutor(final ScheduledExecutorService timer)
+    {
+        this.timer = timer;
+    }
+
     public boolean canActivateActor(String interfaceName, int interfaceId)
     {
         Class<IActor> aInterface = classForName(interfaceName);
@@ -379,44 +487,75 @@ public class Execution implements IRuntime
             this.instance = instance;
         }
 
-        // gets or creates the instance
-        public Object getOrCreateInstance() throws IllegalAccessException, InstantiationException, ExecutionException, InterruptedException
+        // completed when the instance is activated, shared by the messages that arrive while the state is loading
+        Task<Object> activating;
+
+        /**
+         * Gets or creates the instance.
+         * <p>
+         * The activation doesn't block on the storage, the returned task completes when the state was read and the actor activated.
+         * </p>
+         */
+        public synchronized Task<Object> getOrCreateInstance()
         {
-            if (instance == null)
+            if (instance != null)
             {
-                Object newInstance = classForName(entry.descriptor.concreteClassName).newInstance();
-                if (newInstance instanceof OrbitActor)
-                {
-                    final OrbitActor<?> orbitActor = (OrbitActor<?>) newInstance;
-                    orbitActor.reference = entry.reference;
-
-                    orbitActor.stateProvider = getFirstProvider(IStorageProvider.class);
+                return Task.fromValue(instance);
+            }
+            if (activating != null)
+            {
+                return activating;
+            }
+            final Object newInstance;
+            try
+            {
+                newInstance = classForName(entry.descriptor.concreteClassName).newInstance();
+            }
+            catch (Exception ex)
+            {
+                return Task.fromException(ex);
+            }
+            if (!(newInstance instanceof OrbitActor))
+            {
+                return Task.fromValue(instance);
+            }
+            final OrbitActor<?> orbitActor = (OrbitActor<?>) newInstance;
+            orbitActor.reference = entry.reference;
 
-                    Task.allOf(getAllProviders(ILifetimeProvider.class).stream().map(v -> v.preActivation(orbitActor))).join();
+            orbitActor.stateProvider = storageProvider;
 
-                    if (orbitActor.stateProvider != null)
+            Task<?> ready = Task.allOf(getAllProviders(ILifetimeProvider.class).stream().map(v -> v.preActivation(orbitActor)));
+            if (orbitActor.stateProvider != null)
+            {
+                ready = ready.thenCompose(() -> orbitActor.readState()).whenComplete((r, e) -> {
+                    if (e != null && logger.isErrorEnabled())
                     {
-                        try
-                        {
-                            orbitActor.readState();
-                        }
-                        catch (Exception ex)
+                        logger.error("Error reading actor state for: " + entry.reference, e);
+                    }
+                });
+            }
+            final Task<Object> activated = ready
+                    .thenCompose(() -> {
+                        synchronized (this)
                         {
-                            if (logger.isErrorEnabled())
-                            {
-                                logger.error("Error reading actor state for: " + entry.reference, ex);
-                            }
-                            throw ex;
+                            instance = newInstance;
                         }
+                        return orbitActor.activateAsync();
+                    })
+                    .thenCompose(() -> Task.allOf(getAllProviders(ILifetimeProvider.class).stream().map(v -> v.postActivation(orbitActor))))
+                    .thenApply(x -> newInstance);
+            if (!activated.isDone())
+            {
+                activating = activated;
+                activated.whenComplete((r, e) -> {
+                    synchronized (this)
+                    {
+                        // after a failure the next message tries again
+                        activating = null;
                     }
-                    instance = newInstance;
-
-                    orbitActor.activateAsync().join();
-                    Task.allOf(getAllProviders(ILifetimeProvider.class).stream().map(v -> v.postActivation(orbitActor))).join();
-                }
-
+                });
             }
-            return instance;
+            return activated;
         }
     }
 
@@ -451,9 +590,57 @@ public class Execution implements IRuntime
         this.messaging = messaging;
     }
 
+    /**
+     * Enables the periodic rebalancing of the activations between the server nodes,
+     * and an extra round shortly after new nodes join the cluster.
+     */
+    public void setRebalancer(final Rebalancer rebalancer, final long rebalanceIntervalMillis, final long rebalanceOnJoinDelayMillis)
+    {
+        this.rebalancer = rebalancer;
+        this.rebalanceIntervalMillis = rebalanceIntervalMillis;
+        this.rebalanceOnJoinDelayMillis = rebalanceOnJoinDelayMillis;
+    }
+
+    /**
+     * Schedules a rebalancing round when nodes join the cluster, if rebalancing is enabled.
+     * The delay gives the new nodes time to start, the nodes joining meanwhile share the same round.
+     */
+    public void onNodesJoined()
+    {
+        if (rebalancer == null || timer == null || !joinRebalanceScheduled.compareAndSet(false, true))
+        {
+            return;
+        }
+        try
+        {
+            timer.schedule(() -> {
+                joinRebalanceScheduled.set(false);
+                executeOrSkip(rebalancer::rebalance);
+            }, rebalanceOnJoinDelayMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            // stopping
+            joinRebalanceScheduled.set(false);
+        }
+    }
+
+    private void executeOrSkip(final Runnable runnable)
+    {
+        try
+        {
+            executor.execute(runnable);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            // the next periodic round will do it
+            logger.debug("Execution pool saturated, skipping the rebalancing round");
+        }
+    }
+
     public Task<?> stop()
     {
-        timer.cancel();
+        timer.shutdownNow();
         return Task.allOf(orbitProviders.stream().map(v -> v.stop()));
     }
 
@@ -545,11 +732,10 @@ public class Execution implements IRuntime
                                       final long dueTime, final long period,
                                       final TimeUnit timeUnit)
     {
+        final AtomicBoolean canceled = new AtomicBoolean();
         // TODO: handle deactivation.
-        final TimerTask timerTask = new TimerTask()
+        final Runnable timerTask = new Runnable()
         {
-            boolean canceled;
-
             @Override
             public void run()
             {
@@ -559,7 +745,7 @@ public class Execution implements IRuntime
                             bind();
                             try
                             {
-                                if (!canceled)
+                                if (!canceled.get())
                                 {
                                     return taskCallable.call();
                                 }
@@ -571,16 +757,14 @@ public class Execution implements IRuntime
                             return Task.done();
                         }, 1000);
             }
-
-            @Override
-            public boolean cancel()
-            {
-                canceled = true;
-                return super.cancel();
-            }
         };
-        timer.schedule(timerTask, timeUnit.toMillis(dueTime), timeUnit.toMillis(period));
-        return () -> timerTask.cancel();
+        final ScheduledFuture<?> future = period > 0
+                ? timer.scheduleWithFixedDelay(timerTask, timeUnit.toMillis(dueTime), timeUnit.toMillis(period), TimeUnit.MILLISECONDS)
+                : timer.schedule(timerTask, timeUnit.toMillis(dueTime), TimeUnit.MILLISECONDS);
+        return () -> {
+            canceled.set(true);
+            future.cancel(false);
+        };
     }
 
     public void bind()
@@ -621,13 +805,18 @@ public class Execution implements IRuntime
         return runtimeIdentity;
     }
 
-    public void start()
+    /**
+     * Starts the execution, the providers, the class finder and the factory warm up run in parallel.
+     *
+     * @return a task completed when all of them are ready
+     */
+    public Task<?> start()
     {
         finder = getFirstProvider(IActorClassFinder.class);
-        if (finder == null)
+        final boolean defaultFinder = finder == null;
+        if (defaultFinder)
         {
-            finder = new ActorClassFinder();
-            finder.start().join();
+            finder = new ActorClassFinder(classIndexCache);
         }
 
         getDescriptor(IHosting.class);
@@ -638,30 +827,108 @@ public class Execution implements IRuntime
             executor = ExecutorUtils.newScalingThreadPool(1000);
         }
         executionSerializer = new ExecutionSerializer<>(executor);
+        executionSerializer.setClock(clock);
+        if (timer == null)
+        {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "Orbit stage timer"));
+        }
+
+        storageProvider = getFirstProvider(IStorageProvider.class);
+        if (storageProvider != null && storageExecutor != null)
+        {
+            storageProvider = new ExecutorStorageProvider(storageProvider, storageExecutor);
+        }
+        if (storageProvider != null && stateCacheMaxBytes > 0)
+        {
+            final CachingStorageProvider.StateSerializer stateSerializer = CachingStorageProvider.createJsonSerializer();
+            if (stateSerializer == null)
+            {
+                logger.warn("The state cache requires orbit-actors-json in the class path, the states won't be cached");
+            }
+            else
+            {
+                // in front of the storage executor, the cache hits don't leave the actor thread
+                storageProvider = new CachingStorageProvider(storageProvider,
+                        r -> hosting.isActorAt(r._interfaceClass().getName(), r.id, messaging.getNodeAddress()),
+                        stateCacheMaxBytes, stateCacheTtlMillis, stateSerializer);
+            }
+        }
 
         invokeHook = getFirstProvider(IInvokeHookProvider.class);
+        if (responseCacheMaxEntries > 0)
+        {
+            responseCache = new ResponseCache(responseCacheMaxEntries,
+                    (r, methodId) -> {
+                        final InterfaceDescriptor descriptor = getDescriptor(r._interfaceClass());
+                        return descriptor != null && descriptor.factory != null ? descriptor.factory.getCacheTtlMillis(methodId) : 0;
+                    },
+                    invokeHook, clock, messaging::copyResponse);
+            invokeHook = responseCache;
+        }
+
+        final List<Task<?>> startTasks = new ArrayList<>();
+        final Task<?> finderStart = defaultFinder ? startAsync(finder) : Task.done();
+        startTasks.add(finderStart);
+        orbitProviders.forEach(v -> startTasks.add(startAsync(v)));
+        if (prewarmFactories)
+        {
+            startTasks.add(finderStart.thenRun(this::prewarmFactories));
+        }
+        startedProviders = Task.allOf(startTasks);
 
-        orbitProviders.forEach(v -> v.start());
         // schedules the cleanup
-        timer.schedule(new TimerTask()
+        timer.scheduleWithFixedDelay(this::scheduleActivationCleanup,
+                cleanupIntervalMillis, cleanupIntervalMillis, TimeUnit.MILLISECONDS);
+
+        if (rebalancer != null)
         {
-            @Override
-            public void run()
-            {
-                ForkJoinTask.adapt(() -> activationCleanup(true)).fork();
-            }
-        }, cleanupIntervalMillis, cleanupIntervalMillis);
+            timer.scheduleWithFixedDelay(() -> executor.execute(rebalancer::rebalance),
+                    rebalanceIntervalMillis, rebalanceIntervalMillis, TimeUnit.MILLISECONDS);
+        }
 
         // TODO move this logic the messaging class
         // schedules the message cleanup
-        timer.schedule(new TimerTask()
+        timer.scheduleWithFixedDelay(() -> messaging.timeoutCleanup(), 5000, 5000, TimeUnit.MILLISECONDS);
+        return startedProviders;
+    }
+
+    private Task<?> startAsync(final Startable startable)
+    {
+        return Task.from(CompletableFuture.supplyAsync(startable::start, executor))
+                .thenCompose(t -> t != null ? t.thenApply(x -> null) : Task.done());
+    }
+
+    /**
+     * Creates the factories, references and invokers of all the actors in the compile time index,
+     * so the first messages don't pay for that.
+     */
+    private void prewarmFactories()
+    {
+        if (!(finder instanceof ActorClassFinder))
         {
-            @Override
-            public void run()
+            return;
+        }
+        final long start = System.nanoTime();
+        int count = 0;
+        for (String interfaceName : ((ActorClassFinder) finder).getIndexedInterfaces())
+        {
+            final Class<?> aInterface = classForName(interfaceName, true);
+            if (aInterface != null)
             {
-                messaging.timeoutCleanup();
+                getDescriptor(aInterface);
+                canActivateActor(interfaceName, -1);
+                count++;
             }
-        }, 5000, 5000);
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Prewarmed " + count + " actor factories in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        }
+    }
+
+    public void setPrewarmFactories(final boolean prewarmFactories)
+    {
+        this.prewarmFactories = prewarmFactories;
     }
 
     private <T> Class<T> classForName(final String className)
@@ -732,14 +999,36 @@ public class Execution implements IRuntime
                                   final boolean oneway, final int messageId, final int interfaceId, final int methodId,
                                   final Object key, final Object[] params)
     {
+        onMessageReceived(from, oneway, messageId, interfaceId, methodId, key, params, 0);
+    }
+
+    /**
+     * @param deadline the time after which the caller is no longer waiting for the response, zero if unknown.
+     */
+    public void onMessageReceived(final INodeAddress from,
+                                  final boolean oneway, final int messageId, final int interfaceId, final int methodId,
+                                  final Object key, final Object[] params, final long deadline)
+    {
+        if (!startedProviders.isDone())
+        {
+            // the node joins the cluster while the providers are still starting
+            startedProviders.whenComplete((r, e) -> onMessageReceived(from, oneway, messageId, interfaceId, methodId, key, params, deadline));
+            return;
+        }
         EntryKey entryKey = new EntryKey(interfaceId, key);
         if (logger.isDebugEnabled())
         {
             logger.debug("onMessageReceived for: " + entryKey);
         }
         messagesReceived.incrementAndGet();
+        final InterfaceDescriptor descriptor = getDescriptor(interfaceId);
+        final ActorFactory<?> factory = descriptor != null && !descriptor.isObserver ? descriptor.factory : null;
+        final int capacity = getMailboxCapacity(factory);
+        final boolean highPriority = factory != null && factory.isHighPriority(methodId);
+        final boolean droppable = oneway && factory != null && factory.isDropOldestOneWay();
         if (!executionSerializer.offerJob(entryKey,
-                () -> handleOnMessageReceived(entryKey, from, oneway, messageId, interfaceId, methodId, key, params), maxQueueSize))
+                () -> handleOnMessageReceived(entryKey, from, oneway, messageId, interfaceId, methodId, key, params, deadline), capacity,
+                getInterleave(interfaceId, methodId), highPriority, droppable, oneway ? 0 : deadline))
         {
             refusedExecutions.incrementAndGet();
             if (logger.isErrorEnabled())
@@ -751,15 +1040,128 @@ public class Execution implements IRuntime
                 messaging.sendResponse(from, MessageDefinitions.ERROR_RESPONSE, messageId, "Execution refused");
             }
         }
+        else if (from != null && !from.equals(messaging.getNodeAddress())
+                && executionSerializer.getQueueSize(entryKey) >= capacity * backpressureThreshold
+                && backpressureSignals.asMap().putIfAbsent(Arrays.asList(from, entryKey), Boolean.TRUE) == null)
+        {
+            // warns the sender that this mailbox is getting full, at most once per signal interval.
+            messaging.sendBackpressure(from, interfaceId, key);
+        }
+    }
+
+    private int getMailboxCapacity(final ActorFactory<?> factory)
+    {
+        return factory != null && factory.getMailboxCapacity() > 0 ? factory.getMailboxCapacity() : maxQueueSize;
+    }
+
+    /**
+     * Called when an actor in another node signals that its mailbox is getting full.
+     */
+    public void onBackpressure(final INodeAddress from, final int interfaceId, final Object key)
+    {
+        backpressuredActors.put(new EntryKey(interfaceId, key), Boolean.TRUE);
+    }
+
+    @Override
+    public boolean isBackpressured(final IAddressable reference)
+    {
+        final ActorReference<?> actorReference = (ActorReference<?>) reference;
+        final EntryKey entryKey = new EntryKey(actorReference._interfaceId(), actorReference.id);
+        if (backpressuredActors.getIfPresent(entryKey) != null)
+        {
+            return true;
+        }
+        // the actor might be local
+        final InterfaceDescriptor descriptor = getDescriptor(entryKey.interfaceId);
+        final ActorFactory<?> factory = descriptor != null && !descriptor.isObserver ? descriptor.factory : null;
+        return executionSerializer.getQueueSize(entryKey) >= getMailboxCapacity(factory) * backpressureThreshold;
     }
 
-    // this method is executed serially by entryKey
+    public void setMaxQueueSize(final int maxQueueSize)
+    {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public int getMaxQueueSize()
+    {
+        return maxQueueSize;
+    }
+
+    public void setIdempotentRetries(final int idempotentRetries)
+    {
+        this.idempotentRetries = idempotentRetries;
+    }
+
+    /**
+     * @return the number of idempotent calls sent again because the target node left the cluster.
+     */
+    public long getRetriedMessages()
+    {
+        return retriedMessages.get();
+    }
+
+    public void setClassIndexCache(final Path classIndexCache)
+    {
+        this.classIndexCache = classIndexCache;
+    }
+
+    /**
+     * @return how many messages were discarded because their callers had already timed out.
+     */
+    public long getExpiredMessages()
+    {
+        return executionSerializer.getExpiredJobs() + expiredMessages.get();
+    }
+
+    /**
+     * @return how many one-way messages were discarded to make room in full mailboxes.
+     */
+    public long getDroppedMessages()
+    {
+        return executionSerializer.getDroppedJobs();
+    }
+
+    public long getRefusedExecutions()
+    {
+        return refusedExecutions.get();
+    }
+
+    private ExecutionSerializer.Interleave getInterleave(final int interfaceId, final int methodId)
+    {
+        final InterfaceDescriptor descriptor = getDescriptor(interfaceId);
+        if (descriptor == null)
+        {
+            return ExecutionSerializer.Interleave.NONE;
+        }
+        final ActorFactory<?> factory = descriptor.factory;
+        if (descriptor.isObserver)
+        {
+            return factory.isAlwaysInterleave(methodId) ? ExecutionSerializer.Interleave.ALWAYS : ExecutionSerializer.Interleave.NONE;
+        }
+        if (factory.isReentrant() || factory.isAlwaysInterleave(methodId))
+        {
+            return ExecutionSerializer.Interleave.ALWAYS;
+        }
+        return factory.isReadOnly(methodId) ? ExecutionSerializer.Interleave.READ_ONLY : ExecutionSerializer.Interleave.NONE;
+    }
+
+    // this method is executed serially by entryKey, except for interleaved messages
     private Task<?> handleOnMessageReceived(final EntryKey entryKey, final INodeAddress from,
                                             final boolean oneway, final int messageId, final int interfaceId,
                                             final int methodId, final Object key,
-                                            final Object[] params)
+                                            final Object[] params, final long deadline)
     {
         messagesHandled.incrementAndGet();
+        if (deadline > 0 && deadline < clock.millis())
+        {
+            // the caller already gave up waiting for this response
+            expiredMessages.incrementAndGet();
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Dropping expired message: " + key + ":" + interfaceId + ":" + methodId + ":" + messageId);
+            }
+            return Task.done();
+        }
         final InterfaceDescriptor descriptor = getDescriptor(interfaceId);
         if (descriptor.isObserver)
         {
@@ -774,7 +1176,7 @@ public class Execution implements IRuntime
             }
             final Task<?> task = descriptor.invoker.safeInvoke(observer, methodId, params);
             return task.whenComplete((r, e) ->
-                    sendResponseAndLogError(oneway, from, messageId, (Object) r, e));
+                    sendResponseAndLogError(oneway, from, messageId, (Object) r, e, interfaceId));
         }
 
         ReferenceEntry entry = localActors.get(entryKey);
@@ -787,36 +1189,32 @@ public class Execution implements IRuntime
 
         if (entry == null)
         {
-            // TODO check if this is the activation node. Otherwise forward to the activation node.
-            entry = new ReferenceEntry();
-            entry.descriptor = descriptor;
-            entry.statelessWorker = descriptor.factory.getInterface().isAnnotationPresent(StatelessWorker.class);
-            if (entry.statelessWorker)
+            final INodeAddress movedTo = movedActors.getIfPresent(entryKey);
+            if (movedTo != null)
             {
-                entry.statelessActivations = new ConcurrentLinkedDeque<>();
+                if (hosting.isActorAt(descriptor.factory.getInterface().getName(), key, movedTo))
+                {
+                    return forwardMessage(movedTo, from, oneway, messageId, interfaceId, methodId, key, params);
+                }
+                // the actor moved again, possibly back to this node
+                movedActors.invalidate(entryKey);
             }
-            entry.reference = (ActorReference<?>) descriptor.factory.createReference(key != null ? String.valueOf(key) : null);
-            entry.reference.runtime = this;
-            entry.removable = true;
-
-            ReferenceEntry old = localActors.putIfAbsent(entryKey, entry);
-            if (old != null)
+            if (draining)
             {
-                // this should be impossible if all accesses are serial.
-                logger.error("Unexpected state: Non serial access to entry!");
-                entry = old;
+                return relocateMessage(descriptor, from, oneway, messageId, interfaceId, methodId, key, params);
             }
+            entry = createEntry(entryKey, descriptor, key);
         }
 
         final ReferenceEntry theEntry = entry;
         if (!entry.statelessWorker)
         {
-            return executeMessage(theEntry, oneway, descriptor, methodId, params, from, messageId);
+            return executeMessage(theEntry, oneway, descriptor, methodId, params, from, messageId, deadline);
         }
         else
         {
             if (!executionSerializer.offerJob(null,
-                    () -> executeMessage(theEntry, oneway, descriptor, methodId, params, from, messageId),
+                    () -> executeMessage(theEntry, oneway, descriptor, methodId, params, from, messageId, deadline),
                     maxQueueSize))
             {
                 refusedExecutions.incrementAndGet();
@@ -834,20 +1232,405 @@ public class Execution implements IRuntime
 
     }
 
+    private ReferenceEntry createEntry(final EntryKey entryKey, final InterfaceDescriptor descriptor, final Object key)
+    {
+        ReferenceEntry entry = new ReferenceEntry();
+        entry.descriptor = descriptor;
+        entry.statelessWorker = descriptor.factory.getInterface().isAnnotationPresent(StatelessWorker.class);
+        if (entry.statelessWorker)
+        {
+            entry.statelessActivations = new ConcurrentLinkedDeque<>();
+        }
+        entry.reference = (ActorReference<?>) descriptor.factory.createReference(key != null ? String.valueOf(key) : null);
+        entry.reference.runtime = this;
+        entry.removable = true;
+
+        ReferenceEntry old = localActors.putIfAbsent(entryKey, entry);
+        if (old != null)
+        {
+            // this should be impossible if all accesses are serial.
+            logger.error("Unexpected state: Non serial access to entry!");
+            entry = old;
+        }
+        return entry;
+    }
+
+    // a draining node doesn't create activations, the message goes to the actor's new node
+    private Task<?> relocateMessage(final InterfaceDescriptor descriptor, final INodeAddress from,
+                                    final boolean oneway, final int messageId, final int interfaceId,
+                                    final int methodId, final Object key, final Object[] params)
+    {
+        final ActorReference<?> reference = (ActorReference<?>) descriptor.factory.createReference(key != null ? String.valueOf(key) : null);
+        return hosting.relocateActor(reference).whenComplete((to, e) -> {
+            if (e != null)
+            {
+                sendResponseAndLogError(oneway, from, messageId, null, e, interfaceId);
+            }
+            else
+            {
+                forwardMessage(to, from, oneway, messageId, interfaceId, methodId, key, params);
+            }
+        });
+    }
+
+    private Task<?> forwardMessage(final INodeAddress to, final INodeAddress from,
+                                   final boolean oneway, final int messageId, final int interfaceId,
+                                   final int methodId, final Object key, final Object[] params)
+    {
+        forwardedMessages.incrementAndGet();
+        if (from != null)
+        {
+            // the sender still has the old location cached
+            messaging.sendActorMoved(from, interfaceId, key);
+        }
+        final Task<?> forwarded = messaging.sendMessage(to, oneway, interfaceId, methodId, key, params);
+        if (!oneway)
+        {
+            forwarded.whenComplete((r, e) -> sendResponseAndLogError(false, from, messageId, r, e, interfaceId));
+        }
+        // the mailbox doesn't wait for the new node
+        return Task.done();
+    }
+
+    /**
+     * Called when a node tells that an actor this node was calling has migrated.
+     */
+    public void onActorMoved(final int interfaceId, final Object key)
+    {
+        final InterfaceDescriptor descriptor = getDescriptor(interfaceId);
+        if (descriptor != null && !descriptor.isObserver)
+        {
+            hosting.forgetLocation(descriptor.factory.getInterface().getName(), key);
+        }
+    }
+
+    /**
+     * Called when an actor tells that its cached responses are no longer valid.
+     */
+    public void onCacheInvalidation(final int interfaceId, final Object key)
+    {
+        if (responseCache != null)
+        {
+            responseCache.invalidate(interfaceId, key);
+        }
+    }
+
+    @Override
+    public Task<?> invalidateCachedResponses(final IAddressable reference)
+    {
+        final ActorReference<?> actorReference = (ActorReference<?>) reference;
+        final int interfaceId = actorReference._interfaceId();
+        onCacheInvalidation(interfaceId, actorReference.id);
+        final INodeAddress localAddress = messaging.getNodeAddress();
+        for (INodeAddress address : hosting.getActiveNodes())
+        {
+            if (!address.equals(localAddress))
+            {
+                messaging.sendCacheInvalidation(address, interfaceId, actorReference.id);
+            }
+        }
+        return Task.done();
+    }
+
+    /**
+     * Moves an actor activated in this node to another node.
+     * <p>
+     * The migration waits in the actor mailbox for the messages being processed, then writes the actor state,
+     * deactivates it and updates the directory. The next messages are activated in the target node,
+     * messages arriving at this node are forwarded.
+     * </p>
+     *
+     * @return true if the actor was moved, false if it's not active in this node or can't be moved.
+     */
+    public Task<Boolean> migrateActor(final IAddressable actor, final INodeAddress target)
+    {
+        final ActorReference<?> reference = (ActorReference<?>) actor;
+        if (target.equals(messaging.getNodeAddress())
+                || !hosting.canActivate(target, reference._interfaceClass().getName()))
+        {
+            // also makes sure the target knows the interface before the messages are forwarded
+            return Task.fromValue(false);
+        }
+        final EntryKey entryKey = new EntryKey(reference._interfaceId(), reference.id);
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        final boolean offered = executionSerializer.offerJob(entryKey, () -> {
+            final ReferenceEntry entry = localActors.get(entryKey);
+            if (entry == null || entry.statelessWorker || !entry.removable)
+            {
+                result.complete(false);
+                return Task.done();
+            }
+            final Activation activation = entry.singleActivation;
+            final Task<?> deactivated = activation != null && activation.instance instanceof OrbitActor
+                    ? deactivate((OrbitActor<?>) activation.instance, true) : Task.done();
+            return deactivated.whenComplete((r, e) -> {
+                if (e != null)
+                {
+                    logger.error("Error migrating " + entry.reference + ", keeping it in this node", e);
+                    result.complete(false);
+                    return;
+                }
+                if (activation != null)
+                {
+                    activation.instance = null;
+                }
+                movedActors.put(entryKey, target);
+                localActors.remove(entryKey);
+                // the state will change in the new node
+                forgetCachedState(new ActorKey(entry.reference._interfaceClass().getName(), String.valueOf(entry.reference.id)));
+                hosting.actorMoved(entry.reference, target);
+                migratedActors.incrementAndGet();
+                result.complete(true);
+            });
+        }, maxQueueSize);
+        if (!offered)
+        {
+            result.complete(false);
+        }
+        return Task.from(result);
+    }
+
+    // the next activation, in this node or in another, reads the state written here
+    private Task<?> deactivate(final OrbitActor<?> orbitActor, final boolean writeState)
+    {
+        bind();
+        return (writeState && orbitActor.stateProvider != null ? orbitActor.writeState() : Task.done())
+                .thenCompose(() -> Task.allOf(getAllProviders(ILifetimeProvider.class).stream().map(v -> v.preDeactivation(orbitActor))))
+                .thenCompose(() -> orbitActor.deactivateAsync())
+                .thenCompose(() -> Task.allOf(getAllProviders(ILifetimeProvider.class).stream().map(v -> v.postDeactivation(orbitActor))));
+    }
+
+    /**
+     * Drains this node: stops taking new activations, then deactivates all the local actors
+     * after the messages already in their mailboxes, writing their states.
+     * At most {@code concurrency} actors are deactivated at the same time to bound the load on the storage.
+     *
+     * @param concurrency the maximum number of parallel deactivations
+     * @param prewarm     if true the actors are activated in other nodes right away
+     * @return the number of actors deactivated
+     */
+    public Task<Integer> drain(final int concurrency, final boolean prewarm)
+    {
+        draining = true;
+        return hosting.startDraining()
+                .thenCompose(() -> drainActivations(concurrency))
+                .thenCompose(drained -> hosting.handOffActors(drained, prewarm).thenApply(r -> drained.size()));
+    }
+
+    public boolean isDraining()
+    {
+        return draining;
+    }
+
+    private Task<List<ActorReference<?>>> drainActivations(final int concurrency)
+    {
+        final Queue<EntryKey> pending = new ConcurrentLinkedQueue<>(localActors.keySet());
+        final List<ActorReference<?>> drained = Collections.synchronizedList(new ArrayList<>());
+        final List<CompletableFuture<Void>> lanes = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, concurrency); i++)
+        {
+            final CompletableFuture<Void> lane = new CompletableFuture<>();
+            lanes.add(lane);
+            drainNext(pending, drained, lane);
+        }
+        return Task.allOf(lanes).thenApply(r -> new ArrayList<>(drained));
+    }
+
+    private void drainNext(final Queue<EntryKey> pending, final List<ActorReference<?>> drained, final CompletableFuture<Void> lane)
+    {
+        final EntryKey entryKey = pending.poll();
+        if (entryKey == null)
+        {
+            lane.complete(null);
+            return;
+        }
+        deactivateEntry(entryKey).whenComplete((r, e) -> {
+            if (r != null)
+            {
+                drained.add(r);
+            }
+            // continues from the pool to avoid deep recursions when the deactivations complete synchronously
+            executor.execute(() -> drainNext(pending, drained, lane));
+        });
+    }
+
+    /**
+     * Deactivates an actor and removes its entry, in the actor's mailbox.
+     *
+     * @return the reference if the actor had an entry in the directory, otherwise null
+     */
+    private Task<ActorReference<?>> deactivateEntry(final EntryKey entryKey)
+    {
+        final CompletableFuture<ActorReference<?>> result = new CompletableFuture<>();
+        final boolean offered = executionSerializer.offerJob(entryKey, () -> {
+            final ReferenceEntry entry = localActors.get(entryKey);
+            if (entry == null || !entry.removable)
+            {
+                result.complete(null);
+                return Task.done();
+            }
+            final List<Task<?>> deactivations = new ArrayList<>();
+            if (entry.statelessWorker)
+            {
+                Activation activation;
+                while ((activation = entry.statelessActivations.pollFirst()) != null)
+                {
+                    if (activation.instance instanceof OrbitActor)
+                    {
+                        deactivations.add(deactivate((OrbitActor<?>) activation.instance, false));
+                    }
+                }
+            }
+            else if (entry.singleActivation != null && entry.singleActivation.instance instanceof OrbitActor)
+            {
+                deactivations.add(deactivate((OrbitActor<?>) entry.singleActivation.instance, true));
+            }
+            return Task.allOf(deactivations).whenComplete((r, e) -> {
+                if (e != null)
+                {
+                    logger.error("Error deactivating " + entry.reference + " during the drain", e);
+                }
+                if (entry.singleActivation != null)
+                {
+                    entry.singleActivation.instance = null;
+                }
+                localActors.remove(entryKey);
+                // stateless workers are not in the directory
+                result.complete(entry.statelessWorker ? null : entry.reference);
+            });
+        }, maxQueueSize);
+        if (!offered)
+        {
+            result.complete(null);
+        }
+        return Task.from(result);
+    }
+
+    /**
+     * Activates actors ahead of their first message, used for the actors handed over by a draining node.
+     *
+     * @return the number of actors activated
+     */
+    public Task<Integer> activateActors(final String interfaceName, final List<String> ids)
+    {
+        if (draining || !canActivateActor(interfaceName, -1))
+        {
+            return Task.fromValue(0);
+        }
+        final InterfaceDescriptor descriptor = getDescriptor(classForName(interfaceName));
+        if (descriptor.factory.getInterface().isAnnotationPresent(StatelessWorker.class))
+        {
+            return Task.fromValue(0);
+        }
+        final AtomicInteger activated = new AtomicInteger();
+        final List<CompletableFuture<Void>> activations = new ArrayList<>(ids.size());
+        for (String id : ids)
+        {
+            final EntryKey entryKey = new EntryKey(descriptor.factory.getInterfaceId(), id);
+            final CompletableFuture<Void> activation = new CompletableFuture<>();
+            activations.add(activation);
+            final boolean offered = executionSerializer.offerJob(entryKey, () -> {
+                try
+                {
+                    ReferenceEntry entry = localActors.get(entryKey);
+                    if (entry == null)
+                    {
+                        entry = createEntry(entryKey, descriptor, id);
+                    }
+                    final Activation act = entry.popActivation();
+                    try
+                    {
+                        bind();
+                        // keeps the mailbox busy until the state is loaded
+                        return act.getOrCreateInstance().whenComplete((r, e) -> {
+                            if (e != null)
+                            {
+                                logger.error("Error activating " + interfaceName + ":" + id, e);
+                            }
+                            else
+                            {
+                                activated.incrementAndGet();
+                            }
+                            activation.complete(null);
+                        });
+                    }
+                    finally
+                    {
+                        entry.pushActivation(act);
+                    }
+                }
+                catch (Exception ex)
+                {
+                    logger.error("Error activating " + interfaceName + ":" + id, ex);
+                }
+                activation.complete(null);
+                return Task.done();
+            }, maxQueueSize);
+            if (!offered)
+            {
+                activation.complete(null);
+            }
+        }
+        return Task.allOf(activations).thenApply(r -> activated.get());
+    }
+
+    /**
+     * @return up to max references to actors of this node that can be migrated.
+     */
+    List<ActorReference<?>> getMigrationCandidates(final int max)
+    {
+        final List<ActorReference<?>> candidates = new ArrayList<>(Math.min(max, localActors.size()));
+        for (ReferenceEntry entry : localActors.values())
+        {
+            if (candidates.size() >= max)
+            {
+                break;
+            }
+            // actors processing messages have no activation parked in the entry,
+            // the reminder controller only restarts its timers when activated
+            if (!entry.statelessWorker && entry.removable && entry.singleActivation != null
+                    && entry.reference._interfaceClass() != IReminderController.class)
+            {
+                candidates.add(entry.reference);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @return the number of actors with activations in this node.
+     */
+    public int getActivationCount()
+    {
+        return localActors.size();
+    }
+
+    public long getMigratedActors()
+    {
+        return migratedActors.get();
+    }
+
+    public long getForwardedMessages()
+    {
+        return forwardedMessages.get();
+    }
+
     static class MessageContext
     {
         ReferenceEntry theEntry;
         int methodId;
         INodeAddress from;
         long traceId;
+        long deadline;
         public static final AtomicLong counter = new AtomicLong(0L);
 
-        public MessageContext(final ReferenceEntry theEntry, final int methodId, final INodeAddress from)
+        public MessageContext(final ReferenceEntry theEntry, final int methodId, final INodeAddress from, final long deadline)
         {
             traceId = counter.incrementAndGet();
             this.theEntry = theEntry;
             this.methodId = methodId;
             this.from = from;
+            this.deadline = deadline;
         }
     }
 
@@ -873,7 +1656,61 @@ public class Execution implements IRuntime
         return current.traceId;
     }
 
+    /**
+     * The deadline is also known in the continuations of the calls made while handling the message,
+     * like the code after an {@code await}.
+     * Continuations of other futures (storage, timers, application executors) don't inherit it
+     * and their calls use the full response timeout.
+     *
+     * @return the time after which the caller of the current message stops waiting, zero if there is none.
+     */
+    public long getCurrentDeadline()
+    {
+        MessageContext current = currentMessage.get();
+        if (current == null)
+        {
+            final Long deadline = continuationDeadline.get();
+            return deadline != null ? deadline : 0;
+        }
+        return current.deadline;
+    }
+
+    /**
+     * Runs the completion of a call, made while handling a message, with the deadline of that message.
+     * The thread might be handling another message (ex: a hosting response), its context is hidden meanwhile.
+     */
+    <T> T withDeadline(final long deadline, final Supplier<T> completion)
+    {
+        final Long previous = continuationDeadline.get();
+        final MessageContext previousMessage = currentMessage.get();
+        continuationDeadline.set(deadline);
+        if (previousMessage != null)
+        {
+            currentMessage.remove();
+        }
+        try
+        {
+            return completion.get();
+        }
+        finally
+        {
+            if (previous != null)
+            {
+                continuationDeadline.set(previous);
+            }
+            else
+            {
+                continuationDeadline.remove();
+            }
+            if (previousMessage != null)
+            {
+                currentMessage.set(previousMessage);
+            }
+        }
+    }
+
     ThreadLocal<MessageContext> currentMessage = new ThreadLocal<>();
+    private final ThreadLocal<Long> continuationDeadline = new ThreadLocal<>();
 
     private Task<?> executeMessage(
             final ReferenceEntry theEntry,
@@ -882,37 +1719,80 @@ public class Execution implements IRuntime
             final int methodId,
             final Object[] params,
             final INodeAddress from,
-            final int messageId)
+            final int messageId,
+            final long deadline)
     {
         try
         {
 
-            currentMessage.set(new MessageContext(theEntry, methodId, from));
+            final MessageContext context = new MessageContext(theEntry, methodId, from, deadline);
+            currentMessage.set(context);
             Activation activation = theEntry.popActivation();
             activation.lastAccess = clock.millis();
             Task<?> future;
             try
             {
                 bind();
-                future = descriptor.invoker.safeInvoke(activation.getOrCreateInstance(), methodId, params);
+                final Task<Object> instance = activation.getOrCreateInstance();
+                if (instance.isDone() && !instance.isCompletedExceptionally())
+                {
+                    future = descriptor.invoker.safeInvoke(instance.join(), methodId, params);
+                }
+                else
+                {
+                    // the state is still loading, the actor is invoked in the execution pool when it is activated.
+                    future = Task.from(instance.thenComposeAsync(i -> invokeActivated(context, descriptor, i, methodId, params), this::executeOrRun));
+                }
                 return future.whenComplete((r, e) -> {
-                    sendResponseAndLogError(oneway, from, messageId, r, e);
+                    sendResponseAndLogError(oneway, from, messageId, r, e, descriptor.factory.getInterfaceId());
                 });
             }
             finally
             {
                 // we don't need to unset the Runtime, @see Runtime.setRuntime:
                 theEntry.pushActivation(activation);
+                // the pool thread will run other tasks, they must not inherit this message's context or deadline
+                currentMessage.remove();
             }
         }
         catch (Exception ex)
         {
-            sendResponseAndLogError(oneway, from, messageId, null, ex);
+            sendResponseAndLogError(oneway, from, messageId, null, ex, descriptor.factory.getInterfaceId());
         }
         return Task.done();
     }
 
-    protected void sendResponseAndLogError(boolean oneway, final INodeAddress from, int messageId, Object result, Throwable exception)
+    /**
+     * Continuations that must not be lost, like the invocation after an activation, run in the caller thread if the pool is saturated.
+     */
+    private void executeOrRun(final Runnable runnable)
+    {
+        try
+        {
+            executor.execute(runnable);
+        }
+        catch (RejectedExecutionException ex)
+        {
+            runnable.run();
+        }
+    }
+
+    private Task<?> invokeActivated(final MessageContext context, final InterfaceDescriptor descriptor,
+                                    final Object instance, final int methodId, final Object[] params)
+    {
+        currentMessage.set(context);
+        try
+        {
+            bind();
+            return descriptor.invoker.safeInvoke(instance, methodId, params);
+        }
+        finally
+        {
+            currentMessage.remove();
+        }
+    }
+
+    protected void sendResponseAndLogError(boolean oneway, final INodeAddress from, int messageId, Object result, Throwable exception, int interfaceId)
     {
         if (exception != null && logger.isErrorEnabled())
         {
@@ -925,7 +1805,7 @@ public class Execution implements IRuntime
             {
                 if (exception == null)
                 {
-                    messaging.sendResponse(from, MessageDefinitions.NORMAL_RESPONSE, messageId, result);
+                    messaging.sendResponse(from, MessageDefinitions.NORMAL_RESPONSE, messageId, result, interfaceId);
                 }
                 else
                 {
@@ -1026,13 +1906,50 @@ public class Execution implements IRuntime
         INodeAddress toNode = actorReference.address;
         if (toNode == null)
         {
+            // the message is sent after the actor is located, possibly in another thread
+            final long deadline = getCurrentDeadline();
+            if (!oneWay && idempotentRetries > 0 && isIdempotent(actorReference._interfaceClass(), methodId))
+            {
+                return sendWithRetries(actorReference, methodId, params, idempotentRetries, deadline);
+            }
             // TODO: Ensure that both paths encode exception the same way.
             return hosting.locateActor(actorReference)
-                    .thenCompose(x -> messaging.sendMessage(x, oneWay, actorReference._interfaceId(), methodId, actorReference.id, params));
+                    .thenCompose(x -> withDeadline(deadline,
+                            () -> messaging.sendMessage(x, oneWay, actorReference._interfaceId(), methodId, actorReference.id, params)));
         }
         return messaging.sendMessage(toNode, oneWay, actorReference._interfaceId(), methodId, actorReference.id, params);
     }
 
+    private boolean isIdempotent(final Class<?> interfaceClass, final int methodId)
+    {
+        final InterfaceDescriptor descriptor = getDescriptor(interfaceClass);
+        return descriptor != null && descriptor.factory != null && descriptor.factory.isIdempotent(methodId);
+    }
+
+    /**
+     * Locates the actor again and resends the message if the node hosting it leaves the cluster before responding.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Task<?> sendWithRetries(final ActorReference<?> actorReference, final int methodId, final Object[] params, final int retries, final long deadline)
+    {
+        final Task<?> task = hosting.locateActor(actorReference)
+                .thenCompose(x -> withDeadline(deadline,
+                        () -> messaging.sendMessage(x, false, actorReference._interfaceId(), methodId, actorReference.id, params)));
+        return task.handle((r, e) -> {
+            final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (retries > 0 && cause instanceof NodeDroppedException)
+            {
+                retriedMessages.incrementAndGet();
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Retrying " + actorReference + ":" + methodId + " after " + cause.getMessage());
+                }
+                return (Task) sendWithRetries(actorReference, methodId, params, retries - 1, deadline);
+            }
+            return (Task) task;
+        }).thenCompose(t -> t);
+    }
+
     public Task<?> invoke(IAddressable toReference, Method m, boolean oneWay, final int methodId, final Object[] params)
     {
         final ActorReference source = getCurrentActivation();
@@ -1049,37 +1966,83 @@ public class Execution implements IRuntime
                 }
             }
         }
-        if (invokeHook == null)
-        {
-            return sendMessage(toReference, oneWay, methodId, params).whenComplete((r, e) -> {
-                if (traceEnabled)
+        final long deadline = getCurrentDeadline();
+        final Task<?> sent = (invokeHook == null
+                ? sendMessage(toReference, oneWay, methodId, params)
+                : invokeHook.invoke(this, toReference, m, oneWay, methodId, params)).whenComplete((r, e) -> {
+            if (traceEnabled)
+            {
+                for (IInvokeListenerProvider v : getAllProviders(IInvokeListenerProvider.class))
                 {
-                    for (IInvokeListenerProvider v : getAllProviders(IInvokeListenerProvider.class))
-                    {
-                        v.postInvoke(traceId, r);
-                    }
+                    v.postInvoke(traceId, r);
                 }
-            });
+            }
+        });
+        if (deadline == 0 || oneWay)
+        {
+            return sent;
         }
-        else
+        // the caller continuations, like the code after an await, inherit its runtime and deadline whichever thread completes the call
+        final CompletableFuture<Object> response = new CompletableFuture<>();
+        final Task<Object> task = Task.from(response);
+        sent.whenComplete((r, e) -> {
+            bind();
+            withDeadline(deadline, () -> e == null ? response.complete(r) : response.completeExceptionally(e));
+        });
+        return task;
+    }
+
+    /**
+     * Starts a cleanup round in the execution pool without blocking it, unless the previous round is still running.
+     */
+    private void scheduleActivationCleanup()
+    {
+        if (!cleanupRunning.compareAndSet(false, true))
         {
-            return invokeHook.invoke(this, toReference, m, oneWay, methodId, params).whenComplete((r, e) -> {
-                if (traceEnabled)
+            return;
+        }
+        try
+        {
+            executor.execute(() -> {
+                final Task<?> round;
+                try
                 {
-                    for (IInvokeListenerProvider v : getAllProviders(IInvokeListenerProvider.class))
-                    {
-                        v.postInvoke(traceId, r);
-                    }
+                    round = startActivationCleanup();
+                }
+                catch (RuntimeException ex)
+                {
+                    cleanupRunning.set(false);
+                    throw ex;
                 }
+                round.whenComplete((r, e) -> cleanupRunning.set(false));
             });
         }
+        catch (RejectedExecutionException ex)
+        {
+            // the pool is saturated, trying again in the next round
+            cleanupRunning.set(false);
+        }
     }
 
     public void activationCleanup(final boolean block)
+    {
+        final Task<?> round = startActivationCleanup();
+        if (block)
+        {
+            round.join();
+        }
+    }
+
+    /**
+     * Queues the deactivation of the actors not used recently.
+     *
+     * @return a task completed when those deactivations complete
+     */
+    private Task<?> startActivationCleanup()
     {
 
         long cutOut = clock.millis() - TimeUnit.MINUTES.toMillis(10);
-        final List<CompletableFuture<?>> futures = block ? new ArrayList<>() : null;
+        final List<CompletableFuture<?>> futures = new ArrayList<>();
         for (Iterator<Map.Entry<EntryKey, ReferenceEntry>> iterator = localActors.entrySet().iterator(); iterator.hasNext(); )
         {
             Map.Entry<EntryKey, ReferenceEntry> mEntry = iterator.next();
@@ -1130,15 +2093,12 @@ public class Execution implements IRuntime
                         throw new UncheckedException(ex);
                     }
                 };
-                if (executionSerializer.offerJob(mEntry.getKey(), task, maxQueueSize) && block)
+                if (executionSerializer.offerJob(mEntry.getKey(), task, maxQueueSize))
                 {
                     futures.add(future);
                 }
             }
         }
-        if (block)
-        {
-            Task.allOf(futures).join();
-        }
+        return Task.allOf(futures);
     }
 }
@@ -34,11 +34,15 @@ import com.ea.orbit.concurrent.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Clock;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 /**
@@ -50,6 +54,28 @@ public class ExecutionSerializer<T>
     private ExecutorService executorService;
     private Map<Object, Runner> running = new HashMap<>();
     private Object mutex = new Object();
+    private Clock clock = Clock.systemUTC();
+    private AtomicLong expiredJobs = new AtomicLong();
+    private AtomicLong droppedJobs = new AtomicLong();
+
+    /**
+     * Defines if a job may start while other jobs with the same key are waiting for their tasks.
+     */
+    public enum Interleave
+    {
+        /**
+         * Only starts when no other job of the same key is pending.
+         */
+        NONE,
+        /**
+         * May interleave with other READ_ONLY jobs.
+         */
+        READ_ONLY,
+        /**
+         * May interleave with any other job.
+         */
+        ALWAYS
+    }
 
     public ExecutionSerializer()
     {
@@ -61,33 +87,171 @@ public class ExecutionSerializer<T>
         this.executorService = executor;
     }
 
+    public void setClock(final Clock clock)
+    {
+        this.clock = clock;
+    }
+
+    /**
+     * @return how many jobs were discarded because their deadline had passed.
+     */
+    public long getExpiredJobs()
+    {
+        return expiredJobs.get();
+    }
+
+    /**
+     * @return how many droppable jobs were discarded to make room for newer jobs.
+     */
+    public long getDroppedJobs()
+    {
+        return droppedJobs.get();
+    }
+
+    private static class Job
+    {
+        final Supplier<Task<?>> supplier;
+        final Interleave interleave;
+        final boolean droppable;
+        final long deadline;
+
+        Job(final Supplier<Task<?>> supplier, final Interleave interleave, final boolean droppable, final long deadline)
+        {
+            this.supplier = supplier;
+            this.interleave = interleave;
+            this.droppable = droppable;
+            this.deadline = deadline;
+        }
+    }
+
     protected class Runner implements Runnable
     {
-        Queue<Supplier<Task<?>>> queue = new LinkedBlockingQueue<>();
+        Queue<Job> queue = new LinkedBlockingQueue<>();
+        // high priority lane, always emptied before the normal queue
+        Queue<Job> priorityQueue = new LinkedBlockingQueue<>();
         T key;
+        // true while some thread is starting the jobs of this runner
+        boolean draining;
+        // jobs that were started but whose tasks are not yet complete
+        int pendingCount;
+        int pendingReadOnly;
+        int pendingAlways;
+
+        /**
+         * Must be called while holding the mutex.
+         */
+        Job peekNext()
+        {
+            final Job job = priorityQueue.peek();
+            return job != null ? job : queue.peek();
+        }
+
+        /**
+         * Takes the next job if it can start now, deciding and removing it atomically.
+         * Must be called while holding the mutex.
+         *
+         * @return the job to start or null if the next job must wait.
+         */
+        Job takeNext()
+        {
+            final Job job = peekNext();
+            if (job == null || !canStart(job))
+            {
+                return null;
+            }
+            return priorityQueue.peek() == job ? priorityQueue.poll() : queue.poll();
+        }
+
+        int size()
+        {
+            return priorityQueue.size() + queue.size();
+        }
+
+        /**
+         * Discards expired jobs, then the oldest droppable job, until there is room for one more job.
+         * Must be called while holding the mutex.
+         *
+         * @return true if there is room for a new job.
+         */
+        boolean makeRoom(int maxQueueSize)
+        {
+            final long now = clock.millis();
+            removeExpired(priorityQueue, now);
+            removeExpired(queue, now);
+            if (size() < maxQueueSize)
+            {
+                return true;
+            }
+            for (Iterator<Job> iterator = queue.iterator(); iterator.hasNext(); )
+            {
+                if (iterator.next().droppable)
+                {
+                    iterator.remove();
+                    droppedJobs.incrementAndGet();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void removeExpired(Queue<Job> jobs, long now)
+        {
+            for (Iterator<Job> iterator = jobs.iterator(); iterator.hasNext(); )
+            {
+                final Job job = iterator.next();
+                if (job.deadline > 0 && job.deadline < now)
+                {
+                    iterator.remove();
+                    expiredJobs.incrementAndGet();
+                }
+            }
+        }
+
+        /**
+         * Must be called while holding the mutex.
+         */
+        boolean canStart(Job job)
+        {
+            if (pendingCount == 0 || job.interleave == Interleave.ALWAYS)
+            {
+                return true;
+            }
+            if (job.interleave == Interleave.READ_ONLY)
+            {
+                return pendingReadOnly + pendingAlways == pendingCount;
+            }
+            return false;
+        }
 
         public void run()
         {
-            do
+            Job job;
+            // this is the loop for tasks that finish immediately or that can be interleaved
+            while ((job = takeNextOrStop(Runner.this)) != null)
             {
+                if (job.deadline > 0 && job.deadline < clock.millis())
+                {
+                    // nobody is waiting for this anymore
+                    expiredJobs.incrementAndGet();
+                    continue;
+                }
                 try
                 {
-                    final Supplier<Task<?>> taskSupplier = queue.remove();
-
                     // actual runtime of the supplier
-                    final Task<?> task = taskSupplier.get();
+                    final Task<?> task = job.supplier.get();
                     if (task != null && !task.isDone())
                     {
                         // if the task is not complete then it's completion will restart the sequential runtime.
-                        // since onComplete is only called when the tasks are completed, then the runner will never be
+                        // unless the next job is allowed to interleave, the runner will never be
                         // executing in parallel.
-                        task.whenCompleteAsync((r, e) -> {
-                            if (!onComplete(Runner.this))
+                        onStarted(job);
+                        final Job startedJob = job;
+                        task.whenComplete((r, e) -> {
+                            if (onFinished(Runner.this, startedJob))
                             {
-                                Runner.this.run();
+                                resume(Runner.this);
                             }
-                        }, executorService);
-                        return;
+                        });
                     }
                 }
                 catch (Throwable throwable)
@@ -98,8 +262,23 @@ public class ExecutionSerializer<T>
                         logger.error("Error executing a sequential task: " + key, throwable);
                     }
                 }
-                // this is the loop for tasks that finish immediately
-            } while (!onComplete(Runner.this));
+            }
+        }
+
+        private void onStarted(Job job)
+        {
+            synchronized (mutex)
+            {
+                pendingCount++;
+                if (job.interleave == Interleave.READ_ONLY)
+                {
+                    pendingReadOnly++;
+                }
+                else if (job.interleave == Interleave.ALWAYS)
+                {
+                    pendingAlways++;
+                }
+            }
         }
     }
 
@@ -109,55 +288,184 @@ public class ExecutionSerializer<T>
      * @return true if the task was accepted.
      */
     public boolean offerJob(T key, Supplier<Task<?>> run, int maxQueueSize)
+    {
+        return offerJob(key, run, maxQueueSize, Interleave.NONE);
+    }
+
+    /**
+     * Only accepts if the queue size is not exceeded.
+     *
+     * @param interleave defines if this job may start while other jobs with the same key are waiting.
+     * @return true if the task was accepted.
+     */
+    public boolean offerJob(T key, Supplier<Task<?>> run, int maxQueueSize, Interleave interleave)
+    {
+        return offerJob(key, run, maxQueueSize, interleave, false, false, 0);
+    }
+
+    /**
+     * Only accepts if the queue size is not exceeded, after discarding expired or droppable jobs.
+     *
+     * @param interleave   defines if this job may start while other jobs with the same key are waiting.
+     * @param highPriority if true the job is queued ahead of the normal priority jobs.
+     * @param droppable    if true the job may be discarded to make room for newer jobs.
+     * @param deadline     the time (in the serializer clock) after which the job should not be started, zero for none.
+     * @return true if the task was accepted.
+     */
+    public boolean offerJob(T key, Supplier<Task<?>> run, int maxQueueSize, Interleave interleave,
+                            boolean highPriority, boolean droppable, long deadline)
     {
         if (key == null)
         {
-            executorService.execute(() -> run.get());
+            try
+            {
+                executorService.execute(() -> run.get());
+            }
+            catch (RejectedExecutionException ex)
+            {
+                return false;
+            }
             return true;
         }
+        final Job job = new Job(run, interleave, droppable, deadline);
         synchronized (mutex)
         {
             Runner runner = running.get(key);
             if (runner != null)
             {
-                if (runner.queue.size() >= maxQueueSize)
+                if (runner.size() >= maxQueueSize && !runner.makeRoom(maxQueueSize))
                 {
                     return false;
                 }
-                runner.queue.add(run);
+                (highPriority ? runner.priorityQueue : runner.queue).add(job);
+                if (!runner.draining && runner.peekNext() == job && runner.canStart(job))
+                {
+                    // the runner is waiting for pending tasks, but this job can interleave with them.
+                    runner.draining = true;
+                    if (!tryExecute(runner))
+                    {
+                        // the pool is saturated, refusing the job instead of leaving the runner stuck in draining.
+                        runner.draining = false;
+                        (highPriority ? runner.priorityQueue : runner.queue).remove(job);
+                        return false;
+                    }
+                }
             }
             else
             {
                 runner = new Runner();
                 runner.key = key;
+                runner.draining = true;
                 running.put(key, runner);
-                runner.queue.add(run);
-                executorService.execute(runner);
+                (highPriority ? runner.priorityQueue : runner.queue).add(job);
+                if (!tryExecute(runner))
+                {
+                    running.remove(key);
+                    return false;
+                }
             }
         }
         return true;
     }
 
+    private boolean tryExecute(Runner runner)
+    {
+        try
+        {
+            executorService.execute(runner);
+            return true;
+        }
+        catch (RejectedExecutionException ex)
+        {
+            return false;
+        }
+    }
+
     /**
-     * Makes sure the runner is empty before removing it from the map.
+     * Continues starting the jobs of a runner after a pending task completed.
+     * This must not be refused, otherwise the jobs of the key would never run again,
+     * so if the pool is saturated the runner continues in the thread that completed the task.
+     */
+    private void resume(Runner runner)
+    {
+        if (!tryExecute(runner))
+        {
+            runner.run();
+        }
+    }
+
+    /**
+     * Takes the next job of the runner if it can be started,
+     * otherwise stops draining and removes the runner from the map if it is empty and has no pending tasks.
      *
      * @param runner
-     * @return false if the runner queue is not empty.
+     * @return the job to start, or null if the runner should stop.
      */
-    protected boolean onComplete(Runner runner)
+    private Job takeNextOrStop(Runner runner)
     {
         synchronized (mutex)
         {
-            if (runner.queue.size() > 0)
+            final Job next = runner.takeNext();
+            if (next != null)
             {
-                // something was added right before the synchronization.
-                return false;
+                // something was added right before the synchronization, or it can be interleaved.
+                return next;
             }
-            else
+            runner.draining = false;
+            if (runner.size() == 0 && runner.pendingCount == 0)
             {
                 running.remove(runner.key);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Called when the task of a started job completes.
+     *
+     * @return true if the caller should resume running the jobs.
+     */
+    private boolean onFinished(Runner runner, Job job)
+    {
+        synchronized (mutex)
+        {
+            runner.pendingCount--;
+            if (job.interleave == Interleave.READ_ONLY)
+            {
+                runner.pendingReadOnly--;
+            }
+            else if (job.interleave == Interleave.ALWAYS)
+            {
+                runner.pendingAlways--;
+            }
+            if (runner.draining)
+            {
+                // another thread is starting jobs, it will notice the completion.
+                return false;
+            }
+            final Job next = runner.peekNext();
+            if (next != null && runner.canStart(next))
+            {
+                runner.draining = true;
                 return true;
             }
+            if (next == null && runner.pendingCount == 0)
+            {
+                running.remove(runner.key);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of jobs waiting in the queue of this key.
+     */
+    public int getQueueSize(T key)
+    {
+        synchronized (mutex)
+        {
+            final Runner runner = running.get(key);
+            return runner != null ? runner.size() : 0;
         }
     }
 
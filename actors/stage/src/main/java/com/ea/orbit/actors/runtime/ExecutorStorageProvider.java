@@ -0,0 +1,86 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.providers.IStorageProvider;
+import com.ea.orbit.concurrent.Task;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Runs the calls of a storage provider in a dedicated executor,
+ * keeping blocking storage operations out of the actor execution threads.
+ */
+class ExecutorStorageProvider implements IStorageProvider
+{
+    private final IStorageProvider provider;
+    private final ExecutorService executor;
+
+    ExecutorStorageProvider(final IStorageProvider provider, final ExecutorService executor)
+    {
+        this.provider = provider;
+        this.executor = executor;
+    }
+
+    @Override
+    public Task<Void> clearState(final ActorReference<?> reference, final Object state)
+    {
+        return offload(() -> provider.clearState(reference, state));
+    }
+
+    @Override
+    public Task<Boolean> readState(final ActorReference<?> reference, final Object state)
+    {
+        return offload(() -> provider.readState(reference, state));
+    }
+
+    @Override
+    public Task<Void> writeState(final ActorReference<?> reference, final Object state)
+    {
+        return offload(() -> provider.writeState(reference, state));
+    }
+
+    @Override
+    public Task<?> start()
+    {
+        return provider.start();
+    }
+
+    @Override
+    public Task<?> stop()
+    {
+        return provider.stop();
+    }
+
+    private <T> Task<T> offload(final Supplier<Task<T>> call)
+    {
+        return Task.from(CompletableFuture.supplyAsync(call, executor)).thenCompose(task -> task);
+    }
+}
@@ -31,6 +31,7 @@ package com.ea.orbit.actors.runtime;
 
 import com.ea.orbit.actors.IAddressable;
 import com.ea.orbit.actors.annotation.StatelessWorker;
+import com.ea.orbit.actors.cluster.GatewayClientPeer;
 import com.ea.orbit.actors.cluster.IClusterPeer;
 import com.ea.orbit.actors.cluster.INodeAddress;
 import com.ea.orbit.annotation.Config;
@@ -57,13 +58,17 @@ public class Hosting implements IHosting, Startable
     private static final Logger logger = LoggerFactory.getLogger(Hosting.class);
     private NodeTypeEnum nodeType;
     private IClusterPeer clusterPeer;
+    // set when this node reaches the cluster through a gateway
+    private GatewayClientPeer gatewayPeer;
 
     private volatile Map<INodeAddress, NodeInfo> activeNodes = new HashMap<>(0);
     private volatile List<NodeInfo> serverNodes = new ArrayList<>(0);
     private final Object serverNodesUpdateMutex = new Object();
     private Execution execution;
+    private Messaging messaging;
     private ConcurrentMap<ActorKey, INodeAddress> localAddressCache = new ConcurrentHashMap<>();
     private volatile ConcurrentMap<ActorKey, INodeAddress> distributedDirectory;
+    private volatile boolean draining;
     @Config("orbit.actors.timeToWaitForServersMillis")
     private long timeToWaitForServersMillis = 30000;
     private Random random = new Random();
@@ -88,6 +93,11 @@ public class Hosting implements IHosting, Startable
         this.execution = execution;
     }
 
+    public void setMessaging(final Messaging messaging)
+    {
+        this.messaging = messaging;
+    }
+
     public void setNodeType(final NodeTypeEnum nodeType)
     {
         this.nodeType = nodeType;
@@ -110,14 +120,33 @@ public class Hosting implements IHosting, Startable
     @Override
     public Task<Integer> canActivate(String interfaceName, int interfaceId)
     {
-        return Task.fromValue(nodeType == NodeTypeEnum.CLIENT ? actorSupported_noneSupported
+        return Task.fromValue(nodeType == NodeTypeEnum.CLIENT || draining ? actorSupported_noneSupported
                 : execution.canActivateActor(interfaceName, interfaceId) ? actorSupported_yes
                 : actorSupported_no);
     }
 
+    @Override
+    public Task<?> nodeDraining(final INodeAddress nodeAddress)
+    {
+        final NodeInfo nodeInfo = activeNodes.get(nodeAddress);
+        if (nodeInfo != null)
+        {
+            nodeInfo.cannotHostActors = true;
+            updateServerNodes();
+        }
+        return Task.done();
+    }
+
+    @Override
+    public Task<Integer> activateActors(final String interfaceName, final List<String> ids)
+    {
+        return nodeType == NodeTypeEnum.CLIENT ? Task.fromValue(0) : execution.activateActors(interfaceName, ids);
+    }
+
     public void setClusterPeer(final IClusterPeer clusterPeer)
     {
         this.clusterPeer = clusterPeer;
+        this.gatewayPeer = clusterPeer instanceof GatewayClientPeer ? (GatewayClientPeer) clusterPeer : null;
     }
 
     public Task<Void> start()
@@ -151,7 +180,20 @@ public class Hosting implements IHosting, Startable
         }
         activeNodes = newNodes;
         updateServerNodes();
-        // TODO notify someone? (NodeInfo oldNodeInfo : oldNodes.values()) { ... }
+        if (!justAddedNodes.isEmpty())
+        {
+            // moves some activations to the new nodes without waiting for the next periodic round
+            execution.onNodesJoined();
+        }
+        if (!oldNodes.isEmpty())
+        {
+            // the actors of the dropped nodes must be located again
+            localAddressCache.values().removeIf(oldNodes::containsKey);
+            if (messaging != null)
+            {
+                oldNodes.keySet().forEach(messaging::onNodeDrop);
+            }
+        }
     }
 
     private void updateServerNodes()
@@ -167,6 +209,7 @@ public class Hosting implements IHosting, Startable
         }
     }
 
+    @Override
     public Task<INodeAddress> locateActor(final IAddressable actorReference)
     {
         ActorKey addressable = new ActorKey(((ActorReference) actorReference)._interfaceClass().getName(),
@@ -181,7 +224,7 @@ public class Hosting implements IHosting, Startable
         final String interfaceClassName = interfaceClass.getName();
         if (interfaceClass.isAnnotationPresent(StatelessWorker.class))
         {
-            if (nodeType == NodeTypeEnum.SERVER && execution.canActivateActor(interfaceClassName, -1))
+            if (nodeType == NodeTypeEnum.SERVER && !draining && execution.canActivateActor(interfaceClassName, -1))
             {
                 // TODO: consider always using local instance if this node is a server
                 // ~90% chance of making a local call
@@ -198,6 +241,11 @@ public class Hosting implements IHosting, Startable
             }
         }
 
+        if (gatewayPeer != null && !interfaceClass.isAnnotationPresent(StatelessWorker.class))
+        {
+            return locateThroughGateway(addressable, actorReference);
+        }
+
         final CompletableFuture<INodeAddress> async = CompletableFuture.supplyAsync(() -> {
             INodeAddress nodeAddress = null;
 
@@ -206,21 +254,17 @@ public class Hosting implements IHosting, Startable
                 // randomly chooses one server node to process this actor
                 return selectNode(interfaceClassName, true);
             }
-            if (distributedDirectory == null)
-            {
-                synchronized (this)
-                {
-                    if (distributedDirectory == null)
-                    {
-                        distributedDirectory = clusterPeer.getCache("distributedDirectory");
-                    }
-                }
-            }
+            final ConcurrentMap<ActorKey, INodeAddress> distributedDirectory = getDistributedDirectory();
             nodeAddress = distributedDirectory.get(addressable);
 
             if (nodeAddress != null && activeNodes.containsKey(nodeAddress))
             {
                 localAddressCache.put(addressable, nodeAddress);
+                if (!nodeAddress.equals(clusterPeer.localAddress()))
+                {
+                    // the actor may have changed its state there
+                    execution.forgetCachedState(addressable);
+                }
                 return nodeAddress;
             }
             if (nodeAddress != null)
@@ -241,6 +285,185 @@ public class Hosting implements IHosting, Startable
         return Task.from(async);
     }
 
+    /**
+     * Asks the gateway where the actor is, the following calls are addressed directly to that node.
+     */
+    private Task<INodeAddress> locateThroughGateway(final ActorKey addressable, final IAddressable actorReference)
+    {
+        final INodeAddress gatewayAddress = gatewayPeer.getGatewayAddress();
+        final NodeInfo gateway = gatewayAddress != null ? activeNodes.get(gatewayAddress) : null;
+        if (gateway == null)
+        {
+            return Task.fromException(new UncheckedException("Not connected to a gateway"));
+        }
+        return gateway.hosting.locateActor(actorReference).thenApply(nodeAddress -> {
+            localAddressCache.put(addressable, nodeAddress);
+            return nodeAddress;
+        });
+    }
+
+    private ConcurrentMap<ActorKey, INodeAddress> getDistributedDirectory()
+    {
+        if (distributedDirectory == null)
+        {
+            synchronized (this)
+            {
+                if (distributedDirectory == null)
+                {
+                    distributedDirectory = clusterPeer.getCache("distributedDirectory");
+                }
+            }
+        }
+        return distributedDirectory;
+    }
+
+    /**
+     * @return the active nodes that are able to host actors.
+     */
+    public List<INodeAddress> getServerNodes()
+    {
+        return serverNodes.stream().map(n -> n.address).collect(Collectors.toList());
+    }
+
+    /**
+     * @return all the active nodes, including the client nodes.
+     */
+    public List<INodeAddress> getActiveNodes()
+    {
+        return activeNodes.values().stream().filter(n -> n.active).map(n -> n.address).collect(Collectors.toList());
+    }
+
+    /**
+     * Checks if a node is able to activate an actor type, asking the node if this isn't known yet.
+     */
+    public boolean canActivate(final INodeAddress address, final String interfaceClassName)
+    {
+        final NodeInfo nodeInfo = activeNodes.get(address);
+        if (nodeInfo == null || !nodeInfo.active || nodeInfo.cannotHostActors)
+        {
+            return false;
+        }
+        Integer canActivate = nodeInfo.canActivate.get(interfaceClassName);
+        if (canActivate == null)
+        {
+            try
+            {
+                canActivate = nodeInfo.hosting.canActivate(interfaceClassName, -1).join();
+                nodeInfo.canActivate.put(interfaceClassName, canActivate == actorSupported_noneSupported ? actorSupported_no : canActivate);
+            }
+            catch (Exception ex)
+            {
+                logger.error("Error checking if " + address + " can activate " + interfaceClassName, ex);
+                return false;
+            }
+        }
+        return canActivate == actorSupported_yes;
+    }
+
+    /**
+     * Points the directory to the new node of an actor that was migrated from this node.
+     */
+    public void actorMoved(final ActorReference<?> reference, final INodeAddress address)
+    {
+        final ActorKey addressable = new ActorKey(reference._interfaceClass().getName(), String.valueOf(reference.id));
+        getDistributedDirectory().put(addressable, address);
+        localAddressCache.put(addressable, address);
+    }
+
+    /**
+     * @return true if the directory says that the actor is in that active node.
+     */
+    public boolean isActorAt(final String interfaceClassName, final Object id, final INodeAddress address)
+    {
+        return activeNodes.containsKey(address)
+                && address.equals(getDistributedDirectory().get(new ActorKey(interfaceClassName, String.valueOf(id))));
+    }
+
+    /**
+     * Forgets the cached location of an actor, the next call will look it up in the directory.
+     */
+    public void forgetLocation(final String interfaceClassName, final Object id)
+    {
+        localAddressCache.remove(new ActorKey(interfaceClassName, String.valueOf(id)));
+    }
+
+    /**
+     * Stops offering this node for new activations and tells the other nodes about it.
+     */
+    public Task<?> startDraining()
+    {
+        draining = true;
+        final INodeAddress localAddress = clusterPeer.localAddress();
+        nodeDraining(localAddress);
+        return Task.allOf(activeNodes.values().stream()
+                .filter(n -> n.active && !n.address.equals(localAddress))
+                .map(n -> n.hosting.nodeDraining(localAddress)));
+    }
+
+    /**
+     * Finds a new node for an actor whose message reached this node after it started draining.
+     */
+    public Task<INodeAddress> relocateActor(final IAddressable actorReference)
+    {
+        final ActorKey addressable = new ActorKey(((ActorReference<?>) actorReference)._interfaceClass().getName(),
+                String.valueOf(((ActorReference<?>) actorReference).id));
+        localAddressCache.remove(addressable);
+        getDistributedDirectory().remove(addressable, clusterPeer.localAddress());
+        return locateActor(actorReference);
+    }
+
+    /**
+     * Removes the directory entries of the actors deactivated by the drain.
+     * With prewarm the entries are pointed to other nodes, which activate the actors right away.
+     * The reminder controller is always handed over as it only restarts the reminders when activated.
+     *
+     * @return the number of actors activated in other nodes
+     */
+    public Task<Integer> handOffActors(final List<ActorReference<?>> references, final boolean prewarm)
+    {
+        final INodeAddress localAddress = clusterPeer.localAddress();
+        final ConcurrentMap<ActorKey, INodeAddress> directory = getDistributedDirectory();
+        final Map<INodeAddress, Map<String, List<String>>> handOffs = new HashMap<>();
+        for (ActorReference<?> reference : references)
+        {
+            final String interfaceClassName = reference._interfaceClass().getName();
+            final String id = String.valueOf(reference.id);
+            final ActorKey addressable = new ActorKey(interfaceClassName, id);
+            localAddressCache.remove(addressable);
+            final INodeAddress target = prewarm || reference._interfaceClass() == IReminderController.class
+                    ? selectNode(interfaceClassName, false) : null;
+            // conditional updates, a message might have already relocated the actor
+            if (target != null && directory.replace(addressable, localAddress, target))
+            {
+                handOffs.computeIfAbsent(target, t -> new HashMap<>())
+                        .computeIfAbsent(interfaceClassName, i -> new ArrayList<>()).add(id);
+            }
+            else
+            {
+                directory.remove(addressable, localAddress);
+            }
+        }
+        final List<Task<Integer>> activations = new ArrayList<>();
+        handOffs.forEach((target, byInterface) -> {
+            final NodeInfo nodeInfo = activeNodes.get(target);
+            if (nodeInfo != null)
+            {
+                byInterface.forEach((interfaceClassName, ids) ->
+                        activations.add(nodeInfo.hosting.activateActors(interfaceClassName, ids)
+                                .handle((r, e) -> {
+                                    if (e != null)
+                                    {
+                                        // the actors will be activated by their next message
+                                        logger.error("Error activating " + interfaceClassName + " actors in " + target, e);
+                                        return 0;
+                                    }
+                                    return r;
+                                })));
+            }
+        });
+        return Task.allOf(activations).thenApply(r -> activations.stream().mapToInt(Task::join).sum());
+    }
+
     private INodeAddress selectNode(final String interfaceClassName, boolean allowToBlock)
     {
         List<NodeInfo> potentialNodes;
@@ -29,8 +29,13 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.ea.orbit.actors.runtime;
 
 import com.ea.orbit.actors.IActorObserver;
+import com.ea.orbit.actors.IAddressable;
+import com.ea.orbit.actors.annotation.AlwaysInterleave;
+import com.ea.orbit.actors.cluster.INodeAddress;
 import com.ea.orbit.concurrent.Task;
 
+import java.util.List;
+
 public interface IHosting extends IActorObserver
 {
     public enum NodeTypeEnum
@@ -47,5 +52,26 @@ public interface IHosting extends IActorObserver
      *
      * @return #actorSupported_yes, #actorSupported_no, or #actorSupported_noneSupported
      */
+    @AlwaysInterleave
     Task<Integer> canActivate(String interfaceName, int interfaceId);
+
+    /**
+     * Tells that a node is draining and should not receive new activations.
+     */
+    Task<?> nodeDraining(INodeAddress nodeAddress);
+
+    /**
+     * Activates actors ahead of their first message.
+     *
+     * @return the number of actors activated
+     */
+    Task<Integer> activateActors(String interfaceName, List<String> ids);
+
+    /**
+     * Finds the node of an actor, activating it if needed.
+     * Asked by the gateway clients, which have no access to the directory.
+     * Interleaved since finding a node may ask this same node if it can activate the actor.
+     */
+    @AlwaysInterleave
+    Task<INodeAddress> locateActor(IAddressable actorReference);
 }
@@ -0,0 +1,391 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.exception.UncheckedException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the serialized message frames above a size threshold.
+ * <p>
+ * Plain frames start with the java serialization stream magic (0xACED).
+ * Compressed frames start with {@link #COMPRESSED_FRAME}, followed by the codec id,
+ * the uncompressed size and the compressed data, so small messages are sent unchanged.
+ * </p>
+ * <p>
+ * The zstd codec is only available if zstd-jni is in the classpath.
+ * </p>
+ */
+public class MessageCompression
+{
+    private static final Logger logger = LoggerFactory.getLogger(MessageCompression.class);
+
+    public static final byte COMPRESSED_FRAME = 0x01;
+    static final int HEADER_SIZE = 6;
+
+    private static final MethodHandle ZSTD_COMPRESS;
+    private static final MethodHandle ZSTD_DECOMPRESS;
+
+    static
+    {
+        MethodHandle compress = null;
+        MethodHandle decompress = null;
+        try
+        {
+            final Class<?> zstd = Class.forName("com.github.luben.zstd.Zstd");
+            final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            compress = lookup.findStatic(zstd, "compress", MethodType.methodType(byte[].class, byte[].class, int.class));
+            decompress = lookup.findStatic(zstd, "decompress", MethodType.methodType(byte[].class, byte[].class, int.class));
+        }
+        catch (Throwable ex)
+        {
+            // zstd is optional
+            compress = decompress = null;
+        }
+        ZSTD_COMPRESS = compress;
+        ZSTD_DECOMPRESS = decompress;
+    }
+
+    public enum Codec
+    {
+        NONE,
+        /**
+         * The jdk deflate at its fastest level.
+         */
+        DEFLATE,
+        ZSTD;
+
+        public boolean isAvailable()
+        {
+            return this != ZSTD || ZSTD_COMPRESS != null;
+        }
+
+        int mask()
+        {
+            return 1 << ordinal();
+        }
+    }
+
+    /**
+     * Compression counters of one actor interface.
+     */
+    public static class CompressionStats
+    {
+        private final LongAdder messages = new LongAdder();
+        private final LongAdder originalBytes = new LongAdder();
+        private final LongAdder compressedBytes = new LongAdder();
+
+        public long getMessages()
+        {
+            return messages.sum();
+        }
+
+        public long getOriginalBytes()
+        {
+            return originalBytes.sum();
+        }
+
+        public long getCompressedBytes()
+        {
+            return compressedBytes.sum();
+        }
+
+        /**
+         * @return the original size divided by the compressed size, 1 if nothing was compressed.
+         */
+        public double getRatio()
+        {
+            final long compressed = compressedBytes.sum();
+            return compressed == 0 ? 1 : (double) originalBytes.sum() / compressed;
+        }
+    }
+
+    private Codec codec = Codec.DEFLATE;
+    private int threshold = 16 * 1024;
+    private int zstdLevel = 1;
+    private final Map<Integer, CompressionStats> statsByInterface = new ConcurrentHashMap<>();
+
+    public Codec getCodec()
+    {
+        return codec;
+    }
+
+    public void setCodec(final Codec codec)
+    {
+        if (!codec.isAvailable())
+        {
+            logger.warn("Message codec {} is not available, messages won't be compressed", codec);
+            this.codec = Codec.NONE;
+            return;
+        }
+        this.codec = codec;
+    }
+
+    public int getThreshold()
+    {
+        return threshold;
+    }
+
+    /**
+     * Frames smaller than the threshold are never compressed.
+     */
+    public void setThreshold(final int threshold)
+    {
+        this.threshold = threshold;
+    }
+
+    public void setZstdLevel(final int zstdLevel)
+    {
+        this.zstdLevel = zstdLevel;
+    }
+
+    /**
+     * @return the bit mask of the codecs this node is able to decompress.
+     */
+    public static int supportedCodecs()
+    {
+        int mask = 0;
+        for (Codec c : Codec.values())
+        {
+            if (c.isAvailable())
+            {
+                mask |= c.mask();
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @return the codec names of the mask, comma separated, as published in the cluster cache.
+     */
+    public static String toString(final int codecs)
+    {
+        final StringBuilder sb = new StringBuilder();
+        for (Codec c : Codec.values())
+        {
+            if ((codecs & c.mask()) != 0)
+            {
+                sb.append(sb.length() > 0 ? "," : "").append(c.name());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the mask of the known codecs in the comma separated list, unknown names are ignored.
+     */
+    public static int parseCodecs(final String codecs)
+    {
+        int mask = 0;
+        for (String name : codecs.split(","))
+        {
+            for (Codec c : Codec.values())
+            {
+                if (c.name().equals(name.trim()))
+                {
+                    mask |= c.mask();
+                }
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Compresses the frame if it is above the threshold and the receiver supports the configured codec.
+     *
+     * @param receiverCodecs the codecs supported by the receiver, as returned by {@link #supportedCodecs()}
+     * @return the compressed frame, or the same frame if it was not worth compressing
+     */
+    public byte[] compress(final byte[] frame, final int interfaceId, final int receiverCodecs)
+    {
+        if (codec == Codec.NONE || frame.length < threshold || (receiverCodecs & codec.mask()) == 0)
+        {
+            return frame;
+        }
+        final byte[] compressed;
+        switch (codec)
+        {
+            case DEFLATE:
+                compressed = deflate(frame);
+                break;
+            case ZSTD:
+                compressed = zstd(frame);
+                break;
+            default:
+                return frame;
+        }
+        if (compressed == null || compressed.length >= frame.length)
+        {
+            // incompressible data is sent as it is
+            return frame;
+        }
+        final CompressionStats stats = statsByInterface.computeIfAbsent(interfaceId, id -> new CompressionStats());
+        stats.messages.increment();
+        stats.originalBytes.add(frame.length);
+        stats.compressedBytes.add(compressed.length);
+        return compressed;
+    }
+
+    /**
+     * @return the original frame, or the same frame if it is not compressed.
+     */
+    public static byte[] decompress(final byte[] frame)
+    {
+        if (frame.length == 0 || frame[0] != COMPRESSED_FRAME)
+        {
+            return frame;
+        }
+        final int codecId = frame[1];
+        final int originalSize = ((frame[2] & 0xFF) << 24) | ((frame[3] & 0xFF) << 16) | ((frame[4] & 0xFF) << 8) | (frame[5] & 0xFF);
+        if (codecId == Codec.DEFLATE.ordinal())
+        {
+            final Inflater inflater = new Inflater();
+            try
+            {
+                inflater.setInput(frame, HEADER_SIZE, frame.length - HEADER_SIZE);
+                final byte[] original = new byte[originalSize];
+                int size = 0;
+                while (size < originalSize && !inflater.finished())
+                {
+                    final int n = inflater.inflate(original, size, originalSize - size);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    {
+                        break;
+                    }
+                    size += n;
+                }
+                if (size != originalSize)
+                {
+                    throw new UncheckedException("Truncated compressed message, expected " + originalSize + " bytes, got " + size);
+                }
+                return original;
+            }
+            catch (DataFormatException e)
+            {
+                throw new UncheckedException(e);
+            }
+            finally
+            {
+                inflater.end();
+            }
+        }
+        if (codecId == Codec.ZSTD.ordinal() && ZSTD_DECOMPRESS != null)
+        {
+            final byte[] data = new byte[frame.length - HEADER_SIZE];
+            System.arraycopy(frame, HEADER_SIZE, data, 0, data.length);
+            try
+            {
+                return (byte[]) ZSTD_DECOMPRESS.invokeExact(data, originalSize);
+            }
+            catch (Throwable e)
+            {
+                throw new UncheckedException(e);
+            }
+        }
+        throw new UncheckedException("Unsupported message codec: " + codecId);
+    }
+
+    /**
+     * @return the compression counters of each actor interface id.
+     */
+    public Map<Integer, CompressionStats> getStats()
+    {
+        return Collections.unmodifiableMap(statsByInterface);
+    }
+
+    private static byte[] deflate(final byte[] frame)
+    {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try
+        {
+            deflater.setInput(frame);
+            deflater.finish();
+            // no point in keeping the compressed data if it is not smaller than the original
+            final byte[] buffer = new byte[frame.length];
+            writeHeader(buffer, Codec.DEFLATE, frame.length);
+            int size = HEADER_SIZE;
+            while (!deflater.finished() && size < buffer.length)
+            {
+                size += deflater.deflate(buffer, size, buffer.length - size);
+            }
+            if (!deflater.finished())
+            {
+                return null;
+            }
+            final byte[] compressed = new byte[size];
+            System.arraycopy(buffer, 0, compressed, 0, size);
+            return compressed;
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    private byte[] zstd(final byte[] frame)
+    {
+        final byte[] data;
+        try
+        {
+            data = (byte[]) ZSTD_COMPRESS.invokeExact(frame, zstdLevel);
+        }
+        catch (Throwable e)
+        {
+            logger.error("Error compressing message", e);
+            return null;
+        }
+        final byte[] compressed = new byte[HEADER_SIZE + data.length];
+        writeHeader(compressed, Codec.ZSTD, frame.length);
+        System.arraycopy(data, 0, compressed, HEADER_SIZE, data.length);
+        return compressed;
+    }
+
+    private static void writeHeader(final byte[] buffer, final Codec codec, final int originalSize)
+    {
+        buffer[0] = COMPRESSED_FRAME;
+        buffer[1] = (byte) codec.ordinal();
+        buffer[2] = (byte) (originalSize >>> 24);
+        buffer[3] = (byte) (originalSize >>> 16);
+        buffer[4] = (byte) (originalSize >>> 8);
+        buffer[5] = (byte) originalSize;
+    }
+}
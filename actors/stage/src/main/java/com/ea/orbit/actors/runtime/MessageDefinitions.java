@@ -35,5 +35,8 @@ public class MessageDefinitions
     public static final byte EXCEPTION_RESPONSE = 2;
     public static final byte ERROR_RESPONSE = 3;
     public static final byte ONEWAY_MESSAGE = 8;
+    public static final byte BACKPRESSURE_MESSAGE = 9;
+    public static final byte ACTOR_MOVED_MESSAGE = 10;
+    public static final byte CACHE_INVALIDATION_MESSAGE = 11;
 
 }
@@ -31,6 +31,7 @@ package com.ea.orbit.actors.runtime;
 import com.ea.orbit.actors.IActorObserver;
 import com.ea.orbit.actors.cluster.IClusterPeer;
 import com.ea.orbit.actors.cluster.INodeAddress;
+import com.ea.orbit.actors.cluster.NodeDroppedException;
 import com.ea.orbit.concurrent.ExecutorUtils;
 import com.ea.orbit.concurrent.Task;
 import com.ea.orbit.container.Startable;
@@ -48,9 +49,15 @@ import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.time.Clock;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -62,6 +69,11 @@ public class Messaging implements Startable
 {
     private static Object NIL = null;
     private static final Logger logger = LoggerFactory.getLogger(Messaging.class);
+
+    /**
+     * Cluster cache with the codecs each node is able to decompress.
+     */
+    public static final String CODECS_CACHE = "orbit.actors.messageCodecs";
     // consults with Hosting to determine the target server to send the message to.
     // serializes the messages
     // pass received messages to Execution
@@ -71,12 +83,44 @@ public class Messaging implements Startable
     private AtomicInteger messageIdGen = new AtomicInteger();
     private Map<Integer, PendingResponse> pendingResponseMap = new ConcurrentHashMap<>();
     private PriorityBlockingQueue<PendingResponse> pendingResponsesQueue = new PriorityBlockingQueue<>();
+    // pending responses by destination node, to fail them as soon as the node leaves the cluster
+    private ConcurrentMap<INodeAddress, Set<PendingResponse>> pendingResponsesByNode = new ConcurrentHashMap<>();
+    // nodes never rejoin with the same address, kept by drop time only until the calls to them would have timed out
+    private ConcurrentMap<INodeAddress, Long> droppedNodes = new ConcurrentHashMap<>();
+    private AtomicLong droppedNodeResponses = new AtomicLong();
     private Clock clock = Clock.systemUTC();
     private long responseTimeoutMillis = 30_000;
     private AtomicLong networkMessagesReceived = new AtomicLong();
     private AtomicLong objectMessagesReceived = new AtomicLong();
     private AtomicLong responsesReceived = new AtomicLong();
+    private AtomicLong localMessagesReceived = new AtomicLong();
     private ExecutorService executor;
+    // the executors set by the stage are shut down by the stage
+    private boolean ownsExecutor;
+    private boolean localShortCircuit = true;
+    private LocalCallCopyMode localCallCopyMode = LocalCallCopyMode.IMMUTABLE_AWARE;
+    private final MessageCompression compression = new MessageCompression();
+    private final Map<INodeAddress, Integer> nodeCodecs = new ConcurrentHashMap<>();
+    private ConcurrentMap<INodeAddress, String> codecsCache;
+
+    /**
+     * Defines how parameters and results are isolated when a message is delivered to an actor in the same node.
+     */
+    public enum LocalCallCopyMode
+    {
+        /**
+         * Objects are passed by reference, the application must guarantee they are not mutated.
+         */
+        NONE,
+        /**
+         * Immutable jdk types and actor references are passed by reference, everything else is deep copied.
+         */
+        IMMUTABLE_AWARE,
+        /**
+         * Everything is deep copied through serialization.
+         */
+        DEEP_COPY
+    }
 
     public void setExecution(final Execution execution)
     {
@@ -93,10 +137,56 @@ public class Messaging implements Startable
         return clusterPeer.localAddress();
     }
 
+    /**
+     * Enables or disables delivering messages to actors in the same node
+     * directly to the execution, without going through the cluster peer.
+     */
+    public void setLocalShortCircuit(final boolean localShortCircuit)
+    {
+        this.localShortCircuit = localShortCircuit;
+    }
+
+    public boolean isLocalShortCircuit()
+    {
+        return localShortCircuit;
+    }
+
+    public void setLocalCallCopyMode(final LocalCallCopyMode localCallCopyMode)
+    {
+        this.localCallCopyMode = localCallCopyMode;
+    }
+
+    public LocalCallCopyMode getLocalCallCopyMode()
+    {
+        return localCallCopyMode;
+    }
+
+    public void setCompressionCodec(final MessageCompression.Codec codec)
+    {
+        compression.setCodec(codec);
+    }
+
+    /**
+     * Messages and responses smaller than the threshold are sent uncompressed.
+     */
+    public void setCompressionThreshold(final int threshold)
+    {
+        compression.setThreshold(threshold);
+    }
+
+    /**
+     * @return the compression counters of each actor interface id.
+     */
+    public Map<Integer, MessageCompression.CompressionStats> getCompressionStats()
+    {
+        return compression.getStats();
+    }
+
     private static class PendingResponse extends Task<Object> implements Comparable<PendingResponse>
     {
         long timeoutAt;
         public int messageId;
+        INodeAddress to;
 
         @Override
         public int compareTo(final PendingResponse o)
@@ -139,15 +229,50 @@ public class Messaging implements Startable
         if (executor == null)
         {
             executor = ExecutorUtils.newScalingThreadPool(1000);
+            ownsExecutor = true;
         }
         clusterPeer.registerMessageReceiver((from, buff) -> executor.execute(() -> onMessageReceived(from, buff)));
         //timeoutCleanup()
         return Task.done();
     }
 
+    /**
+     * Tells the other nodes which codecs this node can decompress, must be called after joining the cluster.
+     */
+    public void advertiseCodecs()
+    {
+        codecsCache = clusterPeer.getCache(CODECS_CACHE);
+        codecsCache.put(clusterPeer.localAddress(), MessageCompression.toString(MessageCompression.supportedCodecs()));
+    }
+
+    private byte[] compress(final INodeAddress to, final byte[] frame, final int interfaceId)
+    {
+        if (compression.getCodec() == MessageCompression.Codec.NONE || frame.length < compression.getThreshold() || codecsCache == null)
+        {
+            return frame;
+        }
+        Integer codecs = nodeCodecs.get(to);
+        if (codecs == null)
+        {
+            // nodes that didn't advertise their codecs yet only receive plain messages
+            final String advertised = codecsCache.get(to);
+            if (advertised == null)
+            {
+                return frame;
+            }
+            codecs = MessageCompression.parseCodecs(advertised);
+            nodeCodecs.put(to, codecs);
+        }
+        return compression.compress(frame, interfaceId, codecs);
+    }
+
     @Override
     public Task<?> stop()
     {
+        if (!ownsExecutor)
+        {
+            return Task.done();
+        }
         executor.shutdown();
         try
         {
@@ -166,7 +291,7 @@ public class Messaging implements Startable
         try
         {
             networkMessagesReceived.incrementAndGet();
-            ObjectInput in = createObjectInput(buff);
+            ObjectInput in = createObjectInput(MessageCompression.decompress(buff));
             byte messageType = in.readByte();
             int messageId = in.readInt();
             switch (messageType)
@@ -177,9 +302,20 @@ public class Messaging implements Startable
                     objectMessagesReceived.incrementAndGet();
                     int interfaceId = in.readInt();
                     int methodId = in.readInt();
+                    long budget = in.readLong();
                     Object key = in.readObject();
                     Object[] params = (Object[]) in.readObject();
-                    execution.onMessageReceived(from, oneway, messageId, interfaceId, methodId, key, params);
+                    execution.onMessageReceived(from, oneway, messageId, interfaceId, methodId, key, params,
+                            oneway ? 0 : clock.millis() + budget);
+                    break;
+                case MessageDefinitions.BACKPRESSURE_MESSAGE:
+                    execution.onBackpressure(from, in.readInt(), in.readObject());
+                    break;
+                case MessageDefinitions.ACTOR_MOVED_MESSAGE:
+                    execution.onActorMoved(in.readInt(), in.readObject());
+                    break;
+                case MessageDefinitions.CACHE_INVALIDATION_MESSAGE:
+                    execution.onCacheInvalidation(in.readInt(), in.readObject());
                     break;
                 case MessageDefinitions.NORMAL_RESPONSE:
                 case MessageDefinitions.EXCEPTION_RESPONSE:
@@ -190,6 +326,7 @@ public class Messaging implements Startable
                     if (pendingResponse != null)
                     {
                         pendingResponsesQueue.remove(pendingResponse);
+                        removeFromNode(pendingResponse);
                         Object res;
                         try
                         {
@@ -236,14 +373,82 @@ public class Messaging implements Startable
         }
     }
 
+    /**
+     * Fails the calls waiting for responses from a node that left the cluster.
+     */
     public void onNodeDrop(final INodeAddress address)
     {
-        // could be used to decrease the timeout of messages sent to failed nodes.
+        nodeCodecs.remove(address);
+        droppedNodes.put(address, clock.millis());
+        final Set<PendingResponse> pending = pendingResponsesByNode.remove(address);
+        if (pending == null)
+        {
+            return;
+        }
+        if (!pending.isEmpty() && logger.isWarnEnabled())
+        {
+            logger.warn("Failing {} pending calls to the dropped node {}", pending.size(), address);
+        }
+        final NodeDroppedException exception = new NodeDroppedException(address);
+        for (PendingResponse pendingResponse : pending)
+        {
+            if (pendingResponseMap.remove(pendingResponse.messageId) != null)
+            {
+                pendingResponsesQueue.remove(pendingResponse);
+                droppedNodeResponses.incrementAndGet();
+                executor.execute(() -> pendingResponse.internalCompleteExceptionally(exception));
+            }
+        }
+    }
+
+    /**
+     * @return the number of calls that failed because the target node left the cluster.
+     */
+    public long getDroppedNodeResponses()
+    {
+        return droppedNodeResponses.get();
+    }
+
+    private void addToNode(final PendingResponse pendingResponse)
+    {
+        pendingResponsesByNode.computeIfAbsent(pendingResponse.to, a -> ConcurrentHashMap.newKeySet()).add(pendingResponse);
+        if (droppedNodes.containsKey(pendingResponse.to))
+        {
+            // the node left while the message was being prepared
+            onNodeDrop(pendingResponse.to);
+        }
+    }
+
+    private void removeFromNode(final PendingResponse pendingResponse)
+    {
+        if (pendingResponse.to == null)
+        {
+            // local call
+            return;
+        }
+        final Set<PendingResponse> pending = pendingResponsesByNode.get(pendingResponse.to);
+        if (pending != null)
+        {
+            pending.remove(pendingResponse);
+        }
     }
 
 
     public void sendResponse(INodeAddress to, int messageType, int messageId, Object res)
     {
+        sendResponse(to, messageType, messageId, res, 0);
+    }
+
+    /**
+     * @param interfaceId the interface of the called actor, used for the compression statistics.
+     */
+    public void sendResponse(INodeAddress to, int messageType, int messageId, Object res, int interfaceId)
+    {
+        if (isLocal(to))
+        {
+            sendLocalResponse(messageType, messageId, res);
+            return;
+        }
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
         try
         {
@@ -257,7 +462,80 @@ public class Messaging implements Startable
         {
             throw new UncheckedException(e);
         }
-        clusterPeer.sendMessage(to, byteArrayOutputStream.toByteArray());
+        clusterPeer.sendMessage(to, compress(to, byteArrayOutputStream.toByteArray(), interfaceId), messageId);
+    }
+
+    /**
+     * Tells the sender that the mailbox of the target actor is getting full.
+     */
+    public void sendBackpressure(INodeAddress to, int interfaceId, Object key)
+    {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try
+        {
+            ObjectOutput objectOutput = createObjectOutput(byteArrayOutputStream);
+            objectOutput.writeByte(MessageDefinitions.BACKPRESSURE_MESSAGE);
+            objectOutput.writeInt(0);
+            objectOutput.writeInt(interfaceId);
+            objectOutput.writeObject(key);
+            objectOutput.flush();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedException(e);
+        }
+        clusterPeer.sendMessage(to, byteArrayOutputStream.toByteArray(), laneHint(interfaceId, key));
+    }
+
+    /**
+     * Tells the sender that the target actor was migrated to another node, so it must be located again.
+     */
+    public void sendActorMoved(INodeAddress to, int interfaceId, Object key)
+    {
+        if (isLocal(to))
+        {
+            execution.onActorMoved(interfaceId, key);
+            return;
+        }
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try
+        {
+            ObjectOutput objectOutput = createObjectOutput(byteArrayOutputStream);
+            objectOutput.writeByte(MessageDefinitions.ACTOR_MOVED_MESSAGE);
+            objectOutput.writeInt(0);
+            objectOutput.writeInt(interfaceId);
+            objectOutput.writeObject(key);
+            objectOutput.flush();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedException(e);
+        }
+        clusterPeer.sendMessage(to, byteArrayOutputStream.toByteArray(), laneHint(interfaceId, key));
+    }
+
+    public void sendCacheInvalidation(INodeAddress to, int interfaceId, Object key)
+    {
+        if (isLocal(to))
+        {
+            execution.onCacheInvalidation(interfaceId, key);
+            return;
+        }
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try
+        {
+            ObjectOutput objectOutput = createObjectOutput(byteArrayOutputStream);
+            objectOutput.writeByte(MessageDefinitions.CACHE_INVALIDATION_MESSAGE);
+            objectOutput.writeInt(0);
+            objectOutput.writeInt(interfaceId);
+            objectOutput.writeObject(key);
+            objectOutput.flush();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedException(e);
+        }
+        clusterPeer.sendMessage(to, byteArrayOutputStream.toByteArray(), laneHint(interfaceId, key));
     }
 
     private static class ReferenceReplacement implements Serializable
@@ -343,10 +621,15 @@ public class Messaging implements Startable
 
     public Task<?> sendMessage(INodeAddress to, boolean oneWay, int interfaceId, int methodId, Object key, Object[] params)
     {
+        if (isLocal(to))
+        {
+            return sendLocalMessage(to, oneWay, interfaceId, methodId, key, params);
+        }
         int messageId = messageIdGen.incrementAndGet();
         PendingResponse pendingResponse = new PendingResponse();
         pendingResponse.messageId = messageId;
-        pendingResponse.timeoutAt = clock.millis() + responseTimeoutMillis;
+        pendingResponse.timeoutAt = getTimeoutAt();
+        pendingResponse.to = to;
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
         try
         {
@@ -355,6 +638,8 @@ public class Messaging implements Startable
             objectOutput.writeInt(messageId);
             objectOutput.writeInt(interfaceId);
             objectOutput.writeInt(methodId);
+            // remaining time budget, relative to avoid depending on synchronized clocks
+            objectOutput.writeLong(oneWay ? 0 : pendingResponse.timeoutAt - clock.millis());
             objectOutput.writeObject(key);
             objectOutput.writeObject(params);
             objectOutput.flush();
@@ -371,10 +656,12 @@ public class Messaging implements Startable
         {
             pendingResponseMap.put(messageId, pendingResponse);
             pendingResponsesQueue.add(pendingResponse);
+            addToNode(pendingResponse);
         }
         try
         {
-            clusterPeer.sendMessage(to, byteArrayOutputStream.toByteArray());
+            // messages to the same actor share a lane to keep their order
+            clusterPeer.sendMessage(to, compress(to, byteArrayOutputStream.toByteArray(), interfaceId), laneHint(interfaceId, key));
             if (oneWay)
             {
                 pendingResponse.internalComplete(NIL);
@@ -384,11 +671,188 @@ public class Messaging implements Startable
         {
             pendingResponseMap.remove(messageId);
             pendingResponsesQueue.remove(pendingResponse);
+            removeFromNode(pendingResponse);
             pendingResponse.internalCompleteExceptionally(ex);
         }
         return pendingResponse;
     }
 
+    private static int laneHint(final int interfaceId, final Object key)
+    {
+        return 31 * interfaceId + Objects.hashCode(key);
+    }
+
+    private boolean isLocal(final INodeAddress to)
+    {
+        return localShortCircuit && to != null && to.equals(clusterPeer.localAddress());
+    }
+
+    /**
+     * Calls made while handling a message inherit the deadline of that message if it is shorter than the response timeout.
+     */
+    private long getTimeoutAt()
+    {
+        final long timeoutAt = clock.millis() + responseTimeoutMillis;
+        final long callerDeadline = execution != null ? execution.getCurrentDeadline() : 0;
+        return callerDeadline > 0 && callerDeadline < timeoutAt ? callerDeadline : timeoutAt;
+    }
+
+    /**
+     * Delivers the message directly to the local execution,
+     * skipping the network serialization, the cluster peer and the messaging executor.
+     */
+    private Task<?> sendLocalMessage(INodeAddress to, boolean oneWay, int interfaceId, int methodId, Object key, Object[] params)
+    {
+        int messageId = messageIdGen.incrementAndGet();
+        PendingResponse pendingResponse = new PendingResponse();
+        pendingResponse.messageId = messageId;
+        pendingResponse.timeoutAt = getTimeoutAt();
+        final Object[] paramsCopy;
+        try
+        {
+            paramsCopy = (Object[]) copyForLocalCall(params);
+        }
+        catch (Exception | Error e)
+        {
+            if (logger.isErrorEnabled())
+            {
+                logger.error("Error sending message to object key " + key, e);
+            }
+            throw new UncheckedException(e);
+        }
+        if (!oneWay)
+        {
+            pendingResponseMap.put(messageId, pendingResponse);
+            pendingResponsesQueue.add(pendingResponse);
+        }
+        try
+        {
+            localMessagesReceived.incrementAndGet();
+            execution.onMessageReceived(to, oneWay, messageId, interfaceId, methodId, key, paramsCopy, pendingResponse.timeoutAt);
+            if (oneWay)
+            {
+                pendingResponse.internalComplete(NIL);
+            }
+        }
+        catch (Exception ex)
+        {
+            pendingResponseMap.remove(messageId);
+            pendingResponsesQueue.remove(pendingResponse);
+            pendingResponse.internalCompleteExceptionally(ex);
+        }
+        return pendingResponse;
+    }
+
+    private void sendLocalResponse(int messageType, int messageId, Object res)
+    {
+        // copying in the caller thread so that copy errors are reported back to the execution, like serialization errors.
+        final Object resCopy;
+        try
+        {
+            resCopy = copyForLocalCall(res);
+        }
+        catch (IOException | ClassNotFoundException e)
+        {
+            throw new UncheckedException(e);
+        }
+        PendingResponse pendingResponse = pendingResponseMap.remove(messageId);
+        if (pendingResponse == null)
+        {
+            logger.warn("Missing counterpart (pending message) for message {}.", messageId);
+            return;
+        }
+        pendingResponsesQueue.remove(pendingResponse);
+        responsesReceived.incrementAndGet();
+        // the caller continuations must not run inside the callee's execution.
+        executor.execute(() -> {
+            switch (messageType)
+            {
+                case MessageDefinitions.NORMAL_RESPONSE:
+                    pendingResponse.internalComplete(resCopy);
+                    return;
+                case MessageDefinitions.EXCEPTION_RESPONSE:
+                    pendingResponse.internalCompleteExceptionally((Throwable) resCopy);
+                    return;
+                case MessageDefinitions.ERROR_RESPONSE:
+                    pendingResponse.internalCompleteExceptionally(new UncheckedException("Error invoking but no exception provided. Res: " + resCopy));
+                    return;
+                default:
+                    logger.error("Illegal protocol, invalid response message type: {}", messageId);
+            }
+        });
+    }
+
+    private Object copyForLocalCall(final Object obj) throws IOException, ClassNotFoundException
+    {
+        switch (localCallCopyMode)
+        {
+            case NONE:
+                return obj;
+            case IMMUTABLE_AWARE:
+                if (isImmutable(obj))
+                {
+                    return obj;
+                }
+                if (obj instanceof Object[] && obj.getClass() == Object[].class)
+                {
+                    final Object[] array = (Object[]) obj;
+                    final Object[] copy = new Object[array.length];
+                    for (int i = 0; i < array.length; i++)
+                    {
+                        copy[i] = isImmutable(array[i]) ? array[i] : deepCopy(array[i]);
+                    }
+                    return copy;
+                }
+                return deepCopy(obj);
+            default:
+                return deepCopy(obj);
+        }
+    }
+
+    /**
+     * Copies a response shared by several callers, like the cached responses, following the local call copy mode.
+     */
+    Object copyResponse(final Object response)
+    {
+        try
+        {
+            return copyForLocalCall(response);
+        }
+        catch (IOException | ClassNotFoundException e)
+        {
+            throw new UncheckedException(e);
+        }
+    }
+
+    private static boolean isImmutable(final Object obj)
+    {
+        return obj == null
+                || obj instanceof String
+                || obj instanceof Integer
+                || obj instanceof Long
+                || obj instanceof Boolean
+                || obj instanceof Double
+                || obj instanceof Float
+                || obj instanceof Short
+                || obj instanceof Byte
+                || obj instanceof Character
+                || obj instanceof Enum
+                || obj instanceof Class
+                || obj instanceof UUID
+                || obj instanceof BigInteger
+                || obj instanceof BigDecimal
+                || obj instanceof ActorReference;
+    }
+
+    private Object deepCopy(final Object obj) throws IOException, ClassNotFoundException
+    {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        ObjectOutput objectOutput = createObjectOutput(byteArrayOutputStream);
+        objectOutput.writeObject(obj);
+        objectOutput.flush();
+        return createObjectInput(byteArrayOutputStream.toByteArray()).readObject();
+    }
+
     public void timeoutCleanup()
     {
         PendingResponse top = pendingResponsesQueue.peek();
@@ -407,8 +871,14 @@ public class Messaging implements Startable
                     top.internalCompleteExceptionally(new TimeoutException("Response timeout"));
                 }
                 pendingResponseMap.remove(top.messageId);
+                removeFromNode(top);
             }
         }
+        if (!droppedNodes.isEmpty())
+        {
+            final long expired = clock.millis() - responseTimeoutMillis;
+            droppedNodes.values().removeIf(droppedAt -> droppedAt < expired);
+        }
     }
 
     public void setExecutor(final ExecutorService pool)
@@ -0,0 +1,210 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.cluster.IClusterPeer;
+import com.ea.orbit.actors.cluster.INodeAddress;
+import com.ea.orbit.concurrent.Task;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Moves activations from the busiest server nodes to the idle ones.
+ * <p>
+ * Each server node publishes its activation count and cpu load in a cluster cache.
+ * Periodically every node compares itself to the cluster average and migrates its activations
+ * above the average to the nodes below it, skipping the nodes with a high cpu load.
+ * Each round migrates at most {@code maxMigrationsPerRound} actors, so that a node joining
+ * the cluster doesn't cause a migration storm.
+ * </p>
+ */
+public class Rebalancer
+{
+    private static final Logger logger = LoggerFactory.getLogger(Rebalancer.class);
+
+    /**
+     * Cluster cache with the "activations,cpuLoad" of each node.
+     */
+    public static final String LOAD_CACHE = "orbit.actors.nodeLoad";
+
+    private Execution execution;
+    private Hosting hosting;
+    private IClusterPeer clusterPeer;
+    private int maxMigrationsPerRound = 50;
+    // nodes within this fraction of the average are considered balanced
+    private double tolerance = 0.1;
+    private double maxTargetCpuLoad = 0.8;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+    public void setExecution(final Execution execution)
+    {
+        this.execution = execution;
+    }
+
+    public void setHosting(final Hosting hosting)
+    {
+        this.hosting = hosting;
+    }
+
+    public void setClusterPeer(final IClusterPeer clusterPeer)
+    {
+        this.clusterPeer = clusterPeer;
+    }
+
+    public void setMaxMigrationsPerRound(final int maxMigrationsPerRound)
+    {
+        this.maxMigrationsPerRound = maxMigrationsPerRound;
+    }
+
+    public void setTolerance(final double tolerance)
+    {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Nodes with a cpu load above this value don't receive migrated actors.
+     *
+     * @param maxTargetCpuLoad the system load average divided by the number of processors
+     */
+    public void setMaxTargetCpuLoad(final double maxTargetCpuLoad)
+    {
+        this.maxTargetCpuLoad = maxTargetCpuLoad;
+    }
+
+    /**
+     * Publishes the load of this node and migrates the excess activations to the less loaded nodes.
+     *
+     * @return the number of actors migrated
+     */
+    public Task<Integer> rebalance()
+    {
+        if (!running.compareAndSet(false, true))
+        {
+            return Task.fromValue(0);
+        }
+        try
+        {
+            final List<Task<Boolean>> migrations = startMigrations();
+            return Task.allOf(migrations)
+                    .thenApply(x -> (int) migrations.stream().filter(m -> m.join()).count())
+                    .whenComplete((r, e) -> running.set(false));
+        }
+        catch (Exception ex)
+        {
+            running.set(false);
+            logger.error("Error rebalancing the actors", ex);
+            return Task.fromException(ex);
+        }
+    }
+
+    private List<Task<Boolean>> startMigrations()
+    {
+        final INodeAddress localAddress = clusterPeer.localAddress();
+        final int localActivations = execution.getActivationCount();
+        final ConcurrentMap<INodeAddress, String> loadCache = clusterPeer.getCache(LOAD_CACHE);
+        loadCache.put(localAddress, localActivations + "," + getCpuLoad());
+
+        final List<INodeAddress> servers = hosting.getServerNodes();
+        if (servers.size() < 2 || !servers.contains(localAddress))
+        {
+            return new ArrayList<>();
+        }
+        final Map<INodeAddress, Integer> activations = new HashMap<>();
+        final Map<INodeAddress, Double> cpuLoads = new HashMap<>();
+        long total = 0;
+        for (INodeAddress node : servers)
+        {
+            // nodes that didn't publish their load yet have just joined
+            final String load = node.equals(localAddress) ? null : loadCache.get(node);
+            final int nodeActivations = node.equals(localAddress) ? localActivations : load != null ? Integer.parseInt(load.split(",")[0]) : 0;
+            activations.put(node, nodeActivations);
+            cpuLoads.put(node, load != null ? Double.parseDouble(load.split(",")[1]) : 0.0);
+            total += nodeActivations;
+        }
+        final double average = (double) total / servers.size();
+        int budget = Math.min(maxMigrationsPerRound, (int) (localActivations - Math.ceil(average * (1 + tolerance))));
+        if (budget <= 0)
+        {
+            return new ArrayList<>();
+        }
+        final List<INodeAddress> targets = servers.stream()
+                .filter(n -> !n.equals(localAddress) && activations.get(n) < average && cpuLoads.get(n) < maxTargetCpuLoad)
+                .sorted(Comparator.comparing(activations::get))
+                .collect(Collectors.toList());
+
+        final List<Task<Boolean>> migrations = new ArrayList<>();
+        for (ActorReference<?> candidate : execution.getMigrationCandidates(budget * 2))
+        {
+            if (budget <= 0 || targets.isEmpty())
+            {
+                break;
+            }
+            final String interfaceClassName = candidate._interfaceClass().getName();
+            for (INodeAddress target : targets)
+            {
+                if (hosting.canActivate(target, interfaceClassName))
+                {
+                    migrations.add(execution.migrateActor(candidate, target));
+                    budget--;
+                    final int targetActivations = activations.merge(target, 1, Integer::sum);
+                    if (targetActivations >= average)
+                    {
+                        targets.remove(target);
+                    }
+                    break;
+                }
+            }
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Migrating {} actors, local activations: {}, cluster average: {}", migrations.size(), localActivations, average);
+        }
+        return migrations;
+    }
+
+    private double getCpuLoad()
+    {
+        final double load = os.getSystemLoadAverage();
+        // not available in some platforms
+        return load < 0 ? 0 : load / os.getAvailableProcessors();
+    }
+}
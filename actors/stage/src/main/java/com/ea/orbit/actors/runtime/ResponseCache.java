@@ -0,0 +1,271 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.runtime;
+
+import com.ea.orbit.actors.IAddressable;
+import com.ea.orbit.actors.providers.IInvokeHookProvider;
+import com.ea.orbit.concurrent.Task;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+
+import java.lang.reflect.Method;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongBiFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Caches the responses of the {@literal@}Cacheable actor methods called from this node.
+ * <p>
+ * The responses are keyed by actor interface, actor id, method and parameters.
+ * Concurrent identical calls share the same pending response, and failed calls are not cached.
+ * Each caller gets its own copy of the response, made like the copies of the local calls,
+ * so a caller changing its response doesn't change the cached one.
+ * Other invoke hooks are called for the messages that are actually sent.
+ * </p>
+ */
+public class ResponseCache implements IInvokeHookProvider
+{
+    /**
+     * Counters of the response cache.
+     */
+    public static class ResponseCacheStats
+    {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder collapsed = new LongAdder();
+        private final LongAdder invalidations = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        public long getHits()
+        {
+            return hits.sum();
+        }
+
+        public long getMisses()
+        {
+            return misses.sum();
+        }
+
+        /**
+         * @return the calls that joined an identical call still waiting for its response.
+         */
+        public long getCollapsed()
+        {
+            return collapsed.sum();
+        }
+
+        /**
+         * @return the responses dropped by the actors invalidating them.
+         */
+        public long getInvalidations()
+        {
+            return invalidations.sum();
+        }
+
+        /**
+         * @return the responses dropped because of the size limit.
+         */
+        public long getEvictions()
+        {
+            return evictions.sum();
+        }
+
+        public double getHitRate()
+        {
+            final long hits = this.hits.sum() + collapsed.sum();
+            final long total = hits + misses.sum();
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    private static class CacheKey
+    {
+        final int interfaceId;
+        final Object id;
+        final int methodId;
+        final Object[] params;
+        final int hash;
+
+        CacheKey(final int interfaceId, final Object id, final int methodId, final Object[] params)
+        {
+            this.interfaceId = interfaceId;
+            this.id = id;
+            this.methodId = methodId;
+            this.params = params;
+            this.hash = 31 * (31 * (31 * interfaceId + Objects.hashCode(id)) + methodId) + Arrays.deepHashCode(params);
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+            final CacheKey key = (CacheKey) o;
+            return interfaceId == key.interfaceId && methodId == key.methodId
+                    && Objects.equals(id, key.id) && Arrays.deepEquals(params, key.params);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    private static class CachedResponse
+    {
+        final Task<?> response;
+        volatile long expiresAt;
+
+        CachedResponse(final Task<?> response)
+        {
+            this.response = response;
+        }
+    }
+
+    private final ResponseCacheStats stats = new ResponseCacheStats();
+    private final Cache<CacheKey, CachedResponse> cache;
+    private final ToLongBiFunction<ActorReference<?>, Integer> ttlMillis;
+    private final IInvokeHookProvider next;
+    private final Clock clock;
+    private final UnaryOperator<Object> copy;
+
+    /**
+     * @param maxEntries the maximum number of cached responses
+     * @param ttlMillis  gives the time to live of the responses of a method, zero if it isn't cacheable
+     * @param next       the invoke hook used for the messages actually sent, can be null
+     * @param clock      the clock used for the expiration of the responses
+     * @param copy       copies the cached response for each caller
+     */
+    ResponseCache(final long maxEntries, final ToLongBiFunction<ActorReference<?>, Integer> ttlMillis,
+                  final IInvokeHookProvider next, final Clock clock, final UnaryOperator<Object> copy)
+    {
+        this.ttlMillis = ttlMillis;
+        this.next = next;
+        this.clock = clock;
+        this.copy = copy;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .removalListener(n -> {
+                    if (n.getCause() == RemovalCause.SIZE)
+                    {
+                        stats.evictions.increment();
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public Task<?> invoke(final IRuntime runtime, final IAddressable toReference, final Method method, final boolean oneWay, final int methodId, final Object[] params)
+    {
+        final ActorReference<?> reference = (ActorReference<?>) toReference;
+        final long ttl = oneWay ? 0 : ttlMillis.applyAsLong(reference, methodId);
+        if (ttl <= 0)
+        {
+            return send(runtime, toReference, method, oneWay, methodId, params);
+        }
+        final CacheKey key = new CacheKey(reference._interfaceId(), reference.id, methodId, params);
+        final CachedResponse cached = cache.getIfPresent(key);
+        if (cached != null)
+        {
+            if (!cached.response.isDone())
+            {
+                stats.collapsed.increment();
+                return cached.response.thenApply(copy);
+            }
+            if (cached.expiresAt > clock.millis())
+            {
+                stats.hits.increment();
+                return cached.response.thenApply(copy);
+            }
+            cache.asMap().remove(key, cached);
+        }
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final Task<Object> response = Task.from(future);
+        final CachedResponse newEntry = new CachedResponse(response);
+        final CachedResponse other = cache.asMap().putIfAbsent(key, newEntry);
+        if (other != null)
+        {
+            // someone else sent the same call in the meantime
+            stats.collapsed.increment();
+            return other.response.thenApply(copy);
+        }
+        stats.misses.increment();
+        send(runtime, toReference, method, false, methodId, params).whenComplete((r, e) -> {
+            if (e != null)
+            {
+                cache.asMap().remove(key, newEntry);
+                future.completeExceptionally(e);
+            }
+            else
+            {
+                newEntry.expiresAt = clock.millis() + ttl;
+                future.complete(r);
+            }
+        });
+        return response.thenApply(copy);
+    }
+
+    private Task<?> send(final IRuntime runtime, final IAddressable toReference, final Method method, final boolean oneWay, final int methodId, final Object[] params)
+    {
+        return next != null ? next.invoke(runtime, toReference, method, oneWay, methodId, params)
+                : runtime.sendMessage(toReference, oneWay, methodId, params);
+    }
+
+    /**
+     * Drops the cached responses of an actor.
+     */
+    public void invalidate(final int interfaceId, final Object id)
+    {
+        cache.asMap().keySet().removeIf(k -> {
+            if (k.interfaceId == interfaceId && Objects.equals(k.id, id))
+            {
+                stats.invalidations.increment();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    public long size()
+    {
+        return cache.size();
+    }
+
+    public ResponseCacheStats getStats()
+    {
+        return stats;
+    }
+}
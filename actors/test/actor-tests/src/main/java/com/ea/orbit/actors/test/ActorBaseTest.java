@@ -30,6 +30,7 @@ package com.ea.orbit.actors.test;
 
 
 import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.providers.IOrbitProvider;
 import com.ea.orbit.concurrent.ExecutorUtils;
 import com.ea.orbit.exception.UncheckedException;
 
@@ -40,6 +41,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import static org.junit.Assert.fail;
@@ -53,6 +55,16 @@ public class ActorBaseTest
     protected static final ExecutorService commonPool = ExecutorUtils.newScalingThreadPool(200);
 
     public OrbitStage createClient() throws ExecutionException, InterruptedException
+    {
+        return createClient(client -> {
+        });
+    }
+
+    /**
+     * Creates and starts a front-end stage with the test defaults,
+     * {@code configure} can change them before the stage starts.
+     */
+    public OrbitStage createClient(Consumer<OrbitStage> configure) throws ExecutionException, InterruptedException
     {
         OrbitStage client = new OrbitStage();
         client.setMode(OrbitStage.StageMode.FRONT_END);
@@ -61,26 +73,52 @@ public class ActorBaseTest
         client.setClock(clock);
         client.setClusterName(clusterName);
         client.setClusterPeer(new FakeClusterPeer());
+        configure.accept(client);
         client.start().join();
         client.bind();
         return client;
     }
 
     public OrbitStage createStage() throws ExecutionException, InterruptedException
+    {
+        return createStage(stage -> {
+        });
+    }
+
+    /**
+     * Creates and starts a host stage with the test defaults,
+     * {@code configure} can change them before the stage starts.
+     */
+    public OrbitStage createStage(Consumer<OrbitStage> configure) throws ExecutionException, InterruptedException
+    {
+        OrbitStage stage = newStage();
+        configure.accept(stage);
+        stage.start().join();
+        stage.bind();
+        return stage;
+    }
+
+    /**
+     * Creates a host stage with the test defaults without starting it.
+     */
+    protected OrbitStage newStage()
     {
         OrbitStage stage = new OrbitStage();
         stage.setMode(OrbitStage.StageMode.HOST);
         stage.setExecutionPool(commonPool);
         stage.setMessagingPool(commonPool);
-        stage.addProvider(new FakeStorageProvider(fakeDatabase));
+        stage.addProvider(getStorageProvider());
         stage.setClock(clock);
         stage.setClusterName(clusterName);
         stage.setClusterPeer(new FakeClusterPeer());
-        stage.start().join();
-        stage.bind();
         return stage;
     }
 
+    protected IOrbitProvider getStorageProvider()
+    {
+        return new FakeStorageProvider(fakeDatabase);
+    }
+
     @FunctionalInterface
     public interface Exceptional
     {
@@ -107,7 +145,7 @@ public class ActorBaseTest
         fail("Was expecting some exception");
     }
 
-    private Object getField(Object target, String name) throws IllegalAccessException, NoSuchFieldException
+    protected Object getField(Object target, String name) throws IllegalAccessException, NoSuchFieldException
     {
         final Field f = target.getClass().getDeclaredField(name);
         f.setAccessible(true);
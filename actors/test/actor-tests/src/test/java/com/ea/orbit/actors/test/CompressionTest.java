@@ -0,0 +1,128 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.runtime.MessageCompression;
+import com.ea.orbit.actors.runtime.OrbitActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("unused")
+public class CompressionTest extends ActorBaseTest
+{
+    public interface IHistoryActor extends IActor
+    {
+        Task<String> echo(String history);
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class HistoryActor extends OrbitActor implements IHistoryActor
+    {
+        @Override
+        public Task<String> echo(final String history)
+        {
+            return Task.fromValue(history);
+        }
+    }
+
+    private static String history(int entries)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < entries; i++)
+        {
+            sb.append("{\"player\":\"p").append(i % 100).append("\",\"score\":").append(i).append("}\n");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void largeMessagesAreCompressedTest() throws ExecutionException, InterruptedException
+    {
+        OrbitStage stage = createStage();
+        OrbitStage client = createClient();
+        client.bind();
+        IHistoryActor actor = IActor.getReference(IHistoryActor.class, "1");
+
+        // small messages are sent as they are
+        assertEquals("small", actor.echo("small").join());
+        assertTrue(client.getMessageCompressionStats().isEmpty());
+        assertTrue(stage.getMessageCompressionStats().isEmpty());
+
+        String history = history(10_000);
+        assertEquals(history, actor.echo(history).join());
+
+        // the request is compressed by the client and the response by the server
+        for (OrbitStage s : new OrbitStage[]{ client, stage })
+        {
+            assertEquals(1, s.getMessageCompressionStats().size());
+            MessageCompression.CompressionStats stats = s.getMessageCompressionStats().values().iterator().next();
+            assertEquals(1, stats.getMessages());
+            assertTrue(stats.getOriginalBytes() > history.length());
+            assertTrue(stats.getRatio() > 2);
+        }
+    }
+
+    @Test
+    public void compressionDisabledTest() throws ExecutionException, InterruptedException
+    {
+        OrbitStage stage = createStage();
+        OrbitStage client = createClient(c -> c.setMessageCompression(MessageCompression.Codec.NONE));
+
+        String history = history(10_000);
+        assertEquals(history, IActor.getReference(IHistoryActor.class, "1").echo(history).join());
+        assertEquals(Collections.emptyMap(), client.getMessageCompressionStats());
+        // the server still compresses its response
+        assertEquals(1, stage.getMessageCompressionStats().size());
+    }
+
+    @Test
+    public void roundTripTest()
+    {
+        MessageCompression compression = new MessageCompression();
+        compression.setThreshold(100);
+        byte[] frame = history(100).getBytes();
+        byte[] compressed = compression.compress(frame, 1, MessageCompression.supportedCodecs());
+        assertEquals(MessageCompression.COMPRESSED_FRAME, compressed[0]);
+        assertTrue(compressed.length < frame.length);
+        assertEquals(new String(frame), new String(MessageCompression.decompress(compressed)));
+        // receivers that don't support the codec get the plain frame
+        assertTrue(frame == compression.compress(frame, 1, 0));
+        assertEquals(MessageCompression.supportedCodecs(), MessageCompression.parseCodecs(MessageCompression.toString(MessageCompression.supportedCodecs())));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.runtime.Execution;
+import com.ea.orbit.actors.runtime.OrbitActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("unused")
+public class DeadlineTest extends ActorBaseTest
+{
+    private static Task<Void> started;
+    private static Task<Void> release;
+    private static AtomicInteger countCalls = new AtomicInteger();
+    private static Execution execution;
+
+    public static interface IBusy extends IActor
+    {
+        Task<Void> block();
+
+        Task<Integer> count();
+
+        Task<Long> getDeadline();
+    }
+
+    public static interface IRelay extends IActor
+    {
+        Task<List<Long>> relay(IBusy busy);
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class Busy extends OrbitActor implements IBusy
+    {
+        @Override
+        public Task<Void> block()
+        {
+            started.complete(null);
+            return release;
+        }
+
+        @Override
+        public Task<Integer> count()
+        {
+            return Task.fromValue(countCalls.incrementAndGet());
+        }
+
+        @Override
+        public Task<Long> getDeadline()
+        {
+            return Task.fromValue(execution.getCurrentDeadline());
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class Relay extends OrbitActor implements IRelay
+    {
+        @Override
+        public Task<List<Long>> relay(final IBusy busy)
+        {
+            final long deadline = execution.getCurrentDeadline();
+            // the second call is made in the continuation of the first one, like the code after an await
+            return busy.block().thenCompose(() -> busy.getDeadline()).thenApply(nested -> Arrays.asList(deadline, nested));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void expiredMessageIsNotExecutedTest() throws Exception
+    {
+        started = new Task<>();
+        release = new Task<>();
+        countCalls.set(0);
+        OrbitStage stage1 = createStage();
+        OrbitStage client = createClient();
+        IBusy busy = IActor.getReference(IBusy.class, "1");
+        assertEquals((Integer) 1, busy.count().get(5, TimeUnit.SECONDS));
+
+        busy.block();
+        started.get(5, TimeUnit.SECONDS);
+        final Execution execution = (Execution) getField(stage1, "execution");
+        final AtomicLong received = (AtomicLong) getField(execution, "messagesReceived");
+        final long before = received.get();
+        final Task<Integer> late = busy.count();
+        awaitFor(() -> received.get() > before);
+
+        // the caller gives up while the message waits in the mailbox
+        clock.incrementTimeMillis(TimeUnit.MINUTES.toMillis(60));
+        client.cleanup(false);
+        assertTrue(late.isCompletedExceptionally());
+        release.complete(null);
+
+        awaitFor(() -> execution.getExpiredMessages() == 1);
+        // the expired call was never invoked
+        assertEquals((Integer) 2, busy.count().get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10_000)
+    public void deadlineAfterAwaitTest() throws Exception
+    {
+        started = new Task<>();
+        release = new Task<>();
+        OrbitStage stage1 = createStage();
+        execution = (Execution) getField(stage1, "execution");
+        IBusy busy = IActor.getReference(IBusy.class, "after-await");
+        IRelay relay = IActor.getReference(IRelay.class, "after-await");
+        final Task<List<Long>> deadlines = relay.relay(busy);
+        started.get(5, TimeUnit.SECONDS);
+        // the continuation runs later, a new deadline would be later too
+        clock.incrementTimeMillis(TimeUnit.SECONDS.toMillis(10));
+        release.complete(null);
+
+        final List<Long> result = deadlines.get(5, TimeUnit.SECONDS);
+        assertTrue(result.get(0) > 0);
+        assertEquals(result.get(0), result.get(1));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.runtime.Execution;
+import com.ea.orbit.actors.runtime.OrbitActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("unused")
+public class DrainTest extends ActorBaseTest
+{
+    public interface IDrainCounter extends IActor
+    {
+        Task<Integer> add(int value);
+    }
+
+    public static class DrainCounterState
+    {
+        int total;
+    }
+
+    public static class DrainCounter extends OrbitActor<DrainCounterState> implements IDrainCounter
+    {
+        @Override
+        public Task<Integer> add(final int value)
+        {
+            // the state is only written by the drain
+            state().total += value;
+            return Task.fromValue(state().total);
+        }
+    }
+
+    private Execution execution(OrbitStage stage) throws Exception
+    {
+        return (Execution) getField(stage, "execution");
+    }
+
+    private List<IDrainCounter> createCounters(int count)
+    {
+        List<IDrainCounter> counters = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            IDrainCounter counter = IActor.getReference(IDrainCounter.class, "d" + i);
+            counter.add(i).join();
+            counters.add(counter);
+        }
+        return counters;
+    }
+
+    @Test(timeout = 30_000L)
+    public void drainTest() throws Exception
+    {
+        OrbitStage stage1 = createStage();
+        OrbitStage client = createClient();
+        List<IDrainCounter> counters = createCounters(20);
+        OrbitStage stage2 = createStage();
+
+        assertTrue(stage1.drain().join() >= counters.size());
+        assertEquals(0, execution(stage1).getActivationCount());
+
+        // the client still has the old locations cached, the messages are relocated
+        client.bind();
+        for (int i = 0; i < counters.size(); i++)
+        {
+            assertEquals((Integer) (i + 1), counters.get(i).add(1).join());
+        }
+        // the drained node takes no new activations
+        assertEquals(0, execution(stage1).getActivationCount());
+        stage1.stop().join();
+        assertEquals((Integer) 2, counters.get(0).add(1).join());
+    }
+
+    @Test(timeout = 30_000L)
+    public void drainPrewarmTest() throws Exception
+    {
+        OrbitStage stage1 = createStage();
+        OrbitStage client = createClient();
+        List<IDrainCounter> counters = createCounters(10);
+        OrbitStage stage2 = createStage();
+        int before = execution(stage2).getActivationCount();
+
+        stage1.setDrainPrewarm(true);
+        stage1.drain().join();
+        // activated before their next message
+        assertTrue(execution(stage2).getActivationCount() >= before + counters.size());
+
+        client.bind();
+        for (int i = 0; i < counters.size(); i++)
+        {
+            assertEquals((Integer) (i + 1), counters.get(i).add(1).join());
+        }
+        assertEquals(0, execution(stage1).getActivationCount());
+    }
+}
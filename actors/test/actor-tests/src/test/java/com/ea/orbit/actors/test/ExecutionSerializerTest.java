@@ -0,0 +1,273 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+import com.ea.orbit.actors.runtime.ExecutionSerializer;
+import com.ea.orbit.concurrent.ExecutorUtils;
+import com.ea.orbit.concurrent.MonitoredThreadPool;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutionSerializerTest
+{
+    private MonitoredThreadPool pool;
+    private CountDownLatch release;
+
+    @Before
+    public void setUp()
+    {
+        pool = ExecutorUtils.newFixedThreadPool("serializer-test", 1, 1);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown()
+    {
+        release.countDown();
+        pool.shutdownNow();
+    }
+
+    private void saturate() throws InterruptedException
+    {
+        final CountDownLatch running = new CountDownLatch(1);
+        // one task in the only thread and another in the only queue slot
+        pool.execute(() -> {
+            running.countDown();
+            await(release);
+        });
+        running.await(5, TimeUnit.SECONDS);
+        pool.execute(() -> await(release));
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test(timeout = 10_000L)
+    public void rejectedJobTest() throws Exception
+    {
+        final ExecutionSerializer<String> serializer = new ExecutionSerializer<>(pool);
+        saturate();
+
+        // the pool refuses the runner, the job is refused instead of leaving the key stuck
+        assertFalse(serializer.offerJob("a", () -> Task.done(), 10));
+        assertEquals(0, serializer.getQueueSize("a"));
+
+        release.countDown();
+        final Task<Void> ran = new Task<>();
+        while (!serializer.offerJob("a", () -> {
+            ran.complete(null);
+            return Task.done();
+        }, 10))
+        {
+            Thread.sleep(10);
+        }
+        ran.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test(timeout = 10_000L)
+    public void resumeWhenSaturatedTest() throws Exception
+    {
+        final ExecutionSerializer<String> serializer = new ExecutionSerializer<>(pool);
+        final Task<Void> first = new Task<>();
+        final Task<Void> started = new Task<>();
+        final Task<Thread> secondThread = new Task<>();
+        assertTrue(serializer.offerJob("a", () -> {
+            started.complete(null);
+            return first;
+        }, 10));
+        started.get(5, TimeUnit.SECONDS);
+        assertTrue(serializer.offerJob("a", () -> {
+            secondThread.complete(Thread.currentThread());
+            return Task.done();
+        }, 10));
+        saturate();
+
+        // the completion can't be handed to the pool, the next job runs in the completing thread
+        first.complete(null);
+        assertEquals(Thread.currentThread(), secondThread.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Runs the submitted tasks only when the test asks, to control the interleaving.
+     */
+    private static class ManualExecutor extends AbstractExecutorService
+    {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(final Runnable command)
+        {
+            tasks.add(command);
+        }
+
+        void runAll()
+        {
+            Runnable task;
+            while ((task = tasks.poll()) != null)
+            {
+                task.run();
+            }
+        }
+
+        @Override
+        public void shutdown()
+        {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow()
+        {
+            return new ArrayList<>(tasks);
+        }
+
+        @Override
+        public boolean isShutdown()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(final long timeout, final TimeUnit unit)
+        {
+            return true;
+        }
+    }
+
+    @Test
+    public void priorityJobRaceTest()
+    {
+        final ManualExecutor executor = new ManualExecutor();
+        final ExecutionSerializer<String> serializer = new ExecutionSerializer<>(executor);
+        final List<String> started = new ArrayList<>();
+        final Task<Void> firstRead = new Task<>();
+        serializer.offerJob("a", () -> {
+            started.add("read1");
+            return firstRead;
+        }, 10, ExecutionSerializer.Interleave.READ_ONLY);
+        executor.runAll();
+
+        // this job can interleave with the pending read, a runner is submitted for it
+        serializer.offerJob("a", () -> {
+            started.add("read2");
+            return Task.done();
+        }, 10, ExecutionSerializer.Interleave.READ_ONLY);
+        // before that runner starts, an exclusive job jumps to the head of the mailbox
+        serializer.offerJob("a", () -> {
+            started.add("write");
+            return Task.done();
+        }, 10, ExecutionSerializer.Interleave.NONE, true, false, 0);
+        executor.runAll();
+        // the exclusive job must wait for the pending read
+        assertEquals(Arrays.asList("read1"), started);
+
+        firstRead.complete(null);
+        executor.runAll();
+        assertEquals(Arrays.asList("read1", "write", "read2"), started);
+        assertEquals(0, serializer.getQueueSize("a"));
+    }
+
+    @Test
+    public void removedJobRaceTest()
+    {
+        final ManualExecutor executor = new ManualExecutor();
+        final AtomicLong now = new AtomicLong();
+        final ExecutionSerializer<String> serializer = new ExecutionSerializer<>(executor);
+        serializer.setClock(new Clock()
+        {
+            @Override
+            public ZoneId getZone()
+            {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(final ZoneId zone)
+            {
+                return this;
+            }
+
+            @Override
+            public Instant instant()
+            {
+                return Instant.ofEpochMilli(now.get());
+            }
+        });
+        serializer.offerJob("a", () -> Task.done(), 10, ExecutionSerializer.Interleave.NONE, false, false, 10);
+        // before the runner starts, the job expires and is removed while another offer makes room
+        now.set(20);
+        assertFalse(serializer.offerJob("a", () -> Task.done(), 0, ExecutionSerializer.Interleave.NONE, false, false, 0));
+        assertEquals(1, serializer.getExpiredJobs());
+        executor.runAll();
+
+        // the key is still usable
+        final List<String> started = new ArrayList<>();
+        assertTrue(serializer.offerJob("a", () -> {
+            started.add("next");
+            return Task.done();
+        }, 10));
+        executor.runAll();
+        assertEquals(Arrays.asList("next"), started);
+    }
+}
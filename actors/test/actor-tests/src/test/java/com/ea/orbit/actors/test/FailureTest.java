@@ -31,20 +31,56 @@ package com.ea.orbit.actors.test;
 
 import com.ea.orbit.actors.IActor;
 import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.annotation.Idempotent;
+import com.ea.orbit.actors.cluster.NodeDroppedException;
+import com.ea.orbit.actors.runtime.OrbitActor;
 import com.ea.orbit.actors.test.actors.ISomeActor;
+import com.ea.orbit.concurrent.Task;
 
 import org.junit.Test;
 
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class FailureTest extends ActorBaseTest
 {
     String clusterName = "cluster." + Math.random() + "." + getClass().getSimpleName();
 
+    // the first call of each test never completes, simulating a node that dies while handling it
+    static final AtomicInteger calls = new AtomicInteger();
+
+    public interface IHangingActor extends IActor
+    {
+        Task<String> hang();
+
+        @Idempotent
+        Task<String> idempotentHang();
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class HangingActor extends OrbitActor implements IHangingActor
+    {
+        @Override
+        public Task<String> hang()
+        {
+            return calls.getAndIncrement() == 0 ? new Task<>() : Task.fromValue("done");
+        }
+
+        @Override
+        public Task<String> idempotentHang()
+        {
+            return hang();
+        }
+    }
+
     @Test
     public void nodeDropTest() throws ExecutionException, InterruptedException
     {
@@ -80,4 +116,54 @@ public class FailureTest extends ActorBaseTest
 
     }
 
+    @Test(timeout = 10_000L)
+    public void pendingCallsFailOnNodeDropTest() throws Exception
+    {
+        calls.set(0);
+        OrbitStage stage1 = createStage();
+        OrbitStage client = createClient();
+        IHangingActor actor = IActor.getReference(IHangingActor.class, "1");
+        Task<String> call = actor.hang();
+        // waits for the call to reach the actor
+        awaitFor(() -> calls.get() > 0);
+
+        // the node crashes, the fake clock is not moving, so a timeout would never happen
+        stage1.getClusterPeer().leave();
+        try
+        {
+            call.get(5, TimeUnit.SECONDS);
+            fail("exception expected");
+        }
+        catch (ExecutionException ex)
+        {
+            assertTrue(ex.getCause() instanceof NodeDroppedException);
+        }
+
+        // the dropped node is forgotten after the response timeout
+        final Map<?, ?> droppedNodes = (Map<?, ?>) getField(getField(client, "messaging"), "droppedNodes");
+        assertEquals(1, droppedNodes.size());
+        client.cleanup(false);
+        assertEquals(1, droppedNodes.size());
+        clock.incrementTimeMillis(TimeUnit.MINUTES.toMillis(1));
+        client.cleanup(false);
+        assertTrue(droppedNodes.isEmpty());
+    }
+
+    @Test(timeout = 10_000L)
+    public void idempotentCallRetryTest() throws Exception
+    {
+        calls.set(0);
+        OrbitStage stage1 = createStage();
+        OrbitStage client = createClient();
+        IHangingActor actor = IActor.getReference(IHangingActor.class, "1");
+        Task<String> call = actor.idempotentHang();
+        awaitFor(() -> calls.get() > 0);
+
+        OrbitStage stage2 = createStage();
+        stage1.getClusterPeer().leave();
+        // the call is sent again to a new activation in the remaining node
+        assertEquals("done", call.get(5, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+    }
+
 }
@@ -0,0 +1,210 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.actors.IAddressable;
+import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.cluster.GatewayClientPeer;
+import com.ea.orbit.actors.cluster.GatewayClusterPeer;
+import com.ea.orbit.actors.cluster.INodeAddress;
+import com.ea.orbit.actors.cluster.NodeAddress;
+import com.ea.orbit.actors.test.actors.ISomeActor;
+import com.ea.orbit.actors.test.actors.ISomeChatObserver;
+import com.ea.orbit.actors.test.actors.ISomeChatRoom;
+import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.exception.UncheckedException;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("unused")
+public class GatewayTest extends ActorBaseTest
+{
+    public static class GatewayChatObserver implements ISomeChatObserver
+    {
+        BlockingQueue<String> messagesReceived = new LinkedBlockingQueue<>();
+
+        @Override
+        public Task<Void> receiveMessage(final ISomeChatObserver sender, final String message)
+        {
+            messagesReceived.add(message);
+            return Task.done();
+        }
+    }
+
+    private OrbitStage createMember(int gatewayPort) throws Exception
+    {
+        return createStage(stage -> {
+            stage.setGatewayEnabled(true);
+            stage.setGatewayPort(gatewayPort);
+        });
+    }
+
+    private OrbitStage createGatewayClient(OrbitStage... gateways) throws Exception
+    {
+        final GatewayClientPeer peer = new GatewayClientPeer(Stream.of(gateways)
+                .map(g -> ((GatewayClusterPeer) g.getClusterPeer()).getLocalEndpoint())
+                .collect(Collectors.toList()));
+        peer.setReconnectDelayMillis(10);
+        return createClient(client -> client.setClusterPeer(peer));
+    }
+
+    @Test(timeout = 30_000L)
+    public void gatewayClientTest() throws Exception
+    {
+        OrbitStage gateway = createMember(0);
+        OrbitStage member = createMember(-1);
+        OrbitStage client = createGatewayClient(gateway);
+        INodeAddress clientAddress = client.getClusterPeer().localAddress();
+
+        // the client is not a member of the cluster
+        List<INodeAddress> members = gateway.getHosting().getActiveNodes();
+        assertEquals(2, members.size());
+        assertFalse(members.contains(clientAddress));
+        assertEquals(Arrays.asList(clientAddress), ((GatewayClusterPeer) gateway.getClusterPeer()).getClients());
+
+        client.bind();
+        for (int i = 0; i < 10; i++)
+        {
+            ISomeActor actor = IActor.getReference(ISomeActor.class, "g" + i);
+            assertEquals("bla", actor.sayHello("hello").join());
+            // the client addresses the calls to the node the directory chose
+            INodeAddress located = client.getHosting().locateActor((IAddressable) actor).join();
+            gateway.bind();
+            assertEquals(gateway.getHosting().locateActor((IAddressable) actor).join(), located);
+            client.bind();
+        }
+        assertTrue(((GatewayClusterPeer) gateway.getClusterPeer()).getMessagesRelayed() > 0);
+
+        // the observer callbacks reach the client from both members
+        GatewayChatObserver observer = new GatewayChatObserver();
+        ISomeChatObserver observerReference = client.getObserverReference(ISomeChatObserver.class, observer);
+        for (int i = 0; i < 10; i++)
+        {
+            ISomeChatRoom chatRoom = IActor.getReference(ISomeChatRoom.class, "g" + i);
+            chatRoom.join(observerReference).join();
+            chatRoom.sendMessage(observerReference, "bla" + i).join();
+            assertEquals("bla" + i, observer.messagesReceived.poll(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test(timeout = 30_000L)
+    public void gatewayFailoverTest() throws Exception
+    {
+        OrbitStage gateway1 = createMember(0);
+        OrbitStage gateway2 = createMember(0);
+        OrbitStage client = createGatewayClient(gateway1, gateway2);
+        GatewayClientPeer clientPeer = (GatewayClientPeer) client.getClusterPeer();
+
+        ISomeActor actor = IActor.getReference(ISomeActor.class, "failover");
+        assertEquals("bla", actor.sayHello("hello").join());
+
+        INodeAddress firstGateway = clientPeer.getGatewayAddress();
+        OrbitStage lost = firstGateway.equals(gateway1.getClusterPeer().localAddress()) ? gateway1 : gateway2;
+        OrbitStage remaining = lost == gateway1 ? gateway2 : gateway1;
+        lost.getClusterPeer().leave();
+
+        // reconnects through the other gateway
+        awaitFor(() -> clientPeer.getConnections() == 2);
+        assertNotEquals(firstGateway, clientPeer.getGatewayAddress());
+        assertEquals(remaining.getClusterPeer().localAddress(), clientPeer.getGatewayAddress());
+        client.bind();
+        assertEquals("bla", actor.sayHello("hello").join());
+    }
+
+    @Test(timeout = 30_000L)
+    public void slowClientTest() throws Exception
+    {
+        OrbitStage gateway = createMember(0);
+        OrbitStage member = createMember(-1);
+        final GatewayClusterPeer gatewayPeer = (GatewayClusterPeer) gateway.getClusterPeer();
+        gatewayPeer.setMaxQueuedMessages(10);
+        final String[] endpoint = gatewayPeer.getLocalEndpoint().split(":");
+        final INodeAddress slowClient = new NodeAddress(UUID.randomUUID());
+
+        // a client that connects and never reads
+        try (Socket socket = new Socket(endpoint[0], Integer.parseInt(endpoint[1])))
+        {
+            final ByteArrayOutputStream handshake = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(handshake);
+            out.writeLong(slowClient.asUUID().getMostSignificantBits());
+            out.writeLong(slowClient.asUUID().getLeastSignificantBits());
+            out.writeUTF(clusterName);
+            final DataOutputStream socketOut = new DataOutputStream(socket.getOutputStream());
+            socketOut.writeInt(handshake.size());
+            socketOut.write(handshake.toByteArray());
+            socketOut.flush();
+            awaitFor(() -> gatewayPeer.getClients().contains(slowClient));
+
+            // the senders aren't blocked by the client, the messages are refused once its socket and queue are full
+            final byte[] message = new byte[64 * 1024];
+            boolean refused = false;
+            while (!refused)
+            {
+                try
+                {
+                    gatewayPeer.sendMessage(slowClient, message);
+                }
+                catch (UncheckedException e)
+                {
+                    refused = true;
+                }
+            }
+            // relayed by the membership receive thread of the gateway, which drops them while the client is full
+            final long dropped = gatewayPeer.getMessagesDropped();
+            while (gatewayPeer.getMessagesDropped() == dropped)
+            {
+                member.getClusterPeer().sendMessage(slowClient, message);
+                Thread.sleep(1);
+            }
+
+            // the gateway still handles the messages of the other members
+            member.bind();
+            assertEquals("bla", IActor.getReference(ISomeActor.class, "slow").sayHello("hello").join());
+        }
+    }
+}
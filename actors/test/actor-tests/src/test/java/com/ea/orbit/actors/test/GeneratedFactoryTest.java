@@ -0,0 +1,83 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.runtime.ActorFactory;
+import com.ea.orbit.actors.runtime.ActorFactoryGenerator;
+import com.ea.orbit.actors.runtime.ActorReference;
+import com.ea.orbit.actors.test.actors.ISomeActor;
+import com.ea.orbit.actors.test.actors.ISomeChatObserver;
+import com.ea.orbit.actors.test.actors.SomeActorFactory;
+import com.ea.orbit.actors.test.actors.SomeChatObserverFactory;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeneratedFactoryTest extends ActorBaseTest
+{
+    @Test
+    public void testGeneratedFactoryIsUsed()
+    {
+        final ActorFactoryGenerator generator = new ActorFactoryGenerator();
+        final ActorFactory<ISomeActor> factory = generator.getFactoryFor(ISomeActor.class);
+        assertEquals(SomeActorFactory.class, factory.getClass());
+        assertEquals(ISomeActor.class.getName().hashCode(), factory.getInterfaceId());
+        assertTrue(factory.createReference("1") instanceof SomeActorFactory.SomeActorReference);
+        assertEquals(SomeChatObserverFactory.class, generator.getFactoryFor(ISomeChatObserver.class).getClass());
+    }
+
+    @Test
+    public void testNestedInterfacesUseTheRuntimeGenerator()
+    {
+        final ActorFactory<DynamicReferencesTest.IAptUnfriendly> factory = new ActorFactoryGenerator().getFactoryFor(DynamicReferencesTest.IAptUnfriendly.class);
+        assertNotEquals(SomeActorFactory.class.getPackage(), factory.getClass().getPackage());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCallThroughGeneratedClasses() throws Exception
+    {
+        final OrbitStage stage1 = createStage();
+        final ISomeActor actor = IActor.getReference(ISomeActor.class, "1");
+        assertTrue(actor instanceof SomeActorFactory.SomeActorReference);
+        assertEquals(ISomeActor.class, ActorReference.getInterfaceClass((ActorReference<ISomeActor>) actor));
+        assertEquals("bla", actor.sayHello("bla").join());
+        // overloaded methods get different method ids
+        final UUID id = actor.getUniqueActivationId().join();
+        assertEquals(id, actor.getUniqueActivationId(0).join());
+    }
+}
@@ -0,0 +1,138 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.runtime.Messaging;
+import com.ea.orbit.actors.runtime.OrbitActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+@SuppressWarnings("unused")
+public class LocalCallTest extends ActorBaseTest
+{
+    public static interface ILocalCallActor extends IActor
+    {
+        Task<List<String>> addAll(List<String> items);
+
+        Task<List<String>> getItems();
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class LocalCallActor extends OrbitActor implements ILocalCallActor
+    {
+        private List<String> items = new ArrayList<>();
+
+        @Override
+        public Task<List<String>> addAll(final List<String> newItems)
+        {
+            items.addAll(newItems);
+            // modifying the parameter must not affect the caller
+            newItems.clear();
+            return Task.fromValue(items);
+        }
+
+        @Override
+        public Task<List<String>> getItems()
+        {
+            return Task.fromValue(items);
+        }
+    }
+
+    private OrbitStage createStage(boolean localShortCircuit, Messaging.LocalCallCopyMode copyMode) throws Exception
+    {
+        return createStage(stage -> {
+            stage.setLocalShortCircuit(localShortCircuit);
+            stage.setLocalCallCopyMode(copyMode);
+        });
+    }
+
+    private long localMessages(OrbitStage stage) throws NoSuchFieldException, IllegalAccessException
+    {
+        return ((AtomicLong) getField(getField(stage, "messaging"), "localMessagesReceived")).get();
+    }
+
+    @Test
+    public void localCallIsolationTest() throws Exception
+    {
+        OrbitStage stage1 = createStage();
+        ILocalCallActor actor = IActor.getReference(ILocalCallActor.class, "1");
+        List<String> items = new ArrayList<>(Arrays.asList("a", "b"));
+        List<String> result = actor.addAll(items).join();
+        assertEquals(Arrays.asList("a", "b"), items);
+        assertEquals(Arrays.asList("a", "b"), result);
+
+        // modifying the result must not affect the actor state
+        result.add("c");
+        // the startup messages are also local
+        awaitFor(() -> isIdle(stage1));
+        final long before = localMessages(stage1);
+        assertEquals(Arrays.asList("a", "b"), actor.getItems().join());
+        // the call skipped the cluster peer
+        assertEquals(before + 1, localMessages(stage1));
+    }
+
+    @Test
+    public void localCallDeepCopyTest() throws Exception
+    {
+        OrbitStage stage1 = createStage(true, Messaging.LocalCallCopyMode.DEEP_COPY);
+
+        ILocalCallActor actor = IActor.getReference(ILocalCallActor.class, "1");
+        List<String> items = new ArrayList<>(Arrays.asList("a", "b"));
+        assertEquals(Arrays.asList("a", "b"), actor.addAll(items).join());
+        assertEquals(Arrays.asList("a", "b"), items);
+        // the startup messages are also local
+        awaitFor(() -> isIdle(stage1));
+        final long before = localMessages(stage1);
+        assertEquals(Arrays.asList("a", "b"), actor.getItems().join());
+        assertEquals(before + 1, localMessages(stage1));
+    }
+
+    @Test
+    public void localShortCircuitDisabledTest() throws Exception
+    {
+        OrbitStage stage1 = createStage(false, Messaging.LocalCallCopyMode.IMMUTABLE_AWARE);
+
+        ILocalCallActor actor = IActor.getReference(ILocalCallActor.class, "1");
+        List<String> items = new ArrayList<>(Arrays.asList("a", "b"));
+        assertEquals(Arrays.asList("a", "b"), actor.addAll(items).join());
+        assertEquals(Arrays.asList("a", "b"), items);
+        // the message went through the cluster peer
+        assertEquals(0, localMessages(stage1));
+    }
+}
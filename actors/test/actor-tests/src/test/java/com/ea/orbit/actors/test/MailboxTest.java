@@ -0,0 +1,266 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.actors.IAddressable;
+import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.annotation.HighPriority;
+import com.ea.orbit.actors.annotation.Mailbox;
+import com.ea.orbit.actors.annotation.OneWay;
+import com.ea.orbit.actors.runtime.Execution;
+import com.ea.orbit.actors.runtime.OrbitActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("unused")
+public class MailboxTest extends ActorBaseTest
+{
+    private static Task<Void> started;
+    private static Task<Void> release;
+    private static Task<Void> lastRecorded;
+    private static volatile int lastValue;
+
+    @Mailbox(capacity = 2, dropOldestOneWay = true)
+    public static interface ITracker extends IActor
+    {
+        Task<Void> block();
+
+        @OneWay
+        Task<Void> record(int value);
+
+        @HighPriority
+        @OneWay
+        Task<Void> urgent(int value);
+
+        Task<List<Integer>> getRecorded();
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class Tracker extends OrbitActor implements ITracker
+    {
+        private List<Integer> recorded = new ArrayList<>();
+
+        @Override
+        public Task<Void> block()
+        {
+            started.complete(null);
+            // holds the mailbox until the test releases it
+            return release;
+        }
+
+        @Override
+        public Task<Void> record(final int value)
+        {
+            recorded.add(value);
+            if (value == lastValue)
+            {
+                lastRecorded.complete(null);
+            }
+            return Task.done();
+        }
+
+        @Override
+        public Task<Void> urgent(final int value)
+        {
+            recorded.add(value);
+            return Task.done();
+        }
+
+        @Override
+        public Task<List<Integer>> getRecorded()
+        {
+            return Task.fromValue(recorded);
+        }
+    }
+
+    @Mailbox(capacity = 2)
+    public static interface IStrict extends IActor
+    {
+        Task<Void> block();
+
+        Task<Integer> echo(int value);
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class Strict extends OrbitActor implements IStrict
+    {
+        @Override
+        public Task<Void> block()
+        {
+            started.complete(null);
+            return release;
+        }
+
+        @Override
+        public Task<Integer> echo(final int value)
+        {
+            return Task.fromValue(value);
+        }
+    }
+
+    private Execution execution(OrbitStage stage) throws Exception
+    {
+        return (Execution) getField(stage, "execution");
+    }
+
+    @Test(timeout = 10_000)
+    public void dropOldestOneWayTest() throws Exception
+    {
+        started = new Task<>();
+        release = new Task<>();
+        lastRecorded = new Task<>();
+        lastValue = 5;
+        OrbitStage stage1 = createStage();
+        ITracker tracker = IActor.getReference(ITracker.class, "drop");
+        final Task<Void> blocked = tracker.block();
+        started.get(5, TimeUnit.SECONDS);
+        for (int i = 1; i <= 5; i++)
+        {
+            tracker.record(i);
+        }
+        release.complete(null);
+        blocked.get(5, TimeUnit.SECONDS);
+        lastRecorded.get(5, TimeUnit.SECONDS);
+        // the oldest one-way messages were dropped to keep the mailbox within its capacity
+        assertEquals(Arrays.asList(4, 5), tracker.getRecorded().get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10_000)
+    public void highPriorityTest() throws Exception
+    {
+        started = new Task<>();
+        release = new Task<>();
+        lastRecorded = new Task<>();
+        lastValue = 1;
+        OrbitStage stage1 = createStage();
+        ITracker tracker = IActor.getReference(ITracker.class, "priority");
+        final Task<Void> blocked = tracker.block();
+        started.get(5, TimeUnit.SECONDS);
+        tracker.record(1);
+        tracker.urgent(100);
+        release.complete(null);
+        blocked.get(5, TimeUnit.SECONDS);
+        // one-way messages are delivered asynchronously
+        lastRecorded.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(100, 1), tracker.getRecorded().get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10_000)
+    public void capacityRefusalTest() throws Exception
+    {
+        started = new Task<>();
+        release = new Task<>();
+        OrbitStage stage1 = createStage();
+        IStrict strict = IActor.getReference(IStrict.class, "refusal");
+        final Task<Void> blocked = strict.block();
+        started.get(5, TimeUnit.SECONDS);
+        final Task<Integer> first = strict.echo(1);
+        final Task<Integer> second = strict.echo(2);
+        // the mailbox of this type holds two messages, the others are refused right away
+        final Task<Integer> third = strict.echo(3);
+        expectException(() -> third.get(5, TimeUnit.SECONDS));
+        assertEquals(1, execution(stage1).getRefusedExecutions());
+
+        release.complete(null);
+        blocked.get(5, TimeUnit.SECONDS);
+        assertEquals((Integer) 1, first.get(5, TimeUnit.SECONDS));
+        assertEquals((Integer) 2, second.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10_000)
+    public void expiredMessagesTest() throws Exception
+    {
+        started = new Task<>();
+        release = new Task<>();
+        OrbitStage stage1 = createStage();
+        IStrict strict = IActor.getReference(IStrict.class, "expired");
+        strict.block();
+        started.get(5, TimeUnit.SECONDS);
+        strict.echo(1);
+        strict.echo(2);
+        // the callers of the queued messages timed out
+        clock.incrementTimeMillis(TimeUnit.MINUTES.toMillis(1));
+
+        // the expired messages make room instead of the new one being refused
+        final Task<Integer> third = strict.echo(3);
+        release.complete(null);
+        assertEquals((Integer) 3, third.get(5, TimeUnit.SECONDS));
+        assertEquals(2, execution(stage1).getExpiredMessages());
+        assertEquals(0, execution(stage1).getRefusedExecutions());
+    }
+
+    @Test(timeout = 10_000)
+    public void backpressureSignalTest() throws Exception
+    {
+        started = new Task<>();
+        release = new Task<>();
+        OrbitStage stage1 = createStage();
+        IStrict strict = IActor.getReference(IStrict.class, "backpressure");
+        // activates the actor in the first stage
+        final Task<Void> blocked = strict.block();
+        started.get(5, TimeUnit.SECONDS);
+
+        OrbitStage stage2 = createStage();
+        stage2.bind();
+        assertFalse(execution(stage2).isBackpressured((IAddressable) strict));
+        final Task<Integer> first = strict.echo(1);
+        final Task<Integer> second = strict.echo(2);
+
+        // the mailbox reached the threshold, the actor's node tells the sender
+        awaitFor(() -> {
+            try
+            {
+                return execution(stage2).isBackpressured((IAddressable) strict);
+            }
+            catch (Exception e)
+            {
+                return false;
+            }
+        });
+        assertTrue(execution(stage1).isBackpressured((IAddressable) strict));
+
+        release.complete(null);
+        blocked.get(5, TimeUnit.SECONDS);
+        assertEquals((Integer) 1, first.get(5, TimeUnit.SECONDS));
+        assertEquals((Integer) 2, second.get(5, TimeUnit.SECONDS));
+        assertFalse(execution(stage1).isBackpressured((IAddressable) strict));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.runtime.Execution;
+import com.ea.orbit.actors.runtime.OrbitActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("unused")
+public class MigrationTest extends ActorBaseTest
+{
+    public interface ICounter extends IActor
+    {
+        Task<Integer> add(int value);
+
+        Task<UUID> getActivationId();
+    }
+
+    public static class CounterState
+    {
+        int total;
+    }
+
+    public static class Counter extends OrbitActor<CounterState> implements ICounter
+    {
+        private final UUID activationId = UUID.randomUUID();
+
+        @Override
+        public Task<Integer> add(final int value)
+        {
+            // the state is only written by the migration
+            state().total += value;
+            return Task.fromValue(state().total);
+        }
+
+        @Override
+        public Task<UUID> getActivationId()
+        {
+            return Task.fromValue(activationId);
+        }
+    }
+
+    private Execution execution(OrbitStage stage) throws Exception
+    {
+        return (Execution) getField(stage, "execution");
+    }
+
+    @Test(timeout = 30_000L)
+    public void migrateActorTest() throws Exception
+    {
+        OrbitStage stage1 = createStage();
+        OrbitStage stage2 = createStage();
+        OrbitStage client = createClient();
+        ICounter counter = IActor.getReference(ICounter.class, "1");
+        assertEquals((Integer) 5, counter.add(5).join());
+        UUID firstActivation = counter.getActivationId().join();
+
+        OrbitStage source = execution(stage1).getActivationCount() > execution(stage2).getActivationCount() ? stage1 : stage2;
+        OrbitStage target = source == stage1 ? stage2 : stage1;
+        // only the node with the activation can move it
+        assertFalse(target.migrateActor(counter, source.getClusterPeer().localAddress()).join());
+        assertTrue(source.migrateActor(counter, target.getClusterPeer().localAddress()).join());
+
+        // the client still has the old location cached, the message is forwarded
+        client.bind();
+        assertEquals((Integer) 7, counter.add(2).join());
+        assertNotEquals(firstActivation, counter.getActivationId().join());
+        assertEquals(1, execution(source).getForwardedMessages());
+        assertEquals(1, execution(source).getMigratedActors());
+    }
+
+    @Test(timeout = 30_000L)
+    public void rebalanceTest() throws Exception
+    {
+        OrbitStage stage1 = createStage();
+        OrbitStage client = createClient();
+        List<ICounter> counters = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+        {
+            ICounter counter = IActor.getReference(ICounter.class, "c" + i);
+            counter.add(i).join();
+            counters.add(counter);
+        }
+        OrbitStage stage2 = createStage();
+        awaitFor(() -> isIdle(stage1) && isIdle(stage2));
+        int activations = execution(stage1).getActivationCount();
+        int newNodeActivations = execution(stage2).getActivationCount();
+        int moved = stage1.rebalance().join();
+        assertTrue(moved > 0);
+        assertEquals(activations - moved, execution(stage1).getActivationCount());
+        // the new node is not above the average
+        assertEquals((Integer) 0, stage2.rebalance().join());
+
+        client.bind();
+        for (int i = 0; i < counters.size(); i++)
+        {
+            assertEquals((Integer) (i + 1), counters.get(i).add(1).join());
+        }
+        assertEquals(newNodeActivations + moved, execution(stage2).getActivationCount());
+    }
+
+    @Test(timeout = 30_000L)
+    public void rebalanceOnJoinTest() throws Exception
+    {
+        OrbitStage stage1 = createStage(stage -> {
+            // only the join can trigger a round during the test
+            stage.setRebalance(true);
+            stage.setRebalanceIntervalMillis(TimeUnit.HOURS.toMillis(1));
+            stage.setRebalanceOnJoinDelayMillis(10);
+        });
+
+        OrbitStage client = createClient();
+        for (int i = 0; i < 100; i++)
+        {
+            IActor.getReference(ICounter.class, "j" + i).add(i).join();
+        }
+        final Execution execution1 = execution(stage1);
+        final int activations = execution1.getActivationCount();
+        OrbitStage stage2 = createStage();
+        awaitFor(() -> execution1.getMigratedActors() > 0);
+        assertTrue(execution1.getActivationCount() < activations);
+    }
+}
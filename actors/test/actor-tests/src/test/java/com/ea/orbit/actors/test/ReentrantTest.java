@@ -0,0 +1,124 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.annotation.ReadOnly;
+import com.ea.orbit.actors.annotation.Reentrant;
+import com.ea.orbit.actors.runtime.OrbitActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+@SuppressWarnings("unused")
+public class ReentrantTest extends ActorBaseTest
+{
+    @Reentrant
+    public static interface IReentrantActor extends IActor
+    {
+        Task<String> callThrough(IReentrantActor other);
+
+        Task<String> callBack(IReentrantActor caller);
+
+        Task<String> hello();
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class ReentrantActor extends OrbitActor implements IReentrantActor
+    {
+        @Override
+        public Task<String> callThrough(final IReentrantActor other)
+        {
+            return other.callBack(this);
+        }
+
+        @Override
+        public Task<String> callBack(final IReentrantActor caller)
+        {
+            // calls back the actor that is waiting for this response
+            return caller.hello();
+        }
+
+        @Override
+        public Task<String> hello()
+        {
+            return Task.fromValue("hello");
+        }
+    }
+
+    public static interface IReaderActor extends IActor
+    {
+        @ReadOnly
+        Task<String> slowRead(IReaderActor other);
+
+        @ReadOnly
+        Task<String> read();
+    }
+
+    @SuppressWarnings("rawtypes")
+    public static class ReaderActor extends OrbitActor implements IReaderActor
+    {
+        @Override
+        public Task<String> slowRead(final IReaderActor other)
+        {
+            return other.read();
+        }
+
+        @Override
+        public Task<String> read()
+        {
+            return Task.fromValue("data");
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void reentrantCallChainTest() throws Exception
+    {
+        OrbitStage stage1 = createStage();
+        OrbitStage stage2 = createStage();
+        IReentrantActor a = IActor.getReference(IReentrantActor.class, "a");
+        IReentrantActor b = IActor.getReference(IReentrantActor.class, "b");
+        // a -> b -> a would deadlock until the timeout if a were not reentrant
+        assertEquals("hello", a.callThrough(b).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10_000)
+    public void readOnlyCallChainTest() throws Exception
+    {
+        OrbitStage stage1 = createStage();
+        IReaderActor a = IActor.getReference(IReaderActor.class, "a");
+        // both methods are read only, so they can interleave.
+        assertEquals("data", a.slowRead(a).get(5, TimeUnit.SECONDS));
+    }
+}
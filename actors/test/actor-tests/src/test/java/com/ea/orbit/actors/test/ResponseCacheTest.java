@@ -0,0 +1,214 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.annotation.Cacheable;
+import com.ea.orbit.actors.runtime.OrbitActor;
+import com.ea.orbit.actors.runtime.ResponseCache;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+
+@SuppressWarnings("unused")
+public class ResponseCacheTest extends ActorBaseTest
+{
+    private static AtomicInteger calls = new AtomicInteger();
+    private static volatile Task<String> gate;
+
+    public interface ICachedProfile extends IActor
+    {
+        @Cacheable(ttl = 10, ttlUnit = TimeUnit.SECONDS)
+        Task<String> getName();
+
+        @Cacheable(ttl = 10, ttlUnit = TimeUnit.SECONDS)
+        Task<String> getGreeting(String greeting);
+
+        @Cacheable(ttl = 10, ttlUnit = TimeUnit.SECONDS)
+        Task<String> getSlowName();
+
+        @Cacheable(ttl = 10, ttlUnit = TimeUnit.SECONDS)
+        Task<List<String>> getTags();
+
+        Task<?> setName(String name);
+    }
+
+    public static class CachedProfileState
+    {
+        String name = "a";
+    }
+
+    public static class CachedProfile extends OrbitActor<CachedProfileState> implements ICachedProfile
+    {
+        @Override
+        public Task<String> getName()
+        {
+            calls.incrementAndGet();
+            return Task.fromValue(state().name);
+        }
+
+        @Override
+        public Task<String> getGreeting(final String greeting)
+        {
+            calls.incrementAndGet();
+            return Task.fromValue(greeting + " " + state().name);
+        }
+
+        @Override
+        public Task<String> getSlowName()
+        {
+            calls.incrementAndGet();
+            return gate;
+        }
+
+        @Override
+        public Task<List<String>> getTags()
+        {
+            calls.incrementAndGet();
+            return Task.fromValue(new ArrayList<>(Arrays.asList("x", "y")));
+        }
+
+        @Override
+        public Task<?> setName(final String name)
+        {
+            state().name = name;
+            return invalidateCachedResponses();
+        }
+    }
+
+    @Test(timeout = 30_000L)
+    public void cachedResponseTest() throws Exception
+    {
+        OrbitStage stage = createStage();
+        ICachedProfile profile = IActor.getReference(ICachedProfile.class, "1");
+        calls.set(0);
+        assertEquals("a", profile.getName().join());
+        assertEquals("a", profile.getName().join());
+        assertEquals(1, calls.get());
+
+        // the parameters are part of the key
+        assertEquals("hi a", profile.getGreeting("hi").join());
+        assertEquals("hello a", profile.getGreeting("hello").join());
+        assertEquals("hi a", profile.getGreeting("hi").join());
+        assertEquals(3, calls.get());
+
+        ResponseCache.ResponseCacheStats stats = stage.getResponseCacheStats();
+        assertEquals(2, stats.getHits());
+        assertEquals(3, stats.getMisses());
+    }
+
+    @Test(timeout = 30_000L)
+    public void collapsedCallsTest() throws Exception
+    {
+        OrbitStage stage = createStage();
+        ICachedProfile profile = IActor.getReference(ICachedProfile.class, "2");
+        calls.set(0);
+        gate = new Task<>();
+        Task<String> first = profile.getSlowName();
+        Task<String> second = profile.getSlowName();
+        // the second call waits for the response of the first
+        assertFalse(second.isDone());
+        gate.complete("slow");
+        assertEquals("slow", first.join());
+        assertEquals("slow", second.join());
+        assertEquals(1, calls.get());
+        assertEquals(1, stage.getResponseCacheStats().getCollapsed());
+    }
+
+    @Test(timeout = 30_000L)
+    public void callersGetCopiesTest() throws Exception
+    {
+        createStage();
+        ICachedProfile profile = IActor.getReference(ICachedProfile.class, "5");
+        calls.set(0);
+        List<String> first = profile.getTags().join();
+        // changing a response doesn't change the cached one
+        first.add("z");
+        List<String> second = profile.getTags().join();
+        assertEquals(Arrays.asList("x", "y"), second);
+        assertNotSame(second, profile.getTags().join());
+        assertEquals(1, calls.get());
+    }
+
+    @Test(timeout = 30_000L)
+    public void expirationTest() throws Exception
+    {
+        createStage();
+        ICachedProfile profile = IActor.getReference(ICachedProfile.class, "3");
+        calls.set(0);
+        profile.getName().join();
+        clock.incrementTimeMillis(TimeUnit.SECONDS.toMillis(5));
+        profile.getName().join();
+        assertEquals(1, calls.get());
+
+        clock.incrementTimeMillis(TimeUnit.SECONDS.toMillis(6));
+        profile.getName().join();
+        assertEquals(2, calls.get());
+    }
+
+    @Test(timeout = 30_000L)
+    public void invalidationTest() throws Exception
+    {
+        OrbitStage stage1 = createStage();
+        OrbitStage stage2 = createStage();
+        OrbitStage client = createClient();
+        ICachedProfile profile = IActor.getReference(ICachedProfile.class, "4");
+        calls.set(0);
+
+        stage1.bind();
+        assertEquals("a", profile.getName().join());
+        stage2.bind();
+        assertEquals("a", profile.getName().join());
+        client.bind();
+        assertEquals("a", profile.getName().join());
+        assertEquals(3, calls.get());
+
+        // the actor tells all the nodes to drop its cached responses
+        profile.setName("b").join();
+        for (OrbitStage stage : new OrbitStage[]{ stage1, stage2, client })
+        {
+            awaitFor(() -> stage.getResponseCacheStats().getInvalidations() == 1);
+            stage.bind();
+            assertEquals("b", profile.getName().join());
+        }
+        assertEquals(6, calls.get());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.providers.IOrbitProvider;
+import com.ea.orbit.actors.test.actors.ISomeActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StartupTest extends ActorBaseTest
+{
+    public static class SlowProvider implements IOrbitProvider
+    {
+        final Task<Void> started = new Task<>();
+
+        @Override
+        public Task<?> start()
+        {
+            return started;
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPrewarm() throws Exception
+    {
+        OrbitStage stage = newStage();
+        stage.setPrewarmFactories(true);
+        assertEquals(OrbitStage.StartupPhase.CREATED, stage.getStartupPhase());
+        stage.start().join();
+        assertEquals(OrbitStage.StartupPhase.READY, stage.getStartupPhase());
+        final Map<Class<?>, ?> descriptors = (Map<Class<?>, ?>) getField(getField(stage, "execution"), "descriptorMapByInterface");
+        assertTrue(descriptors.containsKey(ISomeActor.class));
+    }
+
+    @Test
+    public void testJoinWhileProvidersStart() throws Exception
+    {
+        OrbitStage stage = newStage();
+        final SlowProvider provider = new SlowProvider();
+        stage.addProvider(provider);
+        final CompletableFuture<?> started = CompletableFuture.runAsync(stage::start);
+        awaitFor(() -> stage.getStartupPhase() == OrbitStage.StartupPhase.JOINED);
+        // messages wait for the providers
+        stage.bind();
+        final Task<String> hello = IActor.getReference(ISomeActor.class, "1").sayHello("hi");
+        Thread.sleep(50);
+        assertFalse(hello.isDone());
+        assertFalse(started.isDone());
+
+        provider.started.complete(null);
+        started.join();
+        assertEquals(OrbitStage.StartupPhase.READY, stage.getStartupPhase());
+        assertEquals("bla", hello.join());
+    }
+}
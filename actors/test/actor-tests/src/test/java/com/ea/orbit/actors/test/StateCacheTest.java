@@ -0,0 +1,157 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.actors.test;
+
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.providers.IOrbitProvider;
+import com.ea.orbit.actors.runtime.ActorReference;
+import com.ea.orbit.actors.runtime.CachingStorageProvider;
+import com.ea.orbit.actors.runtime.OrbitActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@SuppressWarnings("unused")
+public class StateCacheTest extends ActorBaseTest
+{
+    private AtomicInteger storageReads = new AtomicInteger();
+
+    public interface ICachedCounter extends IActor
+    {
+        Task<Integer> add(int value);
+    }
+
+    public static class CachedCounterState
+    {
+        int total;
+    }
+
+    public static class CachedCounter extends OrbitActor<CachedCounterState> implements ICachedCounter
+    {
+        @Override
+        public Task<Integer> add(final int value)
+        {
+            state().total += value;
+            return writeState().thenApply(r -> state().total);
+        }
+    }
+
+    private class CountingStorageProvider extends FakeStorageProvider
+    {
+        CountingStorageProvider(final ConcurrentMap<Object, Object> database)
+        {
+            super(database);
+        }
+
+        @Override
+        public Task<Boolean> readState(final ActorReference<?> reference, final Object state)
+        {
+            storageReads.incrementAndGet();
+            return super.readState(reference, state);
+        }
+    }
+
+    @Override
+    protected IOrbitProvider getStorageProvider()
+    {
+        return new CountingStorageProvider(fakeDatabase);
+    }
+
+    private OrbitStage createCachingStage() throws Exception
+    {
+        return createStage(stage -> stage.setStateCacheMaxBytes(1024 * 1024));
+    }
+
+    private void deactivateAll(OrbitStage stage)
+    {
+        // the activation is only returned to its entry after the response is sent
+        awaitFor(() -> isIdle(stage));
+        clock.incrementTimeMillis(TimeUnit.MINUTES.toMillis(20));
+        stage.cleanup(true);
+    }
+
+    // places the actor in the node as if the directory had chosen it
+    private void placeActor(OrbitStage stage, ICachedCounter counter)
+    {
+        stage.getHosting().canActivate(ICachedCounter.class.getName(), -1).join();
+        stage.getHosting().actorMoved((ActorReference<?>) counter, stage.getClusterPeer().localAddress());
+        stage.bind();
+    }
+
+    @Test(timeout = 30_000L)
+    public void reactivationTest() throws Exception
+    {
+        OrbitStage stage = createCachingStage();
+        ICachedCounter counter = IActor.getReference(ICachedCounter.class, "1");
+        assertEquals((Integer) 1, counter.add(1).join());
+        int reads = storageReads.get();
+
+        deactivateAll(stage);
+        // the new activation gets the state written by the previous one from the cache
+        assertEquals((Integer) 2, counter.add(1).join());
+        assertEquals(reads, storageReads.get());
+
+        CachingStorageProvider.StateCacheStats stats = stage.getStateCacheStats();
+        assertTrue(stats.getHits() >= 1);
+        assertTrue(stats.getHitRate() > 0);
+        assertTrue(stats.getEntries() >= 1);
+        assertTrue(stats.getBytes() > 0);
+    }
+
+    @Test(timeout = 30_000L)
+    public void activatedElsewhereTest() throws Exception
+    {
+        OrbitStage stage1 = createCachingStage();
+        OrbitStage stage2 = createCachingStage();
+        ICachedCounter counter = IActor.getReference(ICachedCounter.class, "2");
+
+        placeActor(stage1, counter);
+        assertEquals((Integer) 1, counter.add(1).join());
+        deactivateAll(stage1);
+
+        // the actor is activated in the other node, which changes its state
+        placeActor(stage2, counter);
+        assertEquals((Integer) 2, counter.add(1).join());
+        deactivateAll(stage2);
+
+        // stage1 still has the location cached, its cached state is discarded since the directory points elsewhere
+        stage1.bind();
+        assertEquals((Integer) 3, counter.add(1).join());
+        assertEquals(1, stage1.getStateCacheStats().getInvalidations());
+    }
+}
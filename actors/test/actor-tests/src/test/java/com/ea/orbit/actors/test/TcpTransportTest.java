@@ -0,0 +1,144 @@
+/*
+Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+1.  Redistributions of source code must retain the above copyright
+    notice, this list of conditions and the following disclaimer.
+2.  Redistributions in binary form must reproduce the above copyright
+    notice, this list of conditions and the following disclaimer in the
+    documentation and/or other materials provided with the distribution.
+3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+    its contributors may be used to endorse or promote products derived
+    from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+
+package com.ea.orbit.actors.test;
+
+import com.ea.orbit.actors.IActor;
+import com.ea.orbit.actors.OrbitStage;
+import com.ea.orbit.actors.cluster.TcpClusterPeer;
+import com.ea.orbit.actors.test.actors.ISomeActor;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TcpTransportTest extends ActorBaseTest
+{
+    private OrbitStage createTcpStage(OrbitStage.StageMode mode, TcpClusterPeer peer) throws Exception
+    {
+        peer.setHost("127.0.0.1");
+        return createStage(stage -> {
+            stage.setMode(mode);
+            stage.setClusterPeer(peer);
+        });
+    }
+
+    @Test(timeout = 30_000L)
+    public void callsOverTcpTest() throws Exception
+    {
+        final TcpClusterPeer stagePeer = new TcpClusterPeer(new FakeClusterPeer());
+        // smaller than the messages, forces reading them in parts
+        stagePeer.setReadBufferSize(1024);
+        final OrbitStage stage = createTcpStage(OrbitStage.StageMode.HOST, stagePeer);
+        final TcpClusterPeer clientPeer = new TcpClusterPeer(new FakeClusterPeer());
+        final OrbitStage client = createTcpStage(OrbitStage.StageMode.FRONT_END, clientPeer);
+
+        client.bind();
+        final ISomeActor actor = IActor.getReference(ISomeActor.class, "tcp");
+        assertEquals("bla", actor.sayHello("hello").join());
+
+        final char[] chars = new char[100_000];
+        Arrays.fill(chars, 'x');
+        final String largeMessage = new String(chars);
+        final List<Task<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+        {
+            calls.add(actor.sayHello(i % 100 == 0 ? largeMessage : "hello " + i));
+        }
+        for (Task<String> call : calls)
+        {
+            assertEquals("bla", call.get(10, TimeUnit.SECONDS));
+        }
+
+        assertTrue(clientPeer.getMessagesSent() >= 1001);
+        assertTrue(stagePeer.getMessagesReceived() >= 1001);
+        assertTrue(clientPeer.getMessagesReceived() >= 1001);
+        client.stop().join();
+        stage.stop().join();
+    }
+
+    @Test(timeout = 30_000L)
+    public void lanesTest() throws Exception
+    {
+        final TcpClusterPeer stagePeer = new TcpClusterPeer(new FakeClusterPeer());
+        final OrbitStage stage = createTcpStage(OrbitStage.StageMode.HOST, stagePeer);
+        final TcpClusterPeer clientPeer = new TcpClusterPeer(new FakeClusterPeer());
+        clientPeer.setLanes(3);
+        clientPeer.setLargeMessageSize(10_000);
+        final OrbitStage client = createTcpStage(OrbitStage.StageMode.FRONT_END, clientPeer);
+
+        client.bind();
+        // random text, so that the message is still large after compression
+        final Random random = new Random(1);
+        final char[] chars = new char[20_000];
+        for (int i = 0; i < chars.length; i++)
+        {
+            chars[i] = (char) (0x4E00 + random.nextInt(0x5000));
+        }
+        final String largeMessage = new String(chars);
+        final List<Task<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 500; i++)
+        {
+            final ISomeActor actor = IActor.getReference(ISomeActor.class, "lane" + (i % 50));
+            calls.add(actor.sayHello(i % 50 == 0 ? largeMessage : "hello " + i));
+        }
+        for (Task<String> call : calls)
+        {
+            assertEquals("bla", call.get(10, TimeUnit.SECONDS));
+        }
+        // three regular lanes and the large message lane
+        assertEquals(4, clientPeer.getOutgoingConnections());
+        client.stop().join();
+        stage.stop().join();
+    }
+
+    @Test(timeout = 30_000L)
+    public void membershipFallbackTest() throws Exception
+    {
+        // a node using the plain peer can still talk to a node using tcp
+        final TcpClusterPeer stagePeer = new TcpClusterPeer(new FakeClusterPeer());
+        final OrbitStage stage = createTcpStage(OrbitStage.StageMode.HOST, stagePeer);
+        final OrbitStage client = createClient();
+
+        client.bind();
+        final ISomeActor actor = IActor.getReference(ISomeActor.class, "fallback");
+        assertEquals("bla", actor.sayHello("hello").join());
+        assertTrue(stagePeer.getMessagesSentThroughMembership() > 0);
+        client.stop().join();
+        stage.stop().join();
+    }
+}
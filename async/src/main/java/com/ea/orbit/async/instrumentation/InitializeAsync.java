@@ -62,12 +62,21 @@ public class InitializeAsync
     // there is a test case that asserts that these constants contain the same value.
     static final String ORBIT_ASYNC_RUNNING = "orbit-async.running";
 
+    /**
+     * Name of the property that declares that all the application classes
+     * were instrumented at build time, and that the agent is not necessary.
+     *
+     * @see com.ea.orbit.async.instrumentation.Weaver
+     */
+    static final String ORBIT_ASYNC_WOVEN = "orbit-async.woven";
+
     /**
      * @see com.ea.orbit.instrumentation.AgentLoader
      */
     static
     {
-        if (!"true".equals(System.getProperty(InitializeAsync.ORBIT_ASYNC_RUNNING, "false")))
+        if (!"true".equals(System.getProperty(InitializeAsync.ORBIT_ASYNC_RUNNING, "false"))
+                && !isWovenAtBuildTime())
         {
             // the indirection is necessary to prevent
             // touching "com.sun.tools" when the agent was loaded via
@@ -97,6 +106,19 @@ public class InitializeAsync
         }
     }
 
+    /**
+     * Checks if the application declared that all its classes were instrumented at build time.
+     * <p>
+     * The presence of build time instrumented classes is not enough to skip the agent,
+     * other jars in the classpath might still need it.
+     * The agent leaves the already instrumented classes untouched.
+     * </p>
+     */
+    static boolean isWovenAtBuildTime()
+    {
+        return "true".equals(System.getProperty(ORBIT_ASYNC_WOVEN, "false"));
+    }
+
     static URL getClassPathFor(Class<?> clazz) throws URISyntaxException, MalformedURLException
     {
         return ClassPathUtils.getClassPathFor(clazz);
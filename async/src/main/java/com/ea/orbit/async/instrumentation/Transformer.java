@@ -38,10 +38,13 @@ import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.AnnotationNode;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LocalVariableNode;
 import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
 import org.objectweb.asm.tree.analysis.Analyzer;
 import org.objectweb.asm.tree.analysis.AnalyzerException;
 import org.objectweb.asm.tree.analysis.BasicInterpreter;
@@ -50,15 +53,26 @@ import org.objectweb.asm.tree.analysis.Frame;
 import org.objectweb.asm.util.Textifier;
 import org.objectweb.asm.util.TraceMethodVisitor;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
 import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.ProtectionDomain;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 
 import static org.objectweb.asm.Opcodes.*;
@@ -108,15 +122,71 @@ class Transformer implements ClassFileTransformer
     private static final String TASK_RET = ")Lcom/ea/orbit/concurrent/Task;";
     private static final String TASK_NAME = "com/ea/orbit/concurrent/Task";
 
+    /**
+     * Comma separated list of package prefixes that should be instrumented, default: all.
+     */
+    static final String INCLUDE_PROPERTY = "orbit-async.include";
+    /**
+     * Comma separated list of package prefixes that should never be instrumented.
+     */
+    static final String EXCLUDE_PROPERTY = "orbit-async.exclude";
+    /**
+     * Directory where transformed classes are cached between runs, default: no cache.
+     */
+    static final String CACHE_DIR_PROPERTY = "orbit-async.cacheDir";
+
+    // identifies the code generating the cached classes, a new transformer or asm version invalidates the cache.
+    private static final byte[] CODE_DIGEST = codeDigest(Transformer.class, TypeInterpreter.class, ClassWriter.class, Analyzer.class);
+
+    private static final byte[] AWAIT_NAME_BYTES = AWAIT_NAME.getBytes(StandardCharsets.UTF_8);
+
+    private final String[] includes;
+    private final String[] excludes;
+    private final Path cacheDir;
+
+    public Transformer()
+    {
+        this(System.getProperty(INCLUDE_PROPERTY), System.getProperty(EXCLUDE_PROPERTY), System.getProperty(CACHE_DIR_PROPERTY));
+    }
+
+    Transformer(String includes, String excludes, String cacheDir)
+    {
+        this.includes = toInternalPrefixes(includes);
+        this.excludes = toInternalPrefixes(excludes);
+        this.cacheDir = cacheDir != null && cacheDir.length() > 0 && CODE_DIGEST != null ? Paths.get(cacheDir) : null;
+    }
+
+    private static String[] toInternalPrefixes(String list)
+    {
+        if (list == null || list.trim().length() == 0)
+        {
+            return new String[0];
+        }
+        return Arrays.stream(list.split(","))
+                .map(String::trim)
+                .filter(p -> p.length() > 0)
+                .map(p -> p.replace('.', '/'))
+                .toArray(String[]::new);
+    }
+
     @Override
     public byte[] transform(final ClassLoader loader, final String className, final Class<?> classBeingRedefined, final ProtectionDomain protectionDomain, final byte[] classfileBuffer) throws IllegalClassFormatException
     {
         try
         {
-            if (className.startsWith("java"))
+            if (className != null && !isIncluded(className))
+            {
+                return null;
+            }
+            // cheap check before parsing the class
+            if (!referencesAwait(classfileBuffer))
             {
                 return null;
             }
+            if (cacheDir != null)
+            {
+                return transformCached(classfileBuffer);
+            }
             ClassReader cr = new ClassReader(classfileBuffer);
             if (needsInstrumentation(cr))
             {
@@ -130,6 +200,141 @@ class Transformer implements ClassFileTransformer
         }
     }
 
+    boolean isIncluded(String className)
+    {
+        if (className.startsWith("java"))
+        {
+            return false;
+        }
+        for (String exclude : excludes)
+        {
+            if (className.startsWith(exclude))
+            {
+                return false;
+            }
+        }
+        if (includes.length == 0)
+        {
+            return true;
+        }
+        for (String include : includes)
+        {
+            if (className.startsWith(include))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Searches the class bytes for the name of the Await class.
+     * The constant pool of classes calling await must contain it as an utf8 constant.
+     */
+    static boolean referencesAwait(byte[] classfileBuffer)
+    {
+        final byte[] name = AWAIT_NAME_BYTES;
+        final byte first = name[0];
+        final int last = classfileBuffer.length - name.length;
+        outer:
+        for (int i = 0; i <= last; i++)
+        {
+            if (classfileBuffer[i] != first)
+            {
+                continue;
+            }
+            for (int j = 1; j < name.length; j++)
+            {
+                if (classfileBuffer[i + j] != name[j])
+                {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Uses the cached result of a previous transformation of the same class bytes.
+     * An empty cache file means the class didn't need changes.
+     */
+    private byte[] transformCached(byte[] classfileBuffer) throws Exception
+    {
+        final Path cacheFile = cacheDir.resolve(hash(classfileBuffer) + ".class");
+        if (Files.exists(cacheFile))
+        {
+            final byte[] cached = Files.readAllBytes(cacheFile);
+            return cached.length > 0 ? cached : null;
+        }
+        ClassReader cr = new ClassReader(classfileBuffer);
+        final byte[] bytes = needsInstrumentation(cr) ? transform(cr) : null;
+        Path temp = null;
+        try
+        {
+            Files.createDirectories(cacheDir);
+            // writes to a temporary file first since other jvms might be reading the same cache
+            temp = Files.createTempFile(cacheDir, "tmp", ".class");
+            Files.write(temp, bytes != null ? bytes : new byte[0]);
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException ex)
+        {
+            // the cache is just an optimization
+            if (temp != null)
+            {
+                temp.toFile().delete();
+            }
+        }
+        return bytes;
+    }
+
+    private static String hash(byte[] classfileBuffer) throws NoSuchAlgorithmException
+    {
+        final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        digest.update(CODE_DIGEST);
+        final byte[] hash = digest.digest(classfileBuffer);
+        final StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash)
+        {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Digests the bytecode of the given classes.
+     *
+     * @return the digest or null if the class files are not available, which disables the cache.
+     */
+    private static byte[] codeDigest(Class<?>... classes)
+    {
+        try
+        {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (Class<?> clazz : classes)
+            {
+                try (InputStream in = clazz.getResourceAsStream("/" + Type.getInternalName(clazz) + ".class"))
+                {
+                    if (in == null)
+                    {
+                        return null;
+                    }
+                    final byte[] buffer = new byte[8192];
+                    for (int n; (n = in.read(buffer)) > 0; )
+                    {
+                        digest.update(buffer, 0, n);
+                    }
+                }
+            }
+            return digest.digest();
+        }
+        catch (Exception ex)
+        {
+            return null;
+        }
+    }
+
     /**
      * Does the actual instrumentation generating new bytecode
      *
@@ -173,192 +378,206 @@ class Transformer implements ClassFileTransformer
             }
             countInstrumented++;
             // for development use: printMethod(cn, mn);
-            final MethodNode mv = new MethodNode(Opcodes.ACC_PRIVATE | ACC_STATIC,
-                    mn.name, mn.desc, mn.signature, (String[]) mn.exceptions.toArray(new String[mn.exceptions.size()]));
-            mn.accept(mv);
-            // TODO generate better names, reuse names if possible
-            mv.name = mn.name + "$" + countInstrumented;
-            mv.desc = Type.getMethodDescriptor(COMPLETABLE_FUTURE_TYPE, ASYNC_STATE_TYPE, OBJECT_TYPE);
-            mv.signature = null;
 
             Analyzer analyzer = new Analyzer(new TypeInterpreter());
             Frame[] frames = analyzer.analyze(cn.name, mn);
             final AbstractInsnNode[] instructions = mn.instructions.toArray();
 
-            mv.instructions.clear();
-
-            // get pos
-            mv.visitVarInsn(ALOAD, !Modifier.isStatic(mv.access) ? 1 : 0);
-            mv.visitMethodInsn(INVOKEVIRTUAL, ASYNC_STATE_NAME, "getPos", Type.getMethodDescriptor(Type.INT_TYPE), false);
-
-            final Label defaultLabel = new Label();
-            mv.visitTableSwitchInsn(0, 0, defaultLabel, new Label[0]);
-            TableSwitchInsnNode switchIns = (TableSwitchInsnNode) mv.instructions.getLast();
-            final Label entryPointLabel = new Label();
+            // awaits of futures that are known to be completed don't need to save the method state
+            boolean needsStateMachine = false;
+            for (int i = 0; i < instructions.length; i++)
+            {
+                if (instructions[i] instanceof MethodInsnNode
+                        && isAwaitCall((MethodInsnNode) instructions[i])
+                        && !isAlwaysDone(instructions[i]))
+                {
+                    needsStateMachine = true;
+                    break;
+                }
+            }
 
-            // original entry point
+            final MethodNode mv = new MethodNode(Opcodes.ACC_PRIVATE | ACC_STATIC,
+                    mn.name, mn.desc, mn.signature, (String[]) mn.exceptions.toArray(new String[mn.exceptions.size()]));
+            // TODO generate better names, reuse names if possible
+            mv.name = mn.name + "$" + countInstrumented;
+            mv.desc = Type.getMethodDescriptor(COMPLETABLE_FUTURE_TYPE, ASYNC_STATE_TYPE, OBJECT_TYPE);
+            mv.signature = null;
 
-            mv.visitLabel(entryPointLabel);
-            switchIns.labels.add((LabelNode) mv.instructions.getLast());
-            restoreStackAndLocals(frames[0], mv);
-            Label lastRestorePoint = null;
+            // the original method becomes the synchronous fast path,
+            // it only switches to the state machine when it finds the first incomplete future.
+            final Type futureType = Type.getReturnType(mn.desc);
+            final Map<LabelNode, LabelNode> labelMap = new HashMap<>();
+            for (int i = 0; i < instructions.length; i++)
+            {
+                if (instructions[i] instanceof LabelNode)
+                {
+                    labelMap.put((LabelNode) instructions[i], new LabelNode());
+                }
+            }
+            final InsnList fastPath = new InsnList();
+            int awaitIndex = 0;
             for (int i = 0; i < instructions.length; i++)
             {
                 final AbstractInsnNode ins = instructions[i];
-                final Frame frame = frames[i];
-
-                if (ins instanceof MethodInsnNode)
+                if (ins instanceof MethodInsnNode && isAwaitCall((MethodInsnNode) ins))
                 {
-                    // TODO: check cast at instrumentation time
-                    MethodInsnNode methodIns = (MethodInsnNode) ins;
-                    if (isAwaitCall(methodIns))
+                    if (!isAlwaysDone(ins))
                     {
-                        // TODO: other comparisons.
-                        mv.visitInsn(Opcodes.DUP);
-                        // stack: completableFuture completableFuture
-
-                        // original: Await.await(future)  (that by default does: future.join())
-
-                        // turns into:
-
-                        // code: if(!future.isDone()) {
-                        // code:    saveLocals to new state
-                        // code:    saveStack to new state
-                        // code:    return future.exceptionally(nop).thenCompose(x -> _func(x, state));
-                        // code: }
-                        // code: jump futureIsDoneLabel:
-                        // code: resumeLabel:
-                        // code:    restoreStack;
-                        // code:    restoreLocals;
-                        // code: futureIsDone:
-                        // code: future.join():
-
-                        Label futureIsDoneLabel = new Label();
-
-                        mv.visitMethodInsn(INVOKEVIRTUAL, COMPLETABLE_FUTURE_NAME, "isDone", "()Z", false);
-                        // code: jump futureIsDoneLabel:
-                        mv.visitJumpInsn(Opcodes.IFNE, futureIsDoneLabel);
-
-                        // code:    saveStack to new state
-                        // code:    saveLocals to new state
-                        int offset = saveLocals(switchIns.labels.size(), frame, mv);
-                        // stack { .. future state }
-
-                        // clears the stack and leaves asyncState in the top
-                        saveStack(frame, mv);
-                        // stack: { state }
-                        mv.visitInsn(DUP);
-                        // stack: { state state }
-                        mv.visitIntInsn(SIPUSH, offset);
-                        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, ASYNC_STATE_NAME, "getObj", Type.getMethodDescriptor(OBJECT_TYPE, Type.INT_TYPE), false);
-                        mv.visitTypeInsn(CHECKCAST, COMPLETABLE_FUTURE_NAME);
-
-                        // stack: { state future }
-                        mv.visitMethodInsn(INVOKESTATIC, Type.getType(Function.class).getInternalName(), "identity", "()Ljava/util/function/Function;", false);
-                        // stack: { state future function }
-                        mv.visitMethodInsn(INVOKEVIRTUAL, COMPLETABLE_FUTURE_NAME, "exceptionally", "(Ljava/util/function/Function;)Ljava/util/concurrent/CompletableFuture;", false);
-                        // stack: { state new_future }
-
-                        // code:    return future.exceptionally(x -> x).thenCompose(x -> _func(state));
-
-                        mv.visitInsn(SWAP);
-                        // stack: { new_future state}
-
-                        mv.visitInvokeDynamicInsn("apply", DYN_FUNCTION,
-                                new Handle(Opcodes.H_INVOKESTATIC,
-                                        "java/lang/invoke/LambdaMetafactory",
-                                        "metafactory",
-                                        "(Ljava/lang/invoke/MethodHandles$Lookup;"
-                                                + "Ljava/lang/String;Ljava/lang/invoke/MethodType;"
-                                                + "Ljava/lang/invoke/MethodType;"
-                                                + "Ljava/lang/invoke/MethodHandle;"
-                                                + "Ljava/lang/invoke/MethodType;"
-                                                + ")Ljava/lang/invoke/CallSite;"),
-                                Type.getType("(Ljava/lang/Object;)Ljava/lang/Object;"),
-                                new Handle(Opcodes.H_INVOKESTATIC, cn.name, mv.name, mv.desc),
-                                Type.getType("(Ljava/lang/Object;)Ljava/util/concurrent/CompletableFuture;"));
-
-
-                        // stack: { new_future function }
-                        mv.visitMethodInsn(INVOKEVIRTUAL, COMPLETABLE_FUTURE_NAME, "thenCompose", "(Ljava/util/function/Function;)Ljava/util/concurrent/CompletableFuture;", false);
-                        // stack: { new_future_02 }
-                        mv.visitInsn(ARETURN);
-
-                        // code: resumeLabel:
-                        Label resumeLabel = new Label();
-                        mv.visitLabel(resumeLabel);
-                        switchIns.labels.add((LabelNode) mv.instructions.getLast());
-
-                        // code:    restoreStack;
-                        // code:    restoreLocals;
-                        restoreStackAndLocals(frame, mv);
-                        if (!Modifier.isStatic(mn.access))
-                        {
-                            if (lastRestorePoint != null)
-                            {
-                                mv.visitLocalVariable(_THIS, "L" + cn.name + ";", null, lastRestorePoint, resumeLabel, 0);
-                            }
-                            lastRestorePoint = new Label();
-                            mv.visitLabel(lastRestorePoint);
-                        }
-
-                        // code: futureIsDone:
-                        mv.visitLabel(futureIsDoneLabel);
-                        mv.visitMethodInsn(INVOKEVIRTUAL, COMPLETABLE_FUTURE_NAME, "join", "()Ljava/lang/Object;", false);
-                        continue;
+                        awaitIndex++;
+                        final MethodNode suspension = new MethodNode();
+                        final Label futureIsDoneLabel = new Label();
+                        suspension.visitInsn(Opcodes.DUP);
+                        suspension.visitMethodInsn(INVOKEVIRTUAL, COMPLETABLE_FUTURE_NAME, "isDone", "()Z", false);
+                        suspension.visitJumpInsn(Opcodes.IFNE, futureIsDoneLabel);
+                        suspend(cn, mv, suspension, frames[i], awaitIndex, -1, futureType);
+                        suspension.visitLabel(futureIsDoneLabel);
+                        fastPath.add(suspension.instructions);
                     }
+                    fastPath.add(new MethodInsnNode(INVOKEVIRTUAL, COMPLETABLE_FUTURE_NAME, "join", "()Ljava/lang/Object;", false));
+                    continue;
                 }
-                ins.accept(mv);
+                fastPath.add(ins.clone(labelMap));
             }
-            switchIns.max = switchIns.labels.size() - 1;
-
-            mv.visitLabel(defaultLabel);
-            mv.visitTypeInsn(NEW, "java/lang/IllegalArgumentException");
-            mv.visitInsn(DUP);
-            mv.visitMethodInsn(INVOKESPECIAL, "java/lang/IllegalArgumentException", "<init>", "()V", false);
-            mv.visitInsn(ATHROW);
-            if (!Modifier.isStatic(mn.access))
+            final List<TryCatchBlockNode> fastTryCatchBlocks = new ArrayList<>();
+            for (TryCatchBlockNode tcb : (List<TryCatchBlockNode>) mn.tryCatchBlocks)
             {
-                if (lastRestorePoint != null)
+                fastTryCatchBlocks.add(new TryCatchBlockNode(labelMap.get(tcb.start), labelMap.get(tcb.end), labelMap.get(tcb.handler), tcb.type));
+            }
+            final List<LocalVariableNode> fastLocalVariables = new ArrayList<>();
+            if (mn.localVariables != null)
+            {
+                for (LocalVariableNode lv : (List<LocalVariableNode>) mn.localVariables)
                 {
-                    Label endLabel = new Label();
-                    mv.visitLabel(endLabel);
-                    mv.visitLocalVariable(_THIS, "L" + cn.name + ";", null, lastRestorePoint, endLabel, 0);
+                    fastLocalVariables.add(new LocalVariableNode(lv.name, lv.desc, lv.signature, labelMap.get(lv.start), labelMap.get(lv.end), lv.index));
                 }
             }
-            mv.accept(cn);
-
-            mv.access &= ~ACC_PUBLIC;
-            mv.access |= ACC_PRIVATE;
 
+            if (needsStateMachine)
             {
-                mv.maxLocals = Math.max(8, mv.maxLocals + 4);
-                mv.maxStack = Math.max(8, mv.maxStack + 4);
-                // for development use: printMethod(cn, mv);
-            }
+                mn.accept(mv);
+                mv.instructions.clear();
+
+                // keeps the state in a new local, to be reused by the next await calls
+                final int stateLocal = mn.maxLocals;
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitVarInsn(ASTORE, stateLocal);
+
+                // get pos
+                mv.visitVarInsn(ALOAD, 0);
+                mv.visitMethodInsn(INVOKEVIRTUAL, ASYNC_STATE_NAME, "getPos", Type.getMethodDescriptor(Type.INT_TYPE), false);
+
+                // the state machine is only entered after the first suspension,
+                // the switch has just the resume points
+                final Label defaultLabel = new Label();
+                mv.visitTableSwitchInsn(1, 0, defaultLabel, new Label[0]);
+                TableSwitchInsnNode switchIns = (TableSwitchInsnNode) mv.instructions.getLast();
+
+                Label lastRestorePoint = null;
+                awaitIndex = 0;
+                for (int i = 0; i < instructions.length; i++)
+                {
+                    final AbstractInsnNode ins = instructions[i];
+                    final Frame frame = frames[i];
 
-            mn.instructions.clear();
-            // can't be done: mn.access |= ACC_SYNTHETIC;
-            mn.tryCatchBlocks.clear();
+                    if (ins instanceof MethodInsnNode)
+                    {
+                        // TODO: check cast at instrumentation time
+                        MethodInsnNode methodIns = (MethodInsnNode) ins;
+                        if (isAwaitCall(methodIns))
+                        {
+                            if (isAlwaysDone(methodIns))
+                            {
+                                mv.visitMethodInsn(INVOKEVIRTUAL, COMPLETABLE_FUTURE_NAME, "join", "()Ljava/lang/Object;", false);
+                                continue;
+                            }
+                            awaitIndex++;
+                            // TODO: other comparisons.
+                            mv.visitInsn(Opcodes.DUP);
+                            // stack: completableFuture completableFuture
+
+                            // original: Await.await(future)  (that by default does: future.join())
+
+                            // turns into:
+
+                            // code: if(!future.isDone()) {
+                            // code:    saveLocals to the reused state
+                            // code:    saveStack to the reused state
+                            // code:    return future.exceptionally(nop).thenCompose(x -> _func(x, state));
+                            // code: }
+                            // code: jump futureIsDoneLabel:
+                            // code: resumeLabel:
+                            // code:    restoreStack;
+                            // code:    restoreLocals;
+                            // code: futureIsDone:
+                            // code: future.join():
+
+                            Label futureIsDoneLabel = new Label();
+
+                            mv.visitMethodInsn(INVOKEVIRTUAL, COMPLETABLE_FUTURE_NAME, "isDone", "()Z", false);
+                            // code: jump futureIsDoneLabel:
+                            mv.visitJumpInsn(Opcodes.IFNE, futureIsDoneLabel);
+
+                            suspend(cn, mv, mv, frame, awaitIndex, stateLocal, COMPLETABLE_FUTURE_TYPE);
+
+                            // code: resumeLabel:
+                            Label resumeLabel = new Label();
+                            mv.visitLabel(resumeLabel);
+                            switchIns.labels.add((LabelNode) mv.instructions.getLast());
+
+                            // code:    restoreStack;
+                            // code:    restoreLocals;
+                            restoreStackAndLocals(frame, mv);
+                            if (!Modifier.isStatic(mn.access))
+                            {
+                                if (lastRestorePoint != null)
+                                {
+                                    mv.visitLocalVariable(_THIS, "L" + cn.name + ";", null, lastRestorePoint, resumeLabel, 0);
+                                }
+                                lastRestorePoint = new Label();
+                                mv.visitLabel(lastRestorePoint);
+                            }
 
-            saveLocals(0, frames[0], mn);
-            mn.visitInsn(ACONST_NULL);
-            mn.visitMethodInsn(INVOKESTATIC, cn.name, mv.name, mv.desc, false);
+                            // code: futureIsDone:
+                            mv.visitLabel(futureIsDoneLabel);
+                            mv.visitMethodInsn(INVOKEVIRTUAL, COMPLETABLE_FUTURE_NAME, "join", "()Ljava/lang/Object;", false);
+                            continue;
+                        }
+                    }
+                    ins.accept(mv);
+                }
+                switchIns.max = switchIns.labels.size();
+
+                mv.visitLabel(defaultLabel);
+                mv.visitTypeInsn(NEW, "java/lang/IllegalArgumentException");
+                mv.visitInsn(DUP);
+                mv.visitMethodInsn(INVOKESPECIAL, "java/lang/IllegalArgumentException", "<init>", "()V", false);
+                mv.visitInsn(ATHROW);
+                if (!Modifier.isStatic(mn.access))
+                {
+                    if (lastRestorePoint != null)
+                    {
+                        Label endLabel = new Label();
+                        mv.visitLabel(endLabel);
+                        mv.visitLocalVariable(_THIS, "L" + cn.name + ";", null, lastRestorePoint, endLabel, 0);
+                    }
+                }
+                mv.accept(cn);
+                mv.access &= ~ACC_PUBLIC;
+                mv.access |= ACC_PRIVATE;
 
-            Type futureType = Type.getReturnType(mn.desc);
-            if (!COMPLETABLE_FUTURE_TYPE.equals(futureType)
-                    && futureType.getInternalName().equals(TASK_NAME))
-            {
-                mn.visitMethodInsn(INVOKESTATIC,
-                        futureType.getInternalName(),
-                        "from",
-                        Type.getMethodDescriptor(futureType, COMPLETION_STAGE_TYPE),
-                        false);
+                {
+                    mv.maxLocals = Math.max(8, mv.maxLocals + 4);
+                    mv.maxStack = Math.max(8, mv.maxStack + 4);
+                    // for development use: printMethod(cn, mv);
+                }
             }
-            mn.visitInsn(ARETURN);
 
+            mn.instructions = fastPath;
+            mn.tryCatchBlocks = fastTryCatchBlocks;
+            mn.localVariables = fastLocalVariables;
             {
-                mn.maxStack = 8;
+                mn.maxLocals = Math.max(8, mn.maxLocals + 4);
+                mn.maxStack = Math.max(8, mn.maxStack + 8);
                 // for development use: printMethod(cn, mn);
                 // for development use: printMethod(cn, mv);
             }
@@ -384,6 +603,120 @@ class Transformer implements ClassFileTransformer
         return bytes;
     }
 
+    /**
+     * Emits the code that saves the method state and returns a future for the rest of the method.
+     * Expects the incomplete future in the top of the stack.
+     *
+     * @param continuation the method that resumes the execution
+     * @param stateLocal   the local holding a state to be reused, or -1 to create a new state
+     * @param returnType   the return type of the method being suspended
+     */
+    private void suspend(final ClassNode cn, final MethodNode continuation, final MethodNode mv, final Frame frame, final int pos, final int stateLocal, final Type returnType)
+    {
+        // code:    saveLocals to the state
+        // code:    saveStack to the state
+        int offset = saveLocals(pos, frame, mv, stateLocal);
+        // stack { .. future state }
+
+        // clears the stack and leaves asyncState in the top
+        saveStack(frame, mv);
+        // stack: { state }
+        mv.visitInsn(DUP);
+        // stack: { state state }
+        mv.visitIntInsn(SIPUSH, offset);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, ASYNC_STATE_NAME, "getObj", Type.getMethodDescriptor(OBJECT_TYPE, Type.INT_TYPE), false);
+        mv.visitTypeInsn(CHECKCAST, COMPLETABLE_FUTURE_NAME);
+
+        // stack: { state future }
+        mv.visitMethodInsn(INVOKESTATIC, Type.getType(Function.class).getInternalName(), "identity", "()Ljava/util/function/Function;", false);
+        // stack: { state future function }
+        mv.visitMethodInsn(INVOKEVIRTUAL, COMPLETABLE_FUTURE_NAME, "exceptionally", "(Ljava/util/function/Function;)Ljava/util/concurrent/CompletableFuture;", false);
+        // stack: { state new_future }
+
+        // code:    return future.exceptionally(x -> x).thenCompose(x -> _func(state));
+
+        mv.visitInsn(SWAP);
+        // stack: { new_future state}
+
+        // code:    function = state.getContinuation()
+        // code:    if (function == null) state.setContinuation(function = x -> _func(x, state))
+        Label hasContinuationLabel = new Label();
+        Label continuationLabel = new Label();
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKEVIRTUAL, ASYNC_STATE_NAME, "getContinuation", "()Ljava/util/function/Function;", false);
+        mv.visitInsn(DUP);
+        // stack: { new_future state function function }
+        mv.visitJumpInsn(IFNONNULL, hasContinuationLabel);
+        mv.visitInsn(POP);
+        mv.visitInsn(DUP);
+        // stack: { new_future state state }
+
+        mv.visitInvokeDynamicInsn("apply", DYN_FUNCTION,
+                new Handle(Opcodes.H_INVOKESTATIC,
+                        "java/lang/invoke/LambdaMetafactory",
+                        "metafactory",
+                        "(Ljava/lang/invoke/MethodHandles$Lookup;"
+                                + "Ljava/lang/String;Ljava/lang/invoke/MethodType;"
+                                + "Ljava/lang/invoke/MethodType;"
+                                + "Ljava/lang/invoke/MethodHandle;"
+                                + "Ljava/lang/invoke/MethodType;"
+                                + ")Ljava/lang/invoke/CallSite;"),
+                Type.getType("(Ljava/lang/Object;)Ljava/lang/Object;"),
+                new Handle(Opcodes.H_INVOKESTATIC, cn.name, continuation.name, continuation.desc),
+                Type.getType("(Ljava/lang/Object;)Ljava/util/concurrent/CompletableFuture;"));
+
+        // stack: { new_future state function }
+        mv.visitInsn(DUP_X1);
+        // stack: { new_future function state function }
+        mv.visitMethodInsn(INVOKEVIRTUAL, ASYNC_STATE_NAME, "setContinuation", "(Ljava/util/function/Function;)V", false);
+        mv.visitJumpInsn(GOTO, continuationLabel);
+
+        mv.visitLabel(hasContinuationLabel);
+        // stack: { new_future state function }
+        mv.visitInsn(SWAP);
+        mv.visitInsn(POP);
+
+        mv.visitLabel(continuationLabel);
+        // stack: { new_future function }
+        mv.visitMethodInsn(INVOKEVIRTUAL, COMPLETABLE_FUTURE_NAME, "thenCompose", "(Ljava/util/function/Function;)Ljava/util/concurrent/CompletableFuture;", false);
+        // stack: { new_future_02 }
+        if (!COMPLETABLE_FUTURE_TYPE.equals(returnType)
+                && returnType.getInternalName().equals(TASK_NAME))
+        {
+            mv.visitMethodInsn(INVOKESTATIC,
+                    returnType.getInternalName(),
+                    "from",
+                    Type.getMethodDescriptor(returnType, COMPLETION_STAGE_TYPE),
+                    false);
+        }
+        mv.visitInsn(ARETURN);
+    }
+
+    /**
+     * Checks if the future passed to await was just created by a method
+     * that always returns completed futures, like {@code Task.done()}.
+     */
+    private boolean isAlwaysDone(final AbstractInsnNode awaitIns)
+    {
+        AbstractInsnNode previous = awaitIns.getPrevious();
+        while (previous != null && previous.getOpcode() < 0)
+        {
+            // skips labels, line numbers and frames
+            previous = previous.getPrevious();
+        }
+        if (!(previous instanceof MethodInsnNode) || previous.getOpcode() != INVOKESTATIC)
+        {
+            return false;
+        }
+        final MethodInsnNode methodIns = (MethodInsnNode) previous;
+        if (COMPLETABLE_FUTURE_NAME.equals(methodIns.owner))
+        {
+            return "completedFuture".equals(methodIns.name);
+        }
+        return TASK_NAME.equals(methodIns.owner)
+                && ("done".equals(methodIns.name) || "fromValue".equals(methodIns.name));
+    }
+
     private boolean isAwaitCall(final MethodInsnNode methodIns)
     {
         return methodIns.getOpcode() == Opcodes.INVOKESTATIC
@@ -446,14 +779,28 @@ class Transformer implements ClassFileTransformer
         }
     }
 
-    private int saveLocals(int pos, Frame frame, MethodNode mv)
+    /**
+     * @param stateLocal the local holding a state to be reused, or -1 to create a new state
+     */
+    private int saveLocals(int pos, Frame frame, MethodNode mv, int stateLocal)
     {
-        mv.visitTypeInsn(Opcodes.NEW, ASYNC_STATE_NAME);
-        mv.visitInsn(Opcodes.DUP);
-        mv.visitIntInsn(SIPUSH, pos);
-        mv.visitIntInsn(SIPUSH, frame.getLocals());
-        mv.visitIntInsn(SIPUSH, frame.getStackSize());
-        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, ASYNC_STATE_NAME, "<init>", "(III)V", false);
+        if (stateLocal >= 0)
+        {
+            mv.visitVarInsn(ALOAD, stateLocal);
+            mv.visitIntInsn(SIPUSH, pos);
+            mv.visitIntInsn(SIPUSH, frame.getLocals());
+            mv.visitIntInsn(SIPUSH, frame.getStackSize());
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, ASYNC_STATE_NAME, "reset", Type.getMethodDescriptor(ASYNC_STATE_TYPE, Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE), false);
+        }
+        else
+        {
+            mv.visitTypeInsn(Opcodes.NEW, ASYNC_STATE_NAME);
+            mv.visitInsn(Opcodes.DUP);
+            mv.visitIntInsn(SIPUSH, pos);
+            mv.visitIntInsn(SIPUSH, frame.getLocals());
+            mv.visitIntInsn(SIPUSH, frame.getStackSize());
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, ASYNC_STATE_NAME, "<init>", "(III)V", false);
+        }
         int count = 0;
         for (int i = 0; i < frame.getLocals(); i++)
         {
@@ -692,6 +1039,10 @@ class Transformer implements ClassFileTransformer
     {
         try
         {
+            if (!isIncluded(Type.getInternalName(c)))
+            {
+                return false;
+            }
             InputStream resourceAsStream = c.getClassLoader().getResourceAsStream(Type.getInternalName(c) + ".class");
             if (resourceAsStream == null)
             {
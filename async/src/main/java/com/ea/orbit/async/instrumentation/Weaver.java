@@ -0,0 +1,134 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.async.instrumentation;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Instruments compiled classes ahead of time, to be used by build tools.
+ * <p>
+ * Applies the same transformation as the java agent to the class files of a directory
+ * and records the woven classes in {@value #WOVEN_CLASSES_RESOURCE}.
+ * {@code Await.init()} only skips the agent when the system property {@code orbit-async.woven} is {@code true},
+ * otherwise the agent is attached and ignores the classes already instrumented.
+ * </p>
+ */
+public class Weaver
+{
+    /**
+     * Name of the resource listing the classes instrumented at build time.
+     */
+    public static final String WOVEN_CLASSES_RESOURCE = "META-INF/orbit-async/woven-classes";
+
+    private final Transformer transformer = new Transformer();
+
+    /**
+     * Instruments a single class.
+     *
+     * @param classBytes the original class file
+     * @return the new class bytes or null if the class doesn't use await.
+     */
+    public byte[] weave(byte[] classBytes)
+    {
+        final ClassReader cr = new ClassReader(classBytes);
+        if (!transformer.needsInstrumentation(cr))
+        {
+            return null;
+        }
+        try
+        {
+            return transformer.transform(cr);
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException("Error instrumenting " + cr.getClassName(), e);
+        }
+    }
+
+    /**
+     * Instruments, in place, all the classes of a directory.
+     *
+     * @param classesDirectory the root of the compiled classes, ex: target/classes
+     * @return the names of the classes that were modified
+     */
+    public List<String> weaveDirectory(File classesDirectory) throws IOException
+    {
+        final List<String> woven = new ArrayList<>();
+        if (!classesDirectory.isDirectory())
+        {
+            return woven;
+        }
+        final Path root = classesDirectory.toPath();
+        final List<Path> classFiles;
+        try (Stream<Path> stream = Files.walk(root))
+        {
+            classFiles = stream.filter(p -> p.toString().endsWith(".class")).collect(Collectors.toList());
+        }
+        for (Path classFile : classFiles)
+        {
+            final byte[] newBytes = weave(Files.readAllBytes(classFile));
+            if (newBytes != null)
+            {
+                Files.write(classFile, newBytes);
+                final String relative = root.relativize(classFile).toString().replace(File.separatorChar, '/');
+                woven.add(relative.substring(0, relative.length() - ".class".length()).replace('/', '.'));
+            }
+        }
+        if (woven.size() > 0)
+        {
+            writeIndex(root.resolve(WOVEN_CLASSES_RESOURCE), woven);
+        }
+        return woven;
+    }
+
+    private void writeIndex(Path index, List<String> woven) throws IOException
+    {
+        // woven classes won't be found again by incremental builds, keeping the previous entries.
+        final Set<String> names = new LinkedHashSet<>();
+        if (Files.exists(index))
+        {
+            names.addAll(Files.readAllLines(index, StandardCharsets.UTF_8));
+        }
+        names.addAll(woven);
+        Files.createDirectories(index.getParent());
+        Files.write(index, names, StandardCharsets.UTF_8);
+    }
+}
@@ -28,105 +28,146 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.ea.orbit.async.runtime;
 
+import java.util.Arrays;
+import java.util.function.Function;
+
 /**
  * Internal class to hold the locals and stack of an async-await method
  * while the method is awaiting for a future.
+ * <p>
+ * Primitive values are kept in a separate {@code long[]} to avoid boxing them.
+ * The same instance is reused by all the suspensions of one method invocation.
+ * </p>
  */
 public class AsyncAwaitState
 {
-    private final Object[] locals;
+    private static final long[] NO_PRIMITIVES = new long[0];
+
+    private Object[] objects;
+    private long[] primitives = NO_PRIMITIVES;
     private int pos;
     private int top;
+    private Function<Object, ?> continuation;
 
     public AsyncAwaitState(int pos, int localsSize, int stackSize)
     {
         this.pos = pos;
-        locals = new Object[localsSize + stackSize];
+        objects = new Object[localsSize + stackSize];
+    }
+
+    /**
+     * Prepares this state to be saved again, at another await call of the same method invocation.
+     * Must only be called after the previous values were restored.
+     */
+    public AsyncAwaitState reset(int pos, int localsSize, int stackSize)
+    {
+        final int size = localsSize + stackSize;
+        this.pos = pos;
+        this.top = 0;
+        if (objects.length < size)
+        {
+            objects = new Object[size];
+        }
+        else
+        {
+            // releases the references restored by the previous resume
+            Arrays.fill(objects, null);
+        }
+        return this;
+    }
+
+    private void pushPrimitive(long val)
+    {
+        if (primitives.length <= top)
+        {
+            primitives = Arrays.copyOf(primitives, objects.length);
+        }
+        primitives[top++] = val;
     }
 
     public static AsyncAwaitState push(final int val, AsyncAwaitState state)
     {
-        state.locals[state.top++] = val;
+        state.pushPrimitive(val);
         return state;
     }
 
     public static AsyncAwaitState push(final long val, AsyncAwaitState state)
     {
-        state.locals[state.top++] = val;
+        state.pushPrimitive(val);
         return state;
     }
 
     public static AsyncAwaitState push(final float val, AsyncAwaitState state)
     {
-        state.locals[state.top++] = val;
+        state.pushPrimitive(Float.floatToRawIntBits(val));
         return state;
     }
 
     public static AsyncAwaitState push(final double val, AsyncAwaitState state)
     {
-        state.locals[state.top++] = val;
+        state.pushPrimitive(Double.doubleToRawLongBits(val));
         return state;
     }
 
     public static AsyncAwaitState push(final Object val, AsyncAwaitState state)
     {
-        state.locals[state.top++] = val;
+        state.objects[state.top++] = val;
         return state;
     }
 
     public AsyncAwaitState push(final int val)
     {
-        this.locals[this.top++] = val;
+        pushPrimitive(val);
         return this;
     }
 
     public AsyncAwaitState push(final long val)
     {
-        this.locals[this.top++] = val;
+        pushPrimitive(val);
         return this;
     }
 
     public AsyncAwaitState push(final float val)
     {
-        this.locals[this.top++] = val;
+        pushPrimitive(Float.floatToRawIntBits(val));
         return this;
     }
 
     public AsyncAwaitState push(final double val)
     {
-        this.locals[this.top++] = val;
+        pushPrimitive(Double.doubleToRawLongBits(val));
         return this;
     }
 
     public AsyncAwaitState push(final Object val)
     {
-        this.locals[this.top++] = val;
+        this.objects[this.top++] = val;
         return this;
     }
 
     public int getI(int i)
     {
-        return (Integer) locals[i];
+        return (int) primitives[i];
     }
 
     public long getJ(int i)
     {
-        return (Long) locals[i];
+        return primitives[i];
     }
 
     public float getF(int i)
     {
-        return (Float) locals[i];
+        return Float.intBitsToFloat((int) primitives[i]);
     }
 
     public double getD(int i)
     {
-        return (Double) locals[i];
+        return Double.longBitsToDouble(primitives[i]);
     }
 
     public Object getObj(int i)
     {
-        return locals[i];
+        return objects[i];
     }
 
     public int getPos()
@@ -134,5 +175,16 @@ public class AsyncAwaitState
         return pos;
     }
 
+    /**
+     * @return the function that resumes the method with this state, if it was already created.
+     */
+    public Function<Object, ?> getContinuation()
+    {
+        return continuation;
+    }
 
+    public void setContinuation(final Function<Object, ?> continuation)
+    {
+        this.continuation = continuation;
+    }
 }
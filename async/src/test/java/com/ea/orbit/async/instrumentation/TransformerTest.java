@@ -0,0 +1,136 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.async.instrumentation;
+
+import com.ea.orbit.async.Async;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static com.ea.orbit.async.Await.await;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransformerTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public static class UsesAwait
+    {
+        @Async
+        public CompletableFuture<String> get(CompletableFuture<String> blocker)
+        {
+            return CompletableFuture.completedFuture(await(blocker));
+        }
+    }
+
+    public static class NoAwait
+    {
+        public CompletableFuture<String> get(CompletableFuture<String> blocker)
+        {
+            return blocker;
+        }
+    }
+
+    private static byte[] bytesOf(Class<?> clazz) throws Exception
+    {
+        try (InputStream in = clazz.getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class"))
+        {
+            final byte[] buffer = new byte[64 * 1024];
+            int len = 0;
+            for (int r; (r = in.read(buffer, len, buffer.length - len)) > 0; )
+            {
+                len += r;
+            }
+            final byte[] bytes = new byte[len];
+            System.arraycopy(buffer, 0, bytes, 0, len);
+            return bytes;
+        }
+    }
+
+    private static String internalName(Class<?> clazz)
+    {
+        return clazz.getName().replace('.', '/');
+    }
+
+    @Test
+    public void testPrefilter() throws Exception
+    {
+        assertTrue(Transformer.referencesAwait(bytesOf(UsesAwait.class)));
+        assertFalse(Transformer.referencesAwait(bytesOf(NoAwait.class)));
+    }
+
+    @Test
+    public void testIncludeExclude() throws Exception
+    {
+        final Transformer all = new Transformer(null, null, null);
+        assertTrue(all.isIncluded("com/example/Foo"));
+        assertFalse(all.isIncluded("java/lang/String"));
+
+        final Transformer filtered = new Transformer("com.example, org.example", "com.example.generated", null);
+        assertTrue(filtered.isIncluded("com/example/Foo"));
+        assertTrue(filtered.isIncluded("org/example/Foo"));
+        assertFalse(filtered.isIncluded("com/example/generated/Foo"));
+        assertFalse(filtered.isIncluded("net/example/Foo"));
+        assertNull(filtered.transform(null, internalName(UsesAwait.class), null, null, bytesOf(UsesAwait.class)));
+    }
+
+    @Test
+    public void testCache() throws Exception
+    {
+        final Path cacheDir = folder.getRoot().toPath().resolve("cache");
+        final Transformer transformer = new Transformer(null, null, cacheDir.toString());
+        final byte[] original = bytesOf(UsesAwait.class);
+        final byte[] transformed = transformer.transform(null, internalName(UsesAwait.class), null, null, original);
+        assertNotNull(transformed);
+
+        final List<Path> files = Files.list(cacheDir).collect(Collectors.toList());
+        assertEquals(1, files.size());
+        assertArrayEquals(transformed, Files.readAllBytes(files.get(0)));
+
+        // the next run reads the result from the cache
+        final byte[] fromCache = "cached".getBytes();
+        Files.write(files.get(0), fromCache);
+        assertArrayEquals(fromCache, new Transformer(null, null, cacheDir.toString())
+                .transform(null, internalName(UsesAwait.class), null, null, original));
+    }
+}
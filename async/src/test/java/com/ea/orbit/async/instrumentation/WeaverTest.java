@@ -0,0 +1,107 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.async.instrumentation;
+
+import com.ea.orbit.async.Async;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import static com.ea.orbit.async.Await.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WeaverTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public static class Woven implements Function<CompletableFuture<String>, CompletableFuture<String>>
+    {
+        @Override
+        public CompletableFuture<String> apply(final CompletableFuture<String> blocker)
+        {
+            return concat(blocker);
+        }
+
+        @Async
+        public CompletableFuture<String> concat(CompletableFuture<String> blocker)
+        {
+            return CompletableFuture.completedFuture("a" + await(blocker));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWeaveDirectory() throws Exception
+    {
+        final String name = Woven.class.getName();
+        final String resource = name.replace('.', '/') + ".class";
+        final File classFile = new File(folder.getRoot(), resource);
+        classFile.getParentFile().mkdirs();
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(resource))
+        {
+            Files.copy(in, classFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        final List<String> woven = new Weaver().weaveDirectory(folder.getRoot());
+        assertEquals(Collections.singletonList(name), woven);
+        final File index = new File(folder.getRoot(), Weaver.WOVEN_CLASSES_RESOURCE);
+        assertEquals(woven, Files.readAllLines(index.toPath(), StandardCharsets.UTF_8));
+        // already woven classes are not changed again
+        assertTrue(new Weaver().weaveDirectory(folder.getRoot()).isEmpty());
+
+        final byte[] bytes = Files.readAllBytes(classFile.toPath());
+        final Class<?> wovenClass = new ClassLoader(getClass().getClassLoader())
+        {
+            {
+                defineClass(name, bytes, 0, bytes.length);
+            }
+        }.loadClass(name);
+
+        // the instrumented method returns without blocking on the incomplete future
+        CompletableFuture<String> blocker = new CompletableFuture<>();
+        CompletableFuture<String> res = ((Function<CompletableFuture<String>, CompletableFuture<String>>) wovenClass.newInstance()).apply(blocker);
+        assertFalse(res.isDone());
+        blocker.complete("b");
+        assertEquals("ab", res.join());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+ 
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+ 
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.async.test;
+
+import com.ea.orbit.async.Await;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.ea.orbit.async.Await.await;
+import static org.junit.Assert.assertEquals;
+
+public class AwaitLoopTest
+{
+    static
+    {
+        Await.init();
+    }
+
+    public static class Accumulator
+    {
+        public Task<String> sum(List<Task<Integer>> values, long start, double scale)
+        {
+            long total = start;
+            double scaled = 0;
+            float count = 0;
+            for (int i = 0; i < values.size(); i++)
+            {
+                // each suspension saves the primitives and reuses the same state
+                int value = await(values.get(i));
+                total += value;
+                scaled += value * scale;
+                count++;
+            }
+            return Task.fromValue(total + ":" + scaled + ":" + count);
+        }
+    }
+
+    @Test
+    public void testLoopWithPrimitives()
+    {
+        List<Task<Integer>> values = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+        {
+            values.add(new Task<>());
+        }
+        Task<String> res = new Accumulator().sum(values, 10_000_000_000L, 0.5);
+        for (int i = 0; i < values.size(); i++)
+        {
+            values.get(i).complete(i + 1);
+        }
+        assertEquals("10000000015:7.5:5.0", res.join());
+    }
+
+    @Test
+    public void testLoopWithCompletedTasks()
+    {
+        List<Task<Integer>> values = new ArrayList<>();
+        values.add(Task.fromValue(1));
+        values.add(new Task<>());
+        values.add(Task.fromValue(3));
+        Task<String> res = new Accumulator().sum(values, 0, 2);
+        values.get(1).complete(2);
+        assertEquals("6:12.0:3.0", res.join());
+    }
+}
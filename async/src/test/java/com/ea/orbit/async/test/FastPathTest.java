@@ -0,0 +1,118 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+ 
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+ 
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+ 
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.async.test;
+
+import com.ea.orbit.async.Await;
+import com.ea.orbit.concurrent.Task;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import static com.ea.orbit.async.Await.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FastPathTest
+{
+    static
+    {
+        Await.init();
+    }
+
+    public static class AlwaysDone
+    {
+        public Task<Integer> add(int a)
+        {
+            int b = await(Task.fromValue(2));
+            await(Task.done());
+            return Task.fromValue(a + b);
+        }
+    }
+
+    public static class Mixed
+    {
+        public Task<String> concat(Task<String> first, Task<String> second)
+        {
+            String a = await(first);
+            String b = await(second);
+            return Task.fromValue(a + b);
+        }
+
+        public Task<String> recover(Task<String> failing)
+        {
+            try
+            {
+                return Task.fromValue(await(failing));
+            }
+            catch (Exception ex)
+            {
+                return Task.fromValue("recovered");
+            }
+        }
+    }
+
+    @Test
+    public void testAlwaysDoneDoesNotNeedStateMachine()
+    {
+        final Task<Integer> res = new AlwaysDone().add(1);
+        assertTrue(res.isDone());
+        assertEquals((Integer) 3, res.join());
+        // only the original method is left
+        assertFalse(Arrays.stream(AlwaysDone.class.getDeclaredMethods()).map(Method::getName).anyMatch(n -> n.contains("$")));
+    }
+
+    @Test
+    public void testCompletedFuturesStaySynchronous()
+    {
+        final Task<String> res = new Mixed().concat(Task.fromValue("a"), Task.fromValue("b"));
+        assertTrue(res.isDone());
+        assertEquals("ab", res.join());
+    }
+
+    @Test
+    public void testSwitchToStateMachine()
+    {
+        final Task<String> second = new Task<>();
+        final Task<String> res = new Mixed().concat(Task.fromValue("a"), second);
+        assertFalse(res.isDone());
+        second.complete("b");
+        assertEquals("ab", res.join());
+    }
+
+    @Test
+    public void testExceptionInFastPath()
+    {
+        final Task<String> failing = new Task<>();
+        failing.completeExceptionally(new RuntimeException());
+        assertEquals("recovered", new Mixed().recover(failing).join());
+    }
+}
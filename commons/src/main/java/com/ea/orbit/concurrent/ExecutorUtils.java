@@ -28,8 +28,12 @@
 
 package com.ea.orbit.concurrent;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,4 +47,51 @@ public class ExecutorUtils
         return new ForkJoinPool(maxThreads, ForkJoinPool.defaultForkJoinWorkerThreadFactory,
                 (t, e) -> logger.log(Level.SEVERE, "Uncaught Exception", e), false);
     }
+
+    /**
+     * Creates a pool with a fixed number of daemon threads and a bounded queue.
+     *
+     * @param name          used to name the threads and in the saturation errors
+     * @param threads       the number of threads
+     * @param queueCapacity how many tasks may wait for a thread before new tasks are rejected
+     * @return a pool that exposes its queue depth and saturation
+     */
+    public static MonitoredThreadPool newFixedThreadPool(final String name, final int threads, final int queueCapacity)
+    {
+        return new MonitoredThreadPool(name, threads, queueCapacity, namedThreadFactory(name));
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread per task, for blocking work.
+     * <p>
+     * Virtual threads are only available from java 21, in older jvms this falls back to a cached thread pool.
+     * </p>
+     *
+     * @param name used to name the threads of the fallback pool
+     * @return an unbounded executor
+     */
+    public static ExecutorService newVirtualThreadExecutor(final String name)
+    {
+        try
+        {
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        }
+        catch (ReflectiveOperationException ex)
+        {
+            logger.info("Virtual threads not available, using platform threads for: " + name);
+            return Executors.newCachedThreadPool(namedThreadFactory(name));
+        }
+    }
+
+    private static ThreadFactory namedThreadFactory(final String name)
+    {
+        final AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            final Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setUncaughtExceptionHandler((t, e) -> logger.log(Level.SEVERE, "Uncaught Exception", e));
+            return thread;
+        };
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.ea.orbit.concurrent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size thread pool with a bounded queue that exposes its queue depth and saturation.
+ * <p>
+ * Tasks submitted when the queue is full are rejected with a {@link RejectedExecutionException}.
+ * </p>
+ */
+public class MonitoredThreadPool extends ThreadPoolExecutor
+{
+    private final String name;
+    private final int queueCapacity;
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public MonitoredThreadPool(final String name, final int threads, final int queueCapacity, final ThreadFactory threadFactory)
+    {
+        super(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity), threadFactory);
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        setRejectedExecutionHandler(new RejectedExecutionHandler()
+        {
+            @Override
+            public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor)
+            {
+                rejectedCount.incrementAndGet();
+                throw new RejectedExecutionException("Thread pool " + name + " is saturated, queue capacity: " + queueCapacity);
+            }
+        });
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return the number of tasks waiting for a thread.
+     */
+    public int getQueueDepth()
+    {
+        return getQueue().size();
+    }
+
+    public int getQueueCapacity()
+    {
+        return queueCapacity;
+    }
+
+    /**
+     * @return the number of tasks refused because the queue was full.
+     */
+    public long getRejectedCount()
+    {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Ratio between the work in the pool (running and queued tasks) and its capacity (threads and queue slots).
+     *
+     * @return a number between 0 (idle) and 1 (new tasks will be rejected).
+     */
+    public double getSaturation()
+    {
+        final int capacity = getMaximumPoolSize() + queueCapacity;
+        return Math.min(1.0, (getActiveCount() + getQueueDepth()) / (double) capacity);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MonitoredThreadPool{" +
+                "name='" + name + '\'' +
+                ", active=" + getActiveCount() +
+                ", queueDepth=" + getQueueDepth() +
+                ", rejected=" + rejectedCount.get() +
+                '}';
+    }
+}
@@ -28,47 +28,23 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.ea.orbit.reflect;
 
-import java.util.WeakHashMap;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
 public class ClassCache
 {
-    private WeakHashMap<Class<?>, ClassDescriptor<?>> map = new WeakHashMap<>();
-    private ReadWriteLock lock = new ReentrantReadWriteLock();
+    // ClassValue stores the descriptor in the class itself: lock free reads and no class loader leaks.
+    private final ClassValue<ClassDescriptor<?>> descriptors = new ClassValue<ClassDescriptor<?>>()
+    {
+        @Override
+        protected ClassDescriptor<?> computeValue(final Class<?> type)
+        {
+            return createClassDescriptor(type);
+        }
+    };
     public static final ClassCache shared = new ClassCache();
 
     @SuppressWarnings("unchecked")
-	public <T> ClassDescriptor<T> getClass(Class<T> clazz)
+    public <T> ClassDescriptor<T> getClass(Class<T> clazz)
     {
-        ClassDescriptor<?> desc;
-        lock.readLock().lock();
-        try
-        {
-            desc = map.get(clazz);
-        }
-        finally
-        {
-            lock.readLock().unlock();
-        }
-        if (desc != null)
-        {
-            return (ClassDescriptor<T>) desc;
-        }
-        else
-        {
-            desc = createClassDescriptor(clazz);
-            lock.writeLock().lock();
-            try
-            {
-                map.put(clazz, desc);
-            }
-            finally
-            {
-                lock.writeLock().unlock();
-            }
-            return (ClassDescriptor<T>) desc;
-        }
+        return (ClassDescriptor<T>) descriptors.get(clazz);
     }
 
     protected <T> ClassDescriptor<?> createClassDescriptor(Class<T> clazz)
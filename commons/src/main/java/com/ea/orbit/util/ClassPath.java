@@ -61,6 +61,7 @@ public class ClassPath
     private static final Object MUTEX = new Object();
 
     private List<ResourceInfo> resources;
+    private List<Path> entries;
 
     public static class ResourceInfo
     {
@@ -90,9 +91,18 @@ public class ClassPath
         return resources;
     }
 
+    /**
+     * @return the directories and jar files of the class path, including the ones referenced by jar manifests.
+     */
+    public List<Path> getEntries()
+    {
+        return entries;
+    }
+
     public static ClassPath from(final ClassLoader classloader) throws IOException
     {
         final List<ResourceInfo> resourceInfos = new ArrayList<>();
+        final List<Path> entryPaths = new ArrayList<>();
         final Set<String> seen = new HashSet<>();
         final Queue<URL> urlsQueue = new LinkedList<>();
         for (ClassLoader c = classloader; c != null; c = c.getParent())
@@ -128,6 +138,7 @@ public class ClassPath
                     final Path entryPath = Paths.get(url.toURI());
                     if (Files.isDirectory(entryPath))
                     {
+                        entryPaths.add(entryPath);
                         resourceInfos.addAll(Files.walk(entryPath)
                                 .filter(x -> !Files.isDirectory(x))
                                 .map(x -> new ResourceInfo(entryPath.relativize(x).toString().replace(File.separatorChar, '/'), loader))
@@ -139,6 +150,7 @@ public class ClassPath
                         try
                         {
                             jar = new JarFile(entryPath.toFile());
+                            entryPaths.add(entryPath);
 
                             resourceInfos.addAll(Collections.list(jar.entries()).stream()
                                     .filter(x -> !x.isDirectory())
@@ -188,6 +200,7 @@ public class ClassPath
         }
         ClassPath cp = new ClassPath();
         cp.resources = resourceInfos;
+        cp.entries = entryPaths;
         return cp;
     }
 
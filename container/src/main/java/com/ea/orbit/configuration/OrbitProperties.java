@@ -43,6 +43,10 @@ public interface OrbitProperties
 
     Integer getAsInt(String key, Integer defaultValue);
 
+    Long getAsLong(String key);
+
+    Long getAsLong(String key, Long defaultValue);
+
     Boolean getAsBoolean(String key);
 
     Boolean getAsBoolean(String key, Boolean defaultValue);
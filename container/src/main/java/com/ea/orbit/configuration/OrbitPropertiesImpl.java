@@ -121,6 +121,29 @@ public class OrbitPropertiesImpl extends Properties implements OrbitProperties
         return value;
     }
 
+    @Override
+    public Long getAsLong(final String key)
+    {
+        Long value = null;
+        final String string = this.getAsString(key);
+        if (string != null)
+        {
+            value = Long.valueOf(string);
+        }
+        return value;
+    }
+
+    @Override
+    public Long getAsLong(final String key, final Long defaultValue)
+    {
+        Long value = getAsLong(key);
+        if (null == value)
+        {
+            value = defaultValue;
+        }
+        return value;
+    }
+
     @Override
     public Boolean getAsBoolean(final String key)
     {
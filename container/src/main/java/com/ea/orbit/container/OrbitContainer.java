@@ -29,6 +29,7 @@ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package com.ea.orbit.container;
 
 import com.ea.orbit.annotation.Config;
+import com.ea.orbit.annotation.Wired;
 import com.ea.orbit.concurrent.Task;
 import com.ea.orbit.configuration.OrbitProperties;
 import com.ea.orbit.configuration.OrbitPropertiesImpl;
@@ -42,14 +43,20 @@ import com.ea.orbit.reflect.FieldDescriptor;
 import org.yaml.snakeyaml.Yaml;
 
 import javax.annotation.PostConstruct;
+import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -57,6 +64,8 @@ import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 public class OrbitContainer
@@ -69,6 +78,25 @@ public class OrbitContainer
     @Config("orbit.providers")
     private List<Object> providers = new ArrayList<>();
 
+    // the @Config fields of each class with their accessors, the configuration is injected on every component creation.
+    private static final ClassValue<ConfigField[]> configFields = new ClassValue<ConfigField[]>()
+    {
+        @Override
+        protected ConfigField[] computeValue(final Class<?> type)
+        {
+            return ClassCache.shared.getClass(type).getAllInstanceFields().stream()
+                    .map(FieldDescriptor::getField)
+                    .filter(f -> f.isAnnotationPresent(Config.class))
+                    .map(ConfigField::new)
+                    .toArray(ConfigField[]::new);
+        }
+    };
+
+    // opt-in: starts the components in parallel, each one after the components injected into it.
+    // by default the components are started one after the other, as before.
+    @Config("orbit.container.parallelStart")
+    private boolean parallelStart = false;
+
     private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(OrbitContainer.class);
 
     static
@@ -188,69 +216,147 @@ public class OrbitContainer
         this.properties.putAll(properties);
     }
 
-    @SuppressWarnings({ "unchecked", "rawtypes" })
-    protected void injectConfig(Object o, java.lang.reflect.Field f) throws IllegalAccessException
+    private enum ConfigKind
     {
-        final Config config = f.getAnnotation(Config.class);
-        if (config != null)
+        INT,
+        LONG,
+        BOOLEAN,
+        STRING,
+        SECRET,
+        ENUM,
+        OTHER
+    }
+
+    /**
+     * A configurable field, resolved once per class.
+     */
+    private static class ConfigField
+    {
+        final java.lang.reflect.Field field;
+        final String key;
+        final ConfigKind kind;
+        final MethodHandle getter;
+        final MethodHandle setter;
+
+        ConfigField(java.lang.reflect.Field f)
         {
             if (Modifier.isFinal(f.getModifiers()))
             {
                 throw new RuntimeException("Configurable fields should never be final: " + f);
             }
-
-            f.setAccessible(true);
-
-            if (f.getType() == Integer.TYPE || f.getType() == Integer.class)
+            field = f;
+            key = f.getAnnotation(Config.class).value();
+            final Class<?> type = f.getType();
+            kind = (type == Integer.TYPE || type == Integer.class) ? ConfigKind.INT
+                    : (type == Long.TYPE || type == Long.class) ? ConfigKind.LONG
+                    : (type == Boolean.TYPE || type == Boolean.class) ? ConfigKind.BOOLEAN
+                    : type == String.class ? ConfigKind.STRING
+                    : type == Secret.class ? ConfigKind.SECRET
+                    : type.isEnum() ? ConfigKind.ENUM
+                    : ConfigKind.OTHER;
+            try
             {
-                f.set(o, properties.getAsInt(config.value(), (Integer) f.get(o)));
+                f.setAccessible(true);
+                final MethodHandles.Lookup lookup = MethodHandles.lookup();
+                getter = lookup.unreflectGetter(f).asType(MethodType.methodType(Object.class, Object.class));
+                setter = lookup.unreflectSetter(f).asType(MethodType.methodType(void.class, Object.class, Object.class));
             }
-            else if (f.getType() == Boolean.TYPE || f.getType() == Boolean.class)
+            catch (IllegalAccessException e)
             {
-                f.set(o, properties.getAsBoolean(config.value(), (Boolean) f.get(o)));
+                throw new UncheckedException(e);
             }
-            else if (f.getType() == String.class)
+        }
+
+        Object get(Object o) throws Throwable
+        {
+            return getter.invokeExact(o);
+        }
+
+        void set(Object o, Object value) throws Throwable
+        {
+            setter.invokeExact(o, value);
+        }
+    }
+
+    /**
+     * Injects the configuration of one {@literal @}Config instance field.
+     * <p>{@link #injectConfig(Object)} doesn't call this method, it uses the fields resolved once per class.</p>
+     */
+    protected void injectConfig(Object o, java.lang.reflect.Field f) throws IllegalAccessException
+    {
+        for (ConfigField configField : configFields.get(f.getDeclaringClass()))
+        {
+            if (configField.field.equals(f))
             {
-                f.set(o, properties.getAsString(config.value(), (String) f.get(o)));
+                injectConfig(o, configField);
+                return;
             }
-            else if (f.getType() == Secret.class)
-            {
+        }
+    }
+
+    protected void injectConfig(Object o) throws IllegalAccessException
+    {
+        for (ConfigField f : configFields.get(o.getClass()))
+        {
+            injectConfig(o, f);
+        }
+    }
+
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    private void injectConfig(Object o, ConfigField f)
+    {
+        try
+        {
+            setConfig(o, f);
+        }
+        catch (RuntimeException | Error e)
+        {
+            throw e;
+        }
+        catch (Throwable e)
+        {
+            throw new UncheckedException(e);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void setConfig(Object o, ConfigField f) throws Throwable
+    {
+        switch (f.kind)
+        {
+            case INT:
+                f.set(o, properties.getAsInt(f.key, (Integer) f.get(o)));
+                break;
+            case LONG:
+                f.set(o, properties.getAsLong(f.key, (Long) f.get(o)));
+                break;
+            case BOOLEAN:
+                f.set(o, properties.getAsBoolean(f.key, (Boolean) f.get(o)));
+                break;
+            case STRING:
+                f.set(o, properties.getAsString(f.key, (String) f.get(o)));
+                break;
+            case SECRET:
                 final Secret secret = get(SecretManager.class).decrypt((String) f.get(o));
                 f.set(o, secret);
-            }
-            else if (f.getType().isEnum())
-            {
-                final String enumValue = properties.getAsString(config.value(), null);
+                break;
+            case ENUM:
+                final String enumValue = properties.getAsString(f.key, null);
                 if (enumValue != null)
                 {
-                    f.set(o, Enum.valueOf((Class<Enum>) f.getType(), enumValue));
+                    f.set(o, Enum.valueOf((Class<Enum>) f.field.getType(), enumValue));
                 }
-            }
-            else if (properties.getAll().get(config.value()) != null)
-            {
-                final Object val = properties.getAll().get(config.value());
-                f.set(o, val);
-            }
-            else if (List.class.isAssignableFrom(f.getType()))
-            {
-                if ((properties.getAll().get(config.value()) != null))
+                break;
+            default:
+                final Object val = properties.getAll().get(f.key);
+                if (val != null)
                 {
-                    final Object val = properties.getAll().get(config.value());
                     f.set(o, val);
                 }
-            }
-            else
-            {
-                throw new UncheckedException("Field type not supported for configuration injection: " + f);
-            }
-        }
-    }
-
-    protected void injectConfig(Object o) throws IllegalAccessException
-    {
-        for (FieldDescriptor fd : ClassCache.shared.getClass(o.getClass()).getAllInstanceFields())
-        {
-            injectConfig(o, fd.getField());
+                else if (!List.class.isAssignableFrom(f.field.getType()))
+                {
+                    throw new UncheckedException("Field type not supported for configuration injection: " + f.field);
+                }
         }
     }
 
@@ -378,23 +484,30 @@ public class OrbitContainer
                 comps.addAll(components.values());
             }
 
-            List<Task<?>> futures = new ArrayList<>();
-            // Call start methods
-            for (ComponentState state : comps)
+            if (parallelStart)
+            {
+                startInParallel(comps);
+            }
+            else
             {
-                if (state.instance != null && state.instance instanceof Startable)
+                List<Task<?>> futures = new ArrayList<>();
+                // Call start methods
+                for (ComponentState state : comps)
                 {
-
-                    final Task<?> future = ((Startable) state.instance).start();
-                    if (future != null && !future.isDone())
+                    if (state.instance != null && state.instance instanceof Startable)
                     {
-                        futures.add(future);
+
+                        final Task<?> future = ((Startable) state.instance).start();
+                        if (future != null && !future.isDone())
+                        {
+                            futures.add(future);
+                        }
                     }
                 }
-            }
-            if (futures.size() > 0)
-            {
-                Task.allOf(futures).join();
+                if (futures.size() > 0)
+                {
+                    Task.allOf(futures).join();
+                }
             }
             state = ContainerState.STARTED;
 
@@ -407,6 +520,76 @@ public class OrbitContainer
         }
     }
 
+    private void startInParallel(final Set<ComponentState> comps)
+    {
+        final List<ComponentState> startables = comps.stream()
+                .filter(s -> s.instance instanceof Startable)
+                .collect(Collectors.toList());
+        // a component depends on the startable components injected into it
+        for (ComponentState state : startables)
+        {
+            state.dependsOn.clear();
+            for (FieldDescriptor fd : ClassCache.shared.getClass(state.instance.getClass()).getAllInstanceFields())
+            {
+                final java.lang.reflect.Field f = fd.getField();
+                if (f.isAnnotationPresent(Inject.class) || f.isAnnotationPresent(Wired.class))
+                {
+                    for (ComponentState other : startables)
+                    {
+                        if (other != state && f.getType().isInstance(other.instance))
+                        {
+                            state.dependsOn.add(other);
+                        }
+                    }
+                }
+            }
+        }
+        final ExecutorService startExecutor = Executors.newCachedThreadPool(r -> new Thread(r, "Orbit container startup"));
+        try
+        {
+            final Map<ComponentState, Task<?>> started = new HashMap<>();
+            for (ComponentState state : startables)
+            {
+                startComponent(state, started, new HashSet<>(), startExecutor);
+            }
+            Task.allOf(started.values()).join();
+        }
+        finally
+        {
+            startExecutor.shutdown();
+        }
+    }
+
+    private Task<?> startComponent(final ComponentState state, final Map<ComponentState, Task<?>> started,
+                                   final Set<ComponentState> visiting, final ExecutorService startExecutor)
+    {
+        Task<?> task = started.get(state);
+        if (task != null)
+        {
+            return task;
+        }
+        if (!visiting.add(state))
+        {
+            // dependency cycle, the order inside the cycle is undefined.
+            return Task.done();
+        }
+        final List<Task<?>> dependencies = new ArrayList<>();
+        for (ComponentState dependency : state.dependsOn)
+        {
+            dependencies.add(startComponent(dependency, started, visiting, startExecutor));
+        }
+        visiting.remove(state);
+        task = Task.allOf(dependencies).thenCompose(() -> CompletableFuture.runAsync(() -> {
+            final Task<?> future = ((Startable) state.instance).start();
+            if (future != null)
+            {
+                future.join();
+            }
+        }, startExecutor));
+        started.put(state, task);
+        return task;
+    }
+
     public void stop()
     {
         logger.info("Stopping Orbit Container");
@@ -35,10 +35,15 @@ import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -52,10 +57,76 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class DependencyRegistry
 {
+    // the fields to inject of each class, resolved once per class.
+    private static final ClassValue<InjectionPlan> injectionPlans = new ClassValue<InjectionPlan>()
+    {
+        @Override
+        protected InjectionPlan computeValue(final Class<?> type)
+        {
+            return new InjectionPlan(type);
+        }
+    };
+
     private final DependencyRegistry parent;
     private final Map<Class<?>, Object[]> singletons = new ConcurrentHashMap<>();
+    // requested type -> key of the singleton that implements it, misses aren't cached as singletons can be added later
+    private final Map<Class<?>, Class<?>> singletonIndex = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<Set<Object>> currentlyInjecting = ThreadLocal.withInitial(HashSet::new);
+
+    private static class InjectedField
+    {
+        final Class<?> type;
+        final MethodHandle setter;
+        final Field field;
+
+        InjectedField(final Field field) throws IllegalAccessException
+        {
+            field.setAccessible(true);
+            this.field = field;
+            this.type = field.getType();
+            final MethodHandle fieldSetter = MethodHandles.lookup().unreflectSetter(field);
+            // static fields are set ignoring the target object
+            this.setter = Modifier.isStatic(field.getModifiers()) ? MethodHandles.dropArguments(fieldSetter, 0, Object.class) : fieldSetter;
+        }
+    }
+
+    private static class InjectionPlan
+    {
+        final InjectedField[] fields;
+        Method postConstruct;
 
-    private final Set<Object> currentlyInjecting = new HashSet<>();
+        InjectionPlan(final Class<?> clazz)
+        {
+            final List<InjectedField> list = new ArrayList<>();
+            for (Class<?> cl = clazz; cl != null && cl != Object.class; cl = cl.getSuperclass())
+            {
+                for (final Method m : cl.getDeclaredMethods())
+                {
+                    if (postConstruct == null && m.isAnnotationPresent(PostConstruct.class))
+                    {
+                        m.setAccessible(true);
+                        postConstruct = m;
+                    }
+                }
+                for (final Field f : cl.getDeclaredFields())
+                {
+                    if (f.isAnnotationPresent(Inject.class) || f.isAnnotationPresent(Wired.class))
+                    {
+                        try
+                        {
+                            list.add(new InjectedField(f));
+                        }
+                        catch (Exception e)
+                        {
+                            throw new UncheckedException("Error initializing field " + f, e);
+                        }
+                    }
+                }
+            }
+            fields = list.toArray(new InjectedField[list.size()]);
+        }
+    }
 
     public DependencyRegistry()
     {
@@ -93,13 +164,14 @@ public class DependencyRegistry
 
     protected <T> T initialize(final Class<T> clazz, final T o, final boolean isSingleton)
     {
+        final Set<Object> injecting = currentlyInjecting.get();
         if (!isSingleton)
         {
-            if (currentlyInjecting.contains(clazz))
+            if (injecting.contains(clazz))
             {
                 throw new UncheckedException("Found cycle with: " + clazz);
             }
-            currentlyInjecting.add(clazz);
+            injecting.add(clazz);
         }
         try
         {
@@ -116,7 +188,7 @@ public class DependencyRegistry
         {
             if (!isSingleton)
             {
-                currentlyInjecting.remove(clazz);
+                injecting.remove(clazz);
             }
         }
     }
@@ -130,21 +202,18 @@ public class DependencyRegistry
         if (o == null)
         {
             // look for subclasses in the existing singletons
-            for (final Map.Entry<Class<?>, Object[]> s : singletons.entrySet())
+            final Class<?> key = findSingletonKey(clazz);
+            if (key != null)
             {
-                if (clazz.isAssignableFrom(s.getKey()))
-                {
-                    aClazz = (Class<T>) s.getKey();
-                    o = s.getValue();
-                    break;
-                }
+                aClazz = (Class<T>) key;
+                o = singletons.get(key);
             }
             if (o == null)
             {
                 if (parent == null && clazz.isAnnotationPresent(Singleton.class))
                 {
-                    singletons.put(clazz, new Object[1]);
-                    o = singletons.get(clazz);
+                    o = singletons.computeIfAbsent(clazz, k -> new Object[1]);
+                    singletonIndex.clear();
                 }
                 else
                 {
@@ -168,9 +237,28 @@ public class DependencyRegistry
         return (T) o[0];
     }
 
+    private Class<?> findSingletonKey(final Class<?> clazz)
+    {
+        final Class<?> indexed = singletonIndex.get(clazz);
+        if (indexed != null)
+        {
+            return indexed;
+        }
+        for (final Class<?> key : singletons.keySet())
+        {
+            if (clazz.isAssignableFrom(key))
+            {
+                singletonIndex.put(clazz, key);
+                return key;
+            }
+        }
+        return null;
+    }
+
     public void addSingleton(final Class<?> c, final Object object)
     {
         singletons.put(c, new Object[]{ object });
+        singletonIndex.clear();
     }
 
     public void addSingleton(final Class<?> c)
@@ -180,19 +268,9 @@ public class DependencyRegistry
 
     public void inject(final Object o)
     {
-        for (Class<?> cl = o.getClass(); cl != null && cl != Object.class; cl = cl.getSuperclass())
+        for (final InjectedField f : injectionPlans.get(o.getClass()).fields)
         {
-            for (final Field f : cl.getDeclaredFields())
-            {
-                try
-                {
-                    injectField(o, f);
-                }
-                catch (Exception e)
-                {
-                    throw new UncheckedException("Error initializing field " + f, e);
-                }
-            }
+            injectField(o, f);
         }
         postInject(o);
     }
@@ -205,35 +283,47 @@ public class DependencyRegistry
         }
     }
 
+    /**
+     * Injects one field if it's annotated with {@literal @}Inject or {@literal @}Wired.
+     * <p>{@link #inject(Object)} doesn't call this method, it uses the fields resolved once per class.</p>
+     */
     protected void injectField(final Object o, final Field f) throws IllegalAccessException
     {
-        if (f.isAnnotationPresent(Inject.class) || f.isAnnotationPresent(Wired.class))
+        for (final InjectedField injected : injectionPlans.get(f.getDeclaringClass()).fields)
+        {
+            if (injected.field.equals(f))
+            {
+                injectField(o, injected);
+                return;
+            }
+        }
+    }
+
+    @SuppressWarnings("PMD.AvoidCatchingThrowable")
+    private void injectField(final Object o, final InjectedField f)
+    {
+        try
         {
-            f.setAccessible(true);
-            final Object located = locate(f.getType());
-            f.set(o, located);
+            f.setter.invoke(o, locate(f.type));
+        }
+        catch (Throwable e)
+        {
+            throw new UncheckedException("Error initializing field " + f.field, e);
         }
     }
 
     protected void postConstruct(final Object o)
     {
-        for (Class<?> cl = o.getClass(); cl != null && cl != Object.class; cl = cl.getSuperclass())
+        final Method m = injectionPlans.get(o.getClass()).postConstruct;
+        if (m != null)
         {
-            for (final Method m : cl.getDeclaredMethods())
+            try
             {
-                if (m.isAnnotationPresent(PostConstruct.class))
-                {
-                    try
-                    {
-                        m.setAccessible(true);
-                        m.invoke(o);
-                        return;
-                    }
-                    catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e)
-                    {
-                        throw new UncheckedException("Error calling post construct " + m, e);
-                    }
-                }
+                m.invoke(o);
+            }
+            catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e)
+            {
+                throw new UncheckedException("Error calling post construct " + m, e);
             }
         }
     }
@@ -39,6 +39,10 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -205,4 +209,144 @@ public class ContainerTest
         container.stop();
     }
 
+    @Singleton
+    public static class SlowStarter implements Startable
+    {
+        static final CountDownLatch otherStarted = new CountDownLatch(1);
+        static final Task<Void> started = new Task<>();
+
+        @Override
+        public Task<Void> start()
+        {
+            try
+            {
+                // only completes if the other component starts meanwhile
+                assertTrue(otherStarted.await(10, TimeUnit.SECONDS));
+            }
+            catch (InterruptedException e)
+            {
+                throw new RuntimeException(e);
+            }
+            started.complete(null);
+            return started;
+        }
+    }
+
+    @Singleton
+    public static class IndependentStarter implements Startable
+    {
+        @Override
+        public Task<Void> start()
+        {
+            SlowStarter.otherStarted.countDown();
+            return Task.done();
+        }
+    }
+
+    @Singleton
+    public static class DependentStarter implements Startable
+    {
+        @Inject
+        private SlowStarter slowStarter;
+
+        private boolean dependencyStarted;
+
+        @Override
+        public Task<Void> start()
+        {
+            dependencyStarted = SlowStarter.started.isDone();
+            return Task.done();
+        }
+    }
+
+    @Test
+    public void parallelStartTest()
+    {
+        OrbitContainer container = new OrbitContainer();
+        container.setProperties(Collections.singletonMap("orbit.container.parallelStart", "true"));
+        container.add(DependentStarter.class);
+        container.add(SlowStarter.class);
+        container.add(IndependentStarter.class);
+        container.start();
+        assertTrue(container.get(DependentStarter.class).dependencyStarted);
+        container.stop();
+    }
+
+    public enum Mode
+    {
+        FAST,
+        SLOW
+    }
+
+    public static class Configured
+    {
+        @Inject
+        private HelloWorld helloWorld;
+
+        @Config("configured.count")
+        private int count = 1;
+
+        @Config("configured.name")
+        private String name = "default";
+
+        @Config("configured.mode")
+        private Mode mode = Mode.FAST;
+
+        @Config("configured.enabled")
+        private boolean enabled;
+
+        @Config("configured.timeoutMillis")
+        private long timeoutMillis = 1000;
+
+        @Config("configured.maxBytes")
+        private long maxBytes = 10;
+    }
+
+    @Test
+    public void injectionPlanTest()
+    {
+        OrbitContainer container = new OrbitContainer();
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("configured.count", 5);
+        properties.put("configured.mode", "SLOW");
+        properties.put("configured.enabled", "true");
+        properties.put("configured.timeoutMillis", 5000);
+        container.setProperties(properties);
+        container.add(HelloWorld.class);
+        container.start();
+        // the second injection uses the cached plan of the class
+        for (int i = 0; i < 2; i++)
+        {
+            final Configured configured = new Configured();
+            container.inject(configured);
+            assertSame(container.get(HelloWorld.class), configured.helloWorld);
+            assertEquals(5, configured.count);
+            assertEquals("default", configured.name);
+            assertEquals(Mode.SLOW, configured.mode);
+            assertTrue(configured.enabled);
+            assertEquals(5000L, configured.timeoutMillis);
+            // unset longs keep their default
+            assertEquals(10L, configured.maxBytes);
+        }
+        container.stop();
+    }
+
+    @Test
+    public void injectConfigFieldTest() throws Exception
+    {
+        final Configured configured = new Configured();
+        new OrbitContainer()
+        {
+            {
+                final Map<String, Object> properties = new HashMap<>();
+                properties.put("configured.count", 7);
+                properties.put("configured.timeoutMillis", 5000);
+                setProperties(properties);
+                injectConfig(configured, Configured.class.getDeclaredField("count"));
+            }
+        };
+        assertEquals(7, configured.count);
+        // only the given field is injected
+        assertEquals(1000L, configured.timeoutMillis);
+    }
 }
@@ -30,6 +30,9 @@ package com.ea.orbit.injection;
 
 import org.junit.Test;
 
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 
@@ -47,4 +50,62 @@ public class DependencyRegistryTest
         assertNotNull(dr.locate(HashMap.class));
         assertNotSame(dr.locate(HashMap.class), dr.locate(HashMap.class));
     }
+
+    public interface IService
+    {
+    }
+
+    public static class ServiceImpl implements IService
+    {
+    }
+
+    public static class Client
+    {
+        @Inject
+        private IService service;
+
+        @Inject
+        private HashMap<String, String> map;
+
+        private boolean postConstructed;
+
+        @PostConstruct
+        private void init()
+        {
+            postConstructed = true;
+        }
+    }
+
+    @Test
+    public void testInjection()
+    {
+        final DependencyRegistry dr = new DependencyRegistry();
+        // not a singleton yet
+        assertNull(dr.getSingleton(IService.class));
+        final ServiceImpl service = new ServiceImpl();
+        dr.addSingleton(ServiceImpl.class, service);
+        // resolved through the implementation class
+        assertSame(service, dr.getSingleton(IService.class));
+
+        final Client client = dr.locate(Client.class);
+        assertSame(service, client.service);
+        assertNotNull(client.map);
+        assertTrue(client.postConstructed);
+        assertNotSame(client.map, dr.locate(Client.class).map);
+    }
+
+    @Test
+    public void testInjectField() throws Exception
+    {
+        final DependencyRegistry dr = new DependencyRegistry();
+        final ServiceImpl service = new ServiceImpl();
+        dr.addSingleton(ServiceImpl.class, service);
+        final Client client = new Client();
+        dr.injectField(client, Client.class.getDeclaredField("service"));
+        assertSame(service, client.service);
+        assertNull(client.map);
+        // not injectable
+        dr.injectField(client, Client.class.getDeclaredField("postConstructed"));
+        assertFalse(client.postConstructed);
+    }
 }
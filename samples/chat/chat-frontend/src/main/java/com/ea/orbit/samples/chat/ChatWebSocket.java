@@ -31,6 +31,7 @@ package com.ea.orbit.samples.chat;
 
 import com.ea.orbit.actors.IActor;
 import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.web.WebSocketSender;
 
 import javax.json.Json;
 import javax.json.JsonArrayBuilder;
@@ -60,6 +61,8 @@ public class ChatWebSocket
     public void onWebSocketConnect(Session session)
     {
         chat = IActor.getReference(IChat.class, session.getPathParameters().get("chatName"));
+        // writes without blocking, the observer task completes when the message reaches the socket.
+        final WebSocketSender sender = new WebSocketSender(session);
         observer = new IChatObserver()
         {
             @Override
@@ -71,8 +74,7 @@ public class ChatWebSocket
                         .add("received", ZonedDateTime.ofInstant(message.getWhen().toInstant(), ZoneId.systemDefault()).format(DateTimeFormatter.ISO_INSTANT))
                         .build();
 
-                session.getAsyncRemote().sendObject(jsonObject.toString());
-                return Task.done();
+                return sender.sendText(jsonObject.toString());
             }
         };
         chat.join(observer);
@@ -88,8 +90,7 @@ public class ChatWebSocket
                                             .build()
                             )
                     );
-                    session.getAsyncRemote().sendObject(
-                            Json.createObjectBuilder().add("history", array).build().toString());
+                    sender.sendText(Json.createObjectBuilder().add("history", array).build().toString());
                 }
         );
 
@@ -41,6 +41,7 @@ import org.eclipse.jetty.server.handler.ContextHandlerCollection;
 import org.eclipse.jetty.server.handler.ResourceHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.util.resource.Resource;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.webapp.WebAppContext;
 import org.eclipse.jetty.websocket.jsr356.server.BasicServerEndpointConfig;
 import org.eclipse.jetty.websocket.jsr356.server.BasicServerEndpointConfigurator;
@@ -49,8 +50,10 @@ import org.glassfish.hk2.api.DynamicConfiguration;
 import org.glassfish.hk2.api.DynamicConfigurationService;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.api.ServiceLocator;
+import org.glassfish.hk2.utilities.binding.AbstractBinder;
 import org.glassfish.jersey.internal.inject.Injections;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.spi.internal.ResourceMethodInvocationHandlerProvider;
 import org.glassfish.jersey.servlet.ServletContainer;
 import org.glassfish.jersey.servlet.ServletProperties;
 
@@ -74,6 +77,19 @@ public class EmbeddedHttpServer implements Startable
     @Config("orbit.http.port")
     private int port = 9090;
 
+    /**
+     * Resource methods returning tasks and the {@link WebSocketSender} don't hold on to the http threads,
+     * so a small pool is able to serve a large number of connections.
+     */
+    @Config("orbit.http.maxThreads")
+    private int maxThreads = 200;
+
+    /**
+     * Requests waiting longer than this for the task of a resource method are answered with 503 Service Unavailable.
+     */
+    @Config(TaskInvocationHandlerProvider.TIMEOUT_PROPERTY)
+    private long asyncTimeoutMillis = TaskInvocationHandlerProvider.DEFAULT_TIMEOUT_MILLIS;
+
     @Inject
     private OrbitContainer container;
 
@@ -112,6 +128,17 @@ public class EmbeddedHttpServer implements Startable
 
         final ResourceConfig resourceConfig = new ResourceConfig();
 
+        // resource methods returning tasks are resumed asynchronously when the task completes.
+        resourceConfig.property(TaskInvocationHandlerProvider.TIMEOUT_PROPERTY, asyncTimeoutMillis);
+        resourceConfig.register(new AbstractBinder()
+        {
+            @Override
+            protected void configure()
+            {
+                bind(TaskInvocationHandlerProvider.class).to(ResourceMethodInvocationHandlerProvider.class).in(Singleton.class);
+            }
+        });
+
         // installing jax-rs classes known by the orbit container.
         for (final Class c : container.getClasses())
         {
@@ -131,7 +158,9 @@ public class EmbeddedHttpServer implements Startable
         // this sets the default service locator to one that bridges to the orbit container.
         webAppContext.getServletContext().setAttribute(ServletProperties.SERVICE_LOCATOR, locator);
         webAppContext.setContextPath("/*");
-        webAppContext.addServlet(new ServletHolder(new ServletContainer(resourceConfig)), "/*");
+        final ServletHolder servletHolder = new ServletHolder(new ServletContainer(resourceConfig));
+        servletHolder.setAsyncSupported(true);
+        webAppContext.addServlet(servletHolder, "/*");
 
         final ContextHandler resourceContext = new ContextHandler();
         ResourceHandler resourceHandler = new ResourceHandler();
@@ -145,6 +174,7 @@ public class EmbeddedHttpServer implements Startable
         contexts.setHandlers(new Handler[]{resourceContext, webAppContext});
 
         server = new Server(port);
+        ((QueuedThreadPool) server.getThreadPool()).setMaxThreads(maxThreads);
         server.setHandler(contexts);
         try
         {
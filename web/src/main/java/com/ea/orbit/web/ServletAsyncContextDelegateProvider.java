@@ -0,0 +1,85 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.web;
+
+import org.glassfish.jersey.servlet.spi.AsyncContextDelegate;
+import org.glassfish.jersey.servlet.spi.AsyncContextDelegateProvider;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lets jersey suspend requests using the servlet 3 async support of jetty.
+ * <p>
+ * Registered as a service, jersey's servlet core otherwise refuses to suspend the requests.
+ * </p>
+ */
+public class ServletAsyncContextDelegateProvider implements AsyncContextDelegateProvider
+{
+    // jersey's AsyncResponse times out the requests, answering 503 (see TaskInvocationHandlerProvider.TIMEOUT_PROPERTY).
+    // a servlet timeout would end the request behind jersey's back.
+    private static final long NEVER_TIMEOUT = -1;
+
+    @Override
+    public AsyncContextDelegate createDelegate(final HttpServletRequest request, final HttpServletResponse response)
+    {
+        final AtomicReference<AsyncContext> asyncContextRef = new AtomicReference<>();
+        final AtomicBoolean completed = new AtomicBoolean();
+        return new AsyncContextDelegate()
+        {
+            @Override
+            public void suspend() throws IllegalStateException
+            {
+                if (!completed.get() && asyncContextRef.get() == null)
+                {
+                    final AsyncContext asyncContext = request.isAsyncStarted()
+                            ? request.getAsyncContext()
+                            : request.startAsync(request, response);
+                    asyncContext.setTimeout(NEVER_TIMEOUT);
+                    asyncContextRef.set(asyncContext);
+                }
+            }
+
+            @Override
+            public void complete()
+            {
+                completed.set(true);
+                final AsyncContext asyncContext = asyncContextRef.getAndSet(null);
+                if (asyncContext != null)
+                {
+                    asyncContext.complete();
+                }
+            }
+        };
+    }
+}
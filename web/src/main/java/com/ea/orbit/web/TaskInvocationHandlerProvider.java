@@ -0,0 +1,126 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.web;
+
+import org.glassfish.jersey.server.internal.process.AsyncContext;
+import org.glassfish.jersey.server.model.Invocable;
+import org.glassfish.jersey.server.spi.internal.ResourceMethodInvocationHandlerProvider;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Configuration;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invokes the jax-rs resource methods that return a {@link com.ea.orbit.concurrent.Task}
+ * (or any other {@link CompletionStage}) asynchronously.
+ * <p>
+ * The request is suspended after the resource method returns and resumed when the returned task completes,
+ * so the http thread is released while the actor calls are in flight instead of blocking on {@code join()}.
+ * Requests whose task doesn't complete within {@value #TIMEOUT_PROPERTY} are answered with 503 Service Unavailable.
+ * </p>
+ * <p>
+ * Jersey 2.15 has no public hook to suspend a request from outside of a resource method declaring
+ * a {@code @Suspended AsyncResponse} parameter. The handler provider spi and {@link AsyncContext} are jersey internals,
+ * they are confined to {@link #suspend(Method)}, the rest of the class only uses the public {@link AsyncResponse}.
+ * This must be revisited when upgrading jersey, JAX-RS 2.1 implementations resume {@link CompletionStage} natively.
+ * </p>
+ */
+public class TaskInvocationHandlerProvider implements ResourceMethodInvocationHandlerProvider
+{
+    /**
+     * Property with the maximum time, in milliseconds, that a request waits for its task.
+     */
+    public static final String TIMEOUT_PROPERTY = "orbit.http.asyncTimeoutMillis";
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 60_000;
+
+    @Inject
+    private Provider<AsyncContext> asyncContextProvider;
+
+    @Inject
+    private Configuration configuration;
+
+    @Override
+    public InvocationHandler create(final Invocable invocable)
+    {
+        if (!CompletionStage.class.isAssignableFrom(invocable.getHandlingMethod().getReturnType()))
+        {
+            // let jersey use its default handler
+            return null;
+        }
+        return (target, method, args) -> {
+            final CompletionStage<?> stage = (CompletionStage<?>) method.invoke(target, args);
+            if (stage == null)
+            {
+                return null;
+            }
+            final AsyncResponse asyncResponse = suspend(method);
+            asyncResponse.setTimeoutHandler(response -> response.resume(new ServiceUnavailableException()));
+            asyncResponse.setTimeout(getTimeoutMillis(), TimeUnit.MILLISECONDS);
+            stage.whenComplete((r, e) -> {
+                // after a timeout the late result is ignored
+                if (e != null)
+                {
+                    asyncResponse.resume(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                }
+                else
+                {
+                    asyncResponse.resume(r);
+                }
+            });
+            // the response is ignored by jersey since the request is now suspended
+            return null;
+        };
+    }
+
+    private AsyncResponse suspend(final Method method)
+    {
+        final AsyncContext asyncContext = asyncContextProvider.get();
+        if (!asyncContext.suspend())
+        {
+            throw new ProcessingException("Error suspending the request of " + method);
+        }
+        return asyncContext;
+    }
+
+    private long getTimeoutMillis()
+    {
+        final Object timeout = configuration.getProperty(TIMEOUT_PROPERTY);
+        return timeout != null ? Long.parseLong(String.valueOf(timeout)) : DEFAULT_TIMEOUT_MILLIS;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.web;
+
+import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.exception.UncheckedException;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non blocking, bounded writer for a web socket session.
+ * <p>
+ * Meant to bridge actor observers to web sockets: the observer method returns the task of the send,
+ * which completes only when the message was written to the socket.
+ * Messages are written one at a time with the async remote endpoint, the others wait in a queue.
+ * When a slow client lets more than {@code maxPending} messages pile up, new messages are dropped
+ * and their tasks fail, instead of buffering without bounds or blocking a thread.
+ * </p>
+ * <pre>
+ * final WebSocketSender sender = new WebSocketSender(session);
+ * chat.join(message -> sender.sendText(toJson(message)));
+ * </pre>
+ */
+public class WebSocketSender
+{
+    public static final int DEFAULT_MAX_PENDING = 1000;
+
+    private final Session session;
+    private final RemoteEndpoint.Async remote;
+    private final int maxPending;
+
+    // guarded by this
+    private final Queue<PendingMessage> queue = new ArrayDeque<>();
+    private boolean sending;
+    // a thread is running the write loop, it will write the handed off message next
+    private boolean writing;
+    private PendingMessage handedOff;
+    private long dropped;
+
+    private static class PendingMessage
+    {
+        final Object data;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final Task<Void> task = Task.from(future);
+
+        PendingMessage(final Object data)
+        {
+            this.data = data;
+        }
+    }
+
+    public WebSocketSender(final Session session)
+    {
+        this(session, DEFAULT_MAX_PENDING);
+    }
+
+    public WebSocketSender(final Session session, final int maxPending)
+    {
+        this.session = session;
+        this.remote = session.getAsyncRemote();
+        this.maxPending = maxPending;
+    }
+
+    public Task<Void> sendText(final String text)
+    {
+        return enqueue(text);
+    }
+
+    public Task<Void> sendBinary(final ByteBuffer data)
+    {
+        return enqueue(data);
+    }
+
+    /**
+     * @return the number of messages waiting to be written, including the one being written.
+     */
+    public synchronized int getPending()
+    {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of messages dropped because the queue was full or the session closed.
+     */
+    public synchronized long getDropped()
+    {
+        return dropped;
+    }
+
+    private Task<Void> enqueue(final Object data)
+    {
+        final PendingMessage message = new PendingMessage(data);
+        synchronized (this)
+        {
+            if (!session.isOpen())
+            {
+                dropped++;
+                return Task.fromException(new UncheckedException("Web socket session closed: " + session.getId()));
+            }
+            if (queue.size() >= maxPending)
+            {
+                dropped++;
+                return Task.fromException(new UncheckedException("Too many pending messages for the web socket session: " + session.getId()));
+            }
+            queue.add(message);
+            if (sending)
+            {
+                return message.task;
+            }
+            sending = true;
+            if (writing)
+            {
+                handedOff = message;
+                return message.task;
+            }
+            writing = true;
+        }
+        writeLoop(message);
+        return message.task;
+    }
+
+    /**
+     * Writes the messages one after the other.
+     * <p>
+     * The async remote may invoke the send callback synchronously (on failure or for fast writes),
+     * in that case the callback only hands the next message back to this loop instead of writing it,
+     * so a long queue doesn't nest the writes.
+     * </p>
+     */
+    private void writeLoop(PendingMessage message)
+    {
+        while (message != null)
+        {
+            write(message);
+            synchronized (this)
+            {
+                message = handedOff;
+                handedOff = null;
+                writing = message != null;
+            }
+        }
+    }
+
+    private void write(final PendingMessage message)
+    {
+        try
+        {
+            if (message.data instanceof String)
+            {
+                remote.sendText((String) message.data, result -> onResult(message, result));
+            }
+            else
+            {
+                remote.sendBinary((ByteBuffer) message.data, result -> onResult(message, result));
+            }
+        }
+        catch (Exception ex)
+        {
+            onResult(message, new SendResult(ex));
+        }
+    }
+
+    private void onResult(final PendingMessage message, final SendResult result)
+    {
+        final PendingMessage next;
+        final boolean startLoop;
+        final List<PendingMessage> failed = new ArrayList<>();
+        synchronized (this)
+        {
+            queue.remove();
+            if (!result.isOK())
+            {
+                // the session is no longer usable, failing the remaining messages
+                dropped += queue.size();
+                failed.addAll(queue);
+                queue.clear();
+            }
+            next = queue.peek();
+            sending = next != null;
+            if (writing)
+            {
+                handedOff = next;
+                startLoop = false;
+            }
+            else
+            {
+                startLoop = next != null;
+                writing = startLoop;
+            }
+        }
+        if (result.isOK())
+        {
+            message.future.complete(null);
+        }
+        else
+        {
+            message.future.completeExceptionally(result.getException());
+            failed.forEach(m -> m.future.completeExceptionally(result.getException()));
+        }
+        if (startLoop)
+        {
+            writeLoop(next);
+        }
+    }
+}
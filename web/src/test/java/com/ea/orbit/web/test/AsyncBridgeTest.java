@@ -0,0 +1,242 @@
+/*
+ Copyright (C) 2015 Electronic Arts Inc.  All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ 1.  Redistributions of source code must retain the above copyright
+     notice, this list of conditions and the following disclaimer.
+ 2.  Redistributions in binary form must reproduce the above copyright
+     notice, this list of conditions and the following disclaimer in the
+     documentation and/or other materials provided with the distribution.
+ 3.  Neither the name of Electronic Arts, Inc. ("EA") nor the names of
+     its contributors may be used to endorse or promote products derived
+     from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY ELECTRONIC ARTS AND ITS CONTRIBUTORS "AS IS" AND ANY
+ EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ DISCLAIMED. IN NO EVENT SHALL ELECTRONIC ARTS OR ITS CONTRIBUTORS BE LIABLE FOR ANY
+ DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.ea.orbit.web.test;
+
+import com.ea.orbit.concurrent.Task;
+import com.ea.orbit.container.OrbitContainer;
+import com.ea.orbit.util.NetUtils;
+import com.ea.orbit.web.OrbitWebModule;
+import com.ea.orbit.web.TaskInvocationHandlerProvider;
+import com.ea.orbit.web.WebSocketSender;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.websocket.ClientEndpoint;
+import javax.websocket.ContainerProvider;
+import javax.websocket.OnMessage;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import javax.websocket.WebSocketContainer;
+
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncBridgeTest
+{
+    @ClientEndpoint
+    public static class MessagesEndpoint
+    {
+        final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+
+        @OnMessage
+        public void onMessage(String message)
+        {
+            messages.add(message);
+        }
+    }
+
+    private OrbitContainer container;
+    private int port;
+
+    @Before
+    public void setUp()
+    {
+        start(new HashMap<>());
+    }
+
+    private void start(Map<String, Object> props)
+    {
+        container = new OrbitContainer();
+        port = NetUtils.findFreePort();
+        props.put("orbit.http.port", port);
+        props.put("orbit.http.maxThreads", 8);
+        props.put("orbit.providers", Arrays.asList(OrbitWebModule.class, Module1.class));
+        container.setProperties(props);
+        container.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        container.stop();
+    }
+
+    private static String get(final URL url) throws Exception
+    {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try (InputStream in = connection.getInputStream())
+        {
+            return new Scanner(in, StandardCharsets.UTF_8.name()).useDelimiter("\\A").next();
+        }
+    }
+
+    @Test
+    public void taskResourceTest() throws Exception
+    {
+        // more requests than http threads, all of them waiting for their tasks.
+        final int count = 20;
+        final CompletableFuture<?>[] responses = new CompletableFuture<?>[count];
+        for (int i = 0; i < count; i++)
+        {
+            final URL url = new URL("http://localhost:" + port + "/helloTask/n" + i);
+            responses[i] = CompletableFuture.supplyAsync(() -> {
+                try
+                {
+                    return get(url);
+                }
+                catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        long timeout = System.currentTimeMillis() + 10_000;
+        while (HelloTask.pending.size() < count && System.currentTimeMillis() < timeout)
+        {
+            Thread.sleep(20);
+        }
+        assertEquals(count, HelloTask.pending.size());
+        assertFalse(responses[0].isDone());
+
+        for (int i = 0; i < count; i++)
+        {
+            HelloTask.pending.get("n" + i).complete("hello n" + i);
+        }
+        for (int i = 0; i < count; i++)
+        {
+            assertEquals("hello n" + i, responses[i].get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void taskTimeoutTest() throws Exception
+    {
+        container.stop();
+        final Map<String, Object> props = new HashMap<>();
+        props.put(TaskInvocationHandlerProvider.TIMEOUT_PROPERTY, 200);
+        start(props);
+
+        // nobody completes this task
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/helloTask/timeout").openConnection();
+        assertEquals(HttpURLConnection.HTTP_UNAVAILABLE, connection.getResponseCode());
+        HelloTask.pending.remove("timeout");
+    }
+
+    @Test
+    public void webSocketSenderTest() throws Exception
+    {
+        final MessagesEndpoint client = new MessagesEndpoint();
+        WebSocketContainer socketContainer = ContainerProvider.getWebSocketContainer();
+        final Session session = socketContainer.connectToServer(client, new URI("ws://localhost:" + port + "/sender"));
+
+        session.getBasicRemote().sendText("100");
+
+        // the messages arrive in order
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(String.valueOf(i), client.messages.poll(10, TimeUnit.SECONDS));
+        }
+        session.close();
+    }
+
+    @Test
+    public void webSocketSenderSynchronousCallbackTest() throws Exception
+    {
+        // the first send waits, the next ones complete within the send call, like a fast write would
+        final List<String> sent = new ArrayList<>();
+        final List<SendHandler> held = new ArrayList<>();
+        final RemoteEndpoint.Async remote = (RemoteEndpoint.Async) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{ RemoteEndpoint.Async.class }, (proxy, method, args) -> {
+                    sent.add((String) args[0]);
+                    if (held.isEmpty())
+                    {
+                        held.add((SendHandler) args[1]);
+                    }
+                    else
+                    {
+                        ((SendHandler) args[1]).onResult(new SendResult());
+                    }
+                    return null;
+                });
+        final Session session = (Session) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{ Session.class }, (proxy, method, args) -> {
+                    switch (method.getName())
+                    {
+                        case "getAsyncRemote":
+                            return remote;
+                        case "isOpen":
+                            return true;
+                        default:
+                            return "session";
+                    }
+                });
+
+        final int count = 50_000;
+        final WebSocketSender sender = new WebSocketSender(session, count);
+        final List<Task<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            tasks.add(sender.sendText(String.valueOf(i)));
+        }
+        assertEquals(count, sender.getPending());
+
+        // releasing the first send writes the whole queue without nesting the writes
+        held.get(0).onResult(new SendResult());
+        assertEquals(0, sender.getPending());
+        assertEquals(count, sent.size());
+        for (int i = 0; i < count; i++)
+        {
+            assertEquals(String.valueOf(i), sent.get(i));
+            assertTrue(tasks.get(i).isDone());
+            assertFalse(tasks.get(i).isCompletedExceptionally());
+        }
+    }
+}